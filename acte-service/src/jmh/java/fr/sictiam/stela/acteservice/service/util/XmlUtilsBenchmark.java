@@ -0,0 +1,80 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import fr.sictiam.stela.acteservice.model.xml.ARActe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse throughput of a prefecture return (ARActe), as done by EmailCheckingTask: detect the root element, then
+ * unmarshall the document.
+ * <p>
+ * Run with {@code ./gradlew :acte-service:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class XmlUtilsBenchmark {
+
+    private static final byte[] AR_ACTE = ("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n" +
+            "<actes:ARActe xmlns:actes=\"http://www.interieur.gouv.fr/ACTES#v1.1-20040216\" " +
+            "xmlns:insee=\"http://xml.insee.fr/schema\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" " +
+            "actes:DateReception=\"2018-05-28\" actes:IDActe=\"006-210600235-20180522-684-AI\" " +
+            "xsi:schemaLocation=\"http://www.interieur.gouv.fr/ACTES#v1.1-20040216 actesv1_1.xsd\">\n" +
+            "    <actes:ActeRecu actes:CodeNatureActe=\"3\" actes:Date=\"2018-05-22\" actes:NumeroInterne=\"684\">\n" +
+            "        <actes:CodeMatiere1 actes:CodeMatiere=\"4\"/>\n" +
+            "        <actes:CodeMatiere2 actes:CodeMatiere=\"2\"/>\n" +
+            "        <actes:Objet>Contrat a duree determinee - Jean Dupont</actes:Objet>\n" +
+            "        <actes:ClassificationDateVersion>2017-04-19</actes:ClassificationDateVersion>\n" +
+            "        <actes:Document>\n" +
+            "            <actes:NomFichier>99_DE-006-210600235-20180522-684-AI-1-1_1.pdf</actes:NomFichier>\n" +
+            "        </actes:Document>\n" +
+            "        <actes:Annexes actes:Nombre=\"0\"/>\n" +
+            "        <actes:DocumentPapier>0</actes:DocumentPapier>\n" +
+            "    </actes:ActeRecu>\n" +
+            "    <actes:ClassificationDateVersionEnCours>2017-04-19</actes:ClassificationDateVersionEnCours>\n" +
+            "</actes:ARActe>").getBytes(StandardCharsets.ISO_8859_1);
+
+    @Benchmark
+    public ARActe contextPerCall() throws Exception {
+        JAXBContext jc = JAXBContext.newInstance(String.class);
+        Unmarshaller unmarshaller = jc.createUnmarshaller();
+        JAXBElement<String> je = unmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(AR_ACTE)),
+                String.class);
+        if (!"ARActe".equals(je.getName().getLocalPart()))
+            throw new IllegalStateException("Unexpected root element " + je.getName());
+
+        JAXBContext arActeContext = JAXBContext.newInstance(ARActe.class);
+        return ARActe.class.cast(arActeContext.createUnmarshaller()
+                .unmarshal(new StreamSource(new ByteArrayInputStream(AR_ACTE))));
+    }
+
+    @Benchmark
+    public ARActe sharedContext() throws Exception {
+        String rootName = XmlUtils.getRootElementName(new ByteArrayInputStream(AR_ACTE));
+        if (!"ARActe".equals(rootName))
+            throw new IllegalStateException("Unexpected root element " + rootName);
+
+        return XmlUtils.unmarshall(new StreamSource(new ByteArrayInputStream(AR_ACTE)), ARActe.class);
+    }
+}
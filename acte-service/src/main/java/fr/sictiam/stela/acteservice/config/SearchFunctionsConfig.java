@@ -0,0 +1,37 @@
+package fr.sictiam.stela.acteservice.config;
+
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.boot.spi.MetadataBuilderContributor;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the PostgreSQL full-text search operators as HQL functions, so that they can be used in criteria queries:
+ * <ul>
+ * <li>{@code fts_match(document, query)}: whether the tsvector matches the plain text query</li>
+ * <li>{@code fts_rank(document, query)}: relevance of the tsvector for the plain text query</li>
+ * </ul>
+ * Queries are parsed with the {@code fr_unaccent} text search configuration (french stemming, accents removed).
+ */
+@Configuration
+public class SearchFunctionsConfig {
+
+    public static final String FTS_MATCH = "fts_match";
+    public static final String FTS_RANK = "fts_rank";
+
+    @Bean
+    public HibernatePropertiesCustomizer searchFunctionsCustomizer() {
+        return properties -> properties.put("hibernate.metadata_builder_contributor",
+                (MetadataBuilderContributor) SearchFunctionsConfig::registerFunctions);
+    }
+
+    private static void registerFunctions(MetadataBuilder metadataBuilder) {
+        metadataBuilder.applySqlFunction(FTS_MATCH, new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN,
+                "(?1 @@ plainto_tsquery('fr_unaccent', ?2))"));
+        metadataBuilder.applySqlFunction(FTS_RANK, new SQLFunctionTemplate(StandardBasicTypes.FLOAT,
+                "ts_rank(?1, plainto_tsquery('fr_unaccent', ?2))"));
+    }
+}
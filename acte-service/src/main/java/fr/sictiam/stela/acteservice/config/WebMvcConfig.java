@@ -1,8 +1,10 @@
 package fr.sictiam.stela.acteservice.config;
 
 import fr.sictiam.stela.acteservice.interceptor.CertificateInterceptor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -11,6 +13,10 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class WebMvcConfig implements WebMvcConfigurer {
 
+    // streamed exports of large selections outlast the container default
+    @Value("${application.export.streamTimeout:3600000}")
+    private long streamTimeout;
+
     @Bean
     CertificateInterceptor certificateInterceptor() {
         return new CertificateInterceptor();
@@ -21,4 +27,9 @@ public class WebMvcConfig implements WebMvcConfigurer {
         registry.addInterceptor(certificateInterceptor()).addPathPatterns("/editeur/**");
     }
 
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(streamTimeout);
+    }
+
 }
\ No newline at end of file
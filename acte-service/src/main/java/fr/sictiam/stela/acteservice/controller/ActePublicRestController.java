@@ -10,6 +10,8 @@ import fr.sictiam.stela.acteservice.model.ui.SearchResultsUI;
 import fr.sictiam.stela.acteservice.model.ui.Views;
 import fr.sictiam.stela.acteservice.service.ActeService;
 import fr.sictiam.stela.acteservice.service.LocalAuthorityService;
+import fr.sictiam.stela.acteservice.service.StorageService;
+import fr.sictiam.stela.acteservice.service.util.PageCursor;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -41,10 +43,13 @@ public class ActePublicRestController {
 
     private final ActeService acteService;
     private final LocalAuthorityService localAuthorityService;
+    private final StorageService storageService;
 
-    public ActePublicRestController(ActeService acteService, LocalAuthorityService localAuthorityService) {
+    public ActePublicRestController(ActeService acteService, LocalAuthorityService localAuthorityService,
+            StorageService storageService) {
         this.acteService = acteService;
         this.localAuthorityService = localAuthorityService;
+        this.storageService = storageService;
     }
 
     @GetMapping
@@ -58,12 +63,18 @@ public class ActePublicRestController {
             @RequestParam(value = "decisionTo", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate decisionTo,
             @RequestParam(value = "limit", required = false, defaultValue = "25") Integer limit,
             @RequestParam(value = "offset", required = false, defaultValue = "0") Integer offset,
-            @RequestParam(value = "column", required = false, defaultValue = "creation") String column,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "withCount", required = false, defaultValue = "true") Boolean withCount,
+            @RequestParam(value = "column", required = false) String column,
             @RequestParam(value = "direction", required = false, defaultValue = "DESC") String direction) {
+        String sort = acteService.getSortColumn(multifield, column);
         List<Acte> actes = acteService.getAllPublicWithQuery(multifield, number, objet, siren, decisionFrom, decisionTo,
-                limit, offset, column, direction);
-        Long count = acteService.countAllPublicWithQuery(multifield, number, objet, siren, decisionFrom, decisionTo);
-        return new ResponseEntity<>(new SearchResultsUI(count, actes), HttpStatus.OK);
+                limit, offset, cursor, sort, direction);
+        Long count = withCount
+                ? acteService.countAllPublicWithQuery(multifield, number, objet, siren, decisionFrom, decisionTo)
+                : null;
+        return new ResponseEntity<>(new SearchResultsUI(count, actes, PageCursor.next(actes, limit, sort, direction)),
+                HttpStatus.OK);
     }
 
     @GetMapping("/{uuid}")
@@ -91,7 +102,8 @@ public class ActePublicRestController {
     public ResponseEntity getActeAttachment(HttpServletResponse response, @PathVariable String uuid,
             @RequestParam(value = "disposition", required = false, defaultValue = "inline") String disposition) {
         Acte acte = acteService.getByUuid(uuid);
-        outputFile(response, acte.getActeAttachment().getFile(), acte.getActeAttachment().getFilename(), disposition);
+        outputFile(response, storageService.getAttachmentContent(acte.getActeAttachment()),
+                acte.getActeAttachment().getFilename(), disposition);
         return new ResponseEntity(HttpStatus.OK);
     }
 
@@ -118,7 +130,7 @@ public class ActePublicRestController {
         Acte acte = acteService.getByUuid(uuid);
         byte[] pdf = new byte[0];
         if (!acteService.isActeACK(uuid)) {
-            pdf = acte.getActeAttachment().getFile();
+            pdf = storageService.getAttachmentContent(acte.getActeAttachment());
         } else {
             try {
                 pdf = acteService.getStampedActe(acte, x, y, acte.getLocalAuthority());
@@ -138,7 +150,7 @@ public class ActePublicRestController {
     public ResponseEntity getAnnexe(HttpServletResponse response, @PathVariable String annexeUuid,
             @RequestParam(value = "disposition", required = false, defaultValue = "inline") String disposition) {
         Attachment annexe = acteService.getAnnexeByUuid(annexeUuid);
-        outputFile(response, annexe.getFile(), annexe.getFilename(), disposition);
+        outputFile(response, storageService.getAttachmentContent(annexe), annexe.getFilename(), disposition);
         return new ResponseEntity(HttpStatus.OK);
     }
 
@@ -2,13 +2,15 @@ package fr.sictiam.stela.acteservice.controller;
 
 import com.lowagie.text.DocumentException;
 import fr.sictiam.stela.acteservice.model.*;
-import fr.sictiam.stela.acteservice.model.ui.ActeCSVUI;
 import fr.sictiam.stela.acteservice.model.ui.ActeUI;
 import fr.sictiam.stela.acteservice.model.ui.ActeUuidsAndSearchUI;
 import fr.sictiam.stela.acteservice.model.ui.SearchResultsUI;
 import fr.sictiam.stela.acteservice.service.ActeService;
+import fr.sictiam.stela.acteservice.service.ExportService;
 import fr.sictiam.stela.acteservice.service.LocalAuthorityService;
+import fr.sictiam.stela.acteservice.service.StorageService;
 import fr.sictiam.stela.acteservice.service.exceptions.FileNotFoundException;
+import fr.sictiam.stela.acteservice.service.util.PageCursor;
 import fr.sictiam.stela.acteservice.service.util.RightUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -27,9 +29,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
-import org.supercsv.io.CsvBeanWriter;
-import org.supercsv.io.ICsvBeanWriter;
-import org.supercsv.prefs.CsvPreference;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -42,6 +42,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -54,11 +55,16 @@ public class ActeRestController {
 
     private final ActeService acteService;
     private final LocalAuthorityService localAuthorityService;
+    private final StorageService storageService;
+    private final ExportService exportService;
 
     @Autowired
-    public ActeRestController(ActeService acteService, LocalAuthorityService localAuthorityService) {
+    public ActeRestController(ActeService acteService, LocalAuthorityService localAuthorityService,
+            StorageService storageService, ExportService exportService) {
         this.acteService = acteService;
         this.localAuthorityService = localAuthorityService;
+        this.storageService = storageService;
+        this.exportService = exportService;
     }
 
     @GetMapping
@@ -72,7 +78,9 @@ public class ActeRestController {
             @RequestParam(value = "status", required = false) StatusType status,
             @RequestParam(value = "limit", required = false, defaultValue = "25") Integer limit,
             @RequestParam(value = "offset", required = false, defaultValue = "0") Integer offset,
-            @RequestParam(value = "column", required = false, defaultValue = "creation") String column,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "withCount", required = false, defaultValue = "true") Boolean withCount,
+            @RequestParam(value = "column", required = false) String column,
             @RequestParam(value = "direction", required = false, defaultValue = "DESC") String direction,
             @RequestAttribute("STELA-Current-Profile-Rights") Set<Right> rights,
             @RequestAttribute("STELA-Current-Local-Authority-UUID") String currentLocalAuthUuid,
@@ -81,11 +89,13 @@ public class ActeRestController {
         if (!RightUtils.hasRight(rights, Arrays.asList(Right.ACTES_DEPOSIT, Right.ACTES_DISPLAY))) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
+        String sort = acteService.getSortColumn(multifield, column);
         List<Acte> actes = acteService.getAllWithQuery(multifield, number, objet, nature, decisionFrom, decisionTo,
-                status, limit, offset, column, direction, currentLocalAuthUuid, groups);
-        Long count = acteService.countAllWithQuery(multifield, number, objet, nature, decisionFrom, decisionTo, status,
-                currentLocalAuthUuid, groups);
-        return new ResponseEntity<>(new SearchResultsUI(count, actes), HttpStatus.OK);
+                status, limit, offset, cursor, sort, direction, currentLocalAuthUuid, groups);
+        Long count = withCount ? acteService.countAllWithQuery(multifield, number, objet, nature, decisionFrom,
+                decisionTo, status, currentLocalAuthUuid, groups) : null;
+        return new ResponseEntity<>(new SearchResultsUI(count, actes, PageCursor.next(actes, limit, sort, direction)),
+                HttpStatus.OK);
     }
 
     @PostMapping("/{uuid}/republish")
@@ -176,21 +186,16 @@ public class ActeRestController {
             @RequestAttribute("STELA-Current-Profile-Rights") Set<Right> rights,
             @RequestAttribute("STELA-Current-Local-Authority-UUID") String currentLocalAuthUuid,
             @RequestParam(value = "disposition", required = false, defaultValue = "inline") String disposition,
-            HttpServletResponse response, @RequestBody ActeUuidsAndSearchUI acteUuidsAndSearchUI) {
+            @RequestParam(value = "async", required = false, defaultValue = "false") boolean async,
+            @RequestBody ActeUuidsAndSearchUI acteUuidsAndSearchUI) {
         if (!RightUtils.hasRight(rights, Arrays.asList(Right.ACTES_DEPOSIT, Right.ACTES_DISPLAY))) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
         LocalAuthority currentLocalAuthority = localAuthorityService.getByUuid(currentLocalAuthUuid);
-        try {
-            byte[] pdf = acteService.getMergedStampedAttachments(acteUuidsAndSearchUI, currentLocalAuthority);
-            outputFile(response, pdf,
-                    "actes_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("YYYY-MM-dd_HH-mm-ss")) + ".pdf",
-                    disposition);
-            return new ResponseEntity(HttpStatus.OK);
-        } catch (IOException | DocumentException e) {
-            LOGGER.error("Error while merging PDFs: {}", e);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        Iterator<Acte> actes = acteService.getAckedActesFromUuidsOrSearch(acteUuidsAndSearchUI);
+        return export(currentLocalAuthUuid,
+                "actes_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("YYYY-MM-dd_HH-mm-ss")) + ".pdf",
+                disposition, async, os -> exportService.writeMergedStampedActes(actes, currentLocalAuthority, os));
     }
 
     // Hack: Not possible to have an infinite UUID list in a GET request with params
@@ -199,57 +204,80 @@ public class ActeRestController {
             @RequestAttribute("STELA-Current-Profile-Rights") Set<Right> rights,
             @RequestAttribute("STELA-Current-Local-Authority-UUID") String currentLocalAuthUuid,
             @RequestParam(value = "disposition", required = false, defaultValue = "inline") String disposition,
-            HttpServletResponse response, @RequestBody ActeUuidsAndSearchUI acteUuidsAndSearchUI) {
+            @RequestParam(value = "async", required = false, defaultValue = "false") boolean async,
+            @RequestBody ActeUuidsAndSearchUI acteUuidsAndSearchUI) {
         if (!RightUtils.hasRight(rights, Arrays.asList(Right.ACTES_DEPOSIT, Right.ACTES_DISPLAY))) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
         LocalAuthority currentLocalAuthority = localAuthorityService.getByUuid(currentLocalAuthUuid);
-        try {
-            byte[] zip = acteService.getZipedStampedAttachments(acteUuidsAndSearchUI, currentLocalAuthority);
-            outputFile(response, zip,
-                    "actes_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("YYYY-MM-dd_HH-mm-ss")) + ".zip",
-                    disposition);
-            return new ResponseEntity(HttpStatus.OK);
-        } catch (IOException | DocumentException e) {
-            LOGGER.error("Error while creating zip file: {}", e);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        Iterator<Acte> actes = acteService.getAckedActesFromUuidsOrSearch(acteUuidsAndSearchUI);
+        return export(currentLocalAuthUuid,
+                "actes_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("YYYY-MM-dd_HH-mm-ss")) + ".zip",
+                disposition, async, os -> exportService.writeZippedStampedActes(actes, currentLocalAuthority, os));
     }
 
     // Hack: Not possible to have an infinite UUID list in a GET request with params
     @PostMapping("/ARs.pdf")
     public ResponseEntity downloadACKsPdf(@RequestAttribute("STELA-Current-Profile-Rights") Set<Right> rights,
-            HttpServletResponse response, @RequestBody ActeUuidsAndSearchUI acteUuidsAndSearchUI,
+            @RequestAttribute("STELA-Current-Local-Authority-UUID") String currentLocalAuthUuid,
+            @RequestBody ActeUuidsAndSearchUI acteUuidsAndSearchUI,
             @RequestParam(value = "disposition", required = false, defaultValue = "inline") String disposition,
+            @RequestParam(value = "async", required = false, defaultValue = "false") boolean async,
             @RequestParam(required = false) String lng) {
         if (!RightUtils.hasRight(rights, Arrays.asList(Right.ACTES_DEPOSIT, Right.ACTES_DISPLAY))) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
-        try {
-            byte[] pdf = acteService.getACKPdfs(acteUuidsAndSearchUI, lng);
-            outputFile(response, pdf,
-                    "ARs_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("YYYY-MM-dd_HH-mm-ss")) + ".pdf",
-                    disposition);
-            return new ResponseEntity(HttpStatus.OK);
-        } catch (DocumentException | IOException e) {
-            LOGGER.error("Error while generating the ACKs PDF: {}", e);
-            return new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
+        Iterator<Acte> actes = acteService.getAckedActesFromUuidsOrSearch(acteUuidsAndSearchUI);
+        return export(currentLocalAuthUuid,
+                "ARs_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("YYYY-MM-dd_HH-mm-ss")) + ".pdf",
+                disposition, async, os -> exportService.writeACKPdfs(actes, lng, os));
+    }
+
+    @GetMapping("/exports/{uuid}")
+    public ResponseEntity<ExportJob> getExportJob(@RequestAttribute("STELA-Current-Profile-Rights") Set<Right> rights,
+            @RequestAttribute("STELA-Current-Local-Authority-UUID") String currentLocalAuthUuid,
+            @PathVariable String uuid) {
+        if (!RightUtils.hasRight(rights, Arrays.asList(Right.ACTES_DEPOSIT, Right.ACTES_DISPLAY))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
+        return new ResponseEntity<>(exportService.getJob(uuid, currentLocalAuthUuid), HttpStatus.OK);
+    }
+
+    @GetMapping("/exports/{uuid}/file")
+    public ResponseEntity downloadExportJobFile(@RequestAttribute("STELA-Current-Profile-Rights") Set<Right> rights,
+            @RequestAttribute("STELA-Current-Local-Authority-UUID") String currentLocalAuthUuid,
+            @RequestParam(value = "disposition", required = false, defaultValue = "inline") String disposition,
+            @PathVariable String uuid) {
+        if (!RightUtils.hasRight(rights, Arrays.asList(Right.ACTES_DEPOSIT, Right.ACTES_DISPLAY))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        ExportJob job = exportService.getJob(uuid, currentLocalAuthUuid);
+        InputStream file = exportService.getJobFile(job);
+        return streamFile(job.getFileName(), disposition, os -> {
+            try (InputStream is = file) {
+                IOUtils.copy(is, os);
+            }
+        });
     }
 
     // Hack: Not possible to have an infinite UUID list in a GET request with params
     @PostMapping("/actes.csv")
     public ResponseEntity getCSVFromList(@RequestAttribute("STELA-Current-Profile-Rights") Set<Right> rights,
-            HttpServletResponse response, @RequestBody ActeUuidsAndSearchUI acteUuidsAndSearchUI,
-            @RequestParam(required = false) String lng) {
+            @RequestAttribute("STELA-Current-Local-Authority-UUID") String currentLocalAuthUuid,
+            @RequestAttribute("STELA-Current-Profile-Groups") Set<String> groups,
+            @RequestBody ActeUuidsAndSearchUI acteUuidsAndSearchUI, @RequestParam(required = false) String lng) {
         if (!RightUtils.hasRight(rights, Arrays.asList(Right.ACTES_DEPOSIT, Right.ACTES_DISPLAY))) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
-        List<String> fields = ActeCSVUI.getFields();
-        List<String> translatedFields = acteService.getTranslatedCSVFields(fields, lng);
-        outputCSV(response, acteService.getActesCSV(acteUuidsAndSearchUI, lng).toArray(), fields, translatedFields,
-                "actes.csv");
-        return new ResponseEntity(HttpStatus.OK);
+        if (!acteService.hasActesForCSV(acteUuidsAndSearchUI, currentLocalAuthUuid, groups)) {
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+        StreamingResponseBody body = os -> acteService.writeActesCSV(acteUuidsAndSearchUI, lng, currentLocalAuthUuid,
+                groups, os);
+        return ResponseEntity.ok()
+                .header("Content-Disposition", "inline; filename=actes.csv")
+                .header("Content-Type", getContentType("actes.csv") + "; charset=UTF-8")
+                .body(body);
     }
 
     @GetMapping("/{uuid}/file")
@@ -260,7 +288,8 @@ public class ActeRestController {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
         Acte acte = acteService.getByUuid(uuid);
-        outputFile(response, acte.getActeAttachment().getFile(), acte.getActeAttachment().getFilename(), disposition);
+        outputFile(response, storageService.getAttachmentContent(acte.getActeAttachment()),
+                acte.getActeAttachment().getFilename(), disposition);
         return new ResponseEntity(HttpStatus.OK);
     }
 
@@ -345,7 +374,7 @@ public class ActeRestController {
         Acte acte = acteService.getByUuid(uuid);
         byte[] pdf = new byte[0];
         if (!acteService.isActeACK(uuid)) {
-            pdf = acte.getActeAttachment().getFile();
+            pdf = storageService.getAttachmentContent(acte.getActeAttachment());
         } else {
             try {
                 pdf = acteService.getStampedActe(acte, x, y, currentLocalAuthority);
@@ -369,8 +398,9 @@ public class ActeRestController {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
         ActeHistory acteHistory = acteService.getHistoryByUuid(historyUuid);
-        if (acteHistory.getFile() != null) {
-            outputFile(response, acteHistory.getFile(), acteHistory.getFileName(), disposition);
+        if (acteHistory.getAttachment() != null) {
+            outputFile(response, storageService.getAttachmentContent(acteHistory.getAttachment()),
+                    acteHistory.getFileName(), disposition);
             return new ResponseEntity(HttpStatus.OK);
         } else
             throw new FileNotFoundException();
@@ -394,7 +424,7 @@ public class ActeRestController {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
         Attachment annexe = acteService.getAnnexeByUuid(annexeUuid);
-        outputFile(response, annexe.getFile(), annexe.getFilename(), disposition);
+        outputFile(response, storageService.getAttachmentContent(annexe), annexe.getFilename(), disposition);
         return new ResponseEntity(HttpStatus.OK);
     }
 
@@ -413,7 +443,7 @@ public class ActeRestController {
         String contentType = getContentType(annexe.getFilename());
         byte[] pdf = new byte[0];
         if (!acteService.isActeACK(uuid) || !contentType.equals("application/pdf")) {
-            pdf = annexe.getFile();
+            pdf = storageService.getAttachmentContent(annexe);
         } else {
             try {
                 pdf = acteService.getStampedAnnexe(acte, annexe, x, y, currentLocalAuthority);
@@ -457,26 +487,23 @@ public class ActeRestController {
     /* ----- FILE OPERATIONS ----- */
     /* --------------------------- */
 
-    private void outputCSV(HttpServletResponse response, Object[] beans, List<String> header,
-            List<String> translatedHeader, String filename) {
-        response.setHeader("Content-Disposition", String.format("inline" + "; filename=" + filename));
-        response.addHeader("Content-Type", getContentType(filename) + "; charset=UTF-8");
-        ICsvBeanWriter csvWriter = null;
-        try {
-            csvWriter = new CsvBeanWriter(response.getWriter(), CsvPreference.STANDARD_PREFERENCE);
-
-            String[] arrayTranslatedHeader = new String[translatedHeader.size()];
-            translatedHeader.toArray(arrayTranslatedHeader);
-            String[] arrayHeader = new String[header.size()];
-            header.toArray(arrayHeader);
+    /**
+     * Streams the export to the response, or runs it as a background job whose file is downloaded later.
+     */
+    private ResponseEntity export(String localAuthorityUuid, String filename, String disposition, boolean async,
+            ExportService.ExportWriter writer) {
+        if (async)
+            return new ResponseEntity<>(exportService.submit(localAuthorityUuid, filename, writer),
+                    HttpStatus.ACCEPTED);
+        return streamFile(filename, disposition, writer);
+    }
 
-            csvWriter.writeHeader(arrayTranslatedHeader);
-            for (Object bean : beans)
-                csvWriter.write(bean, arrayHeader);
-            csvWriter.close();
-        } catch (Exception e) {
-            LOGGER.error("Error while trying to output CSV: {}", e);
-        }
+    private ResponseEntity<StreamingResponseBody> streamFile(String filename, String disposition,
+            ExportService.ExportWriter writer) {
+        return ResponseEntity.ok()
+                .header("Content-Disposition", disposition + "; filename=" + filename)
+                .header("Content-Type", getContentType(filename))
+                .body(writer::write);
     }
 
     private void outputFile(HttpServletResponse response, byte[] file, String filename, String disposition) {
@@ -1,15 +1,20 @@
 package fr.sictiam.stela.acteservice.dao;
 
 import fr.sictiam.stela.acteservice.model.ActeHistory;
+import fr.sictiam.stela.acteservice.model.StatusType;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface ActeHistoryRepository extends JpaRepository<ActeHistory, String> {
+public interface ActeHistoryRepository extends JpaRepository<ActeHistory, String>, ActeHistoryRepositoryCustom {
     Optional<ActeHistory> findByUuid(String uuid);
 
     List<ActeHistory> findByacteUuidOrderByDate(String acteUuid);
 
     Optional<ActeHistory> findFirstByFileNameContaining(String filename);
+
+    Optional<ActeHistory> findFirstByActeUuidAndStatusInOrderByDateDesc(String acteUuid,
+            Collection<StatusType> statuses);
 }
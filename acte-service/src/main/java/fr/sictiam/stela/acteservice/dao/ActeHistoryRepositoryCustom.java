@@ -0,0 +1,12 @@
+package fr.sictiam.stela.acteservice.dao;
+
+import fr.sictiam.stela.acteservice.model.ActeHistory;
+
+public interface ActeHistoryRepositoryCustom {
+
+    /**
+     * Appends the history to its acte without loading the acte, the last history and lifecycle columns of the acte
+     * only move forward: an older history never overwrites what a newer one has set.
+     */
+    ActeHistory append(ActeHistory acteHistory);
+}
@@ -0,0 +1,98 @@
+package fr.sictiam.stela.acteservice.dao;
+
+import fr.sictiam.stela.acteservice.model.Acte;
+import fr.sictiam.stela.acteservice.model.ActeHistory;
+import fr.sictiam.stela.acteservice.model.StatusType;
+import fr.sictiam.stela.acteservice.service.PipelineMetricsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class ActeHistoryRepositoryImpl implements ActeHistoryRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PipelineMetricsService pipelineMetricsService;
+
+    @Override
+    @Transactional
+    public ActeHistory append(ActeHistory acteHistory) {
+        // merge rather than persist, the attachment may already be referenced by another history
+        ActeHistory history = entityManager.merge(acteHistory);
+        entityManager.flush();
+        entityManager.createNativeQuery("INSERT INTO acte_acte_histories (acte_uuid, acte_histories_uuid) "
+                + "VALUES (:acteUuid, :historyUuid) ON CONFLICT DO NOTHING")
+                .setParameter("acteUuid", history.getActeUuid())
+                .setParameter("historyUuid", history.getUuid())
+                .executeUpdate();
+
+        // do not update last history Acte fields on status NOTIFICATION_SENT|GROUP_NOTIFICATION_SENT
+        if (history.getStatus() != StatusType.NOTIFICATION_SENT
+                && history.getStatus() != StatusType.GROUP_NOTIFICATION_SENT) {
+            // the status being left, locked until the end of the transaction so that it is only left once
+            List<Object[]> previous = rows(entityManager.createNativeQuery("SELECT local_authority_uuid, creation, "
+                    + "last_history_status, last_history_date FROM acte WHERE uuid = :uuid FOR UPDATE")
+                    .setParameter("uuid", history.getActeUuid()));
+            int updated = entityManager.createQuery("UPDATE Acte a SET a.lastHistoryStatus = :status, "
+                    + "a.lastHistoryDate = :date, a.lastHistoryFlux = :flux WHERE a.uuid = :uuid "
+                    + "AND (a.lastHistoryDate IS NULL OR a.lastHistoryDate <= :date)")
+                    .setParameter("status", history.getStatus())
+                    .setParameter("date", history.getDate())
+                    .setParameter("flux", history.getFlux())
+                    .setParameter("uuid", history.getActeUuid())
+                    .executeUpdate();
+            if (updated > 0 && !previous.isEmpty()) {
+                Object[] acte = previous.get(0);
+                afterCommit(() -> pipelineMetricsService.recordTransition((String) acte[0], toLocalDateTime(acte[1]),
+                        acte[2] != null ? StatusType.valueOf((String) acte[2]) : null, toLocalDateTime(acte[3]),
+                        history.getStatus(), history.getDate()));
+            }
+        }
+        if (StatusType.ACK_RECEIVED.equals(history.getStatus())) {
+            entityManager.createQuery("UPDATE Acte a SET a.ackDate = :date WHERE a.uuid = :uuid "
+                    + "AND (a.ackDate IS NULL OR a.ackDate < :date)")
+                    .setParameter("date", history.getDate())
+                    .setParameter("uuid", history.getActeUuid())
+                    .executeUpdate();
+        } else if (Acte.isCancellation(history.getStatus())) {
+            entityManager.createQuery("UPDATE Acte a SET a.cancelled = true WHERE a.uuid = :uuid")
+                    .setParameter("uuid", history.getActeUuid())
+                    .executeUpdate();
+        }
+        return history;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> rows(Query query) {
+        return query.getResultList();
+    }
+
+    private LocalDateTime toLocalDateTime(Object timestamp) {
+        return timestamp != null ? ((Timestamp) timestamp).toLocalDateTime() : null;
+    }
+
+    // counted once the history is committed, not for an append that is rolled back or retried
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -2,14 +2,17 @@ package fr.sictiam.stela.acteservice.dao;
 
 import fr.sictiam.stela.acteservice.model.Acte;
 import fr.sictiam.stela.acteservice.model.ActeNature;
-import fr.sictiam.stela.acteservice.model.ArchiveStatus;
+import fr.sictiam.stela.acteservice.model.StatusType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface ActeRepository extends JpaRepository<Acte, String> {
+public interface ActeRepository extends JpaRepository<Acte, String>, ActeRepositoryCustom {
 
     List<Acte> findAllByDraftNotNullOrderByDraft_LastModifiedDesc();
 
@@ -32,11 +35,13 @@ public interface ActeRepository extends JpaRepository<Acte, String> {
 
     Optional<Acte> findByNumberAndLocalAuthoritySirenAndDraftNull(String number, String siren);
 
-    List<Acte> findAllByDraftNullAndLocalAuthorityUuidAndArchiveNull(String uuid);
-
-    List<Acte> findAllByDraftNullAndLocalAuthorityUuidAndArchive_Status(String uuid, ArchiveStatus archiveStatus);
-
     List<Acte> findByNumberAndLocalAuthorityUuid(String number, String localAuthorityUuid);
 
     Optional<Acte> findByUuidAndLocalAuthorityUuid(String uuid, String localAuthorityUuid);
+
+    boolean existsByUuidAndAckDateNotNullAndCancelledFalse(String uuid);
+
+    @Query("SELECT a.lastHistoryStatus, COUNT(a) FROM Acte a WHERE a.lastHistoryStatus IN :statuses "
+            + "GROUP BY a.lastHistoryStatus")
+    List<Object[]> countByLastHistoryStatusIn(@Param("statuses") Collection<StatusType> statuses);
 }
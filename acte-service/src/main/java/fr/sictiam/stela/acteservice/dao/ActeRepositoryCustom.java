@@ -0,0 +1,30 @@
+package fr.sictiam.stela.acteservice.dao;
+
+import fr.sictiam.stela.acteservice.model.Archive;
+import fr.sictiam.stela.acteservice.model.ArchiveStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ActeRepositoryCustom {
+
+    /**
+     * Uuids of the acknowledged actes of the local authority that have no archive yet and whose last history is older
+     * than {@code lastHistoryBefore}, by pages of {@code limit} uuids following {@code afterUuid} (empty for the first
+     * page).
+     */
+    List<String> findUuidsToArchive(String localAuthorityUuid, LocalDateTime lastHistoryBefore, String afterUuid,
+            int limit);
+
+    /**
+     * Uuids of the actes of the local authority whose archive has the status, by pages of {@code limit} uuids
+     * following {@code afterUuid} (empty for the first page).
+     */
+    List<String> findUuidsByArchiveStatus(String localAuthorityUuid, ArchiveStatus status, String afterUuid,
+            int limit);
+
+    /**
+     * Links the saved archive to its acte without loading nor merging the acte.
+     */
+    void setArchive(String acteUuid, Archive archive);
+}
@@ -0,0 +1,53 @@
+package fr.sictiam.stela.acteservice.dao;
+
+import fr.sictiam.stela.acteservice.model.Archive;
+import fr.sictiam.stela.acteservice.model.ArchiveStatus;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class ActeRepositoryImpl implements ActeRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<String> findUuidsToArchive(String localAuthorityUuid, LocalDateTime lastHistoryBefore,
+            String afterUuid, int limit) {
+        // matches the acte_archive_pending_idx partial index
+        return entityManager.createQuery("SELECT a.uuid FROM Acte a WHERE a.localAuthority.uuid = :localAuthorityUuid "
+                + "AND a.draft IS NULL AND a.archive IS NULL AND a.ackDate IS NOT NULL "
+                + "AND a.lastHistoryDate < :lastHistoryBefore AND a.uuid > :afterUuid ORDER BY a.uuid", String.class)
+                .setParameter("localAuthorityUuid", localAuthorityUuid)
+                .setParameter("lastHistoryBefore", lastHistoryBefore)
+                .setParameter("afterUuid", afterUuid)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public List<String> findUuidsByArchiveStatus(String localAuthorityUuid, ArchiveStatus status, String afterUuid,
+            int limit) {
+        return entityManager.createQuery("SELECT a.uuid FROM Acte a JOIN a.archive archive "
+                + "WHERE a.localAuthority.uuid = :localAuthorityUuid AND a.draft IS NULL AND archive.status = :status "
+                + "AND a.uuid > :afterUuid ORDER BY a.uuid", String.class)
+                .setParameter("localAuthorityUuid", localAuthorityUuid)
+                .setParameter("status", status)
+                .setParameter("afterUuid", afterUuid)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    @Transactional
+    public void setArchive(String acteUuid, Archive archive) {
+        entityManager.createQuery("UPDATE Acte a SET a.archive = :archive WHERE a.uuid = :uuid")
+                .setParameter("archive", archive)
+                .setParameter("uuid", acteUuid)
+                .executeUpdate();
+    }
+}
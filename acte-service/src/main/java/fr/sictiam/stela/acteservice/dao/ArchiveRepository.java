@@ -0,0 +1,7 @@
+package fr.sictiam.stela.acteservice.dao;
+
+import fr.sictiam.stela.acteservice.model.Archive;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ArchiveRepository extends JpaRepository<Archive, String> {
+}
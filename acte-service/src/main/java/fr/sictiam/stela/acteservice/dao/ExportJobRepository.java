@@ -0,0 +1,15 @@
+package fr.sictiam.stela.acteservice.dao;
+
+import fr.sictiam.stela.acteservice.model.ExportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface ExportJobRepository extends JpaRepository<ExportJob, String> {
+
+    Optional<ExportJob> findByUuidAndLocalAuthorityUuid(String uuid, String localAuthorityUuid);
+
+    List<ExportJob> findByCreationBefore(LocalDateTime creation);
+}
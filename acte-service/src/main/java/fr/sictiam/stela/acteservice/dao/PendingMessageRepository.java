@@ -3,5 +3,9 @@ package fr.sictiam.stela.acteservice.dao;
 import fr.sictiam.stela.acteservice.model.PendingMessage;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
+
 public interface PendingMessageRepository extends JpaRepository<PendingMessage, String> {
+
+    List<PendingMessage> findByLeaseOwnerOrderByDateAsc(String leaseOwner);
 }
@@ -1,5 +1,6 @@
 package fr.sictiam.stela.acteservice.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonView;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -100,6 +101,20 @@ public class Acte {
     @Enumerated(EnumType.STRING)
     private Flux lastHistoryFlux;
 
+    // lifecycle flags, kept in line with the histories by updateLifecycle
+    @JsonIgnore
+    private LocalDateTime ackDate;
+    @JsonIgnore
+    private boolean cancelled;
+
+    // maintained by ActeSearchService, only used in search predicates
+    @JsonIgnore
+    @Column(insertable = false, updatable = false, columnDefinition = "tsvector")
+    private String searchDocument;
+    @JsonIgnore
+    @Column(insertable = false, updatable = false)
+    private String searchText;
+
     public Acte() {
     }
 
@@ -355,6 +370,38 @@ public class Acte {
         this.miatId = miatId;
     }
 
+    public LocalDateTime getAckDate() {
+        return ackDate;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Whether the acte has been acknowledged by the prefecture and not cancelled since.
+     */
+    @JsonIgnore
+    public boolean isAcked() {
+        return ackDate != null && !cancelled;
+    }
+
+    /**
+     * Updates the lifecycle flags with a history appended to the acte, must be called in the transaction saving it.
+     */
+    public void updateLifecycle(ActeHistory history) {
+        if (StatusType.ACK_RECEIVED.equals(history.getStatus())
+                && (ackDate == null || history.getDate().isAfter(ackDate)))
+            ackDate = history.getDate();
+        if (isCancellation(history.getStatus()))
+            cancelled = true;
+    }
+
+    public static boolean isCancellation(StatusType status) {
+        return StatusType.CANCELLATION_ASKED.equals(status) || StatusType.CANCELLATION_ARCHIVE_CREATED.equals(status)
+                || StatusType.CANCELLED.equals(status);
+    }
+
     public boolean empty() {
         return StringUtils.isEmpty(number) && decision == null && nature == null && StringUtils.isEmpty(code)
                 && StringUtils.isEmpty(codeLabel) && StringUtils.isEmpty(objet) && acteAttachment == null
@@ -9,12 +9,15 @@ import fr.sictiam.stela.acteservice.config.LocalDateTimeSerializer;
 import fr.sictiam.stela.acteservice.model.ui.Views;
 import org.hibernate.annotations.GenericGenerator;
 
+import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.ManyToOne;
 
 import java.time.LocalDateTime;
 
@@ -39,8 +42,10 @@ public class ActeHistory implements Comparable<ActeHistory> {
     @Column(length = 1024)
     @JsonView(Views.ActeHistoryFullView.class)
     private String message;
+    // The archive attachment is shared by the ARCHIVE_CREATED and ARCHIVE_SIZE_CHECKED histories
+    @ManyToOne(cascade = { CascadeType.PERSIST, CascadeType.MERGE }, fetch = FetchType.EAGER)
     @JsonIgnore
-    private byte[] file;
+    private Attachment attachment;
     @JsonView(Views.ActeHistoryFullView.class)
     private String fileName;
 
@@ -86,42 +91,44 @@ public class ActeHistory implements Comparable<ActeHistory> {
         this.flux = flux;
     }
 
-    public ActeHistory(String acteUuid, StatusType status, LocalDateTime date, byte[] file, String fileName) {
+    public ActeHistory(String acteUuid, StatusType status, LocalDateTime date, Flux flux) {
         this.acteUuid = acteUuid;
         this.status = status;
         this.date = date;
-        this.file = file;
-        this.fileName = fileName;
+        this.flux = flux;
+    }
+
+    public ActeHistory(String acteUuid, StatusType status, LocalDateTime date, Attachment attachment) {
+        this.acteUuid = acteUuid;
+        this.status = status;
+        this.date = date;
+        setAttachment(attachment);
     }
 
-    public ActeHistory(String acteUuid, StatusType status, LocalDateTime date, byte[] file, String fileName,
+    public ActeHistory(String acteUuid, StatusType status, LocalDateTime date, Attachment attachment,
             String message) {
         this.acteUuid = acteUuid;
         this.status = status;
         this.date = date;
-        this.file = file;
-        this.fileName = fileName;
+        setAttachment(attachment);
         this.message = message;
     }
 
-    public ActeHistory(String acteUuid, StatusType status, LocalDateTime date, byte[] file, String fileName,
+    public ActeHistory(String acteUuid, StatusType status, LocalDateTime date, Attachment attachment,
             String message, Flux flux) {
         this.acteUuid = acteUuid;
         this.status = status;
         this.date = date;
-        this.file = file;
-        this.fileName = fileName;
+        setAttachment(attachment);
         this.message = message;
         this.flux = flux;
     }
 
-    public ActeHistory(String acteUuid, StatusType status, LocalDateTime date, byte[] file, String fileName,
-            Flux flux) {
+    public ActeHistory(String acteUuid, StatusType status, LocalDateTime date, Attachment attachment, Flux flux) {
         this.acteUuid = acteUuid;
         this.status = status;
         this.date = date;
-        this.file = file;
-        this.fileName = fileName;
+        setAttachment(attachment);
         this.flux = flux;
     }
 
@@ -145,8 +152,8 @@ public class ActeHistory implements Comparable<ActeHistory> {
         return message;
     }
 
-    public byte[] getFile() {
-        return file;
+    public Attachment getAttachment() {
+        return attachment;
     }
 
     public String getFileName() {
@@ -165,12 +172,9 @@ public class ActeHistory implements Comparable<ActeHistory> {
         this.flux = flux;
     }
 
-    public void setFile(byte[] file) {
-        this.file = file;
-    }
-
-    public void setFileName(String fileName) {
-        this.fileName = fileName;
+    public void setAttachment(Attachment attachment) {
+        this.attachment = attachment;
+        this.fileName = attachment != null ? attachment.getFilename() : null;
     }
 
     @Override
@@ -21,6 +21,11 @@ public class Archive {
     private String archiveUrl;
     private String asalaeDocumentId;
 
+    // progress of an archive IN_PROGRESS, annexes are sent between ACTE_FILE_SENT and ACK_FILE_SENT
+    @Enumerated(EnumType.STRING)
+    private ArchiveStep step;
+    private int annexesSent;
+
     public Archive() {
     }
 
@@ -55,4 +60,20 @@ public class Archive {
     public void setAsalaeDocumentId(String asalaeDocumentId) {
         this.asalaeDocumentId = asalaeDocumentId;
     }
+
+    public ArchiveStep getStep() {
+        return step;
+    }
+
+    public void setStep(ArchiveStep step) {
+        this.step = step;
+    }
+
+    public int getAnnexesSent() {
+        return annexesSent;
+    }
+
+    public void setAnnexesSent(int annexesSent) {
+        this.annexesSent = annexesSent;
+    }
 }
@@ -1,5 +1,5 @@
 package fr.sictiam.stela.acteservice.model;
 
 public enum ArchiveStatus {
-    NOT_SENT, SENT, ARCHIVED
-}
\ No newline at end of file
+    IN_PROGRESS, NOT_SENT, SENT, ARCHIVED
+}
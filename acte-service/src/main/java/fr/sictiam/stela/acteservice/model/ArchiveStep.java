@@ -0,0 +1,8 @@
+package fr.sictiam.stela.acteservice.model;
+
+/**
+ * Last step done while an archive is being sent to Pastell, in the order they are done.
+ */
+public enum ArchiveStep {
+    DOCUMENT_CREATED, DATA_SENT, ACTE_FILE_SENT, ACK_FILE_SENT
+}
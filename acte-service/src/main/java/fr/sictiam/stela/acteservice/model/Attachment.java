@@ -9,6 +9,8 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 
+import java.util.UUID;
+
 @Entity
 public class Attachment {
 
@@ -18,8 +20,6 @@ public class Attachment {
     @JsonView(Views.AttachmentFullView.class)
     private String uuid;
 
-    @JsonIgnore
-    private byte[] file;
     @JsonView(Views.AttachmentFullView.class)
     private String filename;
     @JsonView(Views.AttachmentFullView.class)
@@ -27,30 +27,30 @@ public class Attachment {
     @JsonView(Views.AttachmentFullView.class)
     private String attachmentTypeCode;
 
+    private String storageKey;
+
+    @JsonIgnore
+    transient private byte[] content;
+
     public Attachment() {
     }
 
-    public Attachment(byte[] file, String filename, long size) {
-        this.file = file;
-        this.filename = filename;
-        this.size = size;
+    public Attachment(byte[] content, String filename, long size) {
+        this(content, filename, size, null);
     }
 
-    public Attachment(byte[] file, String filename, long size, String attachmentTypeCode) {
-        this.file = file;
+    public Attachment(byte[] content, String filename, long size, String attachmentTypeCode) {
+        this.content = content;
         this.filename = filename;
         this.size = size;
         this.attachmentTypeCode = attachmentTypeCode;
+        storageKey = "acte/" + UUID.randomUUID().toString();
     }
 
     public String getUuid() {
         return uuid;
     }
 
-    public byte[] getFile() {
-        return file;
-    }
-
     public String getFilename() {
         return filename;
     }
@@ -66,4 +66,16 @@ public class Attachment {
     public void setAttachmentTypeCode(String attachmentTypeCode) {
         this.attachmentTypeCode = attachmentTypeCode;
     }
+
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public void setContent(byte[] content) {
+        this.content = content;
+    }
 }
@@ -0,0 +1,76 @@
+package fr.sictiam.stela.acteservice.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Export of a large selection of actes run in background, its file is kept in the storage until the job expires.
+ */
+@Entity
+public class ExportJob {
+
+    @Id
+    @GeneratedValue(generator = "UUID")
+    @GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
+    private String uuid;
+    @JsonIgnore
+    private String localAuthorityUuid;
+    private String fileName;
+    @Enumerated(EnumType.STRING)
+    private Status status;
+    private LocalDateTime creation;
+    @JsonIgnore
+    private String storageKey;
+
+    public ExportJob() {
+    }
+
+    public ExportJob(String localAuthorityUuid, String fileName) {
+        this.localAuthorityUuid = localAuthorityUuid;
+        this.fileName = fileName;
+        status = Status.PENDING;
+        creation = LocalDateTime.now();
+        storageKey = "export/" + UUID.randomUUID().toString();
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getLocalAuthorityUuid() {
+        return localAuthorityUuid;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getCreation() {
+        return creation;
+    }
+
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public enum Status {
+        PENDING, DONE, FAILED
+    }
+}
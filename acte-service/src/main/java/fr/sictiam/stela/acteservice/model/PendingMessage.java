@@ -5,8 +5,12 @@ import org.hibernate.annotations.GenericGenerator;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+import java.time.LocalDateTime;
 
 @Entity
 public class PendingMessage {
@@ -18,37 +22,65 @@ public class PendingMessage {
 
     private String acteUuid;
 
-    private byte[] file;
-
-    private String fileName;
+    @ManyToOne(fetch = FetchType.EAGER)
+    private Attachment attachment;
 
     @Enumerated(EnumType.STRING)
     private Flux flux;
 
+    private LocalDateTime date;
+
+    private int attempts;
+
+    private LocalDateTime nextAttempt;
+
+    private String leaseOwner;
+
+    private LocalDateTime leaseUntil;
+
     public PendingMessage() {
     }
 
     public PendingMessage(ActeHistory acteHistory) {
         this.acteUuid = acteHistory.getActeUuid();
-        this.file = acteHistory.getFile();
-        this.fileName = acteHistory.getFileName();
+        this.attachment = acteHistory.getAttachment();
         this.flux = acteHistory.getFlux();
+        this.date = LocalDateTime.now();
     }
 
-    public String getActeUuid() {
-        return acteUuid;
+    public String getUuid() {
+        return uuid;
     }
 
-    public byte[] getFile() {
-        return file;
+    public String getActeUuid() {
+        return acteUuid;
     }
 
-    public String getFileName() {
-        return fileName;
+    public Attachment getAttachment() {
+        return attachment;
     }
 
     public Flux getFlux() {
         return flux;
     }
 
+    public LocalDateTime getDate() {
+        return date;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public LocalDateTime getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
 }
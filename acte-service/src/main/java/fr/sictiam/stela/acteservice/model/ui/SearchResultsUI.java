@@ -10,6 +10,8 @@ public class SearchResultsUI {
     private Long totalCount;
     @JsonView(Views.SearchResultFullView.class)
     private List<?> results;
+    @JsonView(Views.SearchResultFullView.class)
+    private String nextCursor;
 
     public SearchResultsUI() {
     }
@@ -19,6 +21,11 @@ public class SearchResultsUI {
         this.results = results;
     }
 
+    public SearchResultsUI(Long totalCount, List<?> results, String nextCursor) {
+        this(totalCount, results);
+        this.nextCursor = nextCursor;
+    }
+
     public Long getTotalCount() {
         return totalCount;
     }
@@ -26,4 +33,8 @@ public class SearchResultsUI {
     public List<?> getResults() {
         return results;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
 }
@@ -1,5 +1,6 @@
 package fr.sictiam.stela.acteservice.scheduler;
 
+import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.util.BASE64DecoderStream;
 import com.sun.mail.util.MailSSLSocketFactory;
 import fr.sictiam.stela.acteservice.model.*;
@@ -8,6 +9,10 @@ import fr.sictiam.stela.acteservice.service.LocalAuthorityService;
 import fr.sictiam.stela.acteservice.service.RetourPrefectureService;
 import fr.sictiam.stela.acteservice.service.exceptions.NoEnveloppeException;
 import fr.sictiam.stela.acteservice.service.util.XmlUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -15,11 +20,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.mail.BodyPart;
+import javax.mail.FetchProfile;
+import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.Folder;
 import javax.mail.Message;
@@ -28,10 +36,10 @@ import javax.mail.Multipart;
 import javax.mail.Part;
 import javax.mail.Session;
 import javax.mail.Store;
-import javax.xml.bind.JAXBContext;
+import javax.mail.UIDFolder;
+import javax.mail.internet.MimeMessage;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 import javax.xml.transform.stream.StreamSource;
 
 import java.io.IOException;
@@ -40,20 +48,32 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * Ingests the prefecture returns received in the IMAP inbox.
+ * <p>
+ * Only the messages arrived since the last check are fetched (by UID), in batches whose content is fetched in one
+ * round trip. The messages of a batch are parsed and dispatched by a pool of workers, then moved all together to the
+ * done or error folder. The connection is reopened on the next check when it is lost.
+ * <p>
+ * The ingestion reports the messages processed ({@code stela.email.messages}), their processing time
+ * ({@code stela.email.processing}), the messages waiting in the inbox ({@code stela.email.backlog}) and the age of the
+ * oldest of them ({@code stela.email.lag}, in seconds).
+ */
 @Component
 public class EmailCheckingTask {
 
-    private static Store store;
-    private static Folder inbox;
-    private static Folder archiveBox;
-    private static Folder errorBox;
-
     private static final Logger LOGGER = LoggerFactory.getLogger(EmailCheckingTask.class);
 
     private final RetourPrefectureService retourPrefectureService;
     private final LocalAuthorityService localAuthorityService;
+    private final MeterRegistry meterRegistry;
 
     @Value("${application.email.listening.host}")
     private String host;
@@ -61,6 +81,15 @@ public class EmailCheckingTask {
     @Value("${application.email.listening.port}")
     private Integer port;
 
+    @Value("${application.email.listening.ssl:true}")
+    private boolean ssl;
+
+    @Value("${application.email.listening.batchSize:100}")
+    private int batchSize;
+
+    @Value("${application.email.listening.workers:4}")
+    private int workers;
+
     @Value("${spring.mail.username}")
     private String username;
 
@@ -73,204 +102,319 @@ public class EmailCheckingTask {
     @Value("${application.email.error_folder}")
     private String errorFolder;
 
+    private Store store;
+    private IMAPFolder inbox;
+    private Folder archiveBox;
+    private Folder errorBox;
+    private long uidValidity = -1;
+    private long lastUid = 0;
+
+    private ThreadPoolTaskExecutor workerExecutor;
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final AtomicLong lag = new AtomicLong();
+    private Counter messagesOk;
+    private Counter messagesKo;
+    private Timer processingTimer;
+
     @Autowired
-    public EmailCheckingTask(RetourPrefectureService retourPrefectureService, LocalAuthorityService localAuthorityService) {
+    public EmailCheckingTask(RetourPrefectureService retourPrefectureService,
+            LocalAuthorityService localAuthorityService, MeterRegistry meterRegistry) {
         this.retourPrefectureService = retourPrefectureService;
         this.localAuthorityService = localAuthorityService;
+        this.meterRegistry = meterRegistry;
     }
 
     @PostConstruct
     public void init() {
-
-        try {
-
-            Properties properties = new Properties();
-            MailSSLSocketFactory sf = new MailSSLSocketFactory();
-            sf.setTrustAllHosts(true);
-            properties.put("mail.imap.ssl.trust", "*");
-            properties.put("mail.imap.ssl.socketFactory", sf);
-            properties.put("mail.imap.host", host);
-            properties.put("mail.imap.port", port);
-            properties.put("mail.imap.ssl.enable", "true");
-            Session emailSession = Session.getDefaultInstance(properties);
-            store = emailSession.getStore("imap");
-            store.connect(host, username, password);
-            inbox = store.getFolder("INBOX");
-
-            archiveBox = store.getFolder(doneFolder);
-            archiveBox.open(Folder.READ_WRITE);
-
-            errorBox = store.getFolder(errorFolder);
-            errorBox.open(Folder.READ_WRITE);
-
-        } catch (MessagingException | GeneralSecurityException e) {
-            LOGGER.error(e.getMessage());
-        }
+        workerExecutor = new ThreadPoolTaskExecutor();
+        workerExecutor.setCorePoolSize(workers);
+        workerExecutor.setMaxPoolSize(workers);
+        workerExecutor.setQueueCapacity(batchSize);
+        workerExecutor.setThreadNamePrefix("email-worker-");
+        workerExecutor.initialize();
+
+        messagesOk = Counter.builder("stela.email.messages").tag("result", "ok").register(meterRegistry);
+        messagesKo = Counter.builder("stela.email.messages").tag("result", "error").register(meterRegistry);
+        processingTimer = Timer.builder("stela.email.processing").register(meterRegistry);
+        Gauge.builder("stela.email.backlog", backlog, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("stela.email.lag", lag, AtomicLong::get).baseUnit("seconds").register(meterRegistry);
     }
 
     @PreDestroy
     public void clean() {
+        workerExecutor.shutdown();
+        disconnect();
+    }
+
+    @Scheduled(fixedDelayString = "${application.email.listening.pollDelay:30000}")
+    public synchronized void check() {
         try {
-            archiveBox.close(false);
-            errorBox.close(false);
-            store.close();
+            connect();
+            // keep going while the inbox is not drained
+            while (checkBatch() == batchSize) {
+                LOGGER.debug("Inbox not drained, checking next batch");
+            }
         } catch (MessagingException e) {
-            LOGGER.error(e.getMessage());
+            LOGGER.error("Error while checking the inbox, reconnecting on next check: {}", e.getMessage());
+            disconnect();
         }
     }
 
-    @Scheduled(fixedDelay = 30000)
-    public void check() {
-        try {
+    private int checkBatch() throws MessagingException {
+        // also gets the new messages notifications from the server
+        inbox.getMessageCount();
+
+        if (inbox.getUIDValidity() != uidValidity) {
+            uidValidity = inbox.getUIDValidity();
+            lastUid = 0;
+        }
+
+        Message[] newMessages = inbox.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+        FetchProfile headersProfile = new FetchProfile();
+        headersProfile.add(UIDFolder.FetchProfileItem.UID);
+        headersProfile.add(FetchProfile.Item.ENVELOPE);
+        headersProfile.add(FetchProfile.Item.FLAGS);
+        inbox.fetch(newMessages, headersProfile);
+
+        // a UID range always returns the last message, even if it was already seen
+        List<Message> pending = new ArrayList<>();
+        for (Message message : newMessages) {
+            if (inbox.getUID(message) > lastUid && !message.isSet(Flag.DELETED))
+                pending.add(message);
+        }
+        backlog.set(pending.size());
+        lag.set(pending.isEmpty() || pending.get(0).getReceivedDate() == null ? 0
+                : TimeUnit.MILLISECONDS.toSeconds(
+                        System.currentTimeMillis() - pending.get(0).getReceivedDate().getTime()));
+        LOGGER.debug("Got {} waiting messages in inbox", pending.size());
+        if (pending.isEmpty())
+            return 0;
+
+        Message[] batch = pending.subList(0, Math.min(batchSize, pending.size())).toArray(new Message[0]);
+        FetchProfile contentProfile = new FetchProfile();
+        contentProfile.add(IMAPFolder.FetchProfileItem.MESSAGE);
+        inbox.fetch(batch, contentProfile);
+
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (Message message : batch) {
+            // in memory copy, so the workers don't go through the folder
+            MimeMessage copy = new MimeMessage((MimeMessage) message);
+            results.add(workerExecutor.submit(() -> process(copy)));
+        }
+
+        List<Message> messagesOK = new ArrayList<>();
+        List<Message> messagesKO = new ArrayList<>();
+        for (int i = 0; i < batch.length; i++) {
+            if (isProcessed(results.get(i)))
+                messagesOK.add(batch[i]);
+            else
+                messagesKO.add(batch[i]);
+        }
+        moveMessages(messagesOK, archiveBox);
+        moveMessages(messagesKO, errorBox);
+        inbox.expunge();
+
+        lastUid = inbox.getUID(batch[batch.length - 1]);
+        backlog.addAndGet(-batch.length);
+        LOGGER.info("Processed {} messages ({} in error)", batch.length, messagesKO.size());
+        return batch.length;
+    }
 
-            inbox.open(Folder.READ_WRITE);
-            Message[] messages = inbox.getMessages();
-            LOGGER.debug("Got {} waiting messages in inbox", messages.length);
+    private boolean isProcessed(Future<Boolean> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            LOGGER.error(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
 
-            List<Message> messagesOK = new ArrayList<>();
-            List<Message> messagesKO = new ArrayList<>();
-            for (int i = 0; i < messages.length; i++) {
-                Message message = messages[i];
+    private void moveMessages(List<Message> messages, Folder folder) throws MessagingException {
+        if (messages.isEmpty())
+            return;
+        Message[] toMove = messages.toArray(new Message[0]);
+        inbox.copyMessages(toMove, folder);
+        inbox.setFlags(toMove, new Flags(Flag.DELETED), true);
+    }
 
-                if (message.isSet(Flag.DELETED))
-                    continue;
+    private boolean process(Message message) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            LOGGER.debug("Subject is {}", message.getSubject());
+            dispatch(message);
+            messagesOk.increment();
+            return true;
+        } catch (Exception e) {
+            messagesKo.increment();
+            LOGGER.error(e.getMessage());
+            return false;
+        } finally {
+            sample.stop(processingTimer);
+        }
+    }
 
-                try {
-                    LOGGER.debug("Subject is {} (message #{})", message.getSubject(), i + 1);
+    private void dispatch(Message message) throws Exception {
+        Multipart multipart = (Multipart) message.getContent();
 
-                    Multipart multipart = (Multipart) message.getContent();
+        EnveloppeMISILLCL enveloppe = null;
 
-                    EnveloppeMISILLCL enveloppe = null;
+        if (multipart.getCount() > 1 && multipart.getContentType().contains("ALTERNATIVE")) {
+            for (int k = 0; k < multipart.getCount(); k++) {
+                BodyPart bodyPart = multipart.getBodyPart(k);
+                if (bodyPart.getContent() instanceof Multipart) {
+                    multipart = (Multipart) multipart.getBodyPart(1).getContent();
+                    break;
+                }
+            }
+        }
 
-                    if (multipart.getCount() > 1 && multipart.getContentType().contains("ALTERNATIVE")) {
-                        for (int k = 0; k < multipart.getCount(); k++) {
-                            BodyPart bodyPart = multipart.getBodyPart(k);
-                            if (bodyPart.getContent() instanceof Multipart) {
-                                multipart = (Multipart) multipart.getBodyPart(1).getContent();
-                                break;
-                            }
-                        }
+        final Multipart originalMultipart = multipart;
+        for (int j = 0; j < originalMultipart.getCount(); j++) {
+            BodyPart bodyPart = originalMultipart.getBodyPart(j);
+            if (!Part.ATTACHMENT.equalsIgnoreCase(bodyPart.getDisposition())
+                    && StringUtils.isEmpty(bodyPart.getFileName())
+                    && StringUtils.endsWithIgnoreCase(bodyPart.getFileName(), ".xml")) {
+                continue; // dealing with attachments only
+            }
+            if (StringUtils.endsWithIgnoreCase(bodyPart.getFileName(), ".xml")) {
+                String rootName;
+                try (InputStream is = bodyPart.getInputStream()) {
+                    rootName = XmlUtils.getRootElementName(is);
+                }
+                LOGGER.debug("XML return type is {}", rootName);
+
+                StreamSource classSource = new StreamSource(bodyPart.getInputStream());
+                if ("ARActe".equals(rootName)) {
+                    ARActe arActe = XmlUtils.unmarshall(classSource, ARActe.class);
+                    Attachment attachment = getAttachmentFromBodyPart(bodyPart);
+                    retourPrefectureService.receiveARActe(arActe, attachment);
+
+                } else if ("ARAnnulation".equals(rootName)) {
+                    ARAnnulation arAnnulation = XmlUtils.unmarshall(classSource, ARAnnulation.class);
+                    Attachment attachment = getAttachmentFromBodyPart(bodyPart);
+                    retourPrefectureService.receiveARAnnulation(arAnnulation, attachment);
+
+                } else if ("AnomalieActe".equals(rootName)) {
+                    if (enveloppe == null) {
+                        throw new NoEnveloppeException();
                     }
-
-                    final Multipart originalMultipart = multipart;
-                    for (int j = 0; j < originalMultipart.getCount(); j++) {
-                        BodyPart bodyPart = originalMultipart.getBodyPart(j);
-                        if (!Part.ATTACHMENT.equalsIgnoreCase(bodyPart.getDisposition())
-                                && StringUtils.isEmpty(bodyPart.getFileName())
-                                && StringUtils.endsWithIgnoreCase(bodyPart.getFileName(), ".xml")) {
-                            continue; // dealing with attachments only
-                        }
-                        if (StringUtils.endsWithIgnoreCase(bodyPart.getFileName(), ".xml")) {
-                            InputStream is = bodyPart.getInputStream();
-
-                            JAXBContext jc = JAXBContext.newInstance(String.class);
-                            Unmarshaller unmarshaller = jc.createUnmarshaller();
-                            StreamSource xmlSource = new StreamSource(is);
-                            JAXBElement<String> je = unmarshaller.unmarshal(xmlSource, String.class);
-
-                            String rootName = je.getName().getLocalPart();
-                            LOGGER.debug("XML return type is {}", rootName);
-
-                            StreamSource classSource = new StreamSource(bodyPart.getInputStream());
-                            if ("ARActe".equals(rootName)) {
-                                ARActe arActe = XmlUtils.unmarshall(classSource, ARActe.class);
-                                Attachment attachment = getAttachmentFromBodyPart(bodyPart);
-                                retourPrefectureService.receiveARActe(arActe, attachment);
-
-                            } else if ("ARAnnulation".equals(rootName)) {
-                                ARAnnulation arAnnulation = XmlUtils.unmarshall(classSource, ARAnnulation.class);
-                                Attachment attachment = getAttachmentFromBodyPart(bodyPart);
-                                retourPrefectureService.receiveARAnnulation(arAnnulation, attachment);
-
-                            } else if ("AnomalieActe".equals(rootName)) {
-                                if (enveloppe == null) {
-                                    throw new NoEnveloppeException();
-                                }
-                                AnomalieActe anomalie = XmlUtils.unmarshall(classSource, AnomalieActe.class);
-                                Attachment attachment = getAttachmentFromBodyPart(bodyPart);
-                                retourPrefectureService.receiveAnomalieActe(enveloppe, anomalie, attachment);
-
-                            } else if ("AnomalieEnveloppe".equals(rootName)) {
-                                AnomalieEnveloppe anomalie = XmlUtils.unmarshall(classSource, AnomalieEnveloppe.class);
-                                Attachment attachment = getAttachmentFromBodyPart(bodyPart);
-                                retourPrefectureService.receiveAnomalieEnveloppe(anomalie, attachment);
-
-                            } else if ("CourrierSimple".equals(rootName)) {
-                                CourrierSimple courrierSimple = XmlUtils.unmarshall(classSource, CourrierSimple.class);
-                                Attachment attachment = getFileAttachmentByName(
-                                        courrierSimple.getDocument().getNomFichier(), originalMultipart);
-                                retourPrefectureService.receiveCourrierSimple(courrierSimple, attachment);
-
-                            } else if ("DemandePieceComplementaire".equals(rootName)) {
-                                DemandePieceComplementaire demandePieceComplementaire = XmlUtils.unmarshall(classSource,
-                                        DemandePieceComplementaire.class);
-                                Attachment attachment = getFileAttachmentByName(
-                                        demandePieceComplementaire.getDocument().getNomFichier(),
-                                        originalMultipart);
-                                retourPrefectureService.receiveDemandePieceComplementaire(demandePieceComplementaire, attachment);
-
-                            } else if ("LettreObservations".equals(rootName)) {
-                                LettreObservations letterObs = XmlUtils.unmarshall(classSource, LettreObservations.class);
-                                Attachment attachment = getFileAttachmentByName(
-                                        letterObs.getDocument().getNomFichier(), originalMultipart);
-                                retourPrefectureService.receiveLettreObservations(letterObs, attachment);
-
-                            } else if ("DefereTA".equals(rootName)) {
-                                DefereTA defereTA = XmlUtils.unmarshall(classSource, DefereTA.class);
-                                List<Attachment> attachments = defereTA.getPiecesJointes().getPieceJointe().stream()
-                                        .map(file -> getFileAttachmentByName(file.getNomFichier(),
-                                                originalMultipart))
-                                        .collect(Collectors.toList());
-                                retourPrefectureService.receiveDefere(defereTA, attachments);
-
-                            } else if ("ARPieceComplementaire".equals(rootName)) {
-                                JAXBElement<ARReponseCL> arPieceComplementaire = unmarshallARReponseCL(classSource);
-                                Attachment attachment = getAttachmentFromBodyPart(bodyPart);
-                                retourPrefectureService.receiveARPieceComplementaire(arPieceComplementaire.getValue(), attachment);
-
-                            } else if ("ARReponseRejetLettreObservations".equals(rootName)) {
-                                JAXBElement<ARReponseCL> arLettreObs = unmarshallARReponseCL(classSource);
-                                Attachment attachment = getAttachmentFromBodyPart(bodyPart);
-                                retourPrefectureService.receiveARReponseRejetLettreObservations(arLettreObs.getValue(),
-                                        attachment);
-
-                            } else if ("RetourClassification".equals(rootName)) {
-                                RetourClassification retClassification = XmlUtils.unmarshall(classSource,
-                                        RetourClassification.class);
-
-                                if (enveloppe == null) {
-                                    throw new NoEnveloppeException();
-                                }
-                                LocalAuthority currentLocalAuthority = localAuthorityService
-                                        .getBySiren(enveloppe.getDestinataire().getSIREN()).get();
-
-                                localAuthorityService.loadClassification(currentLocalAuthority.getUuid(),
-                                        retClassification);
-                            } else if ("EnveloppeMISILLCL".equals(rootName)) {
-                                enveloppe = XmlUtils.unmarshall(classSource, EnveloppeMISILLCL.class);
-                            }
-                        }
+                    AnomalieActe anomalie = XmlUtils.unmarshall(classSource, AnomalieActe.class);
+                    Attachment attachment = getAttachmentFromBodyPart(bodyPart);
+                    retourPrefectureService.receiveAnomalieActe(enveloppe, anomalie, attachment);
+
+                } else if ("AnomalieEnveloppe".equals(rootName)) {
+                    AnomalieEnveloppe anomalie = XmlUtils.unmarshall(classSource, AnomalieEnveloppe.class);
+                    Attachment attachment = getAttachmentFromBodyPart(bodyPart);
+                    retourPrefectureService.receiveAnomalieEnveloppe(anomalie, attachment);
+
+                } else if ("CourrierSimple".equals(rootName)) {
+                    CourrierSimple courrierSimple = XmlUtils.unmarshall(classSource, CourrierSimple.class);
+                    Attachment attachment = getFileAttachmentByName(
+                            courrierSimple.getDocument().getNomFichier(), originalMultipart);
+                    retourPrefectureService.receiveCourrierSimple(courrierSimple, attachment);
+
+                } else if ("DemandePieceComplementaire".equals(rootName)) {
+                    DemandePieceComplementaire demandePieceComplementaire = XmlUtils.unmarshall(classSource,
+                            DemandePieceComplementaire.class);
+                    Attachment attachment = getFileAttachmentByName(
+                            demandePieceComplementaire.getDocument().getNomFichier(),
+                            originalMultipart);
+                    retourPrefectureService.receiveDemandePieceComplementaire(demandePieceComplementaire, attachment);
+
+                } else if ("LettreObservations".equals(rootName)) {
+                    LettreObservations letterObs = XmlUtils.unmarshall(classSource, LettreObservations.class);
+                    Attachment attachment = getFileAttachmentByName(
+                            letterObs.getDocument().getNomFichier(), originalMultipart);
+                    retourPrefectureService.receiveLettreObservations(letterObs, attachment);
+
+                } else if ("DefereTA".equals(rootName)) {
+                    DefereTA defereTA = XmlUtils.unmarshall(classSource, DefereTA.class);
+                    List<Attachment> attachments = defereTA.getPiecesJointes().getPieceJointe().stream()
+                            .map(file -> getFileAttachmentByName(file.getNomFichier(),
+                                    originalMultipart))
+                            .collect(Collectors.toList());
+                    retourPrefectureService.receiveDefere(defereTA, attachments);
+
+                } else if ("ARPieceComplementaire".equals(rootName)) {
+                    JAXBElement<ARReponseCL> arPieceComplementaire = unmarshallARReponseCL(classSource);
+                    Attachment attachment = getAttachmentFromBodyPart(bodyPart);
+                    retourPrefectureService.receiveARPieceComplementaire(arPieceComplementaire.getValue(), attachment);
+
+                } else if ("ARReponseRejetLettreObservations".equals(rootName)) {
+                    JAXBElement<ARReponseCL> arLettreObs = unmarshallARReponseCL(classSource);
+                    Attachment attachment = getAttachmentFromBodyPart(bodyPart);
+                    retourPrefectureService.receiveARReponseRejetLettreObservations(arLettreObs.getValue(),
+                            attachment);
+
+                } else if ("RetourClassification".equals(rootName)) {
+                    RetourClassification retClassification = XmlUtils.unmarshall(classSource,
+                            RetourClassification.class);
+
+                    if (enveloppe == null) {
+                        throw new NoEnveloppeException();
                     }
-                    message.setFlag(Flag.DELETED, true);
-                    messagesOK.add(message);
-                } catch (Exception e) {
-                    message.setFlag(Flag.DELETED, true);
-                    messagesKO.add(message);
-                    LOGGER.error(e.getMessage());
+                    LocalAuthority currentLocalAuthority = localAuthorityService
+                            .getBySiren(enveloppe.getDestinataire().getSIREN()).get();
+
+                    localAuthorityService.loadClassification(currentLocalAuthority.getUuid(),
+                            retClassification);
+                } else if ("EnveloppeMISILLCL".equals(rootName)) {
+                    enveloppe = XmlUtils.unmarshall(classSource, EnveloppeMISILLCL.class);
                 }
             }
-            inbox.copyMessages(messagesOK.toArray(new Message[messagesOK.size()]), archiveBox);
-            inbox.copyMessages(messagesKO.toArray(new Message[messagesKO.size()]), errorBox);
+        }
+    }
 
-        } catch (MessagingException e) {
-            LOGGER.error(e.getMessage());
-        } finally {
+    private void connect() throws MessagingException {
+        if (store != null && store.isConnected() && inbox.isOpen())
+            return;
+        disconnect();
+
+        Properties properties = new Properties();
+        properties.put("mail.imap.host", host);
+        properties.put("mail.imap.port", port);
+        if (ssl) {
             try {
-                inbox.close(false);
-            } catch (MessagingException e1) {
-                LOGGER.error(e1.getMessage());
+                MailSSLSocketFactory sf = new MailSSLSocketFactory();
+                sf.setTrustAllHosts(true);
+                properties.put("mail.imap.ssl.trust", "*");
+                properties.put("mail.imap.ssl.socketFactory", sf);
+                properties.put("mail.imap.ssl.enable", "true");
+            } catch (GeneralSecurityException e) {
+                throw new MessagingException(e.getMessage(), e);
             }
         }
+        Session emailSession = Session.getInstance(properties);
+        store = emailSession.getStore("imap");
+        store.connect(host, port, username, password);
+
+        archiveBox = getOrCreateFolder(doneFolder);
+        errorBox = getOrCreateFolder(errorFolder);
+        inbox = (IMAPFolder) store.getFolder("INBOX");
+        inbox.open(Folder.READ_WRITE);
+        LOGGER.info("Connected to {}:{}", host, port);
+    }
+
+    private Folder getOrCreateFolder(String name) throws MessagingException {
+        Folder folder = store.getFolder(name);
+        if (!folder.exists())
+            folder.create(Folder.HOLDS_MESSAGES);
+        return folder;
+    }
+
+    private void disconnect() {
+        try {
+            if (inbox != null && inbox.isOpen())
+                inbox.close(false);
+            if (store != null)
+                store.close();
+        } catch (MessagingException e) {
+            LOGGER.error(e.getMessage());
+        }
+        inbox = null;
+        store = null;
     }
 
     private Attachment getAttachmentFromBodyPart(BodyPart bodyPart) throws IOException, MessagingException {
@@ -302,9 +446,6 @@ public class EmailCheckingTask {
     }
 
     private static JAXBElement<ARReponseCL> unmarshallARReponseCL(StreamSource xml) throws JAXBException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(ARReponseCL.class, ObjectFactory.class);
-        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-
-        return (JAXBElement<ARReponseCL>) unmarshaller.unmarshal(xml);
+        return XmlUtils.unmarshallElement(xml, ARReponseCL.class);
     }
 }
@@ -0,0 +1,18 @@
+package fr.sictiam.stela.acteservice.scheduler;
+
+import fr.sictiam.stela.acteservice.service.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ExportCleaningTask {
+
+    @Autowired
+    private ExportService exportService;
+
+    @Scheduled(cron = "${application.export.deleteExpiredCron:0 0 3 * * *}")
+    public void cleanExports() {
+        exportService.deleteExpiredJobs();
+    }
+}
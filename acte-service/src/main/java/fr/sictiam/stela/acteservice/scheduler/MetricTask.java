@@ -0,0 +1,20 @@
+package fr.sictiam.stela.acteservice.scheduler;
+
+import fr.sictiam.stela.acteservice.service.PipelineMetricsService;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class MetricTask {
+
+    private final PipelineMetricsService pipelineMetricsService;
+
+    public MetricTask(PipelineMetricsService pipelineMetricsService) {
+        this.pipelineMetricsService = pipelineMetricsService;
+    }
+
+    @Scheduled(fixedDelayString = "${application.metric.refreshDelay:60000}")
+    public void refreshBacklog() {
+        pipelineMetricsService.refreshBacklog();
+    }
+}
@@ -1,98 +1,188 @@
 package fr.sictiam.stela.acteservice.scheduler;
 
+import fr.sictiam.stela.acteservice.model.Attachment;
 import fr.sictiam.stela.acteservice.model.PendingMessage;
 import fr.sictiam.stela.acteservice.model.StatusType;
 import fr.sictiam.stela.acteservice.model.event.ActeHistoryEvent;
 import fr.sictiam.stela.acteservice.service.ActeService;
 import fr.sictiam.stela.acteservice.service.AdminService;
 import fr.sictiam.stela.acteservice.service.PendingMessageService;
+import fr.sictiam.stela.acteservice.service.StorageService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationListener;
 import org.springframework.http.HttpStatus;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.validation.constraints.NotNull;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
-
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the archives waiting in the pending_message table to the prefecture (MIAT).
+ * <p>
+ * Messages are leased in the database before being sent, so several instances can drain the queue together. Up to
+ * {@code application.sender.concurrency} messages are sent in parallel, the byte rate being limited by a token
+ * bucket refilled at {@code application.archive.maxSizePerHour}. The bucket is a row of the sender_budget table, so
+ * the limit holds for all the instances together. A message that cannot be delivered is retried
+ * later with an exponential backoff, without blocking the ones behind it. The messages being sent are counted by the
+ * {@code stela.acte.sender.in.flight} gauge.
+ */
 @Component
 public class SenderTask implements ApplicationListener<ActeHistoryEvent> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SenderTask.class);
 
-    private Queue<PendingMessage> pendingQueue = new ConcurrentLinkedQueue<>();
-
     @Value("${application.archive.maxSizePerHour}")
     private Long maxSizePerHour;
 
-    private AtomicInteger currentSizeUsed = new AtomicInteger();
+    @Value("${application.sender.concurrency:4}")
+    private int concurrency;
+
+    @Value("${application.sender.burstSeconds:300}")
+    private long burstSeconds;
+
+    @Value("${application.sender.leaseSeconds:600}")
+    private long leaseSeconds;
+
+    @Value("${application.sender.backoff.initialSeconds:30}")
+    private long initialBackoffSeconds;
+
+    @Value("${application.sender.backoff.maxSeconds:3600}")
+    private long maxBackoffSeconds;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicLong claimSequence = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private long budgetCapacity;
+    private double bytesPerSecond;
+    private ThreadPoolTaskExecutor senderExecutor;
 
     private final ActeService acteService;
     private final AdminService adminService;
     private final PendingMessageService pendingMessageService;
+    private final StorageService storageService;
+    private final MeterRegistry meterRegistry;
 
     @Autowired
-    public SenderTask(ActeService acteService, AdminService adminService, PendingMessageService pendingMessageService) {
+    public SenderTask(ActeService acteService, AdminService adminService, PendingMessageService pendingMessageService,
+            StorageService storageService, ObjectProvider<MeterRegistry> meterRegistry) {
         this.acteService = acteService;
         this.adminService = adminService;
         this.pendingMessageService = pendingMessageService;
+        this.storageService = storageService;
+        this.meterRegistry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
     }
 
     @PostConstruct
-    public void initQueue() {
-        pendingQueue.addAll(pendingMessageService.getAllPendingMessages());
+    public void init() {
+        bytesPerSecond = maxSizePerHour / 3600d;
+        budgetCapacity = Math.max(1, (long) (bytesPerSecond * burstSeconds));
+
+        senderExecutor = new ThreadPoolTaskExecutor();
+        senderExecutor.setCorePoolSize(concurrency);
+        senderExecutor.setMaxPoolSize(concurrency);
+        senderExecutor.setThreadNamePrefix("miat-sender-");
+        senderExecutor.setWaitForTasksToCompleteOnShutdown(true);
+        senderExecutor.setAwaitTerminationSeconds(60);
+        senderExecutor.initialize();
+
+        Gauge.builder("stela.acte.sender.in.flight", inFlight, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senderExecutor.shutdown();
     }
 
     @Override
     public void onApplicationEvent(@NotNull ActeHistoryEvent event) {
         if (StatusType.ARCHIVE_SIZE_CHECKED.equals(event.getActeHistory().getStatus())) {
-            pendingQueue.add(pendingMessageService.save(new PendingMessage(event.getActeHistory())));
+            pendingMessageService.save(new PendingMessage(event.getActeHistory()));
         }
     }
 
-    // reset limitation every hour
-    @Scheduled(cron = "0 0 0/1 * * ?")
-    public void resetLimitation() {
-        currentSizeUsed.set(0);
-    }
-
-    @Scheduled(fixedDelay = 10000)
+    @Scheduled(fixedDelay = 2000)
     public void senderTask() {
 
-        if (!pendingQueue.isEmpty() && adminService.isMiatAvailable()) {
-            PendingMessage pendingMessage = pendingQueue.peek();
-            if ((pendingMessage.getFile().length + currentSizeUsed.get()) < maxSizePerHour) {
-
-                HttpStatus sendStatus = acteService.send(pendingMessage.getFile(), pendingMessage.getFileName());
-
-                if (HttpStatus.OK.equals(sendStatus)) {
-                    acteService.persistActeExport(pendingMessage);
-                    acteService.sent(pendingMessage.getActeUuid(), pendingMessage.getFlux());
-                    pendingMessageService.remove(pendingQueue.poll());
-                    currentSizeUsed.addAndGet(pendingMessage.getFile().length);
-                    LOGGER.info("Amount of data sent for this hour : " + currentSizeUsed);
-                } else if (HttpStatus.NOT_FOUND.equals(sendStatus)) {
-                    // pref offline
-                    // just keep retrying
-                } else if (HttpStatus.BAD_REQUEST.equals(sendStatus)
-                        || HttpStatus.INTERNAL_SERVER_ERROR.equals(sendStatus)) {
-                    // something wrong in what we send
-                    // TODO when prefecture sending is "plugged", look if we can extract some useful
-                    // info about the error
-                    acteService.notSent(pendingMessage.getActeUuid(), pendingMessage.getFlux());
-                    pendingMessageService.remove(pendingQueue.poll());
-                }
+        int freeSenders = concurrency - inFlight.get();
+        if (freeSenders <= 0 || !adminService.isMiatAvailable())
+            return;
+
+        String leaseToken = instanceId + "-" + claimSequence.incrementAndGet();
+        List<PendingMessage> pendingMessages = pendingMessageService.claim(leaseToken, freeSenders,
+                LocalDateTime.now().plusSeconds(leaseSeconds));
+
+        for (int i = 0; i < pendingMessages.size(); i++) {
+            PendingMessage pendingMessage = pendingMessages.get(i);
+            if (!pendingMessageService.consumeBudget(pendingMessage.getAttachment().getSize(), budgetCapacity,
+                    bytesPerSecond)) {
+                LOGGER.info("Transmission rate limit reached ({} bytes available), postponing {} message(s)",
+                        pendingMessageService.availableBudget(budgetCapacity, bytesPerSecond),
+                        pendingMessages.size() - i);
+                pendingMessages.subList(i, pendingMessages.size()).forEach(pendingMessageService::release);
+                return;
+            }
+            inFlight.incrementAndGet();
+            senderExecutor.execute(() -> send(pendingMessage));
+        }
+    }
+
+    private void send(PendingMessage pendingMessage) {
+        Attachment attachment = pendingMessage.getAttachment();
+        try {
+            HttpStatus sendStatus = acteService.send(storageService.getAttachmentContent(attachment),
+                    attachment.getFilename());
+
+            if (HttpStatus.OK.equals(sendStatus)) {
+                acteService.persistActeExport(pendingMessage);
+                acteService.sent(pendingMessage.getActeUuid(), pendingMessage.getFlux());
+                pendingMessageService.remove(pendingMessage);
+            } else if (HttpStatus.BAD_REQUEST.equals(sendStatus)
+                    || HttpStatus.INTERNAL_SERVER_ERROR.equals(sendStatus)) {
+                // something wrong in what we send
+                // TODO when prefecture sending is "plugged", look if we can extract some useful
+                // info about the error
+                acteService.notSent(pendingMessage.getActeUuid(), pendingMessage.getFlux());
+                pendingMessageService.remove(pendingMessage);
             } else {
-                LOGGER.info("Hourly limit exceeded, waiting next hour");
+                // pref offline
+                retryLater(pendingMessage);
             }
+        } catch (Exception e) {
+            LOGGER.error("Error while sending message {} of acte {}: {}", pendingMessage.getUuid(),
+                    pendingMessage.getActeUuid(), e.getMessage());
+            retryLater(pendingMessage);
+        } finally {
+            inFlight.decrementAndGet();
         }
     }
 
+    private void retryLater(PendingMessage pendingMessage) {
+        long delay = Math.min(maxBackoffSeconds,
+                initialBackoffSeconds << Math.min(pendingMessage.getAttempts(), 20));
+        LOGGER.info("Message {} of acte {} not delivered (attempt {}), retrying in {}s", pendingMessage.getUuid(),
+                pendingMessage.getActeUuid(), pendingMessage.getAttempts() + 1, delay);
+        try {
+            pendingMessageService.reschedule(pendingMessage, LocalDateTime.now().plusSeconds(delay));
+        } catch (Exception e) {
+            // the lease will expire and the message will be claimed again
+            LOGGER.error("Unable to reschedule message {}: {}", pendingMessage.getUuid(), e.getMessage());
+        }
+    }
 }
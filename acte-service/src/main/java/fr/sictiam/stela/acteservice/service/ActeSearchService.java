@@ -0,0 +1,92 @@
+package fr.sictiam.stela.acteservice.service;
+
+import fr.sictiam.stela.acteservice.config.SearchFunctionsConfig;
+import fr.sictiam.stela.acteservice.model.Acte;
+import fr.sictiam.stela.acteservice.model.StatusType;
+import fr.sictiam.stela.acteservice.model.event.ActeHistoryEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.transaction.Transactional;
+import javax.validation.constraints.NotNull;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Full-text search on actes (number, objet and local authority name).
+ * <p>
+ * Each acte has a search document (french stemmed, accent insensitive tsvector) and a normalized search text (for
+ * substring matches on numbers and word prefixes, backed by a trigram index), both computed by the database
+ * functions of the V1_31 migration. They are refreshed when an acte is created, and filled on any later event of an
+ * acte which has not been indexed yet. Renaming a local authority refreshes its actes, by a trigger of the V1_38
+ * migration.
+ * <p>
+ * Results are ordered by relevance unless a sort column is explicitly asked for.
+ */
+@Service
+public class ActeSearchService implements ApplicationListener<ActeHistoryEvent> {
+
+    private static final char LIKE_ESCAPE = '\\';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public Predicate getSearchPredicate(CriteriaBuilder builder, Root<Acte> acteRoot, String query) {
+        Expression<Boolean> match = builder.function(SearchFunctionsConfig.FTS_MATCH, Boolean.class,
+                acteRoot.get("searchDocument"), builder.literal(query));
+        return builder.or(
+                builder.isTrue(match),
+                builder.like(acteRoot.get("searchText"), "%" + escapeLike(normalize(query)) + "%", LIKE_ESCAPE));
+    }
+
+    /**
+     * Most relevant actes first: number matches weigh more than objet ones, then local authority names.
+     */
+    public Order getRankOrder(CriteriaBuilder builder, Root<Acte> acteRoot, String query) {
+        return builder.desc(builder.function(SearchFunctionsConfig.FTS_RANK, Float.class,
+                acteRoot.get("searchDocument"), builder.literal(query)));
+    }
+
+    @Override
+    @Transactional
+    public void onApplicationEvent(@NotNull ActeHistoryEvent event) {
+        StatusType status = event.getActeHistory().getStatus();
+        refresh(event.getActeHistory().getActeUuid(), status == StatusType.CREATED || status == StatusType.RECREATED);
+    }
+
+    private void refresh(String acteUuid, boolean force) {
+        String localAuthorityName =
+                "(SELECT name FROM local_authority WHERE local_authority.uuid = acte.local_authority_uuid)";
+        entityManager.createNativeQuery("UPDATE acte SET " +
+                "search_document = acte_search_document(number, objet, " + localAuthorityName + "), " +
+                "search_text = acte_search_text(number, objet, " + localAuthorityName + ") " +
+                "WHERE uuid = :uuid AND (:force OR search_document IS NULL)")
+                .setParameter("uuid", acteUuid)
+                .setParameter("force", force)
+                .executeUpdate();
+    }
+
+    /**
+     * Same normalization as the acte_search_text database function: lower case, without accents.
+     */
+    static String normalize(String query) {
+        return Normalizer.normalize(query, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.FRENCH);
+    }
+
+    /**
+     * The LIKE wildcards of the query are searched as such.
+     */
+    static String escapeLike(String query) {
+        return query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -1,9 +1,7 @@
 package fr.sictiam.stela.acteservice.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lowagie.text.DocumentException;
-import com.lowagie.text.pdf.PdfReader;
 import fr.sictiam.stela.acteservice.dao.ActeExportRepository;
 import fr.sictiam.stela.acteservice.dao.ActeHistoryRepository;
 import fr.sictiam.stela.acteservice.dao.ActeRepository;
@@ -14,12 +12,14 @@ import fr.sictiam.stela.acteservice.model.ui.ActeCSVUI;
 import fr.sictiam.stela.acteservice.model.ui.ActeUuidsAndSearchUI;
 import fr.sictiam.stela.acteservice.service.exceptions.*;
 import fr.sictiam.stela.acteservice.service.exceptions.FileNotFoundException;
+import fr.sictiam.stela.acteservice.service.util.PageCursor;
+import fr.sictiam.stela.acteservice.service.util.PagedIterator;
 import fr.sictiam.stela.acteservice.service.util.PdfGeneratorUtil;
-import fr.sictiam.stela.acteservice.service.util.ZipGeneratorUtil;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.lang3.StringUtils;
+import org.hibernate.jpa.QueryHints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,7 +28,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationListener;
 import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -36,6 +35,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.validation.ObjectError;
@@ -43,6 +43,9 @@ import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import org.supercsv.io.CsvBeanWriter;
+import org.supercsv.io.ICsvBeanWriter;
+import org.supercsv.prefs.CsvPreference;
 import org.xhtmlrenderer.pdf.ITextRenderer;
 
 import javax.persistence.EntityManager;
@@ -51,12 +54,14 @@ import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Order;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Subquery;
 import javax.validation.constraints.NotNull;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
@@ -65,11 +70,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.SortedSet;
+import java.util.function.BiFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -82,6 +88,19 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
 
     public static String DEFAULT_GROUP_NAME = "Service Actes";
 
+    private static final int CSV_FETCH_SIZE = 500;
+
+    // TODO: Improve later on with status improvements
+    private static final List<StatusType> METIER_STATUSES = Arrays.asList(StatusType.CREATED,
+            StatusType.ANTIVIRUS_KO, StatusType.SENT, StatusType.ACK_RECEIVED, StatusType.NACK_RECEIVED,
+            StatusType.CANCELLATION_ASKED, StatusType.CANCELLED, StatusType.ARCHIVE_TOO_LARGE, StatusType.FILE_ERROR,
+            StatusType.COURRIER_SIMPLE_RECEIVED, StatusType.DEMANDE_PIECE_COMPLEMENTAIRE_RECEIVED,
+            StatusType.LETTRE_OBSERVATION_RECEIVED, StatusType.DEFERE_RECEIVED,
+            StatusType.REPONSE_LETTRE_OBSEVATION_ASKED, StatusType.REJET_LETTRE_OBSERVATION_ASKED,
+            StatusType.REFUS_PIECES_COMPLEMENTAIRE_ASKED, StatusType.PIECE_COMPLEMENTAIRE_ASKED,
+            StatusType.REPONSE_COURRIER_SIMPLE_ASKED, StatusType.ACK_REPONSE_PIECE_COMPLEMENTAIRE,
+            StatusType.ACK_REPONSE_LETTRE_OBSERVATION);
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -94,8 +113,10 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
     private final LocalesService localesService;
     private final ArchiveService archiveService;
     private final PdfGeneratorUtil pdfGeneratorUtil;
-    private final ZipGeneratorUtil zipGeneratorUtil;
     private final ExternalRestService externalRestService;
+    private final StorageService storageService;
+    private final ActeSearchService acteSearchService;
+    private final PdfRenditionService pdfRenditionService;
 
     @Value("${application.miat.url}")
     private String acteUrl;
@@ -103,6 +124,9 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
     @Value("${application.miat.rescueUrl}")
     private String rescueUrl;
 
+    @Value("${application.export.pageSize:100}")
+    private int exportPageSize;
+
     @Autowired
     @Qualifier("miatRestTemplate")
     private RestTemplate miatRestTemplate;
@@ -111,8 +135,10 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
     public ActeService(ActeRepository acteRepository, ActeHistoryRepository acteHistoryRepository,
                        AttachmentRepository attachmentRepository, ApplicationEventPublisher applicationEventPublisher,
                        LocalAuthorityService localAuthorityService, ArchiveService archiveService,
-                       PdfGeneratorUtil pdfGeneratorUtil, ZipGeneratorUtil zipGeneratorUtil, LocalesService localesService,
-                       ExternalRestService externalRestService, ActeExportRepository acteExportRepository) {
+                       PdfGeneratorUtil pdfGeneratorUtil, LocalesService localesService,
+                       ExternalRestService externalRestService, ActeExportRepository acteExportRepository,
+                       StorageService storageService, ActeSearchService acteSearchService,
+                       PdfRenditionService pdfRenditionService) {
         this.acteRepository = acteRepository;
         this.acteHistoryRepository = acteHistoryRepository;
         this.attachmentRepository = attachmentRepository;
@@ -120,20 +146,22 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
         this.localAuthorityService = localAuthorityService;
         this.archiveService = archiveService;
         this.pdfGeneratorUtil = pdfGeneratorUtil;
-        this.zipGeneratorUtil = zipGeneratorUtil;
         this.localesService = localesService;
         this.externalRestService = externalRestService;
         this.acteExportRepository = acteExportRepository;
+        this.storageService = storageService;
+        this.acteSearchService = acteSearchService;
+        this.pdfRenditionService = pdfRenditionService;
     }
 
     public Acte create(String number, String objet, ActeNature nature, String code, LocalDate decision,
             Boolean isPublic, Boolean isPublicWebsite, String groupUuid, MultipartFile file, String fileType,
             MultipartFile[] annexes, String[] annexeTypes, String email, LocalAuthority localAuthority)
             throws IOException {
-        Attachment acteFile = new Attachment(file.getBytes(), file.getOriginalFilename(), file.getSize(), fileType);
+        Attachment acteFile = storageService.createAttachment(file, fileType);
         List<Attachment> annexeFiles = new ArrayList<>();
         for (MultipartFile annexe : annexes) {
-            annexeFiles.add(new Attachment(annexe.getBytes(), annexe.getOriginalFilename(), annexe.getSize(),
+            annexeFiles.add(storageService.createAttachment(annexe,
                     getCodeForAnnexeFilename(annexeTypes, annexe.getOriginalFilename())));
         }
         JsonNode node = externalRestService.getProfileForEmail(localAuthority.getSiren(), email);
@@ -191,9 +219,12 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
                                           String message, Flux flux) {
         Acte acte = getByUuid(acteUuid);
         Attachment attachment = attachments.get(0);
+        // A single piece is kept in the history, several pieces only go in the archive
+        if (attachments.size() == 1) {
+            storageService.storeAttachment(attachment);
+        }
         ActeHistory acteHistory = new ActeHistory(acte.getUuid(), status, LocalDateTime.now(),
-                attachments.size() > 1 ? null : attachment.getFile(),
-                attachments.size() > 1 ? null : attachment.getFilename(), flux);
+                attachments.size() > 1 ? null : attachment, flux);
         if (StringUtils.isNotBlank(message)) {
             acteHistory.setMessage(message);
         }
@@ -230,41 +261,26 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
         return entityManager.createQuery(query).getSingleResult();
     }
 
+    /**
+     * When a {@link PageCursor} is given the page starts right after it and the offset is ignored.
+     */
     public List<Acte> getAllPublicWithQuery(String multifield, String number, String objet, String siren,
-            LocalDate decisionFrom, LocalDate decisionTo, Integer limit, Integer offset, String column,
+            LocalDate decisionFrom, LocalDate decisionTo, Integer limit, Integer offset, String cursor, String column,
             String direction) {
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<Acte> query = builder.createQuery(Acte.class);
         Root<Acte> acteRoot = query.from(Acte.class);
 
-        String columnAttribute = StringUtils.isEmpty(column) ? "creation" : column;
         List<Predicate> predicates = getAllPublicQueryPredicates(builder, acteRoot, multifield, number, objet, siren,
                 decisionFrom, decisionTo);
-
-        Subquery<ActeHistory> subquery = query.subquery(ActeHistory.class);
-        Root<ActeHistory> historyTable = subquery.from(ActeHistory.class);
-        subquery
-                .select(historyTable.get("acteUuid")).distinct(true)
-                .where(historyTable.get("status")
-                        .in(Collections.singleton(StatusType.ACK_RECEIVED)));
-
-        Subquery<ActeHistory> subquery2 = query.subquery(ActeHistory.class);
-        Root<ActeHistory> historyTable2 = subquery2.from(ActeHistory.class);
-        subquery2
-                .select(historyTable2.get("acteUuid")).distinct(true)
-                .where(historyTable2.get("status")
-                        .in(Arrays.asList(StatusType.CANCELLED, StatusType.CANCELLATION_ARCHIVE_CREATED, StatusType.CANCELLATION_ASKED)));
-
-        predicates.add(acteRoot.get("uuid").in(subquery));
-        predicates.add(builder.not(acteRoot.get("uuid").in(subquery2)));
-
+        if (StringUtils.isNotBlank(cursor))
+            predicates.add(PageCursor.decode(cursor, column, direction).getPredicate(builder, acteRoot));
 
         query.where(predicates.toArray(new Predicate[predicates.size()]))
-                .orderBy(!StringUtils.isEmpty(direction) && direction.equals("ASC")
-                        ? builder.asc(acteRoot.get(columnAttribute))
-                        : builder.desc(acteRoot.get(columnAttribute)));
+                .orderBy(getOrders(builder, acteRoot, multifield, column, direction));
 
-        return entityManager.createQuery(query).setFirstResult(offset).setMaxResults(limit).getResultList();
+        return entityManager.createQuery(query).setFirstResult(StringUtils.isNotBlank(cursor) ? 0 : offset)
+                .setMaxResults(limit).getResultList();
     }
 
     public List<Acte> getAllFull(Integer limit, Integer offset, String column, String direction,
@@ -284,6 +300,16 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
     public List<Acte> getAllWithQuery(String multifield, String number, String objet, ActeNature nature,
             LocalDate decisionFrom, LocalDate decisionTo, StatusType status, Integer limit, Integer offset,
             String column, String direction, String currentLocalAuthUuid, Set<String> groups) {
+        return getAllWithQuery(multifield, number, objet, nature, decisionFrom, decisionTo, status, limit, offset,
+                null, column, direction, currentLocalAuthUuid, groups);
+    }
+
+    /**
+     * When a {@link PageCursor} is given the page starts right after it and the offset is ignored.
+     */
+    public List<Acte> getAllWithQuery(String multifield, String number, String objet, ActeNature nature,
+            LocalDate decisionFrom, LocalDate decisionTo, StatusType status, Integer limit, Integer offset,
+            String cursor, String column, String direction, String currentLocalAuthUuid, Set<String> groups) {
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<Acte> query = builder.createQuery(Acte.class);
         Root<Acte> acteRoot = query.from(Acte.class);
@@ -300,15 +326,15 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
                 acteRoot.get("lastHistoryFlux")
         ));
 
-        String columnAttribute = StringUtils.isEmpty(column) ? "creation" : column;
         List<Predicate> predicates = getAllQueryPredicates(builder, acteRoot, multifield, number, objet, nature,
                 decisionFrom, decisionTo, status, currentLocalAuthUuid, groups);
+        if (StringUtils.isNotBlank(cursor))
+            predicates.add(PageCursor.decode(cursor, column, direction).getPredicate(builder, acteRoot));
         query.where(predicates.toArray(new Predicate[predicates.size()]))
-                .orderBy(!StringUtils.isEmpty(direction) && direction.equals("ASC")
-                        ? builder.asc(acteRoot.get(columnAttribute))
-                        : builder.desc(acteRoot.get(columnAttribute)));
+                .orderBy(getOrders(builder, acteRoot, multifield, column, direction));
 
-        return entityManager.createQuery(query).setFirstResult(offset).setMaxResults(limit).getResultList();
+        return entityManager.createQuery(query).setFirstResult(StringUtils.isNotBlank(cursor) ? 0 : offset)
+                .setMaxResults(limit).getResultList();
     }
 
     private List<Predicate> getAllPublicQueryPredicates(CriteriaBuilder builder, Root<Acte> acteRoot, String multifield,
@@ -316,6 +342,7 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
         List<Predicate> predicates = new ArrayList<>();
         predicates.add(getNotDraftPredicate(builder, acteRoot));
         predicates.add(getPublicPredicate(builder, acteRoot));
+        predicates.add(getAckedPredicate(builder, acteRoot));
         predicates.add(getNaturePredicate(builder, acteRoot,
                 Arrays.asList(ActeNature.DELIBERATIONS, ActeNature.ARRETES_REGLEMENTAIRES)));
         if (StringUtils.isNotBlank(multifield)) predicates.add(getObjetMultifield(builder, acteRoot, multifield));
@@ -351,10 +378,29 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
     }
 
     private Predicate getObjetMultifield(CriteriaBuilder builder, Root<Acte> acteRoot, String multifield) {
-        return builder.or(
-                builder.like(builder.lower(acteRoot.get("number")), "%" + multifield.toLowerCase() + "%"),
-                builder.like(builder.lower(acteRoot.get("objet")), "%" + multifield.toLowerCase() + "%"),
-                builder.like(builder.lower(acteRoot.get("localAuthority").get("name")), "%" + multifield.toLowerCase() + "%"));
+        return acteSearchService.getSearchPredicate(builder, acteRoot, multifield);
+    }
+
+    /**
+     * Column the results are sorted on: the one asked for, else the relevance ({@code null}) when searching, else the
+     * creation date. The relevance can't be paged with a cursor, only with offsets.
+     */
+    public String getSortColumn(String multifield, String column) {
+        if (StringUtils.isNotBlank(column))
+            return column;
+        return StringUtils.isNotBlank(multifield) ? null : "creation";
+    }
+
+    /**
+     * Sorts on the given column, or by relevance when searching without an explicit sort.
+     */
+    private List<Order> getOrders(CriteriaBuilder builder, Root<Acte> acteRoot, String multifield, String column,
+            String direction) {
+        if (StringUtils.isEmpty(column) && StringUtils.isNotBlank(multifield))
+            return Arrays.asList(acteSearchService.getRankOrder(builder, acteRoot, multifield),
+                    builder.desc(acteRoot.get("creation")), builder.desc(acteRoot.get("uuid")));
+        String columnAttribute = StringUtils.isEmpty(column) ? "creation" : column;
+        return PageCursor.getOrders(builder, acteRoot, columnAttribute, direction);
     }
 
     private Predicate getNumberPredicate(CriteriaBuilder builder, Root<Acte> acteRoot, String number) {
@@ -373,6 +419,10 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
         return builder.and(builder.isTrue(acteRoot.get("isPublic")));
     }
 
+    private Predicate getAckedPredicate(CriteriaBuilder builder, Root<Acte> acteRoot) {
+        return builder.and(builder.isNotNull(acteRoot.get("ackDate")), builder.isFalse(acteRoot.get("cancelled")));
+    }
+
     private Predicate getNaturePredicate(CriteriaBuilder builder, Root<Acte> acteRoot, List<ActeNature> natures) {
         List<Predicate> naturesPredicate = natures.stream()
                 .map(nature -> builder.equal(acteRoot.get("nature"), nature))
@@ -470,7 +520,7 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
         LOGGER.info("Persisting acte sent infos");
         Acte acte = acteRepository.findByUuid(pendingMessage.getActeUuid()).get();
         ActeExport acteExport = new ActeExport(pendingMessage.getActeUuid(), ZonedDateTime.now(),
-                pendingMessage.getFileName(), acte.getLocalAuthority().getSiren(),
+                pendingMessage.getAttachment().getFilename(), acte.getLocalAuthority().getSiren(),
                 acte.getLocalAuthority().getDepartment(), acte.getLocalAuthority().getDistrict());
         try {
             JsonNode node = externalRestService.getProfile(acte.getProfileUuid());
@@ -481,7 +531,8 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
             LOGGER.error("Error while retrieving profile infos : {}", e.getMessage());
         }
         try {
-            InputStream inputStream = new ByteArrayInputStream(pendingMessage.getFile());
+            InputStream inputStream = new ByteArrayInputStream(
+                    storageService.getAttachmentContent(pendingMessage.getAttachment()));
             TarArchiveInputStream tarArchiveInputStream =
                     new TarArchiveInputStream(new GzipCompressorInputStream(inputStream));
             TarArchiveEntry entry;
@@ -531,159 +582,174 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
     }
 
     public boolean isActeACK(String uuid) {
-        return isActeACK(getByUuid(uuid));
+        return acteRepository.existsByUuidAndAckDateNotNullAndCancelledFalse(uuid);
     }
 
     public boolean isActeACK(Acte acte) {
         // TODO: Improve later when phases will be supported
-        List<StatusType> forbidenStatus = Arrays.asList(StatusType.CANCELLATION_ASKED,
-                StatusType.CANCELLATION_ARCHIVE_CREATED, StatusType.CANCELLED);
-        SortedSet<ActeHistory> acteHistoryList = acte.getActeHistories();
-        return acteHistoryList.stream().anyMatch(acteHistory -> acteHistory.getStatus().equals(StatusType.ACK_RECEIVED))
-                && acteHistoryList.stream().noneMatch(acteHistory -> forbidenStatus.contains(acteHistory.getStatus()));
+        return acte.isAcked();
     }
 
     public ActeHistory getLastMetierHistory(String uuid) {
-        // TODO: Improve later on with status improvements
-        List<StatusType> statusOrdered = Arrays.asList(StatusType.CREATED, StatusType.ANTIVIRUS_KO, StatusType.SENT,
-                StatusType.ACK_RECEIVED, StatusType.NACK_RECEIVED, StatusType.CANCELLATION_ASKED, StatusType.CANCELLED,
-                StatusType.ARCHIVE_TOO_LARGE, StatusType.FILE_ERROR, StatusType.COURRIER_SIMPLE_RECEIVED,
-                StatusType.DEMANDE_PIECE_COMPLEMENTAIRE_RECEIVED, StatusType.LETTRE_OBSERVATION_RECEIVED,
-                StatusType.DEFERE_RECEIVED, StatusType.REPONSE_LETTRE_OBSEVATION_ASKED,
-                StatusType.REJET_LETTRE_OBSERVATION_ASKED, StatusType.REFUS_PIECES_COMPLEMENTAIRE_ASKED,
-                StatusType.PIECE_COMPLEMENTAIRE_ASKED, StatusType.REPONSE_COURRIER_SIMPLE_ASKED,
-                StatusType.ACK_REPONSE_PIECE_COMPLEMENTAIRE, StatusType.ACK_REPONSE_LETTRE_OBSERVATION);
-        SortedSet<ActeHistory> acteHistories = getByUuid(uuid).getActeHistories();
-        if (acteHistories.size() == 0)
-            return null;
-        return acteHistories.stream()
-                .filter(acteHistory -> statusOrdered.stream()
-                        .anyMatch(statusType -> acteHistory.getStatus().equals(statusType)))
-                .findFirst()
+        return acteHistoryRepository.findFirstByActeUuidAndStatusInOrderByDateDesc(uuid, METIER_STATUSES)
                 .orElse(null);
     }
 
-    public List<ActeCSVUI> getActesCSV(ActeUuidsAndSearchUI acteUuidsAndSearchUI, String language) {
+    public boolean hasActesForCSV(ActeUuidsAndSearchUI ui, String currentLocalAuthUuid, Set<String> groups) {
+        return !getCSVQuery(ui, currentLocalAuthUuid, groups).setMaxResults(1).getResultList().isEmpty();
+    }
+
+    /**
+     * Writes the CSV of the selection while reading it: rows come from a projection read with a database cursor and
+     * are written one at a time, so the memory used does not depend on the size of the selection.
+     */
+    @Transactional(readOnly = true)
+    public void writeActesCSV(ActeUuidsAndSearchUI ui, String language, String currentLocalAuthUuid,
+            Set<String> groups, OutputStream os) throws IOException {
         if (StringUtils.isBlank(language))
             language = "fr";
-        ClassPathResource classPathResource = new ClassPathResource("/locales/" + language + "/acte.json");
-        List<Acte> actes = getActesFromUuidsOrSearch(acteUuidsAndSearchUI);
-        List<ActeCSVUI> acteCSVUIs = new ArrayList<>();
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(classPathResource.getInputStream());
-            for (Acte acte : actes) {
-                acteCSVUIs.add(new ActeCSVUI(acte.getNumber(), acte.getObjet(), acte.getDecision().toString(),
-                        jsonNode.get("acte").get("nature").get(acte.getNature().toString()).asText(),
-                        jsonNode.get("acte").get("status")
-                                .get(acte.getActeHistories().last().getStatus().toString()).asText()));
-            }
-        } catch (Exception e) {
-            LOGGER.error("Error while trying to translate Acte values, will take untranslated values: {}", e);
-            for (Acte acte : actes) {
-                acteCSVUIs.add(new ActeCSVUI(acte.getNumber(), acte.getObjet(), acte.getDecision().toString(),
-                        acte.getNature().toString(), acte.getActeHistories().last().getStatus().toString()));
+        JsonNode translations = localesService.getJsonNode(language, "acte").path("acte");
+        List<String> fields = ActeCSVUI.getFields();
+        String[] header = fields.toArray(new String[0]);
+
+        ICsvBeanWriter csvWriter = new CsvBeanWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8),
+                CsvPreference.STANDARD_PREFERENCE);
+        csvWriter.writeHeader(getTranslatedCSVFields(fields, language).toArray(new String[0]));
+        try (Stream<Object[]> rows = getCSVQuery(ui, currentLocalAuthUuid, groups)
+                .setHint(QueryHints.HINT_FETCH_SIZE, CSV_FETCH_SIZE).getResultStream()) {
+            Iterator<Object[]> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                Object[] row = iterator.next();
+                csvWriter.write(new ActeCSVUI((String) row[0], (String) row[1],
+                        row[2] != null ? row[2].toString() : null,
+                        translate(translations.path("nature"), (Enum<?>) row[3]),
+                        translate(translations.path("status"), (Enum<?>) row[4])), header);
             }
         }
-        if (acteCSVUIs.size() == 0)
-            throw new NoContentException();
-        return acteCSVUIs;
+        csvWriter.flush();
     }
 
-    public List<String> getTranslatedCSVFields(List<String> fields, String language) {
-        if (StringUtils.isBlank(language))
-            language = "fr";
-        ClassPathResource classPathResource = new ClassPathResource("/locales/" + language + "/acte.json");
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(classPathResource.getInputStream());
-            List<String> translatedList = new ArrayList<>();
-            for (String field : fields)
-                translatedList.add(jsonNode.get("acte").get("fields").get(field).asText());
-            return translatedList;
-        } catch (Exception e) {
-            LOGGER.error("Error while trying to translate CSV fields, will take untranslated fields: {}", e);
-            return fields;
+    private TypedQuery<Object[]> getCSVQuery(ActeUuidsAndSearchUI ui, String currentLocalAuthUuid,
+            Set<String> groups) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+        Root<Acte> acteRoot = query.from(Acte.class);
+        query.multiselect(acteRoot.get("number"), acteRoot.get("objet"), acteRoot.get("decision"),
+                acteRoot.get("nature"), acteRoot.get("lastHistoryStatus"));
+
+        List<Predicate> predicates;
+        if (ui.getUuids().size() > 0) {
+            predicates = new ArrayList<>();
+            predicates.add(acteRoot.get("uuid").in(ui.getUuids()));
+            predicates.add(builder.equal(acteRoot.get("localAuthority").get("uuid"), currentLocalAuthUuid));
+            predicates.add(getGroupPredicate(builder, acteRoot, groups));
+        } else {
+            predicates = getAllQueryPredicates(builder, acteRoot, ui.getMultifield(), ui.getNumber(), ui.getObjet(),
+                    ui.getNature(), ui.getDecisionFrom(), ui.getDecisionTo(), ui.getStatus(), currentLocalAuthUuid,
+                    groups);
         }
+        query.where(predicates.toArray(new Predicate[predicates.size()]))
+                .orderBy(builder.desc(acteRoot.get("creation")), builder.desc(acteRoot.get("uuid")));
+        return entityManager.createQuery(query);
     }
 
-    private List<Acte> getActesFromUuidsOrSearch(ActeUuidsAndSearchUI ui) {
-        return ui.getUuids().size() > 0 ? ui.getUuids().stream().map(this::getByUuid).collect(Collectors.toList())
-                : getAllWithQuery(ui.getMultifield(), ui.getNumber(), ui.getObjet(), ui.getNature(),
-                ui.getDecisionFrom(), ui.getDecisionTo(), ui.getStatus(), 1, 0, "", "", null, null);
+    private String translate(JsonNode translations, Enum<?> value) {
+        if (value == null)
+            return null;
+        JsonNode translation = translations.get(value.name());
+        return translation != null ? translation.asText() : value.name();
     }
 
-    public List<Acte> getAckedActeFromUuidsOrSearch(ActeUuidsAndSearchUI acteUuidsAndSearchUI) {
-        List<Acte> actes = getActesFromUuidsOrSearch(acteUuidsAndSearchUI).stream().filter(this::isActeACK)
+    public List<String> getTranslatedCSVFields(List<String> fields, String language) {
+        if (StringUtils.isBlank(language))
+            language = "fr";
+        JsonNode translations = localesService.getJsonNode(language, "acte").path("acte").path("fields");
+        return fields.stream()
+                .map(field -> translations.has(field) ? translations.get(field).asText() : field)
                 .collect(Collectors.toList());
-        if (actes.isEmpty())
+    }
+
+    /**
+     * Acked actes of the selection, for the stamped exports and the ACK PDFs. Their uuids are read by pages of
+     * {@code application.export.pageSize} and each acte is loaded when it is reached, then detached, so the memory
+     * used does not depend on the size of the selection.
+     *
+     * @throws NoContentException if there is none
+     */
+    public Iterator<Acte> getAckedActesFromUuidsOrSearch(ActeUuidsAndSearchUI ui) {
+        List<String> uuids = ui.getUuids();
+        BiFunction<Integer, Integer, List<String>> pages = uuids.size() > 0
+                ? (offset, limit) -> uuids.subList(Math.min(offset, uuids.size()),
+                        Math.min(offset + limit, uuids.size()))
+                : (offset, limit) -> getAckedActeUuidsWithQuery(ui, limit, offset);
+        Iterator<Acte> actes = new PagedIterator<>(pages, this::getDetachedAckedActe, exportPageSize);
+        // reads up to the first acte only
+        if (!actes.hasNext())
             throw new NoContentException();
         return actes;
     }
 
-    public byte[] getMergedStampedAttachments(ActeUuidsAndSearchUI acteUuidsAndSearchUI,
-            LocalAuthority currentLocalAuthority) throws IOException, DocumentException {
-        List<Acte> actes = getAckedActeFromUuidsOrSearch(acteUuidsAndSearchUI);
-        List<byte[]> stampPdfs = new ArrayList<>();
-        for (Acte acte : actes) {
-            stampPdfs.add(getStampedActe(acte, null, null, currentLocalAuthority));
-        }
-        return pdfGeneratorUtil.mergePDFs(stampPdfs);
+    private List<String> getAckedActeUuidsWithQuery(ActeUuidsAndSearchUI ui, int limit, int offset) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<String> query = builder.createQuery(String.class);
+        Root<Acte> acteRoot = query.from(Acte.class);
+
+        List<Predicate> predicates = getAllQueryPredicates(builder, acteRoot, ui.getMultifield(), ui.getNumber(),
+                ui.getObjet(), ui.getNature(), ui.getDecisionFrom(), ui.getDecisionTo(), ui.getStatus(), null, null);
+        predicates.add(getAckedPredicate(builder, acteRoot));
+        query.select(acteRoot.get("uuid"))
+                .where(predicates.toArray(new Predicate[predicates.size()]))
+                .orderBy(getOrders(builder, acteRoot, ui.getMultifield(), "", ""));
+
+        return entityManager.createQuery(query).setFirstResult(offset).setMaxResults(limit).getResultList();
     }
 
-    public byte[] getZipedStampedAttachments(ActeUuidsAndSearchUI acteUuidsAndSearchUI,
-            LocalAuthority currentLocalAuthority) throws IOException, DocumentException {
-        List<Acte> actes = getAckedActeFromUuidsOrSearch(acteUuidsAndSearchUI);
-        Map<String, byte[]> pdfs = new HashMap<>();
-        for (Acte acte : actes) {
-            pdfs.put(acte.getActeAttachment().getFilename(), getStampedActe(acte, null, null, currentLocalAuthority));
-        }
-        return zipGeneratorUtil.createZip(pdfs);
+    // null if the acte can't be exported, it is skipped
+    private Acte getDetachedAckedActe(String uuid) {
+        Acte acte = acteRepository.findByUuidAndDraftNull(uuid).orElse(null);
+        if (acte == null)
+            return null;
+        // the request persistence context would otherwise keep every exported acte
+        entityManager.detach(acte);
+        return isActeACK(acte) ? acte : null;
     }
 
     public byte[] getACKPdfs(ActeUuidsAndSearchUI acteUuidsAndSearchUI, String language)
             throws IOException, DocumentException {
-        ITextRenderer renderer = new ITextRenderer();
-        List<Acte> actes = getActesFromUuidsOrSearch(acteUuidsAndSearchUI);
         ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writeACKPdfs(getAckedActesFromUuidsOrSearch(acteUuidsAndSearchUI), language, os);
+        return os.toByteArray();
+    }
 
-        for (Acte acte : actes) {
-            if (acte.getLastHistoryStatus().equals(StatusType.ACK_RECEIVED)) {
-                Map<String, String> mapString = extractDataFromActe(acte);
+    /**
+     * Writes the ACK PDFs of the actes one after the other, the document is never held in memory.
+     */
+    public void writeACKPdfs(Iterator<Acte> actes, String language, OutputStream os) throws DocumentException {
+        ITextRenderer renderer = new ITextRenderer();
 
-                Map<String, String> data = getTranslatedFieldsAndValues(mapString, language);
-                String content = pdfGeneratorUtil.getContentPage("acte", data);
+        while (actes.hasNext()) {
+            Acte acte = actes.next();
+            Map<String, String> mapString = extractDataFromActe(acte);
 
-                renderer.setDocumentFromString(content);
-                renderer.layout();
+            Map<String, String> data = getTranslatedFieldsAndValues(mapString, language);
+            String content = pdfGeneratorUtil.getContentPage("acte", data);
 
-                //none unique page need to write in NextDocument
-                if (renderer.getWriter() != null && renderer.getWriter().getCurrentPageNumber() > 0) {
-                    renderer.writeNextDocument();
-                }
+            renderer.setDocumentFromString(content);
+            renderer.layout();
 
-                // init document
-                if (renderer.getWriter() == null) {
-                    renderer.createPDF(os, false);
-                }
+            //none unique page need to write in NextDocument
+            if (renderer.getWriter() != null && renderer.getWriter().getCurrentPageNumber() > 0) {
+                renderer.writeNextDocument();
             }
 
+            // init document
+            if (renderer.getWriter() == null) {
+                renderer.createPDF(os, false);
+            }
         }
-
-
-        try {
-            renderer.finishPDF();
-            return os.toByteArray();
-        } catch (Exception e) {
-            throw new NoContentException();
-        } finally {
-            os.close();
-        }
-
+        renderer.finishPDF();
     }
 
-
-
     private Map<String, String> extractDataFromActe(Acte acte){
         String shortEuropeanDatePattern = "dd/MM/yyyy";
         DateTimeFormatter shortEuropeanDateFormatter = DateTimeFormatter.ofPattern(shortEuropeanDatePattern);
@@ -743,7 +809,6 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
     private Map<String, String> getTranslatedFieldsAndValues(Map<String, String> map, String language) {
         if (StringUtils.isBlank(language))
             language = "fr";
-        ClassPathResource classPathResource = new ClassPathResource("/locales/" + language + "/acte.json");
 
         // First part of the map with mandatory ("entry_value", value)
         Map<String, String> data = new HashMap<String, String>() {
@@ -755,8 +820,7 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
         };
         try {
             // If we can translate we add ("entry_fieldName", translate(entry_fieldName))
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(classPathResource.getInputStream());
+            JsonNode jsonNode = localesService.getJsonNode(language, "acte");
             for (Map.Entry<String, String> entry : map.entrySet()) {
                 // TODO: Hack, fix me !
                 if (entry.getKey().equals("status"))
@@ -786,40 +850,22 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
 
     public byte[] getStampedActe(Acte acte, Integer x, Integer y, LocalAuthority localAuthority)
             throws IOException, DocumentException {
-        PdfReader pdfReader = new PdfReader(acte.getActeAttachment().getFile());
-        if (x == null || y == null) {
-            if(pdfGeneratorUtil.pdfIsLandscape(pdfReader)){
-                //landscape case
-                y = localAuthority.getStampPosition().getX();
-                x = localAuthority.getStampPosition().getY();
-            }else{
-                //portrait case
-                x = localAuthority.getStampPosition().getX();
-                y = localAuthority.getStampPosition().getY();
-            }
-        }
-        ActeHistory ackHistory = acte.getActeHistories().stream()
-                .filter(acteHistory -> acteHistory.getStatus().equals(StatusType.ACK_RECEIVED)).findFirst().get();
-        return pdfGeneratorUtil.stampPDF(acte.getMiatId(),
-                ackHistory.getDate().format(DateTimeFormatter.ofPattern("dd/MM/YYYY")),
-                acte.getActeAttachment().getFile(), x, y);
+        return pdfRenditionService.getStampedActe(acte, getAckHistory(acte).getDate(), x, y, localAuthority);
     }
 
     public byte[] getStampedAnnexe(Acte acte, Attachment attachment, Integer x, Integer y,
             LocalAuthority localAuthority) throws IOException, DocumentException {
-        if (x == null || y == null) {
-            x = localAuthority.getStampPosition().getX();
-            y = localAuthority.getStampPosition().getY();
-        }
-        ActeHistory ackHistory = acte.getActeHistories().stream()
-                .filter(acteHistory -> acteHistory.getStatus().equals(StatusType.ACK_RECEIVED)).findFirst().get();
-        return pdfGeneratorUtil.stampPDF(acte.getMiatId(),
-                ackHistory.getDate().format(DateTimeFormatter.ofPattern("dd/MM/YYYY")), attachment.getFile(), x, y);
+        return pdfRenditionService.getStampedAnnexe(acte, attachment, getAckHistory(acte).getDate(), x, y,
+                localAuthority);
     }
 
     public Thumbnail getActeAttachmentThumbnail(String uuid) throws IOException {
-        byte[] pdf = getByUuid(uuid).getActeAttachment().getFile();
-        return pdfGeneratorUtil.getPDFThumbnail(pdf);
+        return pdfRenditionService.getThumbnail(getByUuid(uuid).getActeAttachment());
+    }
+
+    private ActeHistory getAckHistory(Acte acte) {
+        return acte.getActeHistories().stream()
+                .filter(acteHistory -> acteHistory.getStatus().equals(StatusType.ACK_RECEIVED)).findFirst().get();
     }
 
     public Optional<Acte> getFirstActeCreatedForNature(ActeNature nature, String uuid, Boolean isPublicWebsite) {
@@ -841,7 +887,7 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
         try {
             LOGGER.info((force ? "FORCING" : "Asking") + " a new classification for localAuthority {}",
                     localAuthority.getUuid());
-            return send(attachment.getFile(), attachment.getFilename());
+            return send(attachment.getContent(), attachment.getFilename());
         } catch (Exception e) {
             LOGGER.error("Error while asking a new classification for localAuthority {}: {}", localAuthority.getUuid(),
                     e);
@@ -920,16 +966,7 @@ public class ActeService implements ApplicationListener<ActeHistoryEvent> {
 
     @Override
     public void onApplicationEvent(@NotNull ActeHistoryEvent event) {
-        ActeHistory history = event.getActeHistory();
-        Acte acte = getByUuid(history.getActeUuid());
-        acte.getActeHistories().add(history);
-        if (history.getStatus() != StatusType.NOTIFICATION_SENT && history.getStatus() != StatusType.GROUP_NOTIFICATION_SENT) {
-            acte.setLastHistoryStatus(history.getStatus());
-            acte.setLastHistoryDate(history.getDate());
-            acte.setLastHistoryFlux(history.getFlux());
-        }
-
-        acteRepository.save(acte);
+        acteHistoryRepository.append(event.getActeHistory());
     }
 
 }
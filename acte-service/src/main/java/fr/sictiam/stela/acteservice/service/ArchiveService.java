@@ -6,6 +6,7 @@ import fr.sictiam.signature.utils.PadesUtils;
 import fr.sictiam.signature.utils.SignatureResult;
 import fr.sictiam.stela.acteservice.dao.ActeRepository;
 import fr.sictiam.stela.acteservice.dao.AdminRepository;
+import fr.sictiam.stela.acteservice.dao.AttachmentRepository;
 import fr.sictiam.stela.acteservice.dao.EnveloppeCounterRepository;
 import fr.sictiam.stela.acteservice.model.Acte;
 import fr.sictiam.stela.acteservice.model.ActeHistory;
@@ -18,47 +19,45 @@ import fr.sictiam.stela.acteservice.model.StatusType;
 import fr.sictiam.stela.acteservice.model.event.ActeHistoryEvent;
 import fr.sictiam.stela.acteservice.model.xml.*;
 import fr.sictiam.stela.acteservice.service.exceptions.ActeNotFoundException;
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import fr.sictiam.stela.acteservice.service.util.ClamavScanner;
+import fr.sictiam.stela.acteservice.service.util.TarGzArchiveBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationListener;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
 import org.springframework.stereotype.Service;
-import org.springframework.util.FileCopyUtils;
 import org.springframework.util.StringUtils;
-import xyz.capybara.clamav.ClamavClient;
-import xyz.capybara.clamav.commands.scan.result.ScanResult;
-import xyz.capybara.clamav.commands.scan.result.ScanResult.OK;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.validation.constraints.NotNull;
 import javax.xml.bind.JAXBElement;
 import javax.xml.transform.stream.StreamResult;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.cert.CertificateException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -79,6 +78,21 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
     @Value("${application.clamav.host}")
     private String clamavHost;
 
+    @Value("${application.clamav.maxConnections:4}")
+    private int clamavMaxConnections;
+
+    @Value("${application.clamav.timeout:60000}")
+    private int clamavTimeout;
+
+    @Value("${application.clamav.cacheTtl:86400000}")
+    private long clamavCacheTtl;
+
+    @Value("${application.clamav.cacheSize:10000}")
+    private int clamavCacheSize;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
     private final static String trigraph = "SIC";
 
     private final ActeRepository acteRepository;
@@ -87,53 +101,61 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
     private final EnveloppeCounterRepository enveloppeCounterRepository;
     private final AdminRepository adminRepository;
     private final LocalesService localesService;
-    private ClamavClient clamavClient;
+    private final AttachmentRepository attachmentRepository;
+    private final StorageService storageService;
+    private ClamavScanner clamavScanner;
 
     public ArchiveService(ActeRepository acteRepository, Jaxb2Marshaller jaxb2Marshaller,
             ApplicationEventPublisher applicationEventPublisher, EnveloppeCounterRepository enveloppeCounterRepository,
-            AdminRepository adminRepository, LocalesService localesService) {
+            AdminRepository adminRepository, LocalesService localesService, AttachmentRepository attachmentRepository,
+            StorageService storageService) {
         this.acteRepository = acteRepository;
         this.jaxb2Marshaller = jaxb2Marshaller;
         this.applicationEventPublisher = applicationEventPublisher;
         this.enveloppeCounterRepository = enveloppeCounterRepository;
         this.adminRepository = adminRepository;
         this.localesService = localesService;
+        this.attachmentRepository = attachmentRepository;
+        this.storageService = storageService;
     }
 
     @PostConstruct
     private void init() {
-        clamavClient = new ClamavClient(clamavHost, clamavPort);
+        clamavScanner = new ClamavScanner(clamavHost, clamavPort, clamavMaxConnections, clamavTimeout,
+                clamavCacheTtl, clamavCacheSize, meterRegistry != null ? meterRegistry : Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    private void clean() {
+        clamavScanner.shutdown();
+    }
+
+    private StatusType scanAttachments(List<Attachment> attachments) {
+        // streamed from the storage, the contents are neither loaded nor kept on the attachments
+        List<ClamavScanner.Content> contents = attachments.stream()
+                .map(attachment -> (ClamavScanner.Content) () -> storageService.getAttachmentContentStream(attachment))
+                .collect(Collectors.toList());
+        try {
+            return clamavScanner.isAnyInfected(contents) ? StatusType.ANTIVIRUS_KO : StatusType.ANTIVIRUS_OK;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Virus scan failed: " + e.getMessage(), e);
+        }
     }
 
     private void checkAntivirus(String acteUuid) {
 
         Acte acte = acteRepository.findByUuidAndDraftNull(acteUuid).orElseThrow(ActeNotFoundException::new);
-        Attachment mainAttachment = acte.getActeAttachment();
-        ScanResult mainResult = clamavClient.scan(new ByteArrayInputStream(mainAttachment.getFile()));
-        StatusType status = StatusType.ANTIVIRUS_OK;
-        if (!mainResult.equals(OK.INSTANCE)) {
-            status = StatusType.ANTIVIRUS_KO;
-        }
-        for (Attachment attachment : acte.getAnnexes()) {
-            ScanResult attachmentResult = clamavClient.scan(new ByteArrayInputStream(attachment.getFile()));
-            if (!attachmentResult.equals(OK.INSTANCE)) {
-                status = StatusType.ANTIVIRUS_KO;
-            }
-        }
+        List<Attachment> attachments = new ArrayList<>();
+        attachments.add(acte.getActeAttachment());
+        attachments.addAll(acte.getAnnexes());
+        StatusType status = scanAttachments(attachments);
         applicationEventPublisher
                 .publishEvent(new ActeHistoryEvent(this, new ActeHistory(acteUuid, status, Flux.TRANSMISSION_ACTE)));
     }
 
     private void checkEventAntivirus(ActeHistoryEvent event) {
 
-        StatusType status = StatusType.ANTIVIRUS_OK;
-
-        for (Attachment attachment : event.getAttachments()) {
-            ScanResult attachmentResult = clamavClient.scan(new ByteArrayInputStream(attachment.getFile()));
-            if (!attachmentResult.equals(OK.INSTANCE)) {
-                status = StatusType.ANTIVIRUS_KO;
-            }
-        }
+        StatusType status = scanAttachments(event.getAttachments());
         applicationEventPublisher.publishEvent(new ActeHistoryEvent(this,
                 new ActeHistory(event.getActeHistory().getActeUuid(), status, event.getActeHistory().getFlux()),
                 event.getAttachments()));
@@ -142,7 +164,8 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
     private List<String> checkAttachmentSignature(Attachment attachment) throws CertificateException, IOException {
         List<String> messages = new ArrayList<>();
         if (FilenameUtils.isExtension(attachment.getFilename(), "pdf")) {
-            DetailedReport report = PadesUtils.validatePAdESSignature(attachment.getFile());
+            DetailedReport report = PadesUtils.validatePAdESSignature(
+                    storageService.getAttachmentContent(attachment));
             if (PadesUtils.isSigned(report)) {
                 List<SignatureResult> signatureResults = PadesUtils.getSignatureResults(report);
                 signatureResults.forEach(signatureResult -> {
@@ -222,7 +245,7 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
                             : "CO_DE",
                     baseFilename, 1, StringUtils.getFilenameExtension(acte.getActeAttachment().getFilename()));
 
-            Map<String, byte[]> annexes = new HashMap<>();
+            Map<String, Attachment> annexes = new LinkedHashMap<>();
             acte.getAnnexes().forEach(attachment -> {
                 // sequence 1 is taken by the Acte file, so we start at two
                 int sequence = annexes.size() + 2;
@@ -230,7 +253,7 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
                         !StringUtils.isEmpty(attachment.getAttachmentTypeCode()) ? attachment.getAttachmentTypeCode()
                                 : "CO_DE",
                         baseFilename, sequence, StringUtils.getFilenameExtension(attachment.getFilename()));
-                annexes.put(tempFilename, attachment.getFile());
+                annexes.put(tempFilename, attachment);
             });
 
             String messageFilename = String.format("%s_%d.xml", baseFilename, 0);
@@ -245,11 +268,14 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
 
             String archiveName = getArchiveName(enveloppeName);
 
-            ByteArrayOutputStream baos = createArchiveAndCompress(enveloppeName, enveloppeContent, messageFilename,
-                    messageContent, acte.getActeAttachment().getFile(), acteFilename, annexes);
+            Map<String, Attachment> attachments = new LinkedHashMap<>();
+            attachments.put(acteFilename, acte.getActeAttachment());
+            attachments.putAll(annexes);
 
             ActeHistory acteHistory = new ActeHistory(acte.getUuid(), StatusType.ARCHIVE_CREATED, LocalDateTime.now(),
-                    baos.toByteArray(), archiveName, flux);
+                    storeArchive(archiveName, enveloppeName, enveloppeContent, messageFilename, messageContent,
+                            attachments),
+                    flux);
 
             // save the MIAT id for easier retrieving later on (especially when receiving responses from MIAT)
             acte.setMiatId(generateMiatId(acte));
@@ -309,11 +335,10 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
                     acte.getLocalAuthority(), messageFilename);
             String enveloppeContent = marshalToString(donneesEnveloppeCLMISILL1);
 
-            ByteArrayOutputStream baos = createArchiveAndCompress(enveloppeName, enveloppeContent, messageFilename,
-                    sw.toString(), null, null, null);
-
             ActeHistory acteHistory = new ActeHistory(acte.getUuid(), StatusType.ARCHIVE_CREATED, LocalDateTime.now(),
-                    baos.toByteArray(), archiveName, flux);
+                    storeArchive(archiveName, enveloppeName, enveloppeContent, messageFilename, sw.toString(),
+                            Collections.emptyMap()),
+                    flux);
 
             applicationEventPublisher.publishEvent(new ActeHistoryEvent(this, acteHistory));
 
@@ -361,11 +386,10 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
 
             String archiveName = getArchiveName(enveloppeName);
 
-            ByteArrayOutputStream baos = createArchiveAndCompress(enveloppeName, enveloppeContent, messageFilename,
-                    messageContent, attachment.getFile(), repFilename);
-
             ActeHistory acteHistoryCreated = new ActeHistory(acte.getUuid(), StatusType.ARCHIVE_CREATED,
-                    LocalDateTime.now(), baos.toByteArray(), archiveName, flux);
+                    LocalDateTime.now(), storeArchive(archiveName, enveloppeName, enveloppeContent, messageFilename,
+                            messageContent, Collections.singletonMap(repFilename, attachment)),
+                    flux);
 
             applicationEventPublisher.publishEvent(new ActeHistoryEvent(this, acteHistoryCreated));
 
@@ -401,8 +425,12 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
                     messageFilename);
             String enveloppeContent = marshalToString(donneesEnveloppeCLMISILL1);
 
-            ByteArrayOutputStream baos = createArchiveAndCompress(enveloppeName, enveloppeContent, messageFilename,
-                    sw.toString(), null, null, null);
+            // small message sent right away, no need to go through the storage
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (TarGzArchiveBuilder archiveBuilder = new TarGzArchiveBuilder(baos)) {
+                writeArchive(archiveBuilder, enveloppeName, enveloppeContent, messageFilename, sw.toString(),
+                        Collections.emptyMap());
+            }
             Attachment attachment = new Attachment(baos.toByteArray(), archiveName, baos.size());
             return attachment;
         } catch (IOException e) {
@@ -420,12 +448,12 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
             String baseFilename = generateBaseFilename(acte, flux);
 
             String messageFilename = String.format("%s_%d.xml", baseFilename, 0);
-            Map<String, byte[]> annexes = new HashMap<>();
+            Map<String, Attachment> annexes = new LinkedHashMap<>();
             pieces.forEach(attachment -> {
                 int sequence = annexes.size() + 1;
                 String tempFilename = String.format("%s_%d.%s", baseFilename, sequence,
                         StringUtils.getFilenameExtension(attachment.getFilename()));
-                annexes.put(tempFilename, attachment.getFile());
+                annexes.put(tempFilename, attachment);
             });
             PieceComplementaire reponse = generatePieceComplementaire(acte, annexes.keySet());
             StringWriter sw = new StringWriter();
@@ -440,11 +468,10 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
 
             String archiveName = getArchiveName(enveloppeName);
 
-            ByteArrayOutputStream baos = createArchiveAndCompress(enveloppeName, enveloppeContent, messageFilename,
-                    messageContent, null, null, annexes);
-
             ActeHistory acteHistoryCreated = new ActeHistory(acte.getUuid(), StatusType.ARCHIVE_CREATED,
-                    LocalDateTime.now(), baos.toByteArray(), archiveName, flux);
+                    LocalDateTime.now(), storeArchive(archiveName, enveloppeName, enveloppeContent, messageFilename,
+                            messageContent, annexes),
+                    flux);
 
             applicationEventPublisher.publishEvent(new ActeHistoryEvent(this, acteHistoryCreated));
 
@@ -524,16 +551,46 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
         return donneesCourrierPref;
     }
 
+    /**
+     * Stream the archive to a temporary file, then store it and persist its attachment, so the following histories
+     * and the pending message all reference the same attachment. The attachment size is the compressed size.
+     */
+    private Attachment storeArchive(String archiveName, String enveloppeName, String enveloppeContent,
+            String messageFilename, String messageContent, Map<String, Attachment> attachments) throws IOException {
+        Path archive = Files.createTempFile("stela-archive-", ".tar.gz");
+        try {
+            try (TarGzArchiveBuilder archiveBuilder = new TarGzArchiveBuilder(Files.newOutputStream(archive))) {
+                writeArchive(archiveBuilder, enveloppeName, enveloppeContent, messageFilename, messageContent,
+                        attachments);
+            }
+            Attachment attachment = storageService.createAttachment(archiveName, archive);
+            return attachmentRepository.save(attachment);
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    private void writeArchive(TarGzArchiveBuilder archiveBuilder, String enveloppeName, String enveloppeContent,
+            String messageFilename, String messageContent, Map<String, Attachment> attachments) throws IOException {
+        archiveBuilder.addEntry(enveloppeName, enveloppeContent.getBytes());
+        archiveBuilder.addEntry(messageFilename, messageContent.getBytes());
+        for (Map.Entry<String, Attachment> entry : attachments.entrySet()) {
+            archiveBuilder.addEntry(entry.getKey(), storageService.getAttachmentContentStream(entry.getValue()),
+                    storageService.getAttachmentContentSize(entry.getValue()));
+        }
+    }
+
     private void checkArchiveSize(ActeHistory acteHistory) {
-        LOGGER.debug("Archive size is {} (max allowed : {})", acteHistory.getFile().length, archiveMaxSize);
-        if (acteHistory.getFile().length > archiveMaxSize) {
+        long archiveSize = acteHistory.getAttachment().getSize();
+        LOGGER.debug("Archive size is {} (max allowed : {})", archiveSize, archiveMaxSize);
+        if (archiveSize > archiveMaxSize) {
             // TODO need a specific message or is it enough with the status type ?
             ActeHistory newActeHistory = new ActeHistory(acteHistory.getActeUuid(), StatusType.ARCHIVE_TOO_LARGE,
                     acteHistory.getFlux());
             applicationEventPublisher.publishEvent(new ActeHistoryEvent(this, newActeHistory));
         } else {
             ActeHistory newActeHistory = new ActeHistory(acteHistory.getActeUuid(), StatusType.ARCHIVE_SIZE_CHECKED,
-                    acteHistory.getDate(), acteHistory.getFile(), acteHistory.getFileName(), acteHistory.getFlux());
+                    acteHistory.getDate(), acteHistory.getAttachment(), acteHistory.getFlux());
             applicationEventPublisher.publishEvent(new ActeHistoryEvent(this, newActeHistory));
         }
     }
@@ -672,58 +729,6 @@ public class ArchiveService implements ApplicationListener<ActeHistoryEvent> {
         return sw.toString();
     }
 
-    private ByteArrayOutputStream createArchiveAndCompress(String enveloppeName, String enveloppeContent,
-            String messageFilename, String messageContent, byte[] acteFile, String acteFilename) throws IOException {
-        return createArchiveAndCompress(enveloppeName, enveloppeContent, messageFilename, messageContent, acteFile,
-                acteFilename, null);
-    }
-
-    private ByteArrayOutputStream createArchiveAndCompress(String enveloppeName, String enveloppeContent,
-            String messageFilename, String messageContent, byte[] acteFile, String acteFilename,
-            Map<String, byte[]> annexes) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        TarArchiveOutputStream taos = new TarArchiveOutputStream(baos);
-
-        addEntry(enveloppeName, enveloppeContent.getBytes(), taos);
-        addEntry(messageFilename, messageContent.getBytes(), taos);
-        if (acteFile != null)
-            addEntry(acteFilename, acteFile, taos);
-        if (annexes != null) {
-            for (String annexeName : annexes.keySet()) {
-                addEntry(annexeName, annexes.get(annexeName), taos);
-            }
-        }
-
-        taos.close();
-        baos.close();
-
-        return compress(baos);
-    }
-
-    private void addEntry(String entryName, byte[] content, TarArchiveOutputStream taos) throws IOException {
-        File file = new File(entryName);
-        FileCopyUtils.copy(content, file);
-        ArchiveEntry archiveEntry = new TarArchiveEntry(file, entryName);
-        taos.putArchiveEntry(archiveEntry);
-        IOUtils.copy(new FileInputStream(file), taos);
-        taos.closeArchiveEntry();
-        file.delete();
-    }
-
-    private ByteArrayOutputStream compress(ByteArrayOutputStream baos) throws IOException {
-        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-        ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
-        GzipCompressorOutputStream gcos = new GzipCompressorOutputStream(baos2);
-        final byte[] buffer = new byte[2048];
-        int n;
-        while (-1 != (n = bais.read(buffer))) {
-            gcos.write(buffer, 0, n);
-        }
-        gcos.close();
-        bais.close();
-        return baos2;
-    }
-
     private String getFormattedDate(LocalDate date) {
         return date.format(DateTimeFormatter.ofPattern("YYYYMMdd"));
     }
@@ -2,12 +2,14 @@ package fr.sictiam.stela.acteservice.service;
 
 import fr.sictiam.stela.acteservice.dao.ActeHistoryRepository;
 import fr.sictiam.stela.acteservice.dao.ActeRepository;
+import fr.sictiam.stela.acteservice.dao.ArchiveRepository;
 import fr.sictiam.stela.acteservice.dao.AttachmentRepository;
 import fr.sictiam.stela.acteservice.model.Acte;
 import fr.sictiam.stela.acteservice.model.ActeHistory;
 import fr.sictiam.stela.acteservice.model.Archive;
 import fr.sictiam.stela.acteservice.model.ArchiveSettings;
 import fr.sictiam.stela.acteservice.model.ArchiveStatus;
+import fr.sictiam.stela.acteservice.model.ArchiveStep;
 import fr.sictiam.stela.acteservice.model.Attachment;
 import fr.sictiam.stela.acteservice.model.LocalAuthority;
 import fr.sictiam.stela.acteservice.model.StatusType;
@@ -15,23 +17,40 @@ import fr.sictiam.stela.acteservice.model.asalae.AsalaeDocument;
 import fr.sictiam.stela.acteservice.model.asalae.AsalaeResultForm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+/**
+ * Sends the old enough actes to the SAE through Pastell, and follows their archiving.
+ * <p>
+ * The actes to archive are selected by pages of uuids and archived on a pool of {@code application.archiver.workers}
+ * threads. Each step of an archive is saved as it is done: an archive interrupted by an error or a restart goes on
+ * where it stopped on the next run, on the same Pastell document.
+ */
 @Service
 public class ArchiverService {
 
@@ -40,17 +59,46 @@ public class ArchiverService {
     private final ActeRepository acteRepository;
     private final ActeHistoryRepository acteHistoryRepository;
     private final AttachmentRepository attachmentRepository;
+    private final ArchiveRepository archiveRepository;
     private final LocalAuthorityService localAuthorityService;
     private final RestTemplate restTemplate;
+    private final StorageService storageService;
+    private final PdfRenditionService pdfRenditionService;
+
+    @Value("${application.archiver.workers:4}")
+    private int workers;
+
+    @Value("${application.archiver.pageSize:100}")
+    private int pageSize;
+
+    private ThreadPoolTaskExecutor executor;
 
     public ArchiverService(ActeRepository acteRepository, ActeHistoryRepository acteHistoryRepository,
-            AttachmentRepository attachmentRepository, LocalAuthorityService localAuthorityService,
-            RestTemplate restTemplate) {
+            AttachmentRepository attachmentRepository, ArchiveRepository archiveRepository,
+            LocalAuthorityService localAuthorityService, RestTemplate restTemplate, StorageService storageService,
+            PdfRenditionService pdfRenditionService) {
         this.acteRepository = acteRepository;
         this.acteHistoryRepository = acteHistoryRepository;
         this.attachmentRepository = attachmentRepository;
+        this.archiveRepository = archiveRepository;
         this.localAuthorityService = localAuthorityService;
         this.restTemplate = restTemplate;
+        this.storageService = storageService;
+        this.pdfRenditionService = pdfRenditionService;
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setThreadNamePrefix("archiver-");
+        executor.initialize();
+    }
+
+    @PreDestroy
+    public void clean() {
+        executor.shutdown();
     }
 
     public void archiveActesTask() {
@@ -59,20 +107,20 @@ public class ArchiverService {
         localAuthorities.forEach(localAuthority -> {
             if (localAuthority.getArchiveSettings() != null &&
                     localAuthority.getArchiveSettings().isArchiveActivated()) {
+                ArchiveSettings archiveSettings = localAuthority.getArchiveSettings();
                 LOGGER.info("Retrieving actes for local authority {} ({})", localAuthority.getName(), localAuthority.getUuid());
-                // FIXME : this is absolutely inefficient
-                List<Acte> actes = acteRepository.findAllByDraftNullAndLocalAuthorityUuidAndArchiveNull(
+                int resumed = forEachPage(
+                        afterUuid -> acteRepository.findUuidsByArchiveStatus(localAuthority.getUuid(),
+                                ArchiveStatus.IN_PROGRESS, afterUuid, pageSize),
+                        acte -> archiveActe(acte, archiveSettings));
+                LocalDateTime lastHistoryBefore =
+                        LocalDateTime.now().minusDays(archiveSettings.getDaysBeforeArchiving());
+                int archived = forEachPage(
+                        afterUuid -> acteRepository.findUuidsToArchive(localAuthority.getUuid(), lastHistoryBefore,
+                                afterUuid, pageSize),
+                        acte -> archiveActe(acte, archiveSettings));
+                LOGGER.info("Resumed {} archives and started {} for local authority {}", resumed, archived,
                         localAuthority.getUuid());
-                LOGGER.info("Got {} actes not archived", actes.size());
-                actes.forEach(acte -> {
-                    if (acte.getActeHistories().last().getDate()
-                            .isBefore(LocalDateTime.now().minusDays(localAuthority.getArchiveSettings().getDaysBeforeArchiving()))) {
-
-                        archiveActe(acte, localAuthority.getArchiveSettings());
-                    } else {
-                        LOGGER.info("Acte {} not old enough", acte.getUuid());
-                    }
-                });
             } else {
                 LOGGER.info("Archiving is not activated for local authority {} ({})", localAuthority.getName(), localAuthority.getUuid());
             }
@@ -86,71 +134,135 @@ public class ArchiverService {
         localAuthorities.forEach(localAuthority -> {
             if (localAuthority.getArchiveSettings() != null &&
                     localAuthority.getArchiveSettings().isArchiveActivated()) {
-                List<Acte> actes = acteRepository.findAllByDraftNullAndLocalAuthorityUuidAndArchive_Status(
-                        localAuthority.getUuid(), ArchiveStatus.SENT);
-                actes.forEach(acte -> checkStatus(acte, localAuthority.getArchiveSettings()));
+                forEachPage(afterUuid -> acteRepository.findUuidsByArchiveStatus(localAuthority.getUuid(),
+                        ArchiveStatus.SENT, afterUuid, pageSize),
+                        acte -> checkStatus(acte, localAuthority.getArchiveSettings()));
             }
         });
         LOGGER.info("End checkArchivesStatusTask job");
     }
 
+    /**
+     * Runs the action on the actes of each page on the pool, the next page being read once they are all done. An
+     * error on an acte is logged and does not stop the others.
+     *
+     * @return the number of actes processed
+     */
+    private int forEachPage(Function<String, List<String>> page, Consumer<Acte> action) {
+        int count = 0;
+        String afterUuid = "";
+        List<String> uuids;
+        do {
+            uuids = page.apply(afterUuid);
+            List<Future<?>> tasks = uuids.stream()
+                    .map(uuid -> executor.submit(() -> {
+                        try {
+                            acteRepository.findByUuid(uuid).ifPresent(action);
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Archiving of acte {} failed: {}", uuid, e.getMessage());
+                        }
+                    }))
+                    .collect(Collectors.toList());
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return count;
+                } catch (ExecutionException e) {
+                    LOGGER.error("Archiving task failed: {}", e.getMessage());
+                }
+            }
+            count += uuids.size();
+            if (!uuids.isEmpty())
+                afterUuid = uuids.get(uuids.size() - 1);
+        } while (uuids.size() == pageSize);
+        return count;
+    }
+
     public void archiveActe(Acte acte, ArchiveSettings archiveSettings) {
         LOGGER.info("Archiving acte {}", acte.getUuid());
         Optional<ActeHistory> historyAR = acte.getActeHistories().stream()
                 .filter(acteHistory -> acteHistory.getStatus().equals(StatusType.ACK_RECEIVED))
                 .findFirst();
 
-        if (!historyAR.isPresent() || historyAR.get().getFile() == null) {
+        if (!historyAR.isPresent() || historyAR.get().getAttachment() == null) {
             LOGGER.info("No AR found for acte {}", acte.getUuid());
             return;
         }
 
-        LOGGER.info("Creating new Pastell document");
-        AsalaeDocument asalaeDocument = createAsalaeDocument(archiveSettings);
-        LOGGER.info("Création: {}", asalaeDocument);
+        Archive archive = acte.getArchive();
+        AsalaeDocument asalaeDocument;
+        if (archive == null) {
+            LOGGER.info("Creating new Pastell document");
+            asalaeDocument = createAsalaeDocument(archiveSettings);
+            LOGGER.info("Création: {}", asalaeDocument);
+            archive = new Archive(asalaeDocument.getInfo().getId_d());
+            archive.setStatus(ArchiveStatus.IN_PROGRESS);
+            archive.setStep(ArchiveStep.DOCUMENT_CREATED);
+            archive = archiveRepository.save(archive);
+            acteRepository.setArchive(acte.getUuid(), archive);
+            acte.setArchive(archive);
+        } else if (archive.getStatus() != ArchiveStatus.IN_PROGRESS || archive.getStep() == null) {
+            LOGGER.info("Acte {} already has an archive {}", acte.getUuid(), archive.getStatus());
+            return;
+        } else {
+            LOGGER.info("Resuming archiving of acte {} after step {}", acte.getUuid(), archive.getStep());
+            asalaeDocument = getAsalaeDocument(archive.getAsalaeDocumentId(), archiveSettings);
+        }
 
-        LOGGER.info("Sending acte data to Pastell");
-        AsalaeResultForm updatedAsalaeResultForm = updateAsalaeDocument(asalaeDocument, acte, archiveSettings);
-        logAsalaeResultForm(updatedAsalaeResultForm);
+        if (archive.getStep().compareTo(ArchiveStep.DATA_SENT) < 0) {
+            LOGGER.info("Sending acte data to Pastell");
+            asalaeDocument = saveStep(archive, ArchiveStep.DATA_SENT,
+                    updateAsalaeDocument(asalaeDocument, acte, archiveSettings));
+        }
 
+        if (archive.getStep().compareTo(ArchiveStep.ACTE_FILE_SENT) < 0) {
+            LOGGER.info("Sending acte file to Pastell");
+            asalaeDocument = saveStep(archive, ArchiveStep.ACTE_FILE_SENT,
+                    updateFileAsalaeDocument(asalaeDocument, "arrete", acte.getActeAttachment().getFilename(),
+                            storageService.getAttachmentContent(acte.getActeAttachment()), archiveSettings,
+                            Optional.empty()));
+        }
 
-        LOGGER.info("Sending acte file to Pastell");
-        updatedAsalaeResultForm = updateFileAsalaeDocument(updatedAsalaeResultForm.getContent(), "arrete",
-                acte.getActeAttachment().getFilename(), acte.getActeAttachment().getFile(), archiveSettings,
-                Optional.empty());
-        logAsalaeResultForm(updatedAsalaeResultForm);
+        if (archive.getStep() == ArchiveStep.ACTE_FILE_SENT) {
+            // sorted so that a resumed archive sends the annexes left in the same order
+            List<Attachment> annexes = acte.getAnnexes().stream()
+                    .sorted(Comparator.comparing(Attachment::getUuid))
+                    .collect(Collectors.toList());
+            for (int i = archive.getAnnexesSent(); i < annexes.size(); i++) {
+                Attachment annexe = annexes.get(i);
+                LOGGER.info("Sending annexe file {} to Pastell", annexe.getFilename());
+                AsalaeResultForm resultForm = updateFileAsalaeDocument(asalaeDocument, "autre_document_attache",
+                        annexe.getFilename(), storageService.getAttachmentContent(annexe), archiveSettings,
+                        Optional.of(i));
+                archive.setAnnexesSent(i + 1);
+                asalaeDocument = saveStep(archive, ArchiveStep.ACTE_FILE_SENT, resultForm);
+            }
 
-        for (int i = 0; i < acte.getAnnexes().size(); i++) {
-            Attachment annexe = acte.getAnnexes().get(i);
-            LOGGER.info("Sending annexe file {} to Pastell", annexe.getFilename());
-            updatedAsalaeResultForm = updateFileAsalaeDocument(updatedAsalaeResultForm.getContent(), "autre_document_attache",
-                    annexe.getFilename(), annexe.getFile(), archiveSettings, Optional.of(i));
-            logAsalaeResultForm(updatedAsalaeResultForm);
+            LOGGER.info("Sending ACK file to Pastell");
+            asalaeDocument = saveStep(archive, ArchiveStep.ACK_FILE_SENT,
+                    updateFileAsalaeDocument(asalaeDocument, "aractes", historyAR.get().getFileName(),
+                            storageService.getAttachmentContent(historyAR.get().getAttachment()), archiveSettings,
+                            Optional.empty()));
         }
 
-        LOGGER.info("Sending ACK file to Pastell");
-        updatedAsalaeResultForm = updateFileAsalaeDocument(updatedAsalaeResultForm.getContent(), "aractes",
-                historyAR.get().getFileName(), historyAR.get().getFile(), archiveSettings, Optional.empty());
-        logAsalaeResultForm(updatedAsalaeResultForm);
-
         LOGGER.info("Archiving Pastell document to Asalae");
-        ResponseEntity<AsalaeResultForm> response = sendAction(updatedAsalaeResultForm.getContent(),
-                "send-archive", archiveSettings);
+        ResponseEntity<AsalaeResultForm> response = sendAction(asalaeDocument, "send-archive", archiveSettings);
 
         if (response == null) {
-            // TODO : should we revert the previously created documents in Asalae (I guess so) ?
-            LOGGER.error("Received an error when sending archive, aborting");
+            LOGGER.error("Received an error when sending archive, it will be sent again on the next run");
             return;
         }
 
-        updatedAsalaeResultForm = response.getBody();
+        AsalaeResultForm updatedAsalaeResultForm = response.getBody();
         if (updatedAsalaeResultForm != null) {
             logAsalaeResultForm(updatedAsalaeResultForm);
         } else {
             LOGGER.error("Request result is null");
         }
-        Archive archive = new Archive(asalaeDocument.getInfo().getId_d());
         archive.setStatus(response.getStatusCode().is2xxSuccessful() ? ArchiveStatus.SENT : ArchiveStatus.NOT_SENT);
+        archive.setStep(null);
         acte.setArchive(archive);
         ActeHistory acteHistory = new ActeHistory(acte.getUuid(), StatusType.SENT_TO_SAE);
         acte.getActeHistories().add(acteHistory);
@@ -158,6 +270,16 @@ public class ArchiverService {
         acteRepository.save(acte);
     }
 
+    /**
+     * Saves the step done on the archive, and gives the Pastell document as updated by this step.
+     */
+    private AsalaeDocument saveStep(Archive archive, ArchiveStep step, AsalaeResultForm resultForm) {
+        logAsalaeResultForm(resultForm);
+        archive.setStep(step);
+        archiveRepository.save(archive);
+        return resultForm.getContent();
+    }
+
     private void checkStatus(Acte acte, ArchiveSettings archiveSettings) {
         LOGGER.info("Checking archive status for acte {}", acte.getUuid());
 
@@ -165,11 +287,12 @@ public class ArchiverService {
         LOGGER.info("Retrieved ASALAE doc : {}", asalaeDocument);
 
         if (asalaeDocument.getAction_possible().contains("validation-sae")) {
-            sendAction(asalaeDocument, "validation-sae", archiveSettings);
+            // the document returned by the action has the data as updated by the validation
+            ResponseEntity<AsalaeResultForm> response = sendAction(asalaeDocument, "validation-sae", archiveSettings);
+            if (response != null && response.getBody() != null && response.getBody().getContent() != null)
+                asalaeDocument = response.getBody().getContent();
         }
 
-        // FIXME : WTF is this call ?!
-        asalaeDocument = getAsalaeDocument(acte.getArchive().getAsalaeDocumentId(), archiveSettings);
         if (asalaeDocument.getData().containsKey("has_archive") && asalaeDocument.getData().containsKey("url_archive") &&
                 !StringUtils.isEmpty(asalaeDocument.getData().get("url_archive"))) {
             acte.getArchive().setStatus(ArchiveStatus.ARCHIVED);
@@ -293,11 +416,15 @@ public class ArchiverService {
     public void deleteActeFiles(Acte acte) {
         String acteAttachmentUuid = acte.getActeAttachment().getUuid();
 
+        pdfRenditionService.evict(acte);
+        storageService.deleteAttachmentContent(acte.getActeAttachment());
+        acte.getAnnexes().forEach(storageService::deleteAttachmentContent);
         acte.setActeAttachment(null);
         acte.setAnnexes(Collections.emptyList());
         acte.getActeHistories().forEach(acteHistory -> {
-            acteHistory.setFile(null);
-            acteHistory.setFileName(null);
+            if (acteHistory.getAttachment() != null)
+                storageService.deleteAttachmentContent(acteHistory.getAttachment());
+            acteHistory.setAttachment(null);
             acteHistoryRepository.save(acteHistory);
         });
         acteRepository.save(acte);
@@ -346,6 +473,7 @@ public class ArchiverService {
     }
 
     private void setLastHistory(Acte acte, ActeHistory history){
+        acte.updateLifecycle(history);
         acte.setLastHistoryStatus(history.getStatus());
         acte.setLastHistoryDate(history.getDate());
         acte.setLastHistoryFlux(history.getFlux());
@@ -41,12 +41,13 @@ public class DraftService {
     private final LocalAuthorityService localAuthorityService;
 
     private final ValidationService validationService;
+    private final StorageService storageService;
 
     @Autowired
     public DraftService(ActeRepository acteRepository, ActeDraftRepository acteDraftRepository,
             AttachmentRepository attachmentRepository, AttachmentTypeRepository attachmentTypeRepository,
             ApplicationEventPublisher applicationEventPublisher, LocalAuthorityService localAuthorityService,
-            ValidationService validationService) {
+            ValidationService validationService, StorageService storageService) {
         this.acteRepository = acteRepository;
         this.acteDraftRepository = acteDraftRepository;
         this.attachmentRepository = attachmentRepository;
@@ -54,6 +55,7 @@ public class DraftService {
         this.applicationEventPublisher = applicationEventPublisher;
         this.localAuthorityService = localAuthorityService;
         this.validationService = validationService;
+        this.storageService = storageService;
     }
 
     public Acte submitActeDraft(Acte acte) {
@@ -182,7 +184,7 @@ public class DraftService {
         if (!acteRepository.findByUuidAndDraftNotNull(acte.getUuid()).isPresent())
             return;
         if (acte.empty())
-            acteRepository.delete(acte);
+            deleteActeDraft(acte);
         else
             saveOrUpdateActeDraft(acte, currentLocalAuthority);
     }
@@ -190,7 +192,7 @@ public class DraftService {
     public Acte saveActeDraftFile(String uuid, MultipartFile file, LocalAuthority currentLocalAuthority)
             throws IOException {
         Acte acte = StringUtils.isBlank(uuid) ? new Acte() : getActeDraftByUuid(uuid);
-        acte.setActeAttachment(new Attachment(file.getBytes(), file.getOriginalFilename(), file.getSize()));
+        acte.setActeAttachment(storageService.createAttachment(file));
         return saveActeDraft(acte, currentLocalAuthority);
     }
 
@@ -198,7 +200,7 @@ public class DraftService {
             throws IOException {
         Acte acte = StringUtils.isBlank(uuid) ? new Acte() : getActeDraftByUuid(uuid);
         List<Attachment> annexes = acte.getAnnexes();
-        annexes.add(new Attachment(file.getBytes(), file.getOriginalFilename(), file.getSize()));
+        annexes.add(storageService.createAttachment(file));
         acte.setAnnexes(annexes);
         return saveActeDraft(acte, currentLocalAuthority);
     }
@@ -236,7 +238,9 @@ public class DraftService {
                     .filter(attachment -> !attachment.getUuid().equals(uuid)).collect(Collectors.toList());
             acte.setAnnexes(annexes);
             acteRepository.save(acte);
-            attachmentRepository.delete(attachmentRepository.findByUuid(uuid).get());
+            Attachment annexe = attachmentRepository.findByUuid(uuid).get();
+            storageService.deleteAttachmentContent(annexe);
+            attachmentRepository.delete(annexe);
             updateLastModifiedDraft(acte.getDraft().getUuid());
         }
     }
@@ -247,6 +251,7 @@ public class DraftService {
         if (file != null) {
             acte.setActeAttachment(null);
             acteRepository.save(acte);
+            storageService.deleteAttachmentContent(file);
             attachmentRepository.delete(file);
             updateLastModifiedDraft(acte.getDraft().getUuid());
         }
@@ -303,13 +308,20 @@ public class DraftService {
             uuids = acteDraftRepository.findAll().stream().map(Draft::getUuid).collect(Collectors.toList());
         uuids.forEach(uuid -> {
             List<Acte> actes = getActeDrafts(uuid);
-            actes.forEach(acteRepository::delete);
+            actes.forEach(this::deleteActeDraft);
             acteDraftRepository.delete(acteDraftRepository.findByUuid(uuid));
         });
     }
 
     public void deleteActeDraftByUuid(String uuid) {
-        acteRepository.delete(getActeDraftByUuid(uuid));
+        deleteActeDraft(getActeDraftByUuid(uuid));
+    }
+
+    private void deleteActeDraft(Acte acte) {
+        if (acte.getActeAttachment() != null)
+            storageService.deleteAttachmentContent(acte.getActeAttachment());
+        acte.getAnnexes().forEach(storageService::deleteAttachmentContent);
+        acteRepository.delete(acte);
     }
 
     public Acte getActeDraftByUuid(String uuid) {
@@ -0,0 +1,257 @@
+package fr.sictiam.stela.acteservice.service;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfReader;
+import fr.sictiam.stela.acteservice.dao.ExportJobRepository;
+import fr.sictiam.stela.acteservice.model.Acte;
+import fr.sictiam.stela.acteservice.model.ExportJob;
+import fr.sictiam.stela.acteservice.model.LocalAuthority;
+import fr.sictiam.stela.acteservice.service.exceptions.ExportJobNotFoundException;
+import fr.sictiam.stela.acteservice.service.exceptions.StorageException;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Batch exports of actes (merged stamped PDF, zip of stamped PDFs, ACK PDFs), written straight to an output stream.
+ * <p>
+ * The actes are read from the selection one at a time. Stamping runs on {@code application.export.workers} threads,
+ * at most that many actes are stamped ahead of the one being written so the memory used does not depend on the size
+ * of the selection. A very large selection can also be
+ * exported by a background job, its file is then kept in the storage for {@code application.export.jobRetentionDays}.
+ */
+@Service
+public class ExportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExportService.class);
+
+    private final ActeService acteService;
+    private final ExportJobRepository exportJobRepository;
+    private final StorageService storageService;
+
+    @Value("${application.export.workers:4}")
+    private int workers;
+
+    @Value("${application.export.jobWorkers:1}")
+    private int jobWorkers;
+
+    @Value("${application.export.jobRetentionDays:7}")
+    private int jobRetentionDays;
+
+    private ThreadPoolTaskExecutor stampExecutor;
+    private ThreadPoolTaskExecutor jobExecutor;
+
+    public ExportService(ActeService acteService, ExportJobRepository exportJobRepository,
+            StorageService storageService) {
+        this.acteService = acteService;
+        this.exportJobRepository = exportJobRepository;
+        this.storageService = storageService;
+    }
+
+    @PostConstruct
+    public void init() {
+        stampExecutor = new ThreadPoolTaskExecutor();
+        stampExecutor.setCorePoolSize(workers);
+        stampExecutor.setMaxPoolSize(workers);
+        stampExecutor.setThreadNamePrefix("export-stamp-");
+        stampExecutor.initialize();
+
+        jobExecutor = new ThreadPoolTaskExecutor();
+        jobExecutor.setCorePoolSize(jobWorkers);
+        jobExecutor.setMaxPoolSize(jobWorkers);
+        jobExecutor.setThreadNamePrefix("export-job-");
+        jobExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void clean() {
+        jobExecutor.shutdown();
+        stampExecutor.shutdown();
+    }
+
+    public void writeMergedStampedActes(Iterator<Acte> actes, LocalAuthority localAuthority, OutputStream os)
+            throws IOException {
+        Document document = new Document();
+        try {
+            PdfCopy copy = new PdfCopy(document, os);
+            copy.setCloseStream(false);
+            document.open();
+            forEachStamped(actes, localAuthority, (acte, pdf) -> {
+                PdfReader reader = new PdfReader(pdf);
+                for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+                    copy.addPage(copy.getImportedPage(reader, i));
+                }
+                // the pages are written, nothing of this PDF has to be kept
+                copy.freeReader(reader);
+                reader.close();
+            });
+            document.close();
+        } catch (DocumentException e) {
+            throw new IOException("Unable to merge the stamped actes: " + e.getMessage(), e);
+        }
+    }
+
+    public void writeZippedStampedActes(Iterator<Acte> actes, LocalAuthority localAuthority, OutputStream os)
+            throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(os);
+        Set<String> fileNames = new HashSet<>();
+        try {
+            forEachStamped(actes, localAuthority, (acte, pdf) -> {
+                zip.putNextEntry(new ZipEntry(getUniqueFileName(fileNames, acte.getActeAttachment().getFilename())));
+                zip.write(pdf);
+                zip.closeEntry();
+            });
+        } catch (DocumentException e) {
+            throw new IOException("Unable to stamp the actes: " + e.getMessage(), e);
+        }
+        zip.finish();
+    }
+
+    public void writeACKPdfs(Iterator<Acte> actes, String language, OutputStream os) throws IOException {
+        try {
+            acteService.writeACKPdfs(actes, language, os);
+        } catch (DocumentException e) {
+            throw new IOException("Unable to generate the ACK PDFs: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs the export in background, its file is written in the storage.
+     */
+    public ExportJob submit(String localAuthorityUuid, String fileName, ExportWriter writer) {
+        ExportJob job = exportJobRepository.save(new ExportJob(localAuthorityUuid, fileName));
+        jobExecutor.execute(() -> run(job, writer));
+        return job;
+    }
+
+    public ExportJob getJob(String uuid, String localAuthorityUuid) {
+        return exportJobRepository.findByUuidAndLocalAuthorityUuid(uuid, localAuthorityUuid)
+                .orElseThrow(ExportJobNotFoundException::new);
+    }
+
+    public InputStream getJobFile(ExportJob job) {
+        if (!ExportJob.Status.DONE.equals(job.getStatus()))
+            throw new ExportJobNotFoundException();
+        return storageService.getObjectStream(job.getStorageKey());
+    }
+
+    public void deleteExpiredJobs() {
+        List<ExportJob> jobs = exportJobRepository.findByCreationBefore(LocalDateTime.now().minusDays(jobRetentionDays));
+        for (ExportJob job : jobs) {
+            try {
+                if (ExportJob.Status.DONE.equals(job.getStatus()))
+                    storageService.deleteObject(job.getStorageKey());
+                exportJobRepository.delete(job);
+            } catch (StorageException e) {
+                LOGGER.error("Unable to delete the file of export job {}: {}", job.getUuid(), e.getMessage());
+            }
+        }
+        if (!jobs.isEmpty())
+            LOGGER.info("{} expired export jobs deleted", jobs.size());
+    }
+
+    private void run(ExportJob job, ExportWriter writer) {
+        Path file = null;
+        try {
+            file = Files.createTempFile("export-", "." + FilenameUtils.getExtension(job.getFileName()));
+            try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(file))) {
+                writer.write(os);
+            }
+            storageService.storeObject(job.getStorageKey(), file);
+            job.setStatus(ExportJob.Status.DONE);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Export job {} failed: {}", job.getUuid(), e.getMessage());
+            job.setStatus(ExportJob.Status.FAILED);
+        } finally {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to delete temporary file {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        exportJobRepository.save(job);
+    }
+
+    private void forEachStamped(Iterator<Acte> pending, LocalAuthority localAuthority, StampedActeConsumer consumer)
+            throws IOException, DocumentException {
+        Deque<Pair<Acte, Future<byte[]>>> window = new ArrayDeque<>();
+        try {
+            while (pending.hasNext() || !window.isEmpty()) {
+                while (pending.hasNext() && window.size() < workers) {
+                    Acte acte = pending.next();
+                    window.add(Pair.of(acte, stampExecutor.submit(
+                            () -> acteService.getStampedActe(acte, null, null, localAuthority))));
+                }
+                Pair<Acte, Future<byte[]>> next = window.poll();
+                consumer.accept(next.getLeft(), await(next.getRight()));
+            }
+        } finally {
+            window.forEach(stamp -> stamp.getRight().cancel(true));
+        }
+    }
+
+    private byte[] await(Future<byte[]> stamp) throws IOException, DocumentException {
+        try {
+            return stamp.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof DocumentException)
+                throw (DocumentException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private String getUniqueFileName(Set<String> fileNames, String fileName) {
+        String uniqueFileName = fileName;
+        for (int i = 1; !fileNames.add(uniqueFileName); i++) {
+            uniqueFileName = FilenameUtils.getBaseName(fileName) + "_" + i
+                    + (FilenameUtils.getExtension(fileName).isEmpty() ? "" : "." + FilenameUtils.getExtension(fileName));
+        }
+        return uniqueFileName;
+    }
+
+    @FunctionalInterface
+    public interface ExportWriter {
+        void write(OutputStream os) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface StampedActeConsumer {
+        void accept(Acte acte, byte[] pdf) throws IOException, DocumentException;
+    }
+}
@@ -12,14 +12,15 @@ import fr.sictiam.stela.acteservice.model.MaterialCode;
 import fr.sictiam.stela.acteservice.model.event.LocalAuthorityEvent;
 import fr.sictiam.stela.acteservice.model.ui.GenericAccount;
 import fr.sictiam.stela.acteservice.model.xml.RetourClassification;
+import fr.sictiam.stela.acteservice.service.util.XmlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
+import javax.xml.transform.stream.StreamSource;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -110,9 +111,9 @@ public class LocalAuthorityService {
 
         try {
             LocalAuthority localAuthority = localAuthorityRepository.findByUuid(uuid).get();
-            JAXBContext jaxbContext = JAXBContext.newInstance(RetourClassification.class);
             InputStream is = new ByteArrayInputStream(localAuthority.getNomenclatureFile());
-            RetourClassification classification = (RetourClassification) jaxbContext.createUnmarshaller().unmarshal(is);
+            RetourClassification classification = XmlUtils.unmarshall(new StreamSource(is),
+                    RetourClassification.class);
             loadClassification(uuid, classification);
 
         } catch (JAXBException e) {
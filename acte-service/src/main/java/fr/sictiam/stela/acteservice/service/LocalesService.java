@@ -1,5 +1,8 @@
 package fr.sictiam.stela.acteservice.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
 import com.jayway.jsonpath.JsonPath;
 import org.apache.commons.lang.text.StrSubstitutor;
 import org.slf4j.Logger;
@@ -9,15 +12,25 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.FileCopyUtils;
 
 import java.io.ByteArrayOutputStream;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class LocalesService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LocalesService.class);
 
-    private Map<String, String> jsons = new HashMap<>();
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // the languages of src/main/resources/locales, the first one being the default
+    private static final List<String> LANGUAGES = Collections.singletonList("fr");
+
+    private Map<String, String> jsons = new ConcurrentHashMap<>();
+    private Map<String, JsonNode> jsonNodes = new ConcurrentHashMap<>();
 
     public String getJsonTranslation(String lng, String ns) {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -32,6 +45,29 @@ public class LocalesService {
         return jsonString;
     }
 
+    /**
+     * Parsed translation file, read once per language and namespace. A language without translations (or a tag such
+     * as {@code fr-FR}) is read in the closest supported one, so that only these are cached. A missing file gives a
+     * missing node.
+     */
+    public JsonNode getJsonNode(String lng, String ns) {
+        String language = getSupportedLanguage(lng);
+        return jsonNodes.computeIfAbsent(language + "_" + ns, key -> {
+            try {
+                return objectMapper.readTree(
+                        new ClassPathResource("/locales/" + language + "/" + ns + ".json").getInputStream());
+            } catch (IOException e) {
+                LOGGER.error("Unable to load json translation file: {}", e);
+                return MissingNode.getInstance();
+            }
+        });
+    }
+
+    private String getSupportedLanguage(String lng) {
+        String language = String.valueOf(lng).split("[-_]", 2)[0].toLowerCase(Locale.ROOT);
+        return LANGUAGES.contains(language) ? language : LANGUAGES.get(0);
+    }
+
     public String getMessage(String lng, String ns, String path) {
         String key = lng + "_" + ns;
         String json = jsons.containsKey(key) ? jsons.get(key) : getJsonTranslation(lng, ns);
@@ -71,6 +71,7 @@ public class MigrationService {
     private final DiscoveryUtils discoveryUtils;
     private final ExternalRestService externalRestService;
     private final ActeService acteService;
+    private final StorageService storageService;
 
     @Value("${application.migration.serverIP}")
     String serverIP;
@@ -104,13 +105,15 @@ public class MigrationService {
     private final String sql_local_authority_groups = getStringResourceFromStream("migration/local_authority_groups.sql");
 
     public MigrationService(ActeRepository acteRepository, LocalAuthorityRepository localAuthorityRepository,
-                            NotificationService notificationService, DiscoveryUtils discoveryUtils, ExternalRestService externalRestService, ActeService acteService) {
+                            NotificationService notificationService, DiscoveryUtils discoveryUtils, ExternalRestService externalRestService, ActeService acteService,
+                            StorageService storageService) {
         this.acteRepository = acteRepository;
         this.localAuthorityRepository = localAuthorityRepository;
         this.notificationService = notificationService;
         this.discoveryUtils = discoveryUtils;
         this.externalRestService = externalRestService;
         this.acteService = acteService;
+        this.storageService = storageService;
     }
 
     public void migrateStela2Users(LocalAuthority localAuthority, String siren, String email) {
@@ -269,13 +272,13 @@ public class MigrationService {
 
                 if (acteMigration.getCreation() != null) {
                     acte.getActeHistories().add(new ActeHistory(acte.getUuid(), StatusType.CREATED,
-                            acteMigration.getCreation(), null, Flux.TRANSMISSION_ACTE));
+                            acteMigration.getCreation(), Flux.TRANSMISSION_ACTE));
                 } else {
                     log(migrationLog, "Acte creation date is null", false);
                 }
                 if (acteMigration.getSendDate() != null) {
                     acte.getActeHistories().add(new ActeHistory(acte.getUuid(), StatusType.SENT,
-                            acteMigration.getSendDate(), null, Flux.TRANSMISSION_ACTE));
+                            acteMigration.getSendDate(), Flux.TRANSMISSION_ACTE));
                 } else {
                     log(migrationLog, "Acte send date is null", false);
                 }
@@ -290,7 +293,7 @@ public class MigrationService {
                     byte[] bytesAR = getFileFromTarGz(archiveARBytes, acteMigration.getFilenameAR());
                     if (bytesAR == null) log(migrationLog, "bytesAR is null", false);
                     acte.getActeHistories().add(new ActeHistory(acte.getUuid(), StatusType.ACK_RECEIVED,
-                            acteMigration.getDateAR(), bytesAR, acteMigration.getFilenameAR()));
+                            acteMigration.getDateAR(), createAttachment(acteMigration.getFilenameAR(), bytesAR)));
                 } else {
                     log(migrationLog, "Acte AR date is null", false);
                 }
@@ -301,7 +304,7 @@ public class MigrationService {
                     }
                     byte[] fileANOBytes = getFileFromTarGz(archiveANOBytes, acteMigration.getFilenameANO());
                     acte.getActeHistories().add(new ActeHistory(acte.getUuid(), StatusType.NACK_RECEIVED,
-                            acteMigration.getDateANO(), fileANOBytes, acteMigration.getFilenameANO(),
+                            acteMigration.getDateANO(), createAttachment(acteMigration.getFilenameANO(), fileANOBytes),
                             acteMigration.getMessageANO()));
                 }
                 if (acteMigration.getDateASKCANCEL() != null) {
@@ -311,7 +314,8 @@ public class MigrationService {
                     }
                     byte[] fileASKCANCELBytes = getFileFromTarGz(archiveASKCANCELBytes, acteMigration.getFilenameASKCANCEL());
                     acte.getActeHistories().add(new ActeHistory(acte.getUuid(), StatusType.CANCELLATION_ASKED,
-                            acteMigration.getDateASKCANCEL(), fileASKCANCELBytes, acteMigration.getFilenameASKCANCEL(),
+                            acteMigration.getDateASKCANCEL(),
+                            createAttachment(acteMigration.getFilenameASKCANCEL(), fileASKCANCELBytes),
                             Flux.ANNULATION_TRANSMISSION));
                 }
                 if (acteMigration.getDateARCANCEL() != null) {
@@ -321,11 +325,13 @@ public class MigrationService {
                     }
                     byte[] fileARCANCELBytes = getFileFromTarGz(archiveARCANCELBytes, acteMigration.getFilenameARCANCEL());
                     acte.getActeHistories().add(new ActeHistory(acte.getUuid(), StatusType.CANCELLED,
-                            acteMigration.getDateARCANCEL(), fileARCANCELBytes, acteMigration.getArchivePathARCANCEL(),
+                            acteMigration.getDateARCANCEL(),
+                            createAttachment(acteMigration.getArchivePathARCANCEL(), fileARCANCELBytes),
                             Flux.AR_ANNULATION_TRANSMISSION));
                 }
 
-                // Update lastHistory fields
+                // Update lastHistory fields and lifecycle flags
+                acte.getActeHistories().forEach(acte::updateLifecycle);
                 ActeHistory lastHistory = acte.getActeHistories().last();
                 acte.setLastHistoryStatus(lastHistory.getStatus());
                 acte.setLastHistoryDate(lastHistory.getDate());
@@ -446,7 +452,18 @@ public class MigrationService {
 
     private Attachment getAttachmentFromArchive(String filename, byte[] archiveBytes, long size) {
         byte[] fileBytes = getFileFromTarGz(archiveBytes, filename);
-        return new Attachment(fileBytes, filename, size);
+        return createAttachment(filename, fileBytes, size);
+    }
+
+    private Attachment createAttachment(String filename, byte[] content) {
+        return content != null ? createAttachment(filename, content, content.length) : null;
+    }
+
+    private Attachment createAttachment(String filename, byte[] content, long size) {
+        Attachment attachment = new Attachment(content, filename, size);
+        if (content != null)
+            storageService.storeAttachment(attachment);
+        return attachment;
     }
 
     private LocalDateTime getLocalDateTimeFromTimestamp(String timestamp) {
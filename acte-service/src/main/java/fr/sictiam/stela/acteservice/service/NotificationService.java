@@ -84,7 +84,7 @@ public class NotificationService implements ApplicationListener<ActeHistoryEvent
                         event.getActeHistory().getStatus().toString())
         ).findFirst().get();
 
-        JsonNode profiles = externalRestService.getProfiles(acte.getLocalAuthority().getUuid());
+        JsonNode profiles = externalRestService.getSubscribers(acte.getLocalAuthority().getUuid(), "ACTES", null);
 
         AtomicInteger notifcationSentNumber = new AtomicInteger(0);
         profiles.forEach(profile -> {
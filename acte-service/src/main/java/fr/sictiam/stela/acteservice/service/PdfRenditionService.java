@@ -0,0 +1,288 @@
+package fr.sictiam.stela.acteservice.service;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfReader;
+import fr.sictiam.stela.acteservice.dao.ActeRepository;
+import fr.sictiam.stela.acteservice.model.Acte;
+import fr.sictiam.stela.acteservice.model.ActeHistory;
+import fr.sictiam.stela.acteservice.model.Attachment;
+import fr.sictiam.stela.acteservice.model.LocalAuthority;
+import fr.sictiam.stela.acteservice.model.StampPosition;
+import fr.sictiam.stela.acteservice.model.StatusType;
+import fr.sictiam.stela.acteservice.model.Thumbnail;
+import fr.sictiam.stela.acteservice.model.event.ActeHistoryEvent;
+import fr.sictiam.stela.acteservice.service.exceptions.StorageException;
+import fr.sictiam.stela.acteservice.service.util.PdfGeneratorUtil;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Stamped PDFs and thumbnails of the acte attachments. A rendition is keyed by the attachment storage key and by
+ * everything its content depends on (stamp position and ack date), so it never has to be invalidated: a new ack or
+ * a new position gives a new key.
+ * <p>
+ * Renditions are kept in memory, in a LRU bounded by {@code application.rendition.memoryCacheSize} bytes. The ones
+ * every client asks for, the thumbnail and the stamp at the local authority position, are also written in the
+ * storage next to the attachment. Concurrent requests for the same rendition wait for a single render, and the
+ * renditions of an acte are generated as soon as its ACK is received.
+ */
+@Service
+public class PdfRenditionService implements ApplicationListener<ActeHistoryEvent> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PdfRenditionService.class);
+
+    // kept as is, stamps already delivered show this format
+    private static final DateTimeFormatter STAMP_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/YYYY");
+
+    private final StorageService storageService;
+    private final PdfGeneratorUtil pdfGeneratorUtil;
+    private final ActeRepository acteRepository;
+
+    @Value("${application.rendition.memoryCacheSize:67108864}")
+    private long memoryCacheSize;
+
+    // access ordered, the eldest entry is the least recently used one
+    private final Map<String, byte[]> renditions = new LinkedHashMap<>(16, 0.75f, true);
+    private long renditionsSize;
+
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> renders = new ConcurrentHashMap<>();
+
+    public PdfRenditionService(StorageService storageService, PdfGeneratorUtil pdfGeneratorUtil,
+            ActeRepository acteRepository) {
+        this.storageService = storageService;
+        this.pdfGeneratorUtil = pdfGeneratorUtil;
+        this.acteRepository = acteRepository;
+    }
+
+    /**
+     * Stamps the acte attachment, at the given position or at the local authority one (switched for a landscape
+     * document) if none is given.
+     */
+    public byte[] getStampedActe(Acte acte, LocalDateTime ackDate, Integer x, Integer y,
+            LocalAuthority localAuthority) throws IOException, DocumentException {
+        return getStamped(acte.getActeAttachment(), acte.getMiatId(), ackDate, x, y, localAuthority, true);
+    }
+
+    /**
+     * Stamps an annexe, at the given position or at the local authority one if none is given.
+     */
+    public byte[] getStampedAnnexe(Acte acte, Attachment annexe, LocalDateTime ackDate, Integer x, Integer y,
+            LocalAuthority localAuthority) throws IOException, DocumentException {
+        return getStamped(annexe, acte.getMiatId(), ackDate, x, y, localAuthority, false);
+    }
+
+    public Thumbnail getThumbnail(Attachment attachment) throws IOException {
+        try {
+            byte[] rendition = get(getThumbnailKey(attachment), true, () -> {
+                Thumbnail thumbnail = pdfGeneratorUtil.getPDFThumbnail(readContent(attachment));
+                return (thumbnail.getOrientation().name() + ":" + thumbnail.getImage())
+                        .getBytes(StandardCharsets.US_ASCII);
+            });
+            String[] parts = new String(rendition, StandardCharsets.US_ASCII).split(":", 2);
+            return new Thumbnail(Thumbnail.OrientationEnum.valueOf(parts[0]), parts[1]);
+        } catch (DocumentException e) {
+            // not thrown by the thumbnail render
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Drops the renditions of the acte files, to be called when they are deleted.
+     */
+    public void evict(Acte acte) {
+        Optional<LocalDateTime> ackDate = Optional.ofNullable(acte.getAckDate());
+        StampPosition position = acte.getLocalAuthority().getStampPosition();
+        if (acte.getActeAttachment() != null) {
+            evict(acte.getActeAttachment(), ackDate, position);
+        }
+        acte.getAnnexes().forEach(annexe -> evict(annexe, ackDate, position));
+    }
+
+    @Override
+    public void onApplicationEvent(ActeHistoryEvent event) {
+        ActeHistory history = event.getActeHistory();
+        if (!StatusType.ACK_RECEIVED.equals(history.getStatus()))
+            return;
+        // the history may not be saved yet, its date is given rather than read from the acte
+        acteRepository.findById(history.getActeUuid()).ifPresent(acte -> {
+            LocalAuthority localAuthority = acte.getLocalAuthority();
+            try {
+                if (isPdf(acte.getActeAttachment())) {
+                    getStampedActe(acte, history.getDate(), null, null, localAuthority);
+                    getThumbnail(acte.getActeAttachment());
+                }
+                for (Attachment annexe : acte.getAnnexes()) {
+                    if (isPdf(annexe))
+                        getStampedAnnexe(acte, annexe, history.getDate(), null, null, localAuthority);
+                }
+            } catch (IOException | DocumentException | RuntimeException e) {
+                LOGGER.warn("Unable to pre-generate the renditions of acte {}: {}", acte.getUuid(), e.getMessage());
+            }
+        });
+    }
+
+    private byte[] getStamped(Attachment attachment, String miatId, LocalDateTime ackDate, Integer x, Integer y,
+            LocalAuthority localAuthority, boolean switchOnLandscape) throws IOException, DocumentException {
+        boolean defaultPosition = x == null || y == null;
+        StampPosition position = defaultPosition ? localAuthority.getStampPosition() : new StampPosition(x, y);
+        String date = ackDate.format(STAMP_DATE_FORMATTER);
+        String key = getStampKey(attachment, date, position, defaultPosition);
+        return get(key, defaultPosition, () -> {
+            byte[] pdf = readContent(attachment);
+            int stampX = position.getX();
+            int stampY = position.getY();
+            if (defaultPosition && switchOnLandscape && pdfGeneratorUtil.pdfIsLandscape(new PdfReader(pdf))) {
+                stampX = position.getY();
+                stampY = position.getX();
+            }
+            return pdfGeneratorUtil.stampPDF(miatId, date, pdf, stampX, stampY);
+        });
+    }
+
+    // the content is not kept on the attachment, the actes of an export would otherwise all stay in memory
+    private byte[] readContent(Attachment attachment) throws IOException {
+        try (InputStream content = storageService.getAttachmentContentStream(attachment)) {
+            return IOUtils.toByteArray(content);
+        }
+    }
+
+    private byte[] get(String key, boolean stored, Render render) throws IOException, DocumentException {
+        byte[] rendition = getCached(key);
+        if (rendition != null)
+            return rendition;
+
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = renders.putIfAbsent(key, future);
+        if (running != null)
+            return await(running);
+        try {
+            // the render may have ended between the cache check and the registration
+            rendition = getCached(key);
+            if (rendition == null && stored)
+                rendition = load(key);
+            if (rendition == null) {
+                rendition = render.render();
+                if (stored)
+                    store(key, rendition);
+            }
+            putCached(key, rendition);
+            future.complete(rendition);
+            return rendition;
+        } catch (IOException | DocumentException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            renders.remove(key, future);
+        }
+    }
+
+    private byte[] await(CompletableFuture<byte[]> render) throws IOException, DocumentException {
+        try {
+            return render.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof DocumentException)
+                throw (DocumentException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private synchronized byte[] getCached(String key) {
+        return renditions.get(key);
+    }
+
+    private synchronized void putCached(String key, byte[] rendition) {
+        if (rendition.length > memoryCacheSize)
+            return;
+        byte[] previous = renditions.put(key, rendition);
+        renditionsSize += rendition.length - (previous != null ? previous.length : 0);
+        Iterator<byte[]> eldest = renditions.values().iterator();
+        while (renditionsSize > memoryCacheSize && eldest.hasNext()) {
+            renditionsSize -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private synchronized void removeCached(String keyPrefix) {
+        Iterator<Map.Entry<String, byte[]>> entries = renditions.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, byte[]> entry = entries.next();
+            if (entry.getKey().startsWith(keyPrefix)) {
+                renditionsSize -= entry.getValue().length;
+                entries.remove();
+            }
+        }
+    }
+
+    private byte[] load(String key) {
+        try {
+            return storageService.getObject(key);
+        } catch (StorageException e) {
+            LOGGER.debug("No stored rendition {}", key);
+            return null;
+        }
+    }
+
+    private void store(String key, byte[] rendition) {
+        try {
+            storageService.storeObject(key, rendition);
+        } catch (StorageException e) {
+            LOGGER.warn("Unable to store rendition {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void evict(Attachment attachment, Optional<LocalDateTime> ackDate, StampPosition position) {
+        removeCached(attachment.getStorageKey() + ".");
+        try {
+            storageService.deleteObject(getThumbnailKey(attachment));
+            if (ackDate.isPresent())
+                storageService.deleteObject(
+                        getStampKey(attachment, ackDate.get().format(STAMP_DATE_FORMATTER), position, true));
+        } catch (StorageException e) {
+            LOGGER.warn("Unable to delete the renditions of {}: {}", attachment.getStorageKey(), e.getMessage());
+        }
+    }
+
+    private String getThumbnailKey(Attachment attachment) {
+        return attachment.getStorageKey() + ".thumbnail";
+    }
+
+    private String getStampKey(Attachment attachment, String date, StampPosition position, boolean defaultPosition) {
+        return attachment.getStorageKey() + ".stamped-" + (defaultPosition ? "default-" : "") + position.getX() + "-"
+                + position.getY() + "-" + date.replace("/", "");
+    }
+
+    private boolean isPdf(Attachment attachment) {
+        return attachment != null && attachment.getFilename() != null
+                && attachment.getFilename().toLowerCase().endsWith(".pdf");
+    }
+
+    @FunctionalInterface
+    private interface Render {
+        byte[] render() throws IOException, DocumentException;
+    }
+}
@@ -4,15 +4,26 @@ import fr.sictiam.stela.acteservice.dao.PendingMessageRepository;
 import fr.sictiam.stela.acteservice.model.PendingMessage;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 
 @Service
 public class PendingMessageService {
 
+    // tokens of the budget once refilled for the time elapsed since the last refill, at most the capacity
+    private static final String REFILLED_TOKENS = "LEAST(:capacity, tokens "
+            + "+ EXTRACT(EPOCH FROM (clock_timestamp() - last_refill)) * :ratePerSecond)";
+
     private final PendingMessageRepository pendingMessageRepository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
     public PendingMessageService(PendingMessageRepository pendingMessageRepository) {
         this.pendingMessageRepository = pendingMessageRepository;
     }
@@ -24,11 +35,85 @@ public class PendingMessageService {
 
     @Transactional
     public void remove(PendingMessage pendingMessage) {
-        pendingMessageRepository.delete(pendingMessage);
+        pendingMessageRepository.deleteById(pendingMessage.getUuid());
     }
 
     @Transactional
     public List<PendingMessage> getAllPendingMessages() {
         return pendingMessageRepository.findAll();
     }
+
+    /**
+     * Leases up to {@code limit} messages that are due, oldest first, to the given lease token.
+     * <p>
+     * Rows locked by another instance are skipped, and a message whose lease expired (crashed instance) becomes
+     * claimable again, so several instances can share the queue without sending a message twice. The messages
+     * created before the storage of attachments are left until the StorageImportTask has moved their file.
+     */
+    @Transactional
+    public List<PendingMessage> claim(String leaseToken, int limit, LocalDateTime leaseUntil) {
+        if (limit <= 0)
+            return Collections.emptyList();
+        LocalDateTime now = LocalDateTime.now();
+        int claimed = entityManager.createNativeQuery("UPDATE pending_message SET lease_owner = :owner, " +
+                "lease_until = :leaseUntil WHERE uuid IN (SELECT uuid FROM pending_message " +
+                "WHERE (next_attempt IS NULL OR next_attempt <= :now) AND (lease_until IS NULL OR lease_until < :now) " +
+                "AND attachment_uuid IS NOT NULL ORDER BY date LIMIT :limit FOR UPDATE SKIP LOCKED)")
+                .setParameter("owner", leaseToken)
+                .setParameter("leaseUntil", leaseUntil)
+                .setParameter("now", now)
+                .setParameter("limit", limit)
+                .executeUpdate();
+        return claimed > 0 ? pendingMessageRepository.findByLeaseOwnerOrderByDateAsc(leaseToken)
+                : Collections.emptyList();
+    }
+
+    /**
+     * Gives a claimed message back to the queue without counting an attempt (e.g. rate limit reached).
+     */
+    @Transactional
+    public void release(PendingMessage pendingMessage) {
+        entityManager.createNativeQuery("UPDATE pending_message SET lease_owner = NULL, lease_until = NULL " +
+                "WHERE uuid = :uuid")
+                .setParameter("uuid", pendingMessage.getUuid())
+                .executeUpdate();
+    }
+
+    /**
+     * Gives a claimed message back to the queue after a failed attempt, not to be retried before {@code nextAttempt}.
+     */
+    @Transactional
+    public void reschedule(PendingMessage pendingMessage, LocalDateTime nextAttempt) {
+        entityManager.createNativeQuery("UPDATE pending_message SET attempts = attempts + 1, " +
+                "next_attempt = :nextAttempt, lease_owner = NULL, lease_until = NULL WHERE uuid = :uuid")
+                .setParameter("nextAttempt", nextAttempt)
+                .setParameter("uuid", pendingMessage.getUuid())
+                .executeUpdate();
+    }
+
+    /**
+     * Takes {@code amount} bytes from the sender budget shared by all the instances, refilled continuously at
+     * {@code ratePerSecond} up to {@code capacity} bytes. A message larger than the capacity is allowed once the
+     * budget is full, leaving it in debt: the average rate is still honored, big files are only delayed.
+     *
+     * @return false if the budget is too low, nothing is taken then
+     */
+    @Transactional
+    public boolean consumeBudget(long amount, long capacity, double ratePerSecond) {
+        return entityManager.createNativeQuery("UPDATE sender_budget SET tokens = " + REFILLED_TOKENS
+                + " - :amount, last_refill = clock_timestamp() WHERE name = 'miat' AND (" + REFILLED_TOKENS
+                + " >= :amount OR " + REFILLED_TOKENS + " >= :capacity)")
+                .setParameter("amount", amount)
+                .setParameter("capacity", capacity)
+                .setParameter("ratePerSecond", ratePerSecond)
+                .executeUpdate() > 0;
+    }
+
+    public long availableBudget(long capacity, double ratePerSecond) {
+        return ((Number) entityManager.createNativeQuery("SELECT " + REFILLED_TOKENS
+                + " FROM sender_budget WHERE name = 'miat'")
+                .setParameter("capacity", capacity)
+                .setParameter("ratePerSecond", ratePerSecond)
+                .getSingleResult()).longValue();
+    }
 }
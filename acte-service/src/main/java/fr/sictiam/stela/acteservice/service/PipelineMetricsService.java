@@ -0,0 +1,107 @@
+package fr.sictiam.stela.acteservice.service;
+
+import fr.sictiam.stela.acteservice.dao.ActeRepository;
+import fr.sictiam.stela.acteservice.dao.PendingMessageRepository;
+import fr.sictiam.stela.acteservice.model.StatusType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and backlog of the acte pipeline.
+ * <p>
+ * Each time an acte moves to a new status, the time it spent in the previous one is recorded in the
+ * {@code stela.acte.transition} timer ({@code from}, {@code to} and {@code localAuthority} tags). When the prefecture
+ * answers, the time since the creation of the acte is recorded in the {@code stela.acte.pipeline} timer. Both publish
+ * fixed histogram buckets, from a minute to a month, so that percentiles can be computed and alerted on in Prometheus.
+ * <p>
+ * The number of actes waiting in each status is given by the {@code stela.acte.backlog} gauge, and the number of
+ * messages waiting to be sent to the prefecture by {@code stela.acte.sender.pending}. They are refreshed by
+ * {@link #refreshBacklog()}.
+ */
+@Service
+public class PipelineMetricsService {
+
+    private static final Duration[] BUCKETS = { Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ofMinutes(15),
+            Duration.ofHours(1), Duration.ofHours(6), Duration.ofDays(1), Duration.ofDays(3), Duration.ofDays(7),
+            Duration.ofDays(30) };
+
+    // waiting for the archive to be built and checked, for the sender, for the answer of the prefecture
+    private static final List<StatusType> BACKLOG_STATUSES = Arrays.asList(StatusType.CREATED,
+            StatusType.ARCHIVE_CREATED, StatusType.ANTIVIRUS_OK, StatusType.ARCHIVE_SIZE_CHECKED, StatusType.SENT,
+            StatusType.CANCELLATION_ASKED, StatusType.CANCELLATION_ARCHIVE_CREATED);
+
+    private static final Set<StatusType> ANSWERS = EnumSet.of(StatusType.ACK_RECEIVED, StatusType.NACK_RECEIVED);
+
+    // one series per local authority and transition, can be turned off if there are too many of them
+    @Value("${application.metrics.localAuthorityTag:true}")
+    private boolean localAuthorityTag;
+
+    private final ActeRepository acteRepository;
+    private final PendingMessageRepository pendingMessageRepository;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<StatusType, AtomicLong> backlog = new EnumMap<>(StatusType.class);
+    private final AtomicLong pendingMessages = new AtomicLong();
+
+    @Autowired
+    public PipelineMetricsService(ActeRepository acteRepository, PendingMessageRepository pendingMessageRepository,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.acteRepository = acteRepository;
+        this.pendingMessageRepository = pendingMessageRepository;
+        this.meterRegistry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        for (StatusType status : BACKLOG_STATUSES) {
+            AtomicLong count = new AtomicLong();
+            backlog.put(status, count);
+            Gauge.builder("stela.acte.backlog", count, AtomicLong::get).tag("status", status.name())
+                    .register(this.meterRegistry);
+        }
+        Gauge.builder("stela.acte.sender.pending", pendingMessages, AtomicLong::get).register(this.meterRegistry);
+    }
+
+    /**
+     * Records that the acte, created at {@code creation}, moved from the {@code from} status reached at
+     * {@code fromDate} to the {@code to} status at {@code toDate}.
+     */
+    public void recordTransition(String localAuthorityUuid, LocalDateTime creation, StatusType from,
+            LocalDateTime fromDate, StatusType to, LocalDateTime toDate) {
+        String localAuthority = localAuthorityTag && localAuthorityUuid != null ? localAuthorityUuid : "all";
+        if (from != null && fromDate != null && !toDate.isBefore(fromDate)) {
+            Timer.builder("stela.acte.transition")
+                    .tag("from", from.name()).tag("to", to.name()).tag("localAuthority", localAuthority)
+                    .sla(BUCKETS)
+                    .register(meterRegistry)
+                    .record(Duration.between(fromDate, toDate));
+        }
+        if (ANSWERS.contains(to) && creation != null && !toDate.isBefore(creation)) {
+            Timer.builder("stela.acte.pipeline")
+                    .tag("status", to.name()).tag("localAuthority", localAuthority)
+                    .sla(BUCKETS)
+                    .register(meterRegistry)
+                    .record(Duration.between(creation, toDate));
+        }
+    }
+
+    public void refreshBacklog() {
+        Map<StatusType, Long> counts = new EnumMap<>(StatusType.class);
+        acteRepository.countByLastHistoryStatusIn(BACKLOG_STATUSES)
+                .forEach(row -> counts.put((StatusType) row[0], (Long) row[1]));
+        backlog.forEach((status, count) -> count.set(counts.getOrDefault(status, 0L)));
+        pendingMessages.set(pendingMessageRepository.count());
+    }
+}
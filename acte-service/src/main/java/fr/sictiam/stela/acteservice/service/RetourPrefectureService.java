@@ -30,14 +30,17 @@ public class RetourPrefectureService {
     private final LocalAuthorityRepository localAuthorityRepository;
     private final ApplicationEventPublisher applicationEventPublisher;
     private final ZipGeneratorUtil zipGeneratorUtil;
+    private final StorageService storageService;
 
     public RetourPrefectureService(ActeRepository acteRepository, ActeHistoryRepository acteHistoryRepository,
-                                   LocalAuthorityRepository localAuthorityRepository, ApplicationEventPublisher applicationEventPublisher, ZipGeneratorUtil zipGeneratorUtil) {
+                                   LocalAuthorityRepository localAuthorityRepository, ApplicationEventPublisher applicationEventPublisher, ZipGeneratorUtil zipGeneratorUtil,
+                                   StorageService storageService) {
         this.acteRepository = acteRepository;
         this.acteHistoryRepository = acteHistoryRepository;
         this.localAuthorityRepository = localAuthorityRepository;
         this.applicationEventPublisher = applicationEventPublisher;
         this.zipGeneratorUtil = zipGeneratorUtil;
+        this.storageService = storageService;
     }
 
     public void receiveARActe(ARActe arActe, Attachment attachment) {
@@ -99,12 +102,12 @@ public class RetourPrefectureService {
         byte[] file;
         String fileName;
         if (attachments.size() == 1) {
-            file = attachments.get(0).getFile();
+            file = attachments.get(0).getContent();
             fileName = attachments.get(0).getFilename();
         } else {
             fileName = "DefereTA_" + defereTA.getIDActe() + ".zip";
             file = zipGeneratorUtil.createZip(
-                    attachments.stream().collect(Collectors.toMap(Attachment::getFilename, Attachment::getFile)));
+                    attachments.stream().collect(Collectors.toMap(Attachment::getFilename, Attachment::getContent)));
         }
         publishActeHistory(acte.getUuid(), StatusType.DEFERE_RECEIVED, new Attachment(file, fileName, file.length),
                 Optional.of(defereTA.getNatureIllegalite()), Optional.empty());
@@ -122,8 +125,8 @@ public class RetourPrefectureService {
 
     void publishActeHistory(String acteUuid, StatusType statusType, Attachment attachment,
                                     Optional<String> message, Optional<Flux> flux) {
-        ActeHistory acteHistory = new ActeHistory(acteUuid, statusType, LocalDateTime.now(),
-                attachment.getFile(), attachment.getFilename());
+        storageService.storeAttachment(attachment);
+        ActeHistory acteHistory = new ActeHistory(acteUuid, statusType, LocalDateTime.now(), attachment);
         message.ifPresent(acteHistory::setMessage);
         flux.ifPresent(acteHistory::setFlux);
         applicationEventPublisher.publishEvent(new ActeHistoryEvent(this, acteHistory));
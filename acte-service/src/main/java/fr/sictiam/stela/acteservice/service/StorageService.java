@@ -0,0 +1,121 @@
+package fr.sictiam.stela.acteservice.service;
+
+import fr.sictiam.stela.acteservice.model.Attachment;
+import fr.sictiam.stela.acteservice.service.exceptions.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@Service
+public interface StorageService {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(StorageService.class);
+
+    byte[] getObject(String key) throws StorageException;
+
+    void storeObject(String key, byte[] content) throws StorageException;
+
+    boolean deleteObject(String key) throws StorageException;
+
+    public default InputStream getObjectStream(String key) throws StorageException {
+        return new ByteArrayInputStream(getObject(key));
+    }
+
+    public default long getObjectSize(String key) throws StorageException {
+        return getObject(key).length;
+    }
+
+    public default void storeObject(String key, Path file) throws StorageException {
+        try {
+            storeObject(key, Files.readAllBytes(file));
+        } catch (IOException e) {
+            throw new StorageException("Failed to read " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public default byte[] getAttachmentContent(Attachment attachment) throws StorageException {
+
+        if (attachment == null)
+            return null;
+
+        // Don't read bytes everytime
+        if (attachment.getContent() != null)
+            return attachment.getContent();
+
+        // load data from storage driver
+        try {
+            LOGGER.info("Loading {} content", attachment.getFilename());
+            byte[] content = getObject(attachment.getStorageKey());
+            // store content in memory
+            attachment.setContent(content);
+            LOGGER.info("Attachment content fully loaded");
+            return content;
+        } catch (StorageException e) {
+            LOGGER.error("Failed to retrieve attachment content for attachment {}: {}", attachment.getUuid(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Content stream of the attachment, read from the storage driver unless the content is already in memory.
+     */
+    public default InputStream getAttachmentContentStream(Attachment attachment) throws StorageException {
+        if (attachment.getContent() != null)
+            return new ByteArrayInputStream(attachment.getContent());
+        return getObjectStream(attachment.getStorageKey());
+    }
+
+    public default long getAttachmentContentSize(Attachment attachment) throws StorageException {
+        if (attachment.getContent() != null)
+            return attachment.getContent().length;
+        return getObjectSize(attachment.getStorageKey());
+    }
+
+    public default Attachment createAttachment(MultipartFile file) throws StorageException, IOException {
+        return createAttachment(file, null);
+    }
+
+    public default Attachment createAttachment(MultipartFile file, String attachmentTypeCode)
+            throws StorageException, IOException {
+        Attachment attachment = new Attachment(file.getBytes(), file.getOriginalFilename(), file.getSize(),
+                attachmentTypeCode);
+        storeAttachment(attachment);
+        return attachment;
+    }
+
+    public default Attachment createAttachment(String filename, byte[] content) throws StorageException {
+        Attachment attachment = new Attachment(content, filename, content.length);
+        storeAttachment(attachment);
+        return attachment;
+    }
+
+    /**
+     * Store the given file as a new attachment, its content is not kept in memory.
+     */
+    public default Attachment createAttachment(String filename, Path file) throws StorageException, IOException {
+        Attachment attachment = new Attachment(null, filename, Files.size(file));
+        LOGGER.debug("Storing file {} in {}", filename, attachment.getStorageKey());
+        storeObject(attachment.getStorageKey(), file);
+        return attachment;
+    }
+
+    public default void storeAttachment(Attachment attachment) throws StorageException {
+        LOGGER.debug("Storing file {} in {}", attachment.getFilename(), attachment.getStorageKey());
+        storeObject(attachment.getStorageKey(), attachment.getContent());
+    }
+
+    public default boolean deleteAttachmentContent(Attachment attachment) {
+        try {
+            return deleteObject(attachment.getStorageKey());
+        } catch (StorageException e) {
+            return false;
+        }
+    }
+}
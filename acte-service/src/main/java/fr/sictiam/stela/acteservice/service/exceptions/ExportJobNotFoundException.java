@@ -0,0 +1,14 @@
+package fr.sictiam.stela.acteservice.service.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.NOT_FOUND, reason = "notifications.acte.export_not_found")
+public class ExportJobNotFoundException extends RuntimeException {
+
+    static final long serialVersionUID = 42L;
+
+    public ExportJobNotFoundException() {
+        super("notifications.acte.export_not_found");
+    }
+}
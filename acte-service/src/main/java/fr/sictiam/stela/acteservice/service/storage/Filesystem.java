@@ -0,0 +1,139 @@
+package fr.sictiam.stela.acteservice.service.storage;
+
+import fr.sictiam.stela.acteservice.service.StorageService;
+import fr.sictiam.stela.acteservice.service.exceptions.StorageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+@Component
+@Profile("!S3")
+public class Filesystem implements StorageService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Filesystem.class);
+
+    @Value("${application.storage.filesystem.path}")
+    private String rootPath;
+
+    public Filesystem() {
+    }
+
+    @PostConstruct
+    public void init() {
+        if (rootPath.endsWith("/"))
+            rootPath = rootPath.substring(0, rootPath.length() - 1);
+
+        Path path = Paths.get(rootPath);
+        if (Files.notExists(path)) {
+            try {
+                Files.createDirectories(path);
+            } catch (IOException e) {
+                LOGGER.error("Failed to create directory {}: {}", rootPath, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public byte[] getObject(String key) throws StorageException {
+
+        try {
+            Path path = Paths.get(rootPath, key);
+            return Files.readAllBytes(path);
+        } catch (InvalidPathException e) {
+            LOGGER.error("File not found {}/{}", rootPath, key);
+            throw new StorageException("Key " + key + " not found", e);
+        } catch (IOException e) {
+            LOGGER.error("Failed to read {}/{}: {}", rootPath, key, e.getMessage());
+            throw new StorageException("Failed to read " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public InputStream getObjectStream(String key) throws StorageException {
+
+        try {
+            return Files.newInputStream(Paths.get(rootPath, key));
+        } catch (InvalidPathException e) {
+            LOGGER.error("File not found {}/{}", rootPath, key);
+            throw new StorageException("Key " + key + " not found", e);
+        } catch (IOException e) {
+            LOGGER.error("Failed to open {}/{}: {}", rootPath, key, e.getMessage());
+            throw new StorageException("Failed to read " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public long getObjectSize(String key) throws StorageException {
+
+        try {
+            return Files.size(Paths.get(rootPath, key));
+        } catch (InvalidPathException e) {
+            LOGGER.error("File not found {}/{}", rootPath, key);
+            throw new StorageException("Key " + key + " not found", e);
+        } catch (IOException e) {
+            LOGGER.error("Failed to read size of {}/{}: {}", rootPath, key, e.getMessage());
+            throw new StorageException("Failed to read " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void storeObject(String key, Path file) throws StorageException {
+
+        try {
+            Path path = Paths.get(rootPath, key);
+            Path parent = path.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.copy(file, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (InvalidPathException e) {
+            LOGGER.error("Invalid path {}/{}: {}", rootPath, key, e.getMessage());
+            throw new StorageException("Key " + key + " not found", e);
+        } catch (IOException e) {
+            LOGGER.error("Failed to copy {} in {}/{}: {}", file, rootPath, key, e.getMessage());
+            throw new StorageException("Failed to write " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override public void storeObject(String key, byte[] content) throws StorageException {
+
+        try {
+            Path path = Paths.get(rootPath, key);
+            Path parent = path.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.write(path, content);
+        } catch (InvalidPathException e) {
+            LOGGER.error("Invalid path {}/{}: {}", rootPath, key, e.getMessage());
+            throw new StorageException("Key " + key + " not found", e);
+        } catch (IOException e) {
+            LOGGER.error("Failed to write data in  {}/{}: {}", rootPath, key, e.getMessage());
+            throw new StorageException("Failed to read " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean deleteObject(String key) throws StorageException {
+
+        Path path = Paths.get(rootPath, key);
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.error("Failed to remove file {}: {}", path, e.getMessage());
+            throw new StorageException("Failed to remove file " + path + ": " + e.getMessage(), e);
+        }
+    }
+}
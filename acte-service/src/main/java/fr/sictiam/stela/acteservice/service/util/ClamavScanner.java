@@ -0,0 +1,220 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Virus scans through clamd. The contents are streamed in chunks with the INSTREAM command, and at most
+ * {@code maxConnections} of them are sent to clamd at once: the files of one envelope are scanned in parallel by a
+ * pool of that size.
+ * <p>
+ * The verdicts are cached by SHA-256 of the content and version of the virus database, so an identical file is only
+ * scanned again once the database has been updated. The content is hashed before being sent, a cached verdict saves
+ * the transfer to clamd. Errors of clamd are not cached.
+ */
+public class ClamavScanner {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final long VERSION_TTL = 60000;
+
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    private final ThreadPoolTaskExecutor executor;
+    private final ExpiringCache<Boolean> verdicts;
+    private final ExpiringCache<String> versions;
+    private final Timer scanTimer;
+
+    public ClamavScanner(String host, int port, int maxConnections, int timeoutMillis, long cacheTtl, int cacheSize,
+            MeterRegistry meterRegistry) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConnections);
+        executor.setMaxPoolSize(maxConnections);
+        executor.setThreadNamePrefix("clamav-");
+        executor.setDaemon(true);
+        executor.initialize();
+        verdicts = new ExpiringCache<>("clamav.verdicts", cacheTtl, cacheSize, meterRegistry);
+        versions = new ExpiringCache<>("clamav.version", VERSION_TTL, 1, meterRegistry);
+        scanTimer = Timer.builder("stela.clamav.scan").register(meterRegistry);
+    }
+
+    /**
+     * Scans the content, which is read twice if it has not been scanned yet: once to be hashed, once to be sent to
+     * clamd.
+     */
+    public boolean isInfected(Content content) throws IOException {
+        return await(executor.submit(() -> scan(content)));
+    }
+
+    /**
+     * Scans the contents in parallel, true if any of them is infected. Each content is opened by its scan and streamed,
+     * so at most {@code maxConnections} of them are read at once and none is held in memory.
+     */
+    public boolean isAnyInfected(List<Content> contents) throws IOException {
+        return awaitAny(contents.stream()
+                .map(content -> executor.submit(() -> scan(content)))
+                .collect(Collectors.toList()));
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // hashed first, a content already scanned with the same database is not sent to clamd again
+    private boolean scan(Content content) throws IOException {
+        String key = databaseVersion() + ":" + hash(content);
+        return verdicts.get(key, () -> {
+            try (InputStream stream = content.open()) {
+                return instream(stream);
+            }
+        });
+    }
+
+    private String hash(Content content) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream stream = content.open()) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private String databaseVersion() throws IOException {
+        return versions.get("version", () -> {
+            // "ClamAV 0.100.2/25233/Thu Nov 29 09:41:50 2018", the database version is the second part
+            String version = command("zVERSION\0");
+            String[] parts = version.split("/");
+            return parts.length > 1 ? parts[1] : version;
+        });
+    }
+
+    private boolean instream(InputStream content) throws IOException {
+        long start = System.nanoTime();
+        try (Socket socket = connect()) {
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), CHUNK_SIZE + 4));
+            output.write("zINSTREAM\0".getBytes(StandardCharsets.US_ASCII));
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = content.read(chunk)) != -1) {
+                if (read == 0)
+                    continue;
+                output.writeInt(read);
+                output.write(chunk, 0, read);
+            }
+            output.writeInt(0);
+            output.flush();
+
+            String reply = readReply(socket.getInputStream());
+            if (reply.endsWith("FOUND"))
+                return true;
+            if (reply.endsWith("OK"))
+                return false;
+            throw new IOException("Unexpected reply from clamd: " + reply);
+        } finally {
+            scanTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String command(String command) throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(command.getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+            return readReply(socket.getInputStream());
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    // the replies of the z-prefixed commands end with a null character
+    private String readReply(InputStream input) throws IOException {
+        InputStream bufferedInput = new BufferedInputStream(input);
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        int b;
+        while ((b = bufferedInput.read()) > 0) {
+            reply.write(b);
+        }
+        return new String(reply.toByteArray(), StandardCharsets.US_ASCII).trim();
+    }
+
+    private boolean awaitAny(List<Future<Boolean>> scans) throws IOException {
+        boolean infected = false;
+        for (Future<Boolean> scan : scans) {
+            infected |= await(scan);
+        }
+        return infected;
+    }
+
+    private boolean await(Future<Boolean> scan) throws IOException {
+        try {
+            return scan.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the virus scan", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No SHA-256 algorithm found", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A content opened when it is scanned, and once more to be hashed. Each call returns a new stream from the start.
+     */
+    @FunctionalInterface
+    public interface Content {
+        InputStream open() throws IOException;
+    }
+}
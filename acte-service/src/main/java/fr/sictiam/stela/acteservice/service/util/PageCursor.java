@@ -0,0 +1,137 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import fr.sictiam.stela.acteservice.service.exceptions.InvalidCursorException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque keyset pagination cursor: the sort column and direction, and the values of the sort column and of the uuid
+ * on the last row of a page. The next page is read with a {@code (column, uuid) < (value, lastUuid)} condition
+ * ({@code >} when ascending), PostgreSQL then starts from the index instead of walking and discarding every earlier
+ * row as with an offset.
+ * <p>
+ * PostgreSQL sorts null values after the others: descending they come first and have already been read once a cursor
+ * exists, ascending they come last and the condition always keeps them. A page ending on a null sort value has no
+ * cursor, the client goes on with offsets.
+ */
+public class PageCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final String column;
+    private final boolean ascending;
+    private final String uuid;
+    private final String value;
+
+    private PageCursor(String column, boolean ascending, String uuid, String value) {
+        this.column = column;
+        this.ascending = ascending;
+        this.uuid = uuid;
+        this.value = value;
+    }
+
+    /**
+     * Cursor of the page following {@code results}, {@code null} if it is the last one or if it can't be continued
+     * with a cursor.
+     */
+    public static String next(List<?> results, int limit, String column, String direction) {
+        if (StringUtils.isBlank(column) || results.isEmpty() || results.size() < limit)
+            return null;
+        BeanWrapper last = new BeanWrapperImpl(results.get(results.size() - 1));
+        if (!last.isReadableProperty(column) || !last.isReadableProperty("uuid"))
+            return null;
+        Object value = last.getPropertyValue(column);
+        Object uuid = last.getPropertyValue("uuid");
+        if (value == null || uuid == null || !isSupported(value.getClass()))
+            return null;
+        String raw = String.join(SEPARATOR, column, isAscending(direction) ? "ASC" : "DESC", uuid.toString(),
+                value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws InvalidCursorException if the cursor is malformed or was not built for this sort
+     */
+    public static PageCursor decode(String cursor, String column, String direction) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split("\\" + SEPARATOR, 4);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException();
+        }
+        if (parts.length != 4 || !parts[0].equals(column) || isAscending(parts[1]) != isAscending(direction))
+            throw new InvalidCursorException();
+        return new PageCursor(parts[0], isAscending(parts[1]), parts[2], parts[3]);
+    }
+
+    public static boolean isAscending(String direction) {
+        return "ASC".equals(direction);
+    }
+
+    /**
+     * Sort on the column, then on the uuid so that rows sharing the same value keep a stable order between pages.
+     */
+    public static List<Order> getOrders(CriteriaBuilder builder, Path<?> root, String column, String direction) {
+        return isAscending(direction)
+                ? Arrays.asList(builder.asc(root.get(column)), builder.asc(root.get("uuid")))
+                : Arrays.asList(builder.desc(root.get(column)), builder.desc(root.get("uuid")));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public Predicate getPredicate(CriteriaBuilder builder, Path<?> root) {
+        Expression<Comparable> columnPath = root.get(column);
+        Comparable columnValue = parseValue(columnPath.getJavaType());
+        Expression<String> uuidPath = root.get("uuid");
+        if (ascending) {
+            return builder.or(builder.greaterThan(columnPath, columnValue),
+                    builder.and(builder.equal(columnPath, columnValue), builder.greaterThan(uuidPath, uuid)),
+                    builder.isNull(columnPath));
+        }
+        return builder.or(builder.lessThan(columnPath, columnValue),
+                builder.and(builder.equal(columnPath, columnValue), builder.lessThan(uuidPath, uuid)));
+    }
+
+    private static boolean isSupported(Class<?> type) {
+        return String.class.equals(type) || LocalDateTime.class.equals(type) || LocalDate.class.equals(type)
+                || type.isEnum() || Integer.class.equals(type) || Long.class.equals(type)
+                || Boolean.class.equals(type);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Comparable parseValue(Class<?> type) {
+        try {
+            if (String.class.equals(type))
+                return value;
+            if (LocalDateTime.class.equals(type))
+                return LocalDateTime.parse(value);
+            if (LocalDate.class.equals(type))
+                return LocalDate.parse(value);
+            if (type.isEnum())
+                return Enum.valueOf((Class<Enum>) type, value);
+            if (Integer.class.equals(type) || int.class.equals(type))
+                return Integer.valueOf(value);
+            if (Long.class.equals(type) || long.class.equals(type))
+                return Long.valueOf(value);
+            if (Boolean.class.equals(type) || boolean.class.equals(type))
+                return Boolean.valueOf(value);
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException();
+        }
+        throw new InvalidCursorException();
+    }
+}
@@ -0,0 +1,58 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Iterates over keys read by pages of {@code pageSize}, each value being loaded only when it is reached: a single page
+ * of keys and a single value are held at a time. The keys the loader gives null for are skipped.
+ */
+public class PagedIterator<V> implements Iterator<V> {
+
+    // (offset, limit) -> keys
+    private final BiFunction<Integer, Integer, List<String>> pages;
+    private final Function<String, V> loader;
+    private final int pageSize;
+
+    private List<String> page = Collections.emptyList();
+    private int offset;
+    private int index;
+    private boolean lastPage;
+    private V next;
+
+    public PagedIterator(BiFunction<Integer, Integer, List<String>> pages, Function<String, V> loader, int pageSize) {
+        this.pages = pages;
+        this.loader = loader;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (index < page.size()) {
+                next = loader.apply(page.get(index++));
+            } else if (lastPage) {
+                return false;
+            } else {
+                page = pages.apply(offset, pageSize);
+                offset += page.size();
+                index = 0;
+                lastPage = page.size() < pageSize;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public V next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        V value = next;
+        next = null;
+        return value;
+    }
+}
@@ -10,11 +10,7 @@ import com.lowagie.text.Rectangle;
 import com.lowagie.text.html.simpleparser.HTMLWorker;
 import com.lowagie.text.pdf.ColumnText;
 import com.lowagie.text.pdf.PdfContentByte;
-import com.lowagie.text.pdf.PdfCopy;
-import com.lowagie.text.pdf.PdfCopy.PageStamp;
-import com.lowagie.text.pdf.PdfImportedPage;
 import com.lowagie.text.pdf.PdfReader;
-import com.lowagie.text.pdf.PdfSmartCopy;
 import com.lowagie.text.pdf.PdfStamper;
 import com.lowagie.text.pdf.PdfWriter;
 import fr.sictiam.stela.acteservice.model.Thumbnail;
@@ -102,30 +98,6 @@ public class PdfGeneratorUtil {
         return thumbnail;
     }
 
-    public byte[] mergePDFs(List<byte[]> pdfs) throws DocumentException, IOException {
-        Document document = new Document();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PdfCopy copy = new PdfSmartCopy(document, baos);
-        document.open();
-        PageStamp stamp;
-        PdfImportedPage page;
-        PdfReader reader;
-        for (byte[] pdf : pdfs) {
-            reader = new PdfReader(pdf);
-            int pageNumber = reader.getNumberOfPages();
-            for (int i = 1; i <= pageNumber; i++) {
-                document.newPage();
-                page = copy.getImportedPage(reader, i);
-                stamp = copy.createPageStamp(page);
-                stamp.alterContents();
-                copy.addPage(page);
-            }
-            reader.close();
-        }
-        document.close();
-        return baos.toByteArray();
-    }
-
     public byte[] stampPDF(String ARUuid, String ARDate, byte[] pdf, Integer percentPositionX, Integer percentPositionY)
             throws IOException, DocumentException {
         PdfReader reader = new PdfReader(pdf);
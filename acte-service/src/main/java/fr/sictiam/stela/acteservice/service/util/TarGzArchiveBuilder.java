@@ -0,0 +1,65 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+
+/**
+ * Writes a tar.gz archive entry by entry: the content goes through the tar and gzip encoders straight to the
+ * target stream, so neither the entries nor the archive are held in memory.
+ * <p>
+ * The number of compressed bytes written is counted on the way, and is final once the builder is closed.
+ */
+public class TarGzArchiveBuilder implements Closeable {
+
+    private final CountingOutputStream countingOutputStream;
+    private final TarArchiveOutputStream tarArchiveOutputStream;
+    private boolean closed;
+
+    public TarGzArchiveBuilder(OutputStream outputStream) throws IOException {
+        countingOutputStream = new CountingOutputStream(new BufferedOutputStream(outputStream));
+        tarArchiveOutputStream = new TarArchiveOutputStream(new GzipCompressorOutputStream(countingOutputStream));
+        tarArchiveOutputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+    }
+
+    public TarGzArchiveBuilder addEntry(String entryName, byte[] content) throws IOException {
+        return addEntry(entryName, new ByteArrayInputStream(content), content.length);
+    }
+
+    /**
+     * Copies {@code size} bytes of the given stream in a new entry, the stream is closed afterwards.
+     */
+    public TarGzArchiveBuilder addEntry(String entryName, InputStream content, long size) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(entryName);
+        entry.setSize(size);
+        entry.setModTime(new Date());
+        try (InputStream inputStream = content) {
+            tarArchiveOutputStream.putArchiveEntry(entry);
+            IOUtils.copyLarge(inputStream, tarArchiveOutputStream);
+            tarArchiveOutputStream.closeArchiveEntry();
+        }
+        return this;
+    }
+
+    public long getCompressedSize() {
+        return countingOutputStream.getByteCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            tarArchiveOutputStream.close();
+        }
+    }
+}
@@ -1,15 +1,103 @@
 package fr.sictiam.stela.acteservice.service.util;
 
+import fr.sictiam.stela.acteservice.model.xml.ObjectFactory;
+
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.JAXBIntrospector;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.stream.StreamSource;
 
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * JAXB contexts are expensive to build and thread-safe, so they are created once: the {@code model.xml} one when
+ * this class is loaded, the others on first use. Unmarshallers are cheap but not thread-safe, they are pooled per
+ * context and reused.
+ */
 public class XmlUtils {
 
+    private static final JAXBContext XML_MODEL_CONTEXT = createContext(ObjectFactory.class);
+
+    private static final Map<Class<?>, JAXBContext> contexts = new ConcurrentHashMap<>();
+    private static final Map<JAXBContext, Queue<Unmarshaller>> unmarshallers = new ConcurrentHashMap<>();
+
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
     public static <T> T unmarshall(StreamSource xml, Class<T> clazz) throws JAXBException {
-        JAXBContext jc = JAXBContext.newInstance(clazz);
-        Unmarshaller unmarshaller = jc.createUnmarshaller();
-        return clazz.cast(unmarshaller.unmarshal(xml));
+        return clazz.cast(JAXBIntrospector.getValue(unmarshall(xml, getContext(clazz))));
+    }
+
+    /**
+     * Unmarshall a root element which has no dedicated class (declared in the {@code ObjectFactory}).
+     */
+    public static <T> JAXBElement<T> unmarshallElement(StreamSource xml, Class<T> clazz) throws JAXBException {
+        JAXBContext context = getContext(clazz);
+        Unmarshaller unmarshaller = borrowUnmarshaller(context);
+        try {
+            return unmarshaller.unmarshal(xml, clazz);
+        } finally {
+            unmarshallers.get(context).offer(unmarshaller);
+        }
+    }
+
+    /**
+     * Local name of the root element, reading the document only up to it.
+     */
+    public static String getRootElementName(InputStream xml) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(xml);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT)
+                    return reader.getLocalName();
+            }
+            throw new XMLStreamException("No root element found");
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Object unmarshall(StreamSource xml, JAXBContext context) throws JAXBException {
+        Unmarshaller unmarshaller = borrowUnmarshaller(context);
+        try {
+            return unmarshaller.unmarshal(xml);
+        } finally {
+            unmarshallers.get(context).offer(unmarshaller);
+        }
+    }
+
+    private static Unmarshaller borrowUnmarshaller(JAXBContext context) throws JAXBException {
+        Unmarshaller unmarshaller = unmarshallers.computeIfAbsent(context, key -> new ConcurrentLinkedQueue<>()).poll();
+        return unmarshaller != null ? unmarshaller : context.createUnmarshaller();
+    }
+
+    private static JAXBContext getContext(Class<?> clazz) {
+        if (ObjectFactory.class.getPackage().equals(clazz.getPackage()))
+            return XML_MODEL_CONTEXT;
+        return contexts.computeIfAbsent(clazz, XmlUtils::createContext);
+    }
+
+    private static JAXBContext createContext(Class<?> clazz) {
+        try {
+            return clazz == ObjectFactory.class
+                    ? JAXBContext.newInstance(clazz.getPackage().getName(), clazz.getClassLoader())
+                    : JAXBContext.newInstance(clazz);
+        } catch (JAXBException e) {
+            throw new IllegalStateException("Unable to create JAXB context for " + clazz.getName(), e);
+        }
     }
 }
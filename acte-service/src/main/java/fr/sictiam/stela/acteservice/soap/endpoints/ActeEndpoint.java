@@ -13,8 +13,10 @@ import fr.sictiam.stela.acteservice.model.ui.GenericAccount;
 import fr.sictiam.stela.acteservice.service.ActeService;
 import fr.sictiam.stela.acteservice.service.ExternalRestService;
 import fr.sictiam.stela.acteservice.service.LocalAuthorityService;
+import fr.sictiam.stela.acteservice.service.StorageService;
 import fr.sictiam.stela.acteservice.service.exceptions.ActeNotFoundException;
 import fr.sictiam.stela.acteservice.service.exceptions.CancelForbiddenException;
+import fr.sictiam.stela.acteservice.service.util.PageCursor;
 import fr.sictiam.stela.acteservice.soap.model.*;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -57,14 +59,17 @@ public class ActeEndpoint {
     private final LocalAuthorityService localAuthorityService;
     private final SoapReturnGenerator soapReturnGenerator;
     private final ExternalRestService externalRestService;
+    private final StorageService storageService;
     private ObjectFactory objectFactory;
 
     public ActeEndpoint(ActeService acteService, LocalAuthorityService localAuthorityService,
-                        SoapReturnGenerator soapReturnGenerator, ExternalRestService externalRestService) {
+                        SoapReturnGenerator soapReturnGenerator, ExternalRestService externalRestService,
+                        StorageService storageService) {
         this.acteService = acteService;
         this.localAuthorityService = localAuthorityService;
         this.soapReturnGenerator = soapReturnGenerator;
         this.externalRestService = externalRestService;
+        this.storageService = storageService;
         this.objectFactory = new ObjectFactory();
     }
 
@@ -289,7 +294,7 @@ public class ActeEndpoint {
                 return returnObject;
             }
         } else {
-            document = acte.getActeAttachment().getFile();
+            document = storageService.getAttachmentContent(acte.getActeAttachment());
         }
         document = Base64.getEncoder().encode(document);
         Map<String, Object> returnMap = new HashMap<>();
@@ -332,7 +337,7 @@ public class ActeEndpoint {
                     LOGGER.error(e.getMessage());
                 }
             } else {
-                document = annexe.getFile();
+                document = storageService.getAttachmentContent(annexe);
             }
             document = Base64.getEncoder().encode(document);
             Map<String, Object> returnMap = new HashMap<>();
@@ -365,7 +370,7 @@ public class ActeEndpoint {
 
         returnMap.put("type_document", acteService.getActeHistoryDefinition(acteHistory));
         returnMap.put("filename", acteHistory.getFileName());
-        returnMap.put("chaine_fichier", acteHistory.getFile());
+        returnMap.put("chaine_fichier", storageService.getAttachmentContent(acteHistory.getAttachment()));
 
         returnObject.setJsonGetDocumentComplementaire(soapReturnGenerator.generateReturn("OK", returnMap));
         return returnObject;
@@ -550,7 +555,7 @@ public class ActeEndpoint {
 
         Long count = acteService.countAllWithQuery(listeDeliberationsInput.getChampRecherche(), null, null, nature,
                 decisionFrom, decisionTo, null, null, Collections.singleton(listeDeliberationsInput.getGroupe()));
-        String sort = "";
+        String sort = null;
         // TODO analyse input data
         switch (listeDeliberationsInput.getSort()) {
             case "objet":
@@ -560,12 +565,13 @@ public class ActeEndpoint {
             default:
                 break;
         }
+        sort = acteService.getSortColumn(listeDeliberationsInput.getChampRecherche(), sort);
         int start = Integer.parseInt(listeDeliberationsInput.getStart());
         int rowNumber = Integer.parseInt(listeDeliberationsInput.getPerPage());
 
         List<Acte> actes = acteService.getAllWithQuery(listeDeliberationsInput.getChampRecherche(), null, null, nature,
-                decisionFrom, decisionTo, null, start, rowNumber, null, sort, direction,
-                Collections.singleton(listeDeliberationsInput.getGroupe()));
+                decisionFrom, decisionTo, null, rowNumber, start, listeDeliberationsInput.getCurseur(), sort,
+                direction, null, Collections.singleton(listeDeliberationsInput.getGroupe()));
 
         DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
@@ -592,6 +598,7 @@ public class ActeEndpoint {
         result.put("iDisplayLength", rowNumber);
         result.put("iDisplayStart", start);
         result.put("aaData", rows);
+        result.put("curseurSuivant", PageCursor.next(actes, rowNumber, sort, direction));
 
         listeDeliberationsOutput.setJsonGetListeDeliberations(soapReturnGenerator.generateReturn("OK", result));
         return listeDeliberationsOutput;
@@ -709,7 +716,7 @@ public class ActeEndpoint {
                 } catch (UnsupportedEncodingException e) {
                     LOGGER.error(e.getMessage());
                 }
-                return new Attachment(byteArray, name, byteArray.length);
+                return storageService.createAttachment(name, byteArray);
             }).collect(Collectors.toList());
 
             Attachment mainAttachement = attachments.remove(0);
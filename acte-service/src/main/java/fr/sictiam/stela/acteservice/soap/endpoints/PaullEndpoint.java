@@ -12,6 +12,7 @@ import fr.sictiam.stela.acteservice.model.ui.GenericAccount;
 import fr.sictiam.stela.acteservice.service.ActeService;
 import fr.sictiam.stela.acteservice.service.ExternalRestService;
 import fr.sictiam.stela.acteservice.service.LocalAuthorityService;
+import fr.sictiam.stela.acteservice.service.StorageService;
 import fr.sictiam.stela.acteservice.soap.model.paull.*;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
@@ -55,13 +56,16 @@ public class PaullEndpoint {
     private final LocalAuthorityService localAuthorityService;
     private final SoapReturnGenerator soapReturnGenerator;
     private final ExternalRestService externalRestService;
+    private final StorageService storageService;
 
     public PaullEndpoint(ActeService acteService, LocalAuthorityService localAuthorityService,
-            SoapReturnGenerator soapReturnGenerator, ExternalRestService externalRestService) {
+            SoapReturnGenerator soapReturnGenerator, ExternalRestService externalRestService,
+            StorageService storageService) {
         this.localAuthorityService = localAuthorityService;
         this.externalRestService = externalRestService;
         this.acteService = acteService;
         this.soapReturnGenerator = soapReturnGenerator;
+        this.storageService = storageService;
     }
 
     PaullSoapToken getToken(String sessionID) {
@@ -104,7 +108,7 @@ public class PaullEndpoint {
         List<Attachment> attachments = depotActeRequest.getFichiers().stream().map(file -> {
             String name = StringUtils.stripAccents(file.getFilename());
             byte[] byteArray = Base64.getDecoder().decode(file.getBase64().getBytes(StandardCharsets.UTF_8));
-            return new Attachment(byteArray, name, byteArray.length);
+            return storageService.createAttachment(name, byteArray);
         }).collect(Collectors.toList());
 
         DepotActeStruct1 infosActes = depotActeRequest.getInfosActe().get(0);
@@ -315,7 +319,7 @@ public class PaullEndpoint {
 
         Acte acte = acteService.getByUuid(getDocumentRequest.getIdActe());
 
-        byte[] document = acte.getActeAttachment().getFile();
+        byte[] document = storageService.getAttachmentContent(acte.getActeAttachment());
         retour.setBase64(Base64.getEncoder().encodeToString(document));
         retour.setFilename(acte.getActeAttachment().getFilename());
 
@@ -354,7 +358,7 @@ public class PaullEndpoint {
         Acte acte = acteService.getByUuid(getAnnexesRequest.getIdActe());
         List<GetAnnexesStruct> annexes = acte.getAnnexes().stream().map(annexe -> {
             GetAnnexesStruct annexeStruct = new GetAnnexesStruct();
-            annexeStruct.setBase64(Base64.getEncoder().encodeToString(annexe.getFile()));
+            annexeStruct.setBase64(Base64.getEncoder().encodeToString(storageService.getAttachmentContent(annexe)));
             annexeStruct.setFilename(annexe.getFilename());
             return annexeStruct;
         }).collect(Collectors.toList());
@@ -34,6 +34,7 @@ import javax.xml.bind.annotation.XmlType;
  *         &lt;element name="filtreAnnee" type="{http://www.w3.org/2001/XMLSchema}string"/&gt;
  *         &lt;element name="lienDetail" type="{http://www.w3.org/2001/XMLSchema}string"/&gt;
  *         &lt;element name="filtreNature" type="{http://www.w3.org/2001/XMLSchema}string"/&gt;
+ *         &lt;element name="curseur" type="{http://www.w3.org/2001/XMLSchema}string" minOccurs="0"/&gt;
  *       &lt;/sequence&gt;
  *     &lt;/restriction&gt;
  *   &lt;/complexContent&gt;
@@ -44,7 +45,7 @@ import javax.xml.bind.annotation.XmlType;
  */
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "GetListeDeliberations_Input", propOrder = { "groupe", "start", "perPage", "sort", "order",
-        "champRecherche", "filtreAnnee", "lienDetail", "filtreNature" })
+        "champRecherche", "filtreAnnee", "lienDetail", "filtreNature", "curseur" })
 public class GetListeDeliberationsInput {
 
     @XmlElement(required = true)
@@ -65,6 +66,7 @@ public class GetListeDeliberationsInput {
     protected String lienDetail;
     @XmlElement(required = true)
     protected String filtreNature;
+    protected String curseur;
 
     /**
      * Obtient la valeur de la propriété groupe.
@@ -255,4 +257,25 @@ public class GetListeDeliberationsInput {
         this.filtreNature = value;
     }
 
+    /**
+     * Obtient la valeur de la propriété curseur.
+     *
+     * @return possible object is {@link String }
+     *
+     */
+    public String getCurseur() {
+        return curseur;
+    }
+
+    /**
+     * Définit la valeur de la propriété curseur.
+     *
+     * @param value
+     *            allowed object is {@link String }
+     *
+     */
+    public void setCurseur(String value) {
+        this.curseur = value;
+    }
+
 }
@@ -0,0 +1,7 @@
+ALTER TABLE attachment ADD COLUMN storage_key character varying(255);
+
+ALTER TABLE acte_history ADD COLUMN attachment_uuid character varying(255) NULL;
+ALTER TABLE acte_history ADD CONSTRAINT fk_acte_history_attachment FOREIGN KEY (attachment_uuid) REFERENCES attachment(uuid);
+
+ALTER TABLE pending_message ADD COLUMN attachment_uuid character varying(255) NULL;
+ALTER TABLE pending_message ADD CONSTRAINT fk_pending_message_attachment FOREIGN KEY (attachment_uuid) REFERENCES attachment(uuid);
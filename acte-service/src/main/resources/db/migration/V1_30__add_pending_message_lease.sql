@@ -0,0 +1,11 @@
+ALTER TABLE pending_message ADD COLUMN attempts integer NOT NULL DEFAULT 0;
+ALTER TABLE pending_message ADD COLUMN next_attempt timestamp;
+ALTER TABLE pending_message ADD COLUMN lease_owner character varying(255);
+ALTER TABLE pending_message ADD COLUMN lease_until timestamp;
+-- dropped by V1_16, the queue is ordered on it again
+ALTER TABLE pending_message ADD COLUMN date timestamp;
+
+UPDATE pending_message SET date = now() WHERE date IS NULL;
+
+CREATE INDEX pending_message_next_attempt_idx ON pending_message (next_attempt, date);
+CREATE INDEX pending_message_lease_owner_idx ON pending_message (lease_owner);
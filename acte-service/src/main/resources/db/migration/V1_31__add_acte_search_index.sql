@@ -0,0 +1,32 @@
+CREATE EXTENSION IF NOT EXISTS unaccent;
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- french stemming on unaccented words
+CREATE TEXT SEARCH CONFIGURATION fr_unaccent (COPY = french);
+ALTER TEXT SEARCH CONFIGURATION fr_unaccent
+  ALTER MAPPING FOR hword, hword_part, word WITH unaccent, french_stem;
+
+CREATE FUNCTION acte_search_document(number varchar, objet varchar, local_authority_name varchar)
+  RETURNS tsvector AS $$
+    SELECT setweight(to_tsvector('fr_unaccent', coalesce(number, '')), 'A')
+        || setweight(to_tsvector('fr_unaccent', coalesce(objet, '')), 'B')
+        || setweight(to_tsvector('fr_unaccent', coalesce(local_authority_name, '')), 'C')
+  $$ LANGUAGE sql STABLE;
+
+-- lower-cased and unaccented text, for the substring searches (acte numbers, word prefixes)
+CREATE FUNCTION acte_search_text(number varchar, objet varchar, local_authority_name varchar)
+  RETURNS text AS $$
+    SELECT lower(unaccent(concat_ws(' ', number, objet, local_authority_name)))
+  $$ LANGUAGE sql STABLE;
+
+ALTER TABLE acte ADD COLUMN search_document tsvector;
+ALTER TABLE acte ADD COLUMN search_text text;
+
+UPDATE acte SET
+  search_document = acte_search_document(number, objet,
+      (SELECT name FROM local_authority WHERE local_authority.uuid = acte.local_authority_uuid)),
+  search_text = acte_search_text(number, objet,
+      (SELECT name FROM local_authority WHERE local_authority.uuid = acte.local_authority_uuid));
+
+CREATE INDEX acte_search_document_idx ON acte USING gin (search_document);
+CREATE INDEX acte_search_text_idx ON acte USING gin (search_text gin_trgm_ops);
@@ -0,0 +1,2 @@
+-- Keyset pagination of the acte lists: default sort on the creation date, the uuid breaking ties
+CREATE INDEX acte_local_authority_creation_uuid_idx ON acte (local_authority_uuid, creation, uuid);
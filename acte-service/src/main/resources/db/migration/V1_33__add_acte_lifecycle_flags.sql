@@ -0,0 +1,24 @@
+ALTER TABLE acte ADD COLUMN ack_date timestamp without time zone;
+ALTER TABLE acte ADD COLUMN cancelled boolean not null default false;
+
+update acte set ack_date = (
+  select max(date)
+  from acte_history
+  where acte_history.acte_uuid = acte.uuid
+    and status = 'ACK_RECEIVED'
+);
+
+update acte set cancelled = true
+where exists (
+  select 1
+  from acte_history
+  where acte_history.acte_uuid = acte.uuid
+    and status in ('CANCELLATION_ASKED', 'CANCELLATION_ARCHIVE_CREATED', 'CANCELLED')
+);
+
+-- public portal listing: acknowledged and not cancelled public actes, by creation date
+CREATE INDEX acte_public_creation_uuid_idx ON acte (creation, uuid)
+  WHERE is_public AND draft_uuid IS NULL AND ack_date IS NOT NULL AND NOT cancelled;
+
+-- last metier history lookups
+CREATE INDEX acte_history_acte_uuid_date_idx ON acte_history (acte_uuid, date);
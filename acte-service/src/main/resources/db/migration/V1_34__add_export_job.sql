@@ -0,0 +1,11 @@
+CREATE TABLE export_job (
+    uuid VARCHAR(255) NOT NULL,
+    local_authority_uuid VARCHAR(255),
+    file_name VARCHAR(255),
+    status VARCHAR(255),
+    creation TIMESTAMP,
+    storage_key VARCHAR(255),
+    PRIMARY KEY (uuid)
+);
+
+CREATE INDEX export_job_creation_idx ON export_job (creation);
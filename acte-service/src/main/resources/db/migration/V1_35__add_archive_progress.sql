@@ -0,0 +1,10 @@
+ALTER TABLE archive ADD COLUMN step character varying(255);
+ALTER TABLE archive ADD COLUMN annexes_sent integer NOT NULL DEFAULT 0;
+
+-- archiver: acknowledged actes of a local authority not archived yet, read by pages of uuids
+CREATE INDEX acte_archive_pending_idx ON acte (local_authority_uuid, uuid, last_history_date)
+  WHERE draft_uuid IS NULL AND archive_uuid IS NULL AND ack_date IS NOT NULL;
+
+-- archiver: archives in progress or waiting for the SAE
+CREATE INDEX acte_archive_uuid_idx ON acte (archive_uuid) WHERE archive_uuid IS NOT NULL;
+CREATE INDEX archive_status_idx ON archive (status);
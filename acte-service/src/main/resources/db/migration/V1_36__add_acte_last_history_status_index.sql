@@ -0,0 +1,2 @@
+-- Backlog metrics: number of actes waiting in each status
+CREATE INDEX acte_last_history_status_idx ON acte (last_history_status);
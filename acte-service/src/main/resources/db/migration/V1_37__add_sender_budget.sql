@@ -0,0 +1,10 @@
+-- Byte budget of the MIAT sender, shared by all the instances draining the pending_message queue
+CREATE TABLE sender_budget (
+    name character varying(255) NOT NULL,
+    tokens double precision NOT NULL,
+    last_refill timestamp with time zone NOT NULL,
+    CONSTRAINT sender_budget_pkey PRIMARY KEY (name)
+);
+
+-- starts full, the tokens are capped at the configured capacity
+INSERT INTO sender_budget (name, tokens, last_refill) VALUES ('miat', 1e18, now());
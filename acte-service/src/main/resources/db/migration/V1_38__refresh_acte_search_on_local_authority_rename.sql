@@ -0,0 +1,15 @@
+-- the local authority name is part of the search document and text of its actes
+CREATE FUNCTION acte_search_local_authority_renamed() RETURNS trigger AS $$
+BEGIN
+  UPDATE acte SET
+    search_document = acte_search_document(number, objet, NEW.name),
+    search_text = acte_search_text(number, objet, NEW.name)
+  WHERE local_authority_uuid = NEW.uuid;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER acte_search_local_authority_renamed
+  AFTER UPDATE OF name ON local_authority
+  FOR EACH ROW WHEN (OLD.name IS DISTINCT FROM NEW.name)
+  EXECUTE PROCEDURE acte_search_local_authority_renamed();
@@ -7,6 +7,7 @@ import fr.sictiam.stela.acteservice.dao.ActeRepository;
 import fr.sictiam.stela.acteservice.dao.AdminRepository;
 import fr.sictiam.stela.acteservice.dao.AttachmentRepository;
 import fr.sictiam.stela.acteservice.model.*;
+import fr.sictiam.stela.acteservice.model.event.ActeHistoryEvent;
 import fr.sictiam.stela.acteservice.model.event.LocalAuthorityEvent;
 import fr.sictiam.stela.acteservice.model.ui.DraftUI;
 import fr.sictiam.stela.acteservice.model.ui.SearchResultsUI;
@@ -16,6 +17,7 @@ import fr.sictiam.stela.acteservice.service.ArchiverService;
 import fr.sictiam.stela.acteservice.service.DraftService;
 import fr.sictiam.stela.acteservice.service.ExternalRestService;
 import fr.sictiam.stela.acteservice.service.LocalAuthorityService;
+import fr.sictiam.stela.acteservice.service.StorageService;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import org.apache.commons.io.IOUtils;
@@ -50,6 +52,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -57,6 +60,10 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static fr.sictiam.stela.acteservice.utils.ActeUtils.acteWithAttachments;
 import static org.hamcrest.CoreMatchers.hasItem;
@@ -109,6 +116,9 @@ public class ActeServiceIntegrationTests extends BaseIntegrationTests {
     @Autowired
     private ArchiverService archiverService;
 
+    @Autowired
+    private StorageService storageService;
+
     @Autowired
     private AttachmentRepository attachmentRepository;
 
@@ -174,7 +184,7 @@ public class ActeServiceIntegrationTests extends BaseIntegrationTests {
                 JsonNode node = objectMapper.readTree(profile1);
                 JsonNode profilesNode = objectMapper.readTree(profilesJson);
                 Mockito.when(externalRestService.getProfile("4f146466-ea58-4e5c-851c-46db18ac173b")).thenReturn(node);
-                Mockito.when(externalRestService.getProfiles(localAuthority.getUuid())).thenReturn(profilesNode);
+                Mockito.when(externalRestService.getSubscribers(localAuthority.getUuid(), "ACTES", null)).thenReturn(profilesNode);
 
             } catch (IOException e) {
                 LOGGER.error(e.getMessage());
@@ -263,7 +273,7 @@ public class ActeServiceIntegrationTests extends BaseIntegrationTests {
         assertThat(acteHistories, hasItem(Matchers.<ActeHistory>hasProperty("status", is(StatusType.ARCHIVE_CREATED))));
 
         Optional<ActeHistory> acteHistory = getActeHistoryForStatus(acteHistories, StatusType.ARCHIVE_CREATED);
-        assertThat(acteHistory.get().getFile(), notNullValue());
+        assertThat(acteHistory.get().getAttachment(), notNullValue());
         assertThat(acteHistory.get().getFileName(), notNullValue());
 
         assertThat(acteHistories, hasItem(Matchers.<ActeHistory>hasProperty("status", is(StatusType.CREATED))));
@@ -323,9 +333,7 @@ public class ActeServiceIntegrationTests extends BaseIntegrationTests {
 
         // manually add a ACK_RECEIVED history trace to allow for cancellation
         ActeHistory cancelAskedHistory = new ActeHistory(acteUuid, StatusType.ACK_RECEIVED);
-        Acte acte = acteService.getByUuid(acteUuid);
-        acte.getActeHistories().add(cancelAskedHistory);
-        acteRepository.save(acte);
+        acteHistoryRepository.append(cancelAskedHistory);
 
         this.restTemplate.postForEntity("/api/acte/{uuid}/status/cancel", null, null, acteUuid);
 
@@ -338,12 +346,12 @@ public class ActeServiceIntegrationTests extends BaseIntegrationTests {
             fail("Should not have thrown an exception");
         }
 
-        acte = acteService.getByUuid(acteUuid);
+        Acte acte = acteService.getByUuid(acteUuid);
         assertThat(acte.getActeHistories().last().getStatus(), is(StatusType.NOTIFICATION_SENT));
 
         Optional<ActeHistory> acteHistory = getActeHistoryForStatus(acteUuid, StatusType.CANCELLATION_ARCHIVE_CREATED);
         assertThat(acteHistory.isPresent(), is(true));
-        assertThat(acteHistory.get().getFile(), notNullValue());
+        assertThat(acteHistory.get().getAttachment(), notNullValue());
         assertThat(acteHistory.get().getFileName(), notNullValue());
 
         ResponseEntity<String> newResponse = this.restTemplate.postForEntity("/api/acte/{uuid}/status/cancel", null,
@@ -587,11 +595,11 @@ public class ActeServiceIntegrationTests extends BaseIntegrationTests {
 
         SortedSet<ActeHistory> acteHistories = new TreeSet<>();
         acteHistories.add(new ActeHistory(acte.getUuid(), StatusType.SENT,
-                LocalDateTime.now(), null, Flux.TRANSMISSION_ACTE));
+                LocalDateTime.now(), Flux.TRANSMISSION_ACTE));
         MultipartFile xmlFile = getMultipartResourceFile("data/006-210600235-20180522-684-AI-1-2_5279.xml",
                 "application/xml");
         acteHistories.add(new ActeHistory(acte.getUuid(), StatusType.ACK_RECEIVED,
-                LocalDateTime.now(), xmlFile.getBytes(), "ACK.xml"));
+                LocalDateTime.now(), storageService.createAttachment("ACK.xml", xmlFile.getBytes())));
         acte.setActeHistories(acteHistories);
         acte = acteRepository.save(acte);
 
@@ -630,6 +638,47 @@ public class ActeServiceIntegrationTests extends BaseIntegrationTests {
         assertThat(attachmentRepository.findByUuid(annexeUuid).isPresent(), is(false));
     }
 
+    @Test
+    public void concurrentHistoriesAreAppended() throws Exception {
+        LocalAuthority localAuthority = localAuthorityService.getByName("SICTIAM TEST").get();
+        Acte acte = new Acte();
+        acte = setActeValues(acte);
+        acte.setCreation(LocalDateTime.now());
+        acte.setLocalAuthority(localAuthority);
+        acte.setActeHistories(Collections.emptySortedSet());
+        String acteUuid = acteRepository.save(acte).getUuid();
+
+        // events are handled in no particular order, the newest one is not the last one written
+        int events = 200;
+        LocalDateTime start = LocalDateTime.now().withNano(0);
+        List<ActeHistory> histories = new ArrayList<>();
+        for (int i = 0; i < events; i++) {
+            histories.add(new ActeHistory(acteUuid, i % 2 == 0 ? StatusType.SENT : StatusType.ACK_RECEIVED,
+                    start.plusSeconds(i), Flux.TRANSMISSION_ACTE));
+        }
+        Collections.shuffle(histories);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        long begin = System.nanoTime();
+        List<Future<?>> futures = histories.stream()
+                .map(history -> executor.submit(
+                        () -> acteService.onApplicationEvent(new ActeHistoryEvent(this, history))))
+                .collect(Collectors.toList());
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        LOGGER.info("{} histories appended by 8 threads in {} ms ({} events/s)", events, elapsed / 1_000_000,
+                events * 1_000_000_000L / elapsed);
+
+        acte = acteService.getByUuid(acteUuid);
+        assertThat(acte.getActeHistories(), hasSize(events));
+        assertThat(acte.getLastHistoryDate(), is(start.plusSeconds(events - 1)));
+        assertThat(acte.getLastHistoryStatus(), is(StatusType.ACK_RECEIVED));
+        assertThat(acte.getAckDate(), is(start.plusSeconds(events - 1)));
+    }
+
     private MultipartFile getMultipartResourceFile(String filename, String contentType) throws IOException {
         File file = new ClassPathResource(filename).getFile();
 
@@ -648,8 +697,7 @@ public class ActeServiceIntegrationTests extends BaseIntegrationTests {
         acte.setProfileUuid("4f146466-ea58-4e5c-851c-46db18ac173b");
         try {
             MultipartFile multipartFile = getMultipartResourceFile("data/Delib.pdf", "application/pdf");
-            Attachment attachment = new Attachment(multipartFile.getBytes(), multipartFile.getOriginalFilename(),
-                    multipartFile.getSize());
+            Attachment attachment = storageService.createAttachment(multipartFile);
             acte.setActeAttachment(attachment);
             acte.setAnnexes(Collections.singletonList(attachment));
         } catch (IOException e) {
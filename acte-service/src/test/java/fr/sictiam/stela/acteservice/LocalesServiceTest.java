@@ -1,5 +1,6 @@
 package fr.sictiam.stela.acteservice;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import fr.sictiam.stela.acteservice.model.StatusType;
 import fr.sictiam.stela.acteservice.service.LocalesService;
 import org.junit.Test;
@@ -9,6 +10,7 @@ import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class LocalesServiceTest {
@@ -24,6 +26,16 @@ public class LocalesServiceTest {
         assertThat(json_notif, notNullValue());
     }
 
+    @Test
+    public void testGetJsonNodeInSupportedLanguage() {
+        JsonNode translations = localService.getJsonNode("fr", "acte");
+        assertThat(translations.path("acte").path("status").path("CREATED").asText(), is("Déposé"));
+
+        assertThat(localService.getJsonNode("fr-FR", "acte"), sameInstance(translations));
+        assertThat(localService.getJsonNode("xx", "acte"), sameInstance(translations));
+        assertThat(localService.getJsonNode(null, "acte"), sameInstance(translations));
+    }
+
     @Test
     public void testGetSimpleMessage() {
         String message = localService.getMessage("fr", "acte", "$.acte.status.CREATED");
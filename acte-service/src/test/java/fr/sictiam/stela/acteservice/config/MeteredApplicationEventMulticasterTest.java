@@ -0,0 +1,106 @@
+package fr.sictiam.stela.acteservice.config;
+
+import fr.sictiam.stela.acteservice.config.MeteredApplicationEventMulticaster.PoolSettings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MeteredApplicationEventMulticasterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MeteredApplicationEventMulticaster multicaster;
+
+    @After
+    public void tearDown() {
+        multicaster.destroy();
+    }
+
+    @Test
+    public void saturatedPoolRunsTheListenerInThePublishingThread() throws InterruptedException {
+        // one thread, one queued invocation
+        multicaster = new MeteredApplicationEventMulticaster(meterRegistry,
+                pool -> MeteredApplicationEventMulticaster.DEFAULT_POOL.equals(pool) ? new PoolSettings(1, 1, 1)
+                        : null);
+        BlockingListener listener = new BlockingListener(3);
+        multicaster.addApplicationListener(listener);
+
+        multicaster.multicastEvent(new TestEvent(this));
+        multicaster.multicastEvent(new TestEvent(this));
+        multicaster.multicastEvent(new TestEvent(this));
+
+        assertEquals(Thread.currentThread().getName(), listener.threads.get(0));
+        assertEquals(1, meterRegistry.get("stela.events.rejected").tag("pool", "default").counter().count(), 0);
+        assertEquals(0, meterRegistry.get("stela.events.queue.remaining").tag("pool", "default").gauge().value(), 0);
+        assertNotNull(meterRegistry.find("executor.pool.size").tag("name", "events.default").gauge());
+
+        listener.release.countDown();
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        assertTrue(listener.threads.get(1).startsWith("events-default-"));
+        assertTrue(listener.threads.get(2).startsWith("events-default-"));
+    }
+
+    @Test
+    public void listenerRunsOnItsDedicatedPool() throws InterruptedException {
+        multicaster = new MeteredApplicationEventMulticaster(meterRegistry,
+                pool -> "BlockingListener".equals(pool) || MeteredApplicationEventMulticaster.DEFAULT_POOL.equals(pool)
+                        ? new PoolSettings(1, 1, 10) : null);
+        BlockingListener listener = new BlockingListener(1);
+        listener.release.countDown();
+        multicaster.addApplicationListener(listener);
+
+        multicaster.multicastEvent(new TestEvent(this));
+
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        assertTrue(listener.threads.get(0).startsWith("events-BlockingListener-"));
+        assertNotNull(meterRegistry.find("executor.pool.size").tag("name", "events.BlockingListener").gauge());
+        // the timer is stopped after the listener returns
+        Thread.sleep(100);
+        assertEquals(1, meterRegistry.get("stela.events.listener").tag("listener", "BlockingListener")
+                .tag("event", "TestEvent").timer().count());
+    }
+
+    private static class TestEvent extends ApplicationEvent {
+
+        private TestEvent(Object source) {
+            super(source);
+        }
+    }
+
+    /**
+     * Blocks the pool threads until released, runs right away in the publishing thread.
+     */
+    private static class BlockingListener implements ApplicationListener<TestEvent> {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch done;
+        private final List<String> threads = new CopyOnWriteArrayList<>();
+
+        private BlockingListener(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onApplicationEvent(TestEvent event) {
+            String thread = Thread.currentThread().getName();
+            try {
+                if (thread.startsWith("events-"))
+                    release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            threads.add(thread);
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package fr.sictiam.stela.acteservice.dao;
+
+import fr.sictiam.stela.acteservice.BaseIntegrationTests;
+import fr.sictiam.stela.acteservice.model.ActeHistory;
+import fr.sictiam.stela.acteservice.model.Attachment;
+import fr.sictiam.stela.acteservice.model.Flux;
+import fr.sictiam.stela.acteservice.model.PendingMessage;
+import fr.sictiam.stela.acteservice.model.StatusType;
+import fr.sictiam.stela.acteservice.service.PendingMessageService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the lease and budget queries of the pending messages against the schema built by the Flyway migrations.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class PendingMessageRepositoryIntegrationTests extends BaseIntegrationTests {
+
+    @Autowired
+    private PendingMessageRepository pendingMessageRepository;
+
+    @Autowired
+    private PendingMessageService pendingMessageService;
+
+    @Autowired
+    private AttachmentRepository attachmentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        pendingMessageRepository.deleteAll();
+        jdbcTemplate.update("UPDATE sender_budget SET tokens = 1e18, last_refill = now()");
+    }
+
+    @Test
+    public void messagesAreClaimedOldestFirstAndOnlyOnce() throws InterruptedException {
+        PendingMessage first = pendingMessageService.save(pendingMessage("acte1"));
+        // distinct dates, the queue is ordered on them
+        Thread.sleep(10);
+        PendingMessage second = pendingMessageService.save(pendingMessage("acte2"));
+        Thread.sleep(10);
+        pendingMessageService.save(pendingMessage("acte3"));
+
+        List<PendingMessage> claimed = pendingMessageService.claim("instance1-1", 2,
+                LocalDateTime.now().plusMinutes(10));
+        List<PendingMessage> claimedByOther = pendingMessageService.claim("instance2-1", 5,
+                LocalDateTime.now().plusMinutes(10));
+
+        assertEquals(2, claimed.size());
+        assertEquals(first.getUuid(), claimed.get(0).getUuid());
+        assertEquals(second.getUuid(), claimed.get(1).getUuid());
+        assertEquals(1, claimedByOther.size());
+        assertEquals("acte3", claimedByOther.get(0).getActeUuid());
+    }
+
+    @Test
+    public void releasedMessageCanBeClaimedAgain() {
+        pendingMessageService.save(pendingMessage("acte1"));
+        PendingMessage claimed = pendingMessageService.claim("instance1-1", 1,
+                LocalDateTime.now().plusMinutes(10)).get(0);
+
+        pendingMessageService.release(claimed);
+
+        assertEquals(1, pendingMessageService.claim("instance1-2", 1, LocalDateTime.now().plusMinutes(10)).size());
+    }
+
+    @Test
+    public void expiredLeaseCanBeClaimedAgain() {
+        pendingMessageService.save(pendingMessage("acte1"));
+        pendingMessageService.claim("crashed-1", 1, LocalDateTime.now().minusSeconds(1));
+
+        assertEquals(1, pendingMessageService.claim("instance1-1", 1, LocalDateTime.now().plusMinutes(10)).size());
+    }
+
+    @Test
+    public void rescheduledMessageWaitsForItsNextAttempt() {
+        pendingMessageService.save(pendingMessage("acte1"));
+        PendingMessage claimed = pendingMessageService.claim("instance1-1", 1,
+                LocalDateTime.now().plusMinutes(10)).get(0);
+
+        pendingMessageService.reschedule(claimed, LocalDateTime.now().plusHours(1));
+
+        assertTrue(pendingMessageService.claim("instance1-2", 1, LocalDateTime.now().plusMinutes(10)).isEmpty());
+        assertEquals(1, pendingMessageRepository.findById(claimed.getUuid()).get().getAttempts());
+    }
+
+    @Test
+    public void messageNotImportedInTheStorageYetIsNotClaimed() {
+        pendingMessageService.save(new PendingMessage(new ActeHistory("legacy", StatusType.ARCHIVE_SIZE_CHECKED,
+                LocalDateTime.now(), (Attachment) null, Flux.TRANSMISSION_ACTE)));
+        pendingMessageService.save(pendingMessage("acte1"));
+
+        List<PendingMessage> claimed = pendingMessageService.claim("instance1-1", 2,
+                LocalDateTime.now().plusMinutes(10));
+
+        assertEquals(1, claimed.size());
+        assertEquals("acte1", claimed.get(0).getActeUuid());
+    }
+
+    @Test
+    public void budgetIsSharedUntilEmpty() {
+        // two instances, the budget being refilled too slowly to matter
+        assertTrue(pendingMessageService.consumeBudget(600, 1000, 0.001));
+        assertTrue(pendingMessageService.consumeBudget(400, 1000, 0.001));
+
+        assertFalse(pendingMessageService.consumeBudget(1, 1000, 0.001));
+        assertEquals(0, pendingMessageService.availableBudget(1000, 0.001));
+    }
+
+    @Test
+    public void messageLargerThanTheCapacityIsSentWhenTheBudgetIsFull() {
+        assertTrue(pendingMessageService.consumeBudget(5000, 1000, 0.001));
+
+        assertFalse(pendingMessageService.consumeBudget(1, 1000, 0.001));
+        assertTrue(pendingMessageService.availableBudget(1000, 0.001) < 0);
+    }
+
+    private PendingMessage pendingMessage(String acteUuid) {
+        Attachment archive = attachmentRepository.save(new Attachment(new byte[0], acteUuid + ".tar.gz", 0));
+        return new PendingMessage(new ActeHistory(acteUuid, StatusType.ARCHIVE_SIZE_CHECKED, LocalDateTime.now(),
+                archive, Flux.TRANSMISSION_ACTE));
+    }
+}
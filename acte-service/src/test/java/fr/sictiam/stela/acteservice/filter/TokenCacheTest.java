@@ -0,0 +1,92 @@
+package fr.sictiam.stela.acteservice.filter;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TokenCacheTest {
+
+    private static final String SECRET = "secret";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger conversions = new AtomicInteger();
+
+    private final TokenCache<String> tokenCache = new TokenCache<>(SECRET, 60000, 10, payload -> {
+        conversions.incrementAndGet();
+        return payload.get("uuid").asText().isEmpty() ? null : payload.get("uuid").asText();
+    }, meterRegistry);
+
+    private String token(String payload, long validity, String secret) {
+        return Jwts.builder().setSubject(payload)
+                .setExpiration(new Date(System.currentTimeMillis() + validity))
+                .signWith(SignatureAlgorithm.HS512, secret).compact();
+    }
+
+    @Test
+    public void tokenIsVerifiedOnce() throws Exception {
+        String token = token("{\"uuid\":\"profile1\"}", 60000, SECRET);
+
+        assertEquals("profile1", tokenCache.get(token));
+        assertEquals("profile1", tokenCache.get(token));
+
+        assertEquals(1, conversions.get());
+        assertEquals(1, meterRegistry.get("stela.cache.gets").tag("result", "hit").counter().count(), 0);
+    }
+
+    @Test
+    public void tokenWithoutProfileIsCached() throws Exception {
+        String token = token("{\"uuid\":\"\"}", 60000, SECRET);
+
+        assertNull(tokenCache.get(token));
+        assertNull(tokenCache.get(token));
+
+        assertEquals(1, conversions.get());
+    }
+
+    @Test
+    public void tokensExpiringLastAreKeptWhenFull() throws Exception {
+        TokenCache<String> smallCache = new TokenCache<>(SECRET, 600000, 4, payload -> {
+            conversions.incrementAndGet();
+            return payload.get("uuid").asText();
+        }, meterRegistry);
+        // the first token expires first
+        List<String> tokens = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            tokens.add(token("{\"uuid\":\"profile" + i + "\"}", 60000 * i, SECRET));
+            smallCache.get(tokens.get(i - 1));
+        }
+
+        for (int i = 2; i <= 5; i++) {
+            assertEquals("profile" + i, smallCache.get(tokens.get(i - 1)));
+        }
+        assertEquals(5, conversions.get());
+        assertEquals("profile1", smallCache.get(tokens.get(0)));
+        assertEquals(6, conversions.get());
+    }
+
+    @Test(expected = SignatureException.class)
+    public void tokenWithWrongSignatureIsRejected() throws Exception {
+        tokenCache.get(token("{\"uuid\":\"profile1\"}", 60000, "other"));
+    }
+
+    @Test(expected = ExpiredJwtException.class)
+    public void tokenIsRejectedOnceExpired() throws Exception {
+        String token = token("{\"uuid\":\"profile1\"}", 1000, SECRET);
+        assertEquals("profile1", tokenCache.get(token));
+
+        Thread.sleep(2100);
+        tokenCache.get(token);
+    }
+}
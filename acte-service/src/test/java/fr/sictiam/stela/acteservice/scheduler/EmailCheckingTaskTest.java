@@ -0,0 +1,139 @@
+package fr.sictiam.stela.acteservice.scheduler;
+
+import com.icegreen.greenmail.junit.GreenMailRule;
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import fr.sictiam.stela.acteservice.model.Attachment;
+import fr.sictiam.stela.acteservice.model.xml.ARActe;
+import fr.sictiam.stela.acteservice.service.LocalAuthorityService;
+import fr.sictiam.stela.acteservice.service.RetourPrefectureService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.activation.DataHandler;
+import javax.mail.Folder;
+import javax.mail.Part;
+import javax.mail.Store;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class EmailCheckingTaskTest {
+
+    @Rule
+    public final GreenMailRule greenMail = new GreenMailRule(ServerSetupTest.SMTP_IMAP);
+
+    private final RetourPrefectureService retourPrefectureService = mock(RetourPrefectureService.class);
+    private final LocalAuthorityService localAuthorityService = mock(LocalAuthorityService.class);
+
+    private GreenMailUser user;
+    private EmailCheckingTask emailCheckingTask;
+
+    @Before
+    public void setUp() {
+        user = greenMail.setUser("stela@localhost", "stela", "secret");
+
+        emailCheckingTask = new EmailCheckingTask(retourPrefectureService, localAuthorityService,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(emailCheckingTask, "host", "localhost");
+        ReflectionTestUtils.setField(emailCheckingTask, "port", ServerSetupTest.IMAP.getPort());
+        ReflectionTestUtils.setField(emailCheckingTask, "ssl", false);
+        ReflectionTestUtils.setField(emailCheckingTask, "batchSize", 2);
+        ReflectionTestUtils.setField(emailCheckingTask, "workers", 2);
+        ReflectionTestUtils.setField(emailCheckingTask, "username", "stela");
+        ReflectionTestUtils.setField(emailCheckingTask, "password", "secret");
+        ReflectionTestUtils.setField(emailCheckingTask, "doneFolder", "DONE");
+        ReflectionTestUtils.setField(emailCheckingTask, "errorFolder", "ERROR");
+        emailCheckingTask.init();
+    }
+
+    @After
+    public void tearDown() {
+        emailCheckingTask.clean();
+    }
+
+    @Test
+    public void processedMessagesAreMovedToDoneFolder() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            user.deliver(createMessage("data/006-210600235-20180522-684-AI-1-2_5279.xml"));
+        }
+
+        emailCheckingTask.check();
+        // nothing new
+        emailCheckingTask.check();
+
+        verify(retourPrefectureService, times(3)).receiveARActe(any(ARActe.class), any(Attachment.class));
+        assertEquals(0, countMessages("INBOX"));
+        assertEquals(3, countMessages("DONE"));
+        assertEquals(0, countMessages("ERROR"));
+    }
+
+    @Test
+    public void failingMessagesAreMovedToErrorFolder() throws Exception {
+        // an anomaly without its enveloppe can't be processed
+        user.deliver(createMessage("data/044-214400152----1-3_1.xml"));
+
+        emailCheckingTask.check();
+
+        verifyZeroInteractions(retourPrefectureService);
+        assertEquals(0, countMessages("INBOX"));
+        assertEquals(0, countMessages("DONE"));
+        assertEquals(1, countMessages("ERROR"));
+    }
+
+    private MimeMessage createMessage(String xmlPath) throws Exception {
+        ClassPathResource resource = new ClassPathResource(xmlPath);
+        byte[] content;
+        try (InputStream is = resource.getInputStream()) {
+            content = IOUtils.toByteArray(is);
+        }
+
+        MimeBodyPart xmlPart = new MimeBodyPart();
+        xmlPart.setDataHandler(new DataHandler(new ByteArrayDataSource(content, "application/xml")));
+        xmlPart.setFileName(resource.getFilename());
+        xmlPart.setDisposition(Part.ATTACHMENT);
+
+        MimeMultipart multipart = new MimeMultipart();
+        multipart.addBodyPart(xmlPart);
+
+        MimeMessage message = new MimeMessage(GreenMailUtil.getSession(ServerSetupTest.SMTP));
+        message.setSubject("Retour prefecture");
+        message.setFrom("prefecture@localhost");
+        message.setContent(multipart);
+        message.saveChanges();
+        return message;
+    }
+
+    private int countMessages(String folderName) throws Exception {
+        Store store = greenMail.getImap().createStore();
+        store.connect("stela", "secret");
+        try {
+            Folder folder = store.getFolder(folderName);
+            if (!folder.exists())
+                return 0;
+            folder.open(Folder.READ_ONLY);
+            int count = folder.getMessageCount();
+            folder.close(false);
+            return count;
+        } finally {
+            store.close();
+        }
+    }
+}
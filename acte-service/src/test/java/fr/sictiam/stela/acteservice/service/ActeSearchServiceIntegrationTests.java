@@ -0,0 +1,128 @@
+package fr.sictiam.stela.acteservice.service;
+
+import fr.sictiam.stela.acteservice.BaseIntegrationTests;
+import fr.sictiam.stela.acteservice.dao.ActeRepository;
+import fr.sictiam.stela.acteservice.model.Acte;
+import fr.sictiam.stela.acteservice.model.ActeHistory;
+import fr.sictiam.stela.acteservice.model.ActeNature;
+import fr.sictiam.stela.acteservice.model.Flux;
+import fr.sictiam.stela.acteservice.model.LocalAuthority;
+import fr.sictiam.stela.acteservice.model.StatusType;
+import fr.sictiam.stela.acteservice.model.event.ActeHistoryEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the search predicate and the refresh of the search columns against the schema built by the Flyway migrations.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class ActeSearchServiceIntegrationTests extends BaseIntegrationTests {
+
+    private static final String LOCAL_AUTHORITY_UUID = "5b2b1d12-6e1a-4c36-9d2a-3f1e7c0a9b42";
+
+    @Autowired
+    private ActeService acteService;
+
+    @Autowired
+    private ActeSearchService acteSearchService;
+
+    @Autowired
+    private ActeRepository acteRepository;
+
+    @Autowired
+    private LocalAuthorityService localAuthorityService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private LocalAuthority localAuthority;
+
+    @Before
+    public void setUp() {
+        acteRepository.deleteAll();
+        localAuthority = localAuthorityService.createOrUpdate(
+                new LocalAuthority(LOCAL_AUTHORITY_UUID, "Commune de Saint-Étienne", "123456789", true));
+    }
+
+    @Test
+    public void stemmedWordsMatchWithoutAccents() {
+        create("DEL-001", "Délibérations budgétaires de l'exercice", LocalDateTime.now());
+        create("DEL-002", "Voirie communale", LocalDateTime.now());
+
+        assertEquals(1, count("deliberation budgetaire"));
+        assertEquals(0, count("assainissement"));
+    }
+
+    @Test
+    public void wildcardsMatchOnlyThemselves() {
+        create("DEL2019_042", "Taux de 50% des subventions", LocalDateTime.now());
+        create("DEL2019A042", "Subventions aux associations", LocalDateTime.now());
+
+        assertEquals(1, count("2019_04"));
+        assertEquals(1, count("%"));
+    }
+
+    @Test
+    public void numberMatchesAreMoreRelevantThanNewerObjetMatches() {
+        Acte byNumber = create("BUDGET-2019", "Vote", LocalDateTime.now().minusDays(1));
+        Acte byObjet = create("DEL-003", "Budget primitif", LocalDateTime.now());
+
+        List<String> uuids = acteService.getAllWithQuery("budget", null, null, null, null, null, null, 10, 0, null,
+                acteService.getSortColumn("budget", null), "DESC", LOCAL_AUTHORITY_UUID, null).stream()
+                .map(Acte::getUuid).collect(Collectors.toList());
+
+        assertEquals(byNumber.getUuid(), uuids.get(0));
+        assertEquals(byObjet.getUuid(), uuids.get(1));
+    }
+
+    @Test
+    public void recreatedActeIsIndexedAgain() {
+        Acte acte = create("DEL-004", "Marché public", LocalDateTime.now());
+        jdbcTemplate.update("UPDATE acte SET objet = ? WHERE uuid = ?", "Concession de service", acte.getUuid());
+
+        acteSearchService.onApplicationEvent(new ActeHistoryEvent(this,
+                new ActeHistory(acte.getUuid(), StatusType.RECREATED, Flux.TRANSMISSION_ACTE)));
+
+        assertEquals(1, count("concession"));
+        assertEquals(0, count("marche"));
+    }
+
+    @Test
+    public void renamedLocalAuthorityIsSearchedByItsNewName() {
+        create("DEL-005", "Voirie", LocalDateTime.now());
+        create("DEL-006", "Éclairage public", LocalDateTime.now());
+
+        jdbcTemplate.update("UPDATE local_authority SET name = ? WHERE uuid = ?", "Commune de Vence",
+                LOCAL_AUTHORITY_UUID);
+
+        assertEquals(2, count("vence"));
+        assertEquals(0, count("etienne"));
+    }
+
+    private Acte create(String number, String objet, LocalDateTime creation) {
+        Acte acte = new Acte(number, LocalDate.now(), ActeNature.DELIBERATIONS, "1-1-1-0-0", objet, true, true);
+        acte.setCreation(creation);
+        acte.setLocalAuthority(localAuthority);
+        acte = acteRepository.save(acte);
+        acteSearchService.onApplicationEvent(new ActeHistoryEvent(this,
+                new ActeHistory(acte.getUuid(), StatusType.CREATED, Flux.TRANSMISSION_ACTE)));
+        return acte;
+    }
+
+    private long count(String query) {
+        return acteService.countAllWithQuery(query, null, null, null, null, null, null, LOCAL_AUTHORITY_UUID, null);
+    }
+}
@@ -0,0 +1,21 @@
+package fr.sictiam.stela.acteservice.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ActeSearchServiceTest {
+
+    @Test
+    public void queriesAreNormalizedLikeTheSearchText() {
+        assertEquals("deliberation du conseil regional", ActeSearchService.normalize("Délibération du Conseil Régional"));
+        assertEquals("arrete n°2019_12", ActeSearchService.normalize("ARRÊTÉ N°2019_12"));
+    }
+
+    @Test
+    public void likeWildcardsAreEscaped() {
+        assertEquals("2019\\_12", ActeSearchService.escapeLike("2019_12"));
+        assertEquals("taux de 50\\%", ActeSearchService.escapeLike("taux de 50%"));
+        assertEquals("a\\\\b", ActeSearchService.escapeLike("a\\b"));
+    }
+}
@@ -0,0 +1,206 @@
+package fr.sictiam.stela.acteservice.service;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import fr.sictiam.stela.acteservice.dao.ActeHistoryRepository;
+import fr.sictiam.stela.acteservice.dao.ActeRepository;
+import fr.sictiam.stela.acteservice.dao.ArchiveRepository;
+import fr.sictiam.stela.acteservice.dao.AttachmentRepository;
+import fr.sictiam.stela.acteservice.model.Acte;
+import fr.sictiam.stela.acteservice.model.ActeHistory;
+import fr.sictiam.stela.acteservice.model.ActeNature;
+import fr.sictiam.stela.acteservice.model.Archive;
+import fr.sictiam.stela.acteservice.model.ArchiveSettings;
+import fr.sictiam.stela.acteservice.model.ArchiveStatus;
+import fr.sictiam.stela.acteservice.model.ArchiveStep;
+import fr.sictiam.stela.acteservice.model.Attachment;
+import fr.sictiam.stela.acteservice.model.LocalAuthority;
+import fr.sictiam.stela.acteservice.model.StatusType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class ArchiverServiceTest {
+
+    private static final String DOCUMENT_URL = "/api/v2/entite/13/document/doc1";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    private final ActeRepository acteRepository = mock(ActeRepository.class);
+    private final ArchiveRepository archiveRepository = mock(ArchiveRepository.class);
+    private final AttachmentRepository attachmentRepository = mock(AttachmentRepository.class);
+    private final LocalAuthorityService localAuthorityService = mock(LocalAuthorityService.class);
+    private final StorageService storageService = mock(StorageService.class);
+
+    private final ArchiveSettings archiveSettings =
+            new ArchiveSettings(true, "http://localhost:8089", "13", "stela", "secret", 2);
+
+    private ArchiverService archiverService;
+
+    @Before
+    public void setUp() {
+        archiverService = new ArchiverService(acteRepository, mock(ActeHistoryRepository.class), attachmentRepository,
+                archiveRepository, localAuthorityService,
+                new RestTemplate(new HttpComponentsClientHttpRequestFactory()), storageService,
+                mock(PdfRenditionService.class));
+        ReflectionTestUtils.setField(archiverService, "workers", 2);
+        ReflectionTestUtils.setField(archiverService, "pageSize", 10);
+        archiverService.init();
+
+        given(storageService.getAttachmentContent(any())).willReturn("content".getBytes());
+        given(archiveRepository.save(any())).willAnswer(returnsFirstArg());
+        given(acteRepository.save(any())).willAnswer(returnsFirstArg());
+        given(attachmentRepository.findByUuid(anyString())).willReturn(Optional.of(new Attachment()));
+
+        stubFor(post(urlPathEqualTo("/api/v2/entite/13/document"))
+                .willReturn(okJson(document("[]", "{}"))));
+        stubFor(patch(urlPathEqualTo(DOCUMENT_URL)).willReturn(okJson(resultForm("[]"))));
+        stubFor(post(urlPathMatching(DOCUMENT_URL + "/file/.*")).willReturn(okJson(resultForm("[]"))));
+        stubFor(post(urlPathEqualTo(DOCUMENT_URL + "/file/aractes"))
+                .willReturn(okJson(resultForm("[\"send-archive\"]"))));
+        stubFor(post(urlPathEqualTo(DOCUMENT_URL + "/action/send-archive")).willReturn(okJson(resultForm("[]"))));
+    }
+
+    @After
+    public void tearDown() {
+        archiverService.clean();
+    }
+
+    @Test
+    public void archiveIsSentStepByStep() {
+        Acte acte = acte(1);
+
+        archiverService.archiveActe(acte, archiveSettings);
+
+        assertThat(acte.getArchive().getStatus(), is(ArchiveStatus.SENT));
+        assertThat(acte.getArchive().getStep(), nullValue());
+        assertThat(acte.getLastHistoryStatus(), is(StatusType.SENT_TO_SAE));
+        verify(1, postRequestedFor(urlPathEqualTo("/api/v2/entite/13/document")));
+        verify(1, patchRequestedFor(urlPathEqualTo(DOCUMENT_URL)));
+        verify(1, postRequestedFor(urlPathEqualTo(DOCUMENT_URL + "/file/arrete")));
+        verify(1, postRequestedFor(urlPathEqualTo(DOCUMENT_URL + "/file/autre_document_attache/0")));
+        verify(1, postRequestedFor(urlPathEqualTo(DOCUMENT_URL + "/file/aractes")));
+        verify(1, postRequestedFor(urlPathEqualTo(DOCUMENT_URL + "/action/send-archive")));
+    }
+
+    @Test
+    public void archiveInProgressResumesAfterItsLastStep() {
+        stubFor(get(urlPathEqualTo(DOCUMENT_URL)).willReturn(okJson(document("[]", "{}"))));
+        Acte acte = acte(2);
+        Archive archive = new Archive("doc1");
+        archive.setStatus(ArchiveStatus.IN_PROGRESS);
+        archive.setStep(ArchiveStep.ACTE_FILE_SENT);
+        archive.setAnnexesSent(1);
+        acte.setArchive(archive);
+
+        archiverService.archiveActe(acte, archiveSettings);
+
+        assertThat(acte.getArchive().getStatus(), is(ArchiveStatus.SENT));
+        verify(0, postRequestedFor(urlPathEqualTo("/api/v2/entite/13/document")));
+        verify(0, patchRequestedFor(urlPathEqualTo(DOCUMENT_URL)));
+        verify(0, postRequestedFor(urlPathEqualTo(DOCUMENT_URL + "/file/arrete")));
+        verify(0, postRequestedFor(urlPathEqualTo(DOCUMENT_URL + "/file/autre_document_attache/0")));
+        verify(1, postRequestedFor(urlPathEqualTo(DOCUMENT_URL + "/file/autre_document_attache/1")));
+        verify(1, postRequestedFor(urlPathEqualTo(DOCUMENT_URL + "/action/send-archive")));
+    }
+
+    @Test
+    public void failedStepIsKeptForTheNextRun() {
+        stubFor(post(urlPathEqualTo(DOCUMENT_URL + "/file/arrete")).willReturn(serverError()));
+        Acte acte = acte(0);
+
+        try {
+            archiverService.archiveActe(acte, archiveSettings);
+        } catch (RuntimeException e) {
+            // the next run resumes it
+        }
+
+        assertThat(acte.getArchive().getStatus(), is(ArchiveStatus.IN_PROGRESS));
+        assertThat(acte.getArchive().getStep(), is(ArchiveStep.DATA_SENT));
+    }
+
+    @Test
+    public void sentArchivesAreCheckedWithOneRead() {
+        stubFor(get(urlPathEqualTo(DOCUMENT_URL)).willReturn(okJson(document("[\"validation-sae\"]", "{}"))));
+        stubFor(post(urlPathEqualTo(DOCUMENT_URL + "/action/validation-sae"))
+                .willReturn(okJson("{\"content\": " + document("[]",
+                        "{\"has_archive\": \"1\", \"url_archive\": \"http://sae/archive\"}") + "}")));
+        Acte acte = acte(0);
+        Archive archive = new Archive("doc1");
+        archive.setStatus(ArchiveStatus.SENT);
+        acte.setArchive(archive);
+        LocalAuthority localAuthority = new LocalAuthority();
+        ReflectionTestUtils.setField(localAuthority, "uuid", "local-authority");
+        localAuthority.setArchiveSettings(archiveSettings);
+        given(localAuthorityService.getAll()).willReturn(Collections.singletonList(localAuthority));
+        given(acteRepository.findUuidsByArchiveStatus(eq("local-authority"), eq(ArchiveStatus.SENT), eq(""), anyInt()))
+                .willReturn(Collections.singletonList(acte.getUuid()));
+        given(acteRepository.findByUuid(acte.getUuid())).willReturn(Optional.of(acte));
+
+        archiverService.checkArchivesStatusTask();
+
+        assertThat(archive.getStatus(), is(ArchiveStatus.ARCHIVED));
+        assertThat(archive.getArchiveUrl(), is("http://sae/archive"));
+        verify(1, getRequestedFor(urlPathEqualTo(DOCUMENT_URL)));
+    }
+
+    private Acte acte(int annexes) {
+        Acte acte = new Acte();
+        ReflectionTestUtils.setField(acte, "uuid", "acte1");
+        acte.setNature(ActeNature.DELIBERATIONS);
+        acte.setNumber("001");
+        acte.setObjet("Objet");
+        acte.setCode("1-1-0-0-0");
+        acte.setDecision(LocalDate.now());
+        acte.setActeAttachment(attachment("acte"));
+        List<Attachment> annexeList = new ArrayList<>();
+        for (int i = 0; i < annexes; i++) {
+            annexeList.add(attachment("annexe" + i));
+        }
+        acte.setAnnexes(annexeList);
+        acte.setActeHistories(new TreeSet<>(Arrays.asList(
+                new ActeHistory(acte.getUuid(), StatusType.SENT, LocalDateTime.now().minusDays(10), (Attachment) null),
+                new ActeHistory(acte.getUuid(), StatusType.ACK_RECEIVED, LocalDateTime.now().minusDays(9),
+                        attachment("ack")))));
+        return acte;
+    }
+
+    private Attachment attachment(String uuid) {
+        Attachment attachment = new Attachment("content".getBytes(), uuid + ".pdf", 7);
+        ReflectionTestUtils.setField(attachment, "uuid", uuid);
+        return attachment;
+    }
+
+    private String document(String actions, String data) {
+        return "{\"info\": {\"id_d\": \"doc1\"}, \"action_possible\": " + actions + ", \"data\": " + data + "}";
+    }
+
+    private String resultForm(String actions) {
+        return "{\"result\": \"ok\", \"content\": " + document(actions, "{}") + "}";
+    }
+}
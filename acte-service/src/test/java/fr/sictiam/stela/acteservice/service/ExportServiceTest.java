@@ -0,0 +1,76 @@
+package fr.sictiam.stela.acteservice.service;
+
+import fr.sictiam.stela.acteservice.dao.ExportJobRepository;
+import fr.sictiam.stela.acteservice.model.Acte;
+import fr.sictiam.stela.acteservice.model.Attachment;
+import fr.sictiam.stela.acteservice.model.LocalAuthority;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class ExportServiceTest {
+
+    private final ActeService acteService = mock(ActeService.class);
+
+    private ExportService exportService;
+
+    @Before
+    public void setUp() {
+        exportService = new ExportService(acteService, mock(ExportJobRepository.class), mock(StorageService.class));
+        ReflectionTestUtils.setField(exportService, "workers", 2);
+        ReflectionTestUtils.setField(exportService, "jobWorkers", 1);
+        exportService.init();
+    }
+
+    @After
+    public void tearDown() {
+        exportService.clean();
+    }
+
+    @Test
+    public void zipKeepsTheSelectionOrderAndUniqueNames() throws Exception {
+        List<Acte> actes = Arrays.asList(acte("delib.pdf", "first"), acte("arrete.pdf", "second"),
+                acte("delib.pdf", "third"));
+        given(acteService.getStampedActe(any(Acte.class), isNull(), isNull(), any(LocalAuthority.class)))
+                .willAnswer(invocation -> invocation.<Acte>getArgument(0).getObjet().getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        exportService.writeZippedStampedActes(actes.iterator(), new LocalAuthority(), zip);
+
+        List<String> entries = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                entries.add(entry.getName());
+                contents.add(new String(IOUtils.toByteArray(zis), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(Arrays.asList("delib.pdf", "arrete.pdf", "delib_1.pdf"), entries);
+        assertEquals(Arrays.asList("first", "second", "third"), contents);
+    }
+
+    private Acte acte(String fileName, String objet) {
+        Acte acte = new Acte();
+        acte.setObjet(objet);
+        acte.setActeAttachment(new Attachment(null, fileName, 0));
+        return acte;
+    }
+}
@@ -73,7 +73,7 @@ public class NotificationServiceTest {
         acte.setLocalAuthority(localAuthority());
         given(acteService.getByUuid(any()))
                 .willReturn(acte);
-        given(externalRestService.getProfiles(any()))
+        given(externalRestService.getSubscribers(any(), any(), any()))
                 .willReturn(profilesNode());
         given(externalRestService.getProfile(any()))
                 .willReturn(profileNode());
@@ -0,0 +1,111 @@
+package fr.sictiam.stela.acteservice.service;
+
+import fr.sictiam.stela.acteservice.dao.ActeRepository;
+import fr.sictiam.stela.acteservice.model.Acte;
+import fr.sictiam.stela.acteservice.model.Attachment;
+import fr.sictiam.stela.acteservice.model.LocalAuthority;
+import fr.sictiam.stela.acteservice.model.StampPosition;
+import fr.sictiam.stela.acteservice.service.exceptions.StorageException;
+import fr.sictiam.stela.acteservice.service.util.PdfGeneratorUtil;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class PdfRenditionServiceTest {
+
+    private static final byte[] STAMPED = new byte[] { 1, 2, 3 };
+    private static final LocalDateTime ACK_DATE = LocalDateTime.of(2018, 11, 6, 10, 0);
+
+    private final StorageService storageService = mock(StorageService.class);
+    private final PdfGeneratorUtil pdfGeneratorUtil = mock(PdfGeneratorUtil.class);
+
+    private PdfRenditionService pdfRenditionService;
+    private Acte acte;
+    private LocalAuthority localAuthority;
+
+    @Before
+    public void setUp() throws Exception {
+        pdfRenditionService = new PdfRenditionService(storageService, pdfGeneratorUtil, mock(ActeRepository.class));
+        ReflectionTestUtils.setField(pdfRenditionService, "memoryCacheSize", 1024L);
+
+        byte[] pdf;
+        try (InputStream is = new ClassPathResource("data/Delib.pdf").getInputStream()) {
+            pdf = IOUtils.toByteArray(is);
+        }
+        acte = new Acte();
+        acte.setMiatId("006-210600235-20180522-684-AI");
+        acte.setActeAttachment(new Attachment(pdf, "Delib.pdf", pdf.length));
+        localAuthority = new LocalAuthority();
+        localAuthority.setStampPosition(new StampPosition(10, 10));
+
+        given(storageService.getAttachmentContentStream(any(Attachment.class)))
+                .willAnswer(invocation -> new ByteArrayInputStream(pdf));
+        given(storageService.getObject(anyString())).willThrow(new StorageException());
+    }
+
+    @Test
+    public void stampedActeIsRenderedOnceAndStored() throws Exception {
+        given(pdfGeneratorUtil.stampPDF(anyString(), anyString(), any(byte[].class), anyInt(), anyInt()))
+                .willReturn(STAMPED);
+
+        assertArrayEquals(STAMPED, pdfRenditionService.getStampedActe(acte, ACK_DATE, null, null, localAuthority));
+        assertArrayEquals(STAMPED, pdfRenditionService.getStampedActe(acte, ACK_DATE, null, null, localAuthority));
+
+        verify(pdfGeneratorUtil, times(1)).stampPDF(anyString(), anyString(), any(byte[].class), anyInt(), anyInt());
+        verify(storageService, times(1)).storeObject(anyString(), eq(STAMPED));
+    }
+
+    @Test
+    public void customPositionIsNotStored() throws Exception {
+        given(pdfGeneratorUtil.stampPDF(anyString(), anyString(), any(byte[].class), anyInt(), anyInt()))
+                .willReturn(STAMPED);
+
+        pdfRenditionService.getStampedActe(acte, ACK_DATE, 42, 24, localAuthority);
+
+        verify(storageService, never()).storeObject(anyString(), any(byte[].class));
+    }
+
+    @Test
+    public void concurrentRequestsShareOneRender() throws Exception {
+        given(pdfGeneratorUtil.stampPDF(anyString(), anyString(), any(byte[].class), anyInt(), anyInt()))
+                .willAnswer(invocation -> {
+                    Thread.sleep(200);
+                    return STAMPED;
+                });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(
+                    () -> pdfRenditionService.getStampedActe(acte, ACK_DATE, null, null, localAuthority)));
+        }
+        for (Future<byte[]> future : futures) {
+            assertArrayEquals(STAMPED, future.get());
+        }
+        executor.shutdown();
+
+        verify(pdfGeneratorUtil, times(1)).stampPDF(anyString(), anyString(), any(byte[].class), anyInt(), anyInt());
+    }
+}
@@ -0,0 +1,83 @@
+package fr.sictiam.stela.acteservice.service;
+
+import fr.sictiam.stela.acteservice.dao.ActeRepository;
+import fr.sictiam.stela.acteservice.dao.PendingMessageRepository;
+import fr.sictiam.stela.acteservice.model.StatusType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class PipelineMetricsServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ActeRepository acteRepository = mock(ActeRepository.class);
+    private final PendingMessageRepository pendingMessageRepository = mock(PendingMessageRepository.class);
+
+    private PipelineMetricsService pipelineMetricsService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        ObjectProvider<MeterRegistry> meterRegistryProvider = mock(ObjectProvider.class);
+        given(meterRegistryProvider.getIfAvailable(any())).willReturn(meterRegistry);
+        pipelineMetricsService = new PipelineMetricsService(acteRepository, pendingMessageRepository,
+                meterRegistryProvider);
+        ReflectionTestUtils.setField(pipelineMetricsService, "localAuthorityTag", true);
+    }
+
+    @Test
+    public void timeSpentInTheLeftStatusIsRecorded() {
+        LocalDateTime creation = LocalDateTime.of(2018, 12, 3, 10, 0);
+
+        pipelineMetricsService.recordTransition("la1", creation, StatusType.CREATED, creation, StatusType.SENT,
+                creation.plusMinutes(3));
+        pipelineMetricsService.recordTransition("la1", creation, StatusType.SENT, creation.plusMinutes(3),
+                StatusType.ACK_RECEIVED, creation.plusMinutes(63));
+
+        Timer sent = meterRegistry.get("stela.acte.transition").tag("from", "CREATED").tag("to", "SENT")
+                .tag("localAuthority", "la1").timer();
+        assertEquals(1, sent.count());
+        assertEquals(3, sent.totalTime(TimeUnit.MINUTES), 0);
+        assertEquals(60, meterRegistry.get("stela.acte.transition").tag("to", "ACK_RECEIVED").timer()
+                .totalTime(TimeUnit.MINUTES), 0);
+        assertEquals(63, meterRegistry.get("stela.acte.pipeline").tag("status", "ACK_RECEIVED").timer()
+                .totalTime(TimeUnit.MINUTES), 0);
+    }
+
+    @Test
+    public void firstStatusHasNoTransition() {
+        LocalDateTime creation = LocalDateTime.of(2018, 12, 3, 10, 0);
+
+        pipelineMetricsService.recordTransition("la1", creation, null, null, StatusType.CREATED, creation);
+
+        assertNull(meterRegistry.find("stela.acte.transition").timer());
+    }
+
+    @Test
+    public void backlogIsCountedByStatus() {
+        given(acteRepository.countByLastHistoryStatusIn(anyCollection()))
+                .willReturn(Collections.singletonList(new Object[] { StatusType.SENT, 7L }));
+        given(pendingMessageRepository.count()).willReturn(2L);
+
+        pipelineMetricsService.refreshBacklog();
+
+        assertEquals(7, meterRegistry.get("stela.acte.backlog").tag("status", "SENT").gauge().value(), 0);
+        assertEquals(0, meterRegistry.get("stela.acte.backlog").tag("status", "CREATED").gauge().value(), 0);
+        assertEquals(2, meterRegistry.get("stela.acte.sender.pending").gauge().value(), 0);
+    }
+}
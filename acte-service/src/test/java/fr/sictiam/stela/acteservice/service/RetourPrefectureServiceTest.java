@@ -48,6 +48,8 @@ public class RetourPrefectureServiceTest {
     private LocalAuthorityRepository localAuthorityRepository;
     @MockBean
     private ZipGeneratorUtil zipGeneratorUtil;
+    @MockBean
+    private StorageService storageService;
 
     @Test
     public void testReceiveARActe() throws IOException, JAXBException {
@@ -0,0 +1,33 @@
+package fr.sictiam.stela.acteservice.service.storage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FilesystemTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void trailingSlashOfTheRootIsIgnored() throws Exception {
+        File root = new File(folder.getRoot(), "stela");
+        Filesystem filesystem = new Filesystem();
+        ReflectionTestUtils.setField(filesystem, "rootPath", root.getPath() + "/");
+        filesystem.init();
+
+        byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+        filesystem.storeObject("acte/key", content);
+
+        assertTrue(Files.exists(root.toPath().resolve("acte/key")));
+        assertArrayEquals(content, filesystem.getObject("acte/key"));
+    }
+}
@@ -0,0 +1,98 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchLoaderTest {
+
+    private final List<Set<String>> batches = new CopyOnWriteArrayList<>();
+
+    private final Function<Set<String>, Map<String, String>> loader = keys -> {
+        batches.add(new HashSet<>(keys));
+        return keys.stream().filter(key -> !key.startsWith("unknown"))
+                .collect(Collectors.toMap(key -> key, key -> "value-" + key));
+    };
+
+    private BatchLoader<String> batchLoader;
+
+    @After
+    public void tearDown() {
+        batchLoader.shutdown();
+    }
+
+    @Test
+    public void concurrentLookupsAreLoadedInOneBatch() throws Exception {
+        batchLoader = new BatchLoader<>("test", loader, 100, 100, 1);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(batchLoader.load("key" + (i % 5)));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals("value-key" + (i % 5), futures.get(i).get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, batches.size());
+        assertEquals(5, batches.get(0).size());
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaiting() throws Exception {
+        batchLoader = new BatchLoader<>("test", loader, 60000, 2, 1);
+
+        CompletableFuture<String> first = batchLoader.load("a");
+        CompletableFuture<String> second = batchLoader.load("b");
+
+        assertEquals("value-a", first.get(1, TimeUnit.SECONDS));
+        assertEquals("value-b", second.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void missingKeyGivesNull() throws Exception {
+        batchLoader = new BatchLoader<>("test", loader, 10, 100, 1);
+
+        assertNull(batchLoader.load("unknown").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void loaderErrorFailsTheWholeBatch() throws Exception {
+        batchLoader = new BatchLoader<>("test", keys -> {
+            throw new IllegalStateException("admin-service is down");
+        }, 10, 100, 1);
+
+        CompletableFuture<String> future = batchLoader.load("a");
+        try {
+            future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            return;
+        }
+        throw new AssertionError("the lookup should have failed");
+    }
+
+    @Test
+    public void emptyBatchIsNotSent() throws Exception {
+        batchLoader = new BatchLoader<>("test", loader, 10, 1, 1);
+
+        batchLoader.load("a").get(1, TimeUnit.SECONDS);
+        Thread.sleep(50);
+
+        assertEquals(Collections.singletonList(Collections.singleton("a")), batches);
+    }
+}
@@ -0,0 +1,197 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClamavScannerTest {
+
+    private static final byte[] CLEAN = "a clean file".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INFECTED = "a file with a VIRUS inside".getBytes(StandardCharsets.US_ASCII);
+
+    private FakeClamd clamd;
+    private ClamavScanner scanner;
+
+    @Before
+    public void setUp() throws IOException {
+        clamd = new FakeClamd();
+        scanner = new ClamavScanner("localhost", clamd.getPort(), 2, 5000, 60000, 100, new SimpleMeterRegistry());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        scanner.shutdown();
+        clamd.close();
+    }
+
+    @Test
+    public void virusIsFound() throws IOException {
+        assertFalse(scanner.isInfected(content(CLEAN)));
+        assertTrue(scanner.isInfected(content(INFECTED)));
+    }
+
+    @Test
+    public void identicalContentIsScannedOnce() throws IOException {
+        assertFalse(scanner.isInfected(content(CLEAN)));
+        assertFalse(scanner.isInfected(content(Arrays.copyOf(CLEAN, CLEAN.length))));
+
+        assertEquals(1, clamd.scans.get());
+    }
+
+    @Test
+    public void envelopeIsInfectedIfAnyFileIs() throws IOException {
+        assertFalse(scanner.isAnyInfected(Collections.singletonList(content(CLEAN))));
+        assertTrue(scanner.isAnyInfected(Arrays.asList(content(CLEAN), content(INFECTED),
+                content("another one".getBytes()))));
+    }
+
+    @Test
+    public void streamsAreClosed() throws IOException {
+        AtomicInteger opened = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        ClamavScanner.Content clean = () -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(CLEAN) {
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+        };
+
+        assertFalse(scanner.isAnyInfected(Arrays.asList(clean, clean)));
+        assertTrue(scanner.isAnyInfected(Arrays.asList(clean, content(INFECTED))));
+        assertTrue(opened.get() >= 3);
+        assertEquals(opened.get(), closed.get());
+    }
+
+    @Test
+    public void largeContentIsSentInChunksOnlyIfItsVerdictIsNotCached() throws IOException {
+        byte[] large = new byte[200 * 1024];
+        Arrays.fill(large, (byte) 'a');
+        AtomicInteger opened = new AtomicInteger();
+        ClamavScanner.Content content = () -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(large);
+        };
+
+        assertFalse(scanner.isInfected(content));
+        assertEquals(large.length, clamd.lastSize);
+        assertEquals(2, opened.get());
+        assertFalse(scanner.isInfected(content));
+
+        // hashed again, not sent
+        assertEquals(3, opened.get());
+        assertEquals(1, clamd.scans.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void clamdErrorIsThrown() throws IOException {
+        clamd.reply = "INSTREAM size limit exceeded. ERROR";
+        scanner.isInfected(content(CLEAN));
+    }
+
+    @Test
+    public void clamdErrorIsNotCached() throws IOException {
+        clamd.reply = "INSTREAM size limit exceeded. ERROR";
+        try {
+            scanner.isInfected(content(CLEAN));
+        } catch (IOException e) {
+            // expected
+        }
+        clamd.reply = null;
+
+        assertFalse(scanner.isInfected(content(CLEAN)));
+        assertEquals(2, clamd.scans.get());
+    }
+
+    private ClamavScanner.Content content(byte[] bytes) {
+        return () -> new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Speaks the part of the clamd protocol used by the scanner: zVERSION and zINSTREAM, one command per connection.
+     * A content is infected if it contains "VIRUS".
+     */
+    private static class FakeClamd implements AutoCloseable {
+
+        private final ServerSocket serverSocket = new ServerSocket(0);
+        private final AtomicInteger scans = new AtomicInteger();
+        private volatile int lastSize;
+        private volatile String reply;
+
+        private FakeClamd() throws IOException {
+            Thread thread = new Thread(this::serve, "fake-clamd");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void serve() {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    DataInputStream input = new DataInputStream(socket.getInputStream());
+                    OutputStream output = socket.getOutputStream();
+                    String command = readCommand(input);
+                    if ("zVERSION".equals(command)) {
+                        output.write("ClamAV 0.100.2/25000/Thu Nov 29 09:41:50 2018\0".getBytes());
+                    } else if ("zINSTREAM".equals(command)) {
+                        ByteArrayOutputStream content = new ByteArrayOutputStream();
+                        int length;
+                        while ((length = input.readInt()) > 0) {
+                            byte[] chunk = new byte[length];
+                            input.readFully(chunk);
+                            content.write(chunk);
+                        }
+                        scans.incrementAndGet();
+                        lastSize = content.size();
+                        String result = reply != null ? reply
+                                : new String(content.toByteArray(), StandardCharsets.US_ASCII).contains("VIRUS")
+                                        ? "stream: Eicar-Test-Signature FOUND" : "stream: OK";
+                        output.write((result + "\0").getBytes());
+                    }
+                    output.flush();
+                } catch (SocketException e) {
+                    // closed
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        private String readCommand(DataInputStream input) throws IOException {
+            StringBuilder command = new StringBuilder();
+            int b;
+            while ((b = input.read()) > 0) {
+                command.append((char) b);
+            }
+            return command.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
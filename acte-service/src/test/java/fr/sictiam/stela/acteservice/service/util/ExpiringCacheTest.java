@@ -0,0 +1,86 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ExpiringCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void valueIsLoadedOnceUntilItExpires() throws Exception {
+        ExpiringCache<String> cache = new ExpiringCache<>("test", 50, 10, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("1", cache.get("key", () -> String.valueOf(loads.incrementAndGet())));
+        assertEquals("1", cache.get("key", () -> String.valueOf(loads.incrementAndGet())));
+        Thread.sleep(100);
+        assertEquals("2", cache.get("key", () -> String.valueOf(loads.incrementAndGet())));
+
+        assertEquals(1, meterRegistry.get("stela.cache.gets").tag("result", "hit").counter().count(), 0);
+        assertEquals(2, meterRegistry.get("stela.cache.gets").tag("result", "miss").counter().count(), 0);
+    }
+
+    @Test
+    public void nullIsCached() {
+        ExpiringCache<String> cache = new ExpiringCache<>("test", 60000, 10, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertNull(cache.get("key", () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get("key", () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void errorIsNotCached() throws Exception {
+        ExpiringCache<String> cache = new ExpiringCache<>("test", 60000, 10, meterRegistry);
+        try {
+            cache.get("key", () -> {
+                throw new IOException("admin-service is down");
+            });
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals("value", cache.get("key", () -> "value"));
+    }
+
+    @Test
+    public void entriesExpiringFirstAreDroppedWhenFull() throws Exception {
+        ExpiringCache<String> cache = new ExpiringCache<>("test", 60000, 4, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 1; i <= 5; i++) {
+            cache.get("key" + i, () -> String.valueOf(loads.incrementAndGet()));
+            // distinct expirations
+            Thread.sleep(5);
+        }
+
+        for (int i = 2; i <= 5; i++) {
+            assertEquals(String.valueOf(i), cache.get("key" + i, () -> String.valueOf(loads.incrementAndGet())));
+        }
+        assertEquals(5, loads.get());
+        assertEquals("6", cache.get("key1", () -> String.valueOf(loads.incrementAndGet())));
+    }
+
+    @Test
+    public void invalidateAllForcesALoad() {
+        ExpiringCache<String> cache = new ExpiringCache<>("test", 60000, 10, meterRegistry);
+        cache.get("key", () -> "old");
+
+        cache.invalidateAll();
+
+        assertEquals("new", cache.get("key", () -> "new"));
+    }
+}
@@ -0,0 +1,59 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import fr.sictiam.stela.acteservice.model.Acte;
+import fr.sictiam.stela.acteservice.service.exceptions.InvalidCursorException;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PageCursorTest {
+
+    @Test
+    public void cursorIsBuiltFromTheLastRowOfAFullPage() {
+        List<Acte> page = Arrays.asList(acte("b", LocalDateTime.of(2018, 6, 1, 10, 0)),
+                acte("a", LocalDateTime.of(2018, 5, 1, 10, 0)));
+
+        String cursor = PageCursor.next(page, 2, "creation", "DESC");
+
+        assertNotNull(cursor);
+        assertNotNull(PageCursor.decode(cursor, "creation", "DESC"));
+    }
+
+    @Test
+    public void lastPageHasNoCursor() {
+        List<Acte> page = Collections.singletonList(acte("a", LocalDateTime.of(2018, 5, 1, 10, 0)));
+
+        assertNull(PageCursor.next(page, 2, "creation", "DESC"));
+    }
+
+    @Test
+    public void nullSortValueHasNoCursor() {
+        List<Acte> page = Collections.singletonList(acte("a", null));
+
+        assertNull(PageCursor.next(page, 1, "creation", "DESC"));
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void cursorIsBoundToItsSort() {
+        String cursor = PageCursor.next(Collections.singletonList(acte("a", LocalDateTime.of(2018, 5, 1, 10, 0))), 1,
+                "creation", "DESC");
+
+        PageCursor.decode(cursor, "creation", "ASC");
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void malformedCursorIsRejected() {
+        PageCursor.decode("not a cursor", "creation", "DESC");
+    }
+
+    private Acte acte(String uuid, LocalDateTime creation) {
+        // same constructor as the list projection
+        return new Acte(uuid, "objet", creation, null, "NUMBER", null, null, null, null);
+    }
+}
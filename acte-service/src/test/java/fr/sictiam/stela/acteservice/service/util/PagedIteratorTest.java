@@ -0,0 +1,53 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PagedIteratorTest {
+
+    private final List<String> keys = Arrays.asList("a", "b", "c", "d", "e");
+    private final List<Integer> offsets = new ArrayList<>();
+
+    private List<String> page(int offset, int limit) {
+        offsets.add(offset);
+        return keys.subList(Math.min(offset, keys.size()), Math.min(offset + limit, keys.size()));
+    }
+
+    @Test
+    public void keysAreReadByPagesAndLoadedInOrder() {
+        PagedIterator<String> iterator = new PagedIterator<>(this::page, String::toUpperCase, 2);
+
+        List<String> values = new ArrayList<>();
+        iterator.forEachRemaining(values::add);
+
+        assertEquals(Arrays.asList("A", "B", "C", "D", "E"), values);
+        assertEquals(Arrays.asList(0, 2, 4), offsets);
+    }
+
+    @Test
+    public void keysLoadedAsNullAreSkipped() {
+        PagedIterator<String> iterator = new PagedIterator<>(this::page,
+                key -> "b".equals(key) || "e".equals(key) ? null : key, 2);
+
+        List<String> values = new ArrayList<>();
+        iterator.forEachRemaining(values::add);
+
+        assertEquals(Arrays.asList("a", "c", "d"), values);
+    }
+
+    @Test
+    public void fullLastPageEndsWithAnEmptyOne() {
+        PagedIterator<String> iterator = new PagedIterator<>(this::page, key -> key, 5);
+
+        iterator.forEachRemaining(key -> { });
+
+        assertFalse(iterator.hasNext());
+        assertEquals(Arrays.asList(0, 5), offsets);
+    }
+}
@@ -0,0 +1,46 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TarGzArchiveBuilderTest {
+
+    @Test
+    public void entriesAreWrittenInOrderAndCompressedSizeIsCounted() throws IOException {
+        byte[] message = "<message/>".getBytes();
+        byte[] acte = new byte[100_000];
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        TarGzArchiveBuilder archiveBuilder = new TarGzArchiveBuilder(baos);
+        archiveBuilder.addEntry("message.xml", message);
+        archiveBuilder.addEntry("acte.pdf", new ByteArrayInputStream(acte), acte.length);
+        archiveBuilder.close();
+
+        assertEquals(baos.size(), archiveBuilder.getCompressedSize());
+
+        try (TarArchiveInputStream tais = new TarArchiveInputStream(
+                new GzipCompressorInputStream(new ByteArrayInputStream(baos.toByteArray())))) {
+            TarArchiveEntry entry = tais.getNextTarEntry();
+            assertEquals("message.xml", entry.getName());
+            assertArrayEquals(message, IOUtils.toByteArray(tais));
+
+            entry = tais.getNextTarEntry();
+            assertEquals("acte.pdf", entry.getName());
+            assertEquals(acte.length, entry.getSize());
+            assertArrayEquals(acte, IOUtils.toByteArray(tais));
+
+            assertNull(tais.getNextTarEntry());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package fr.sictiam.stela.acteservice.service.util;
+
+import fr.sictiam.stela.acteservice.model.xml.ARActe;
+import fr.sictiam.stela.acteservice.model.xml.AnomalieActe;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import javax.xml.transform.stream.StreamSource;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class XmlUtilsTest {
+
+    @Test
+    public void getRootElementName() throws Exception {
+        assertEquals("ARActe", rootElementName("data/006-210600235-20180522-684-AI-1-2_5279.xml"));
+        assertEquals("AnomalieActe", rootElementName("data/044-214400152----1-3_1.xml"));
+        assertEquals("EnveloppeMISILLCL", rootElementName("data/EACT--SPREF0441-214400152-20181012-9.xml"));
+    }
+
+    @Test
+    public void unmarshallWithSharedContext() throws Exception {
+        ARActe arActe = XmlUtils.unmarshall(source("data/006-210600235-20180522-684-AI-1-2_5279.xml"), ARActe.class);
+        assertEquals("006-210600235-20180522-684-AI", arActe.getIDActe());
+
+        // the pooled unmarshaller is reused for another type
+        AnomalieActe anomalieActe = XmlUtils.unmarshall(source("data/044-214400152----1-3_1.xml"),
+                AnomalieActe.class);
+        assertEquals(AnomalieActe.class, anomalieActe.getClass());
+    }
+
+    private String rootElementName(String path) throws Exception {
+        try (InputStream is = new ClassPathResource(path).getInputStream()) {
+            return XmlUtils.getRootElementName(is);
+        }
+    }
+
+    private StreamSource source(String path) throws Exception {
+        return new StreamSource(new ClassPathResource(path).getInputStream());
+    }
+}
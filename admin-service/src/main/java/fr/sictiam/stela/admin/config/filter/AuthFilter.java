@@ -6,79 +6,119 @@ import fr.sictiam.stela.admin.model.Certificate;
 import fr.sictiam.stela.admin.model.Profile;
 import fr.sictiam.stela.admin.service.ProfileService;
 import fr.sictiam.stela.admin.service.util.CertUtilService;
-import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Sets the current profile from the JWT token. The verified tokens are cached until they expire, but the profile is
+ * still read on each request so that a deleted profile loses its access at once. The time spent here on each request
+ * is measured by the {@code stela.auth.filter} timer.
+ */
 @Component
 public class AuthFilter extends OncePerRequestFilter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AuthFilter.class);
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     @Value("${application.jwt.secret}")
     String SECRET;
 
+    @Value("${application.jwt.cacheTtl:3600000}")
+    private long cacheTtl;
+
+    @Value("${application.jwt.cacheSize:10000}")
+    private int cacheSize;
+
     private final CertUtilService certUtilService;
     private final ProfileService profileService;
+    private final MeterRegistry meterRegistry;
 
-    public AuthFilter(CertUtilService certUtilService, ProfileService profileService) {
+    private TokenCache<TokenProfile> tokenCache;
+    private Timer filterTimer;
+
+    public AuthFilter(CertUtilService certUtilService, ProfileService profileService,
+            ObjectProvider<MeterRegistry> meterRegistry) {
         this.certUtilService = certUtilService;
         this.profileService = profileService;
+        this.meterRegistry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        tokenCache = new TokenCache<>(SECRET, cacheTtl, cacheSize, AuthFilter::toTokenProfile, meterRegistry);
+        filterTimer = Timer.builder("stela.auth.filter").register(meterRegistry);
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
+        long start = System.nanoTime();
         Certificate certificate = certUtilService.getCertInfosFromHeaders(request);
-        JsonNode token = getToken(request);
+        String token = request.getHeader("STELA-Active-Token");
+        TokenProfile tokenProfile = token != null ? tokenCache.get(token) : null;
 
         Profile profile = null;
-        if (token != null && StringUtils.isNotBlank(token.get("uuid").asText())) {
-            profile = profileService.getByUuid(token.get("uuid").asText());
+        if (tokenProfile != null) {
+            profile = profileService.getByUuid(tokenProfile.uuid);
         }
 
         if (profile != null) {
-            ObjectMapper om = new ObjectMapper();
-            Certificate pairedCertificate =
-                    token.get("agent").get("certificate") != null && !token.get("agent").get("certificate").isNull()
-                            ? om.treeToValue(token.get("agent").get("certificate"), Certificate.class) : null;
-
-            request.setAttribute("STELA-Current-Profile-Is-Local-Authority-Admin", token.get("admin").asBoolean());
+            request.setAttribute("STELA-Current-Profile-Is-Local-Authority-Admin", tokenProfile.admin);
             request.setAttribute("STELA-Current-Profile-UUID", profile.getUuid());
             request.setAttribute("STELA-Sub", profile.getAgent().getSub());
-            request.setAttribute("STELA-Current-Agent-UUID", token.get("agent").get("uuid").asText());
+            request.setAttribute("STELA-Current-Agent-UUID", tokenProfile.agentUuid);
             request.setAttribute("STELA-Current-Local-Authority-UUID", profile.getLocalAuthority().getUuid());
-            request.setAttribute("STELA-Current-Profile-Paired-Certificate", pairedCertificate);
+            request.setAttribute("STELA-Current-Profile-Paired-Certificate", tokenProfile.pairedCertificate);
             request.setAttribute("STELA-Certificate", certificate);
         }
+        filterTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
         filterChain.doFilter(request, response);
     }
 
-    JsonNode getToken(HttpServletRequest request) throws IOException {
-        String token = request.getHeader("STELA-Active-Token");
-        if (token != null) {
-            // parse the token.
-            String tokenParsed = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody().getSubject();
+    private static TokenProfile toTokenProfile(JsonNode token) throws IOException {
+        if (StringUtils.isBlank(token.get("uuid").asText()))
+            return null;
+
+        Certificate pairedCertificate =
+                token.get("agent").get("certificate") != null && !token.get("agent").get("certificate").isNull()
+                        ? OBJECT_MAPPER.treeToValue(token.get("agent").get("certificate"), Certificate.class) : null;
+
+        return new TokenProfile(token.get("uuid").asText(), token.get("admin").asBoolean(),
+                token.get("agent").get("uuid").asText(), pairedCertificate);
+    }
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode node = objectMapper.readTree(tokenParsed);
+    private static class TokenProfile {
 
-            return node;
+        private final String uuid;
+        private final boolean admin;
+        private final String agentUuid;
+        private final Certificate pairedCertificate;
 
+        private TokenProfile(String uuid, boolean admin, String agentUuid, Certificate pairedCertificate) {
+            this.uuid = uuid;
+            this.admin = admin;
+            this.agentUuid = agentUuid;
+            this.pairedCertificate = pairedCertificate;
         }
-        return null;
     }
 }
@@ -16,10 +16,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -118,4 +120,18 @@ public class ProfileController {
     public ResponseEntity<List<Profile>> getProfiles(@PathVariable String uuid) {
         return new ResponseEntity<>(profileService.getProfilesByLocalAuthorityUuid(uuid), HttpStatus.OK);
     }
+
+    // POST to allow long lists of uuids
+    @PostMapping("/batch")
+    @JsonView(Views.ProfileViewCompact.class)
+    public List<Profile> getProfilesByUuids(@RequestBody Set<String> uuids) {
+        return profileService.getProfilesByUuids(uuids);
+    }
+
+    @GetMapping("/subscribers/{localAuthorityUuid}")
+    @JsonView(Views.ProfileViewCompact.class)
+    public List<Profile> getSubscribers(@PathVariable String localAuthorityUuid,
+            @RequestParam(required = false) Module module, @RequestParam(required = false) String notification) {
+        return profileService.getSubscribers(localAuthorityUuid, module, notification);
+    }
 }
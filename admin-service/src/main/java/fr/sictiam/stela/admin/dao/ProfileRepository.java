@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,6 +17,16 @@ public interface ProfileRepository extends JpaRepository<Profile, String> {
 
     List<Profile> findByLocalAuthority_Uuid(String localAuthorityUuid);
 
+    @Transactional(readOnly = true)
+    @Query("SELECT DISTINCT p FROM Profile p LEFT JOIN FETCH p.agent LEFT JOIN FETCH p.notificationValues " +
+            "LEFT JOIN FETCH p.localAuthorityNotifications WHERE p.uuid IN ?1")
+    List<Profile> findWithNotificationsByUuidIn(Collection<String> uuids);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT DISTINCT p FROM Profile p LEFT JOIN FETCH p.agent LEFT JOIN FETCH p.notificationValues " +
+            "LEFT JOIN FETCH p.localAuthorityNotifications WHERE p.localAuthority.uuid = ?1")
+    List<Profile> findWithNotificationsByLocalAuthorityUuid(String localAuthorityUuid);
+
     @Transactional(readOnly = true)
     @Query("SELECT p.uuid as uuid, p.localAuthority.name as localAuthorityName FROM Profile p WHERE p.agent.sub = ?1 ORDER BY p.localAuthority.name")
     List<ProfileSummary> fetchProfilesSummaryForAgent(String sub);
@@ -36,6 +36,14 @@ public class Views {
 
     }
 
+    /**
+     * Profile without its local authority and groups, for the other services that only need the agent and the
+     * notification settings.
+     */
+    public interface ProfileViewCompact extends ProfileViewPublic, ProfileViewChain, AgentViewPublic {
+
+    }
+
     public interface ProfileViewPrivate {
 
     }
@@ -1,6 +1,7 @@
 package fr.sictiam.stela.admin.service;
 
 import fr.sictiam.stela.admin.dao.ProfileRepository;
+import fr.sictiam.stela.admin.model.Module;
 import fr.sictiam.stela.admin.model.Profile;
 import fr.sictiam.stela.admin.model.UI.ProfileRights;
 import fr.sictiam.stela.admin.model.WorkGroup;
@@ -8,6 +9,8 @@ import fr.sictiam.stela.admin.service.exceptions.NotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -63,4 +66,27 @@ public class ProfileService {
     public List<Profile> getProfilesByLocalAuthorityUuid(String uuid) {
         return profileRepository.findByLocalAuthority_Uuid(uuid);
     }
+
+    /**
+     * Profiles of the given uuids, the unknown ones are ignored.
+     */
+    public List<Profile> getProfilesByUuids(Collection<String> uuids) {
+        if (uuids.isEmpty())
+            return Collections.emptyList();
+        return profileRepository.findWithNotificationsByUuidIn(uuids);
+    }
+
+    /**
+     * Profiles of the local authority which receive the notifications of the module (if given) and have the
+     * notification active (if given).
+     */
+    public List<Profile> getSubscribers(String localAuthorityUuid, Module module, String notification) {
+        return profileRepository.findWithNotificationsByLocalAuthorityUuid(localAuthorityUuid).stream()
+                .filter(profile -> module == null || (profile.getLocalAuthorityNotifications() != null
+                        && profile.getLocalAuthorityNotifications().contains(module)))
+                .filter(profile -> notification == null || (profile.getNotificationValues() != null
+                        && profile.getNotificationValues().stream()
+                        .anyMatch(value -> notification.equals(value.getName()) && value.isActive())))
+                .collect(Collectors.toList());
+    }
 }
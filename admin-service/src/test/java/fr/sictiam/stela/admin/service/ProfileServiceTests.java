@@ -3,6 +3,8 @@ package fr.sictiam.stela.admin.service;
 import fr.sictiam.stela.admin.dao.ProfileRepository;
 import fr.sictiam.stela.admin.model.Agent;
 import fr.sictiam.stela.admin.model.LocalAuthority;
+import fr.sictiam.stela.admin.model.Module;
+import fr.sictiam.stela.admin.model.NotificationValue;
 import fr.sictiam.stela.admin.model.Profile;
 import fr.sictiam.stela.admin.service.exceptions.NotFoundException;
 import org.junit.Assert;
@@ -12,7 +14,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
 
 import static org.mockito.BDDMockito.given;
@@ -58,4 +63,30 @@ public class ProfileServiceTests {
 
         verify(profileRepository).findByLocalAuthority_SirenAndAgent_EmailIgnoreCase("siren", "stela@sictiam.fr");
     }
+
+    @Test
+    public void getSubscribersFiltersOnModuleAndActiveNotification() {
+        Profile pesSubscriber = profile(Module.PES, "PES_DAILY_ERRORS", true);
+        Profile inactive = profile(Module.PES, "PES_DAILY_ERRORS", false);
+        Profile acteSubscriber = profile(Module.ACTES, "PES_DAILY_ERRORS", true);
+        given(profileRepository.findWithNotificationsByLocalAuthorityUuid("uuid"))
+                .willReturn(Arrays.asList(pesSubscriber, inactive, acteSubscriber));
+
+        Assert.assertEquals(Arrays.asList(pesSubscriber, inactive),
+                profileService.getSubscribers("uuid", Module.PES, null));
+        Assert.assertEquals(Collections.singletonList(pesSubscriber),
+                profileService.getSubscribers("uuid", Module.PES, "PES_DAILY_ERRORS"));
+        Assert.assertEquals(Arrays.asList(pesSubscriber, acteSubscriber),
+                profileService.getSubscribers("uuid", null, "PES_DAILY_ERRORS"));
+    }
+
+    private Profile profile(Module module, String notification, boolean active) {
+        NotificationValue notificationValue = new NotificationValue();
+        ReflectionTestUtils.setField(notificationValue, "name", notification);
+        ReflectionTestUtils.setField(notificationValue, "active", active);
+        Profile profile = new Profile();
+        profile.setLocalAuthorityNotifications(Collections.singleton(module));
+        profile.setNotificationValues(Collections.singleton(notificationValue));
+        return profile;
+    }
 }
@@ -4,69 +4,107 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.sictiam.stela.apigateway.model.Certificate;
 import fr.sictiam.stela.apigateway.service.CertUtilService;
-import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Sets the current profile from the JWT token. The verified tokens are cached until they expire, the time spent here
+ * on each request is measured by the {@code stela.auth.filter} timer.
+ */
 @Component
 public class AuthFilter extends OncePerRequestFilter {
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     @Value("${application.jwt.secret}")
     String SECRET;
 
+    @Value("${application.jwt.cacheTtl:3600000}")
+    private long cacheTtl;
+
+    @Value("${application.jwt.cacheSize:10000}")
+    private int cacheSize;
+
     @Autowired
     private CertUtilService certUtilService;
 
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private TokenCache<CurrentProfile> tokenCache;
+    private Timer filterTimer;
+
     public AuthFilter() {
 
     }
 
+    @PostConstruct
+    public void init() {
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+        tokenCache = new TokenCache<>(SECRET, cacheTtl, cacheSize, AuthFilter::toCurrentProfile, registry);
+        filterTimer = Timer.builder("stela.auth.filter").register(registry);
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
+        long start = System.nanoTime();
         Certificate certificate = certUtilService.getCertInfosFromHeaders(request);
-        JsonNode token = getToken(request);
-
-        if (token != null && StringUtils.isNotBlank(token.get("uuid").asText())) {
-            ObjectMapper om = new ObjectMapper();
-            Certificate pairedCertificate =
-                    token.get("agent").get("certificate") != null && !token.get("agent").get("certificate").isNull()
-                            ? om.treeToValue(token.get("agent").get("certificate"), Certificate.class) : null;
-
-            request.setAttribute("STELA-Current-Profile-Is-Local-Authority-Admin", token.get("admin").asBoolean());
-            request.setAttribute("STELA-Current-Profile-UUID", token.get("uuid").asText());
-            request.setAttribute("STELA-Current-Profile-Paired-Certificate", pairedCertificate);
-            request.setAttribute("STELA-Current-Local-Authority-UUID",
-                    token.get("localAuthority").get("uuid").asText());
+        String token = request.getHeader("STELA-Active-Token");
+        CurrentProfile profile = token != null ? tokenCache.get(token) : null;
+
+        if (profile != null) {
+            request.setAttribute("STELA-Current-Profile-Is-Local-Authority-Admin", profile.admin);
+            request.setAttribute("STELA-Current-Profile-UUID", profile.uuid);
+            request.setAttribute("STELA-Current-Profile-Paired-Certificate", profile.pairedCertificate);
+            request.setAttribute("STELA-Current-Local-Authority-UUID", profile.localAuthorityUuid);
             request.setAttribute("STELA-Certificate", certificate);
         }
+        filterTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
         filterChain.doFilter(request, response);
     }
 
-    JsonNode getToken(HttpServletRequest request) throws IOException {
-        String token = request.getHeader("STELA-Active-Token");
-        if (token != null) {
-            // parse the token.
-            String tokenParsed = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody().getSubject();
+    private static CurrentProfile toCurrentProfile(JsonNode token) throws IOException {
+        if (StringUtils.isBlank(token.get("uuid").asText()))
+            return null;
+
+        Certificate pairedCertificate =
+                token.get("agent").get("certificate") != null && !token.get("agent").get("certificate").isNull()
+                        ? OBJECT_MAPPER.treeToValue(token.get("agent").get("certificate"), Certificate.class) : null;
+
+        return new CurrentProfile(token.get("uuid").asText(), token.get("admin").asBoolean(),
+                token.get("localAuthority").get("uuid").asText(), pairedCertificate);
+    }
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode node = objectMapper.readTree(tokenParsed);
+    private static class CurrentProfile {
 
-            return node;
+        private final String uuid;
+        private final boolean admin;
+        private final String localAuthorityUuid;
+        private final Certificate pairedCertificate;
 
+        private CurrentProfile(String uuid, boolean admin, String localAuthorityUuid, Certificate pairedCertificate) {
+            this.uuid = uuid;
+            this.admin = admin;
+            this.localAuthorityUuid = localAuthorityUuid;
+            this.pairedCertificate = pairedCertificate;
         }
-        return null;
     }
 }
@@ -0,0 +1,104 @@
+package fr.sictiam.stela.apigateway.config.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Verified tokens, kept until they expire: the signature is checked and the payload parsed once per token instead of
+ * on every request. The principal built from the payload is shared between requests, so it must be immutable.
+ * <p>
+ * The size is bounded: when it is reached the expired tokens are dropped, then the ones expiring first until a quarter
+ * of the room is free, so that the active sessions are not all verified again at once.
+ * Hits and misses are counted in the {@code stela.cache.gets} counter.
+ */
+public class TokenCache<P> {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final String secret;
+    private final long maxTtlMillis;
+    private final int maxSize;
+    private final Converter<P> converter;
+    private final ConcurrentMap<String, Entry<P>> entries = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    public TokenCache(String secret, long maxTtlMillis, int maxSize, Converter<P> converter,
+            MeterRegistry meterRegistry) {
+        this.secret = secret;
+        this.maxTtlMillis = maxTtlMillis;
+        this.maxSize = maxSize;
+        this.converter = converter;
+        hits = Counter.builder("stela.cache.gets").tag("cache", "auth.tokens").tag("result", "hit")
+                .register(meterRegistry);
+        misses = Counter.builder("stela.cache.gets").tag("cache", "auth.tokens").tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("stela.cache.size", entries, ConcurrentMap::size).tag("cache", "auth.tokens")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Gives the principal of a token, verifying it if it is not cached yet. An invalid or expired token throws the
+     * exception of the JWT parser, as before.
+     */
+    public P get(String token) throws IOException {
+        Entry<P> entry = entries.get(token);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.expiration > now) {
+            hits.increment();
+            return entry.principal;
+        }
+        misses.increment();
+        Claims claims = Jwts.parser().setSigningKey(secret).parseClaimsJws(token).getBody();
+        P principal = converter.convert(OBJECT_MAPPER.readTree(claims.getSubject()));
+        long expiration = now + maxTtlMillis;
+        if (claims.getExpiration() != null)
+            expiration = Math.min(expiration, claims.getExpiration().getTime());
+        if (entries.size() >= maxSize)
+            shrink(now);
+        entries.put(token, new Entry<>(principal, expiration));
+        return principal;
+    }
+
+    private void shrink(long now) {
+        entries.values().removeIf(entry -> entry.expiration <= now);
+        int excess = entries.size() - maxSize * 3 / 4;
+        if (excess > 0) {
+            entries.entrySet().stream()
+                    .sorted(Comparator.comparingLong(
+                            (Map.Entry<String, Entry<P>> entry) -> entry.getValue().expiration))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList())
+                    .forEach(entries::remove);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Converter<P> {
+        P convert(JsonNode payload) throws IOException;
+    }
+
+    private static class Entry<P> {
+
+        private final P principal;
+        private final long expiration;
+
+        private Entry(P principal, long expiration) {
+            this.principal = principal;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import fr.sictiam.stela.convocationservice.service.ConvocationService;
 import fr.sictiam.stela.convocationservice.service.RecipientService;
 import fr.sictiam.stela.convocationservice.service.util.DocumentGenerator;
 import fr.sictiam.stela.convocationservice.service.util.DocumentGeneratorFactory;
+import fr.sictiam.stela.convocationservice.service.util.PageCursor;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -84,6 +85,8 @@ public class ConvocationRestController {
             @RequestParam(value = "filter", required = false) String filter,
             @RequestParam(value = "limit", required = false, defaultValue = "25") Integer limit,
             @RequestParam(value = "offset", required = false, defaultValue = "0") Integer offset,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "withCount", required = false, defaultValue = "true") Boolean withCount,
             @RequestParam(value = "column", required = false, defaultValue = "meetingDate") String column,
             @RequestParam(value = "direction", required = false, defaultValue = "DESC") String direction,
             @RequestAttribute("STELA-Current-Profile-Rights") Set<Right> rights,
@@ -95,13 +98,14 @@ public class ConvocationRestController {
                 rights, Arrays.asList(Right.CONVOCATION_DEPOSIT, Right.CONVOCATION_ADMIN), false);
 
         List<Convocation> convocations = convocationService.findSentWithQuery(multifield, sentDateFrom, sentDateTo,
-                assemblyType, meetingDateFrom, meetingDateTo, subject, filter, limit, offset, column, direction,
-                currentLocalAuthUuid, groups);
+                assemblyType, meetingDateFrom, meetingDateTo, subject, filter, limit, offset, cursor, column,
+                direction, currentLocalAuthUuid, groups);
 
-        Long count = convocationService.countSentWithQuery(multifield, sentDateFrom, sentDateTo, assemblyType,
-                meetingDateFrom, meetingDateTo, subject, filter, currentLocalAuthUuid, groups);
+        Long count = withCount ? convocationService.countSentWithQuery(multifield, sentDateFrom, sentDateTo,
+                assemblyType, meetingDateFrom, meetingDateTo, subject, filter, currentLocalAuthUuid, groups) : null;
 
-        return new ResponseEntity<>(new SearchResultsUI(count, convocations), HttpStatus.OK);
+        return new ResponseEntity<>(new SearchResultsUI(count, convocations,
+                PageCursor.next(convocations, limit, column, direction)), HttpStatus.OK);
     }
 
 
@@ -115,6 +119,8 @@ public class ConvocationRestController {
             @RequestParam(value = "filter", required = false) String filter,
             @RequestParam(value = "limit", required = false, defaultValue = "25") Integer limit,
             @RequestParam(value = "offset", required = false, defaultValue = "0") Integer offset,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "withCount", required = false, defaultValue = "true") Boolean withCount,
             @RequestParam(value = "column", required = false, defaultValue = "meetingDate") String column,
             @RequestParam(value = "direction", required = false, defaultValue = "DESC") String direction,
             @RequestAttribute("STELA-Current-Profile-Rights") Set<Right> rights,
@@ -125,15 +131,17 @@ public class ConvocationRestController {
         final Recipient currentRecipient = validateAccess(currentLocalAuthUuid, null, currentProfileUuid, recipient, rights, Arrays.asList(Right.values()),
                 true);
 
-        List<ReceivedConvocationUI> convocations = convocationService.findReceivedWithQuery(multifield, assemblyType,
-                meetingDateFrom, meetingDateTo, subject, filter, limit, offset, column, direction, currentLocalAuthUuid,
-                currentRecipient).stream().map(convocation -> new ReceivedConvocationUI(convocation, currentRecipient)).collect(Collectors.toList());
+        List<Convocation> receivedConvocations = convocationService.findReceivedWithQuery(multifield, assemblyType,
+                meetingDateFrom, meetingDateTo, subject, filter, limit, offset, cursor, column, direction,
+                currentLocalAuthUuid, currentRecipient);
+        List<ReceivedConvocationUI> convocations = receivedConvocations.stream().map(convocation -> new ReceivedConvocationUI(convocation, currentRecipient)).collect(Collectors.toList());
 
 
-        Long count = convocationService.countReceivedWithQuery(multifield, assemblyType,
-                meetingDateFrom, meetingDateTo, subject, filter, currentLocalAuthUuid, currentRecipient);
+        Long count = withCount ? convocationService.countReceivedWithQuery(multifield, assemblyType,
+                meetingDateFrom, meetingDateTo, subject, filter, currentLocalAuthUuid, currentRecipient) : null;
 
-        return new ResponseEntity<>(new SearchResultsUI(count, convocations), HttpStatus.OK);
+        return new ResponseEntity<>(new SearchResultsUI(count, convocations,
+                PageCursor.next(receivedConvocations, limit, column, direction)), HttpStatus.OK);
     }
 
 
@@ -1,66 +1,108 @@
 package fr.sictiam.stela.convocationservice.filter;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.sictiam.stela.convocationservice.model.Right;
-import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Sets the current profile from the JWT token. The verified tokens are cached until they expire, the time spent here
+ * on each request is measured by the {@code stela.auth.filter} timer.
+ */
 @Component
 public class AuthFilter extends OncePerRequestFilter {
 
     @Value("${application.jwt.secret}")
     String SECRET;
 
+    @Value("${application.jwt.cacheTtl:3600000}")
+    private long cacheTtl;
+
+    @Value("${application.jwt.cacheSize:10000}")
+    private int cacheSize;
+
+    private final MeterRegistry meterRegistry;
+
+    private TokenCache<CurrentProfile> tokenCache;
+    private Timer filterTimer;
+
+    public AuthFilter(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        tokenCache = new TokenCache<>(SECRET, cacheTtl, cacheSize, AuthFilter::toCurrentProfile, meterRegistry);
+        filterTimer = Timer.builder("stela.auth.filter").register(meterRegistry);
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
-        JsonNode token = getToken(request);
-
-        if (token != null && StringUtils.isNotBlank(token.get("uuid").asText())) {
-            Set<Right> rights = new HashSet<>();
-            token.get("groups").forEach(group -> group.get("rights").forEach(right -> {
-                if (StringUtils.startsWith(right.asText(), "CONVOCATION_")) {
-                    rights.add(Right.valueOf(right.asText()));
-                }
-            }));
-            Set<String> groups = new HashSet<>();
-            token.get("groups").forEach(group -> groups.add(group.get("uuid").asText()));
-            request.setAttribute("STELA-Current-Profile-Rights", rights);
-            request.setAttribute("STELA-Current-Profile-Groups", groups);
-            request.setAttribute("STELA-Current-Profile-UUID", token.get("uuid").asText());
-            request.setAttribute("STELA-Current-Local-Authority-UUID",
-                    token.get("localAuthority").get("uuid").asText());
+        long start = System.nanoTime();
+        String token = request.getHeader("STELA-Active-Token");
+        CurrentProfile profile = token != null ? tokenCache.get(token) : null;
+
+        if (profile != null) {
+            request.setAttribute("STELA-Current-Profile-Rights", profile.rights);
+            request.setAttribute("STELA-Current-Profile-Groups", profile.groups);
+            request.setAttribute("STELA-Current-Profile-UUID", profile.uuid);
+            request.setAttribute("STELA-Current-Local-Authority-UUID", profile.localAuthorityUuid);
         }
+        filterTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
         filterChain.doFilter(request, response);
     }
 
-    JsonNode getToken(HttpServletRequest request) throws IOException {
-        String token = request.getHeader("STELA-Active-Token");
-        if (token != null) {
-            // parse the token.
-            String tokenParsed = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody().getSubject();
+    private static CurrentProfile toCurrentProfile(JsonNode token) {
+        if (StringUtils.isBlank(token.get("uuid").asText()))
+            return null;
+
+        Set<Right> rights = EnumSet.noneOf(Right.class);
+        token.get("groups").forEach(group -> group.get("rights").forEach(right -> {
+            if (StringUtils.startsWith(right.asText(), "CONVOCATION_")) {
+                rights.add(Right.valueOf(right.asText()));
+            }
+        }));
+        Set<String> groups = new HashSet<>();
+        token.get("groups").forEach(group -> groups.add(group.get("uuid").asText()));
+
+        return new CurrentProfile(token.get("uuid").asText(), token.get("localAuthority").get("uuid").asText(),
+                rights, groups);
+    }
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode node = objectMapper.readTree(tokenParsed);
+    private static class CurrentProfile {
 
-            return node;
+        private final String uuid;
+        private final String localAuthorityUuid;
+        private final Set<Right> rights;
+        private final Set<String> groups;
 
+        private CurrentProfile(String uuid, String localAuthorityUuid, Set<Right> rights, Set<String> groups) {
+            this.uuid = uuid;
+            this.localAuthorityUuid = localAuthorityUuid;
+            this.rights = Collections.unmodifiableSet(rights);
+            this.groups = Collections.unmodifiableSet(groups);
         }
-        return null;
     }
 }
@@ -0,0 +1,12 @@
+package fr.sictiam.stela.convocationservice.model.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidCursorException extends ConvocationException {
+
+    public InvalidCursorException() {
+        super("convocation.errors.convocation.invalidCursor");
+    }
+}
@@ -13,6 +13,9 @@ public class SearchResultsUI {
     @JsonView(Views.Search.class)
     private List<?> results;
 
+    @JsonView(Views.Search.class)
+    private String nextCursor;
+
     public SearchResultsUI() {
         totalCount = 0L;
         results = new ArrayList<>();
@@ -23,6 +26,11 @@ public class SearchResultsUI {
         this.results = results;
     }
 
+    public SearchResultsUI(Long totalCount, List<?> results, String nextCursor) {
+        this(totalCount, results);
+        this.nextCursor = nextCursor;
+    }
+
     public Long getTotalCount() {
         return totalCount;
     }
@@ -30,4 +38,8 @@ public class SearchResultsUI {
     public List<?> getResults() {
         return results;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
 }
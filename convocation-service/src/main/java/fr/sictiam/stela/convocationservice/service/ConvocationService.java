@@ -27,6 +27,7 @@ import fr.sictiam.stela.convocationservice.model.exception.MissingParameterExcep
 import fr.sictiam.stela.convocationservice.model.exception.NotFoundException;
 import fr.sictiam.stela.convocationservice.model.exception.ProcurationNotPermittedException;
 import fr.sictiam.stela.convocationservice.service.exceptions.ConvocationNotFoundException;
+import fr.sictiam.stela.convocationservice.service.util.PageCursor;
 import fr.sictiam.stela.convocationservice.service.util.PdfGeneratorUtil;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
@@ -593,9 +594,12 @@ public class ConvocationService {
         return entityManager.createQuery(query).getSingleResult();
     }
 
+    /**
+     * When a {@link PageCursor} is given the page starts right after it and the offset is ignored.
+     */
     public List<Convocation> findSentWithQuery(String multifield, LocalDate sentDateFrom, LocalDate sentDateTo,
             String assemblyType, LocalDate meetingDateFrom, LocalDate meetingDateTo, String subject, String filter,
-            Integer limit, Integer offset, String column, String direction,
+            Integer limit, Integer offset, String cursor, String column, String direction,
             String currentLocalAuthUuid, Set<String> groups) {
 
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
@@ -607,17 +611,21 @@ public class ConvocationService {
         List<Predicate> predicates = getSentQueryPredicates(builder, convocationRoot, multifield, sentDateFrom,
                 sentDateTo, assemblyType, meetingDateFrom, meetingDateTo, subject, filter, currentLocalAuthUuid,
                 groups);
+        if (StringUtils.isNotBlank(cursor))
+            predicates.add(PageCursor.decode(cursor, column, direction).getPredicate(builder, convocationRoot));
 
         query.where(predicates.toArray(new Predicate[predicates.size()]))
-                .orderBy(!StringUtils.isEmpty(direction) && direction.equals("ASC")
-                        ? builder.asc(convocationRoot.get(columnAttribute))
-                        : builder.desc(convocationRoot.get(columnAttribute)));
-        return entityManager.createQuery(query).setFirstResult(offset).setMaxResults(limit).getResultList();
+                .orderBy(PageCursor.getOrders(builder, convocationRoot, columnAttribute, direction));
+        return entityManager.createQuery(query).setFirstResult(StringUtils.isNotBlank(cursor) ? 0 : offset)
+                .setMaxResults(limit).getResultList();
     }
 
+    /**
+     * When a {@link PageCursor} is given the page starts right after it and the offset is ignored.
+     */
     public List<Convocation> findReceivedWithQuery(String multifield, String assemblyType,
             LocalDate meetingDateFrom, LocalDate meetingDateTo, String subject, String filter, Integer limit,
-            Integer offset, String column, String direction,
+            Integer offset, String cursor, String column, String direction,
             String currentLocalAuthUuid, Recipient recipient) {
 
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
@@ -628,12 +636,13 @@ public class ConvocationService {
         String columnAttribute = StringUtils.isEmpty(column) ? "meetingDate" : column;
         List<Predicate> predicates = getReceivedQueryPredicates(builder, convocationRoot, multifield, assemblyType,
                 meetingDateFrom, meetingDateTo, subject, filter, currentLocalAuthUuid, recipient);
+        if (StringUtils.isNotBlank(cursor))
+            predicates.add(PageCursor.decode(cursor, column, direction).getPredicate(builder, convocationRoot));
 
         query.where(predicates.toArray(new Predicate[predicates.size()]))
-                .orderBy(!StringUtils.isEmpty(direction) && direction.equals("ASC")
-                        ? builder.asc(convocationRoot.get(columnAttribute))
-                        : builder.desc(convocationRoot.get(columnAttribute)));
-        return entityManager.createQuery(query).setFirstResult(offset).setMaxResults(limit).getResultList();
+                .orderBy(PageCursor.getOrders(builder, convocationRoot, columnAttribute, direction));
+        return entityManager.createQuery(query).setFirstResult(StringUtils.isNotBlank(cursor) ? 0 : offset)
+                .setMaxResults(limit).getResultList();
     }
 
     private List<Predicate> getSentQueryPredicates(CriteriaBuilder builder, Root<Convocation> convocationRoot,
@@ -2,70 +2,167 @@ package fr.sictiam.stela.convocationservice.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.sictiam.stela.convocationservice.service.util.BatchLoader;
 import fr.sictiam.stela.convocationservice.service.util.DiscoveryUtils;
+import fr.sictiam.stela.convocationservice.service.util.ExpiringCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.channel.ChannelOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientResponseException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Calls to admin-service. All of them share one pooled WebClient with timeouts, and the profiles are kept in a cache
+ * for {@code application.admin.cacheTtl} ms. The cache is emptied on every event of the admin exchange.
+ */
 @Service
 public class ExternalRestService {
 
     @Autowired
     private DiscoveryUtils discoveryUtils;
 
-    @Autowired
-    private RestTemplate restTemplate;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ExternalRestService.class);
 
-    /*
-    public JsonNode getProfile(String profileUuid) throws IOException {
-        WebClient webClient = WebClient.create(discoveryUtils.adminServiceUrl());
-        Mono<String> profile = webClient.get().uri("/api/admin/profile/{uuid}", profileUuid).retrieve()
-                .onStatus(HttpStatus::is4xxClientError,
-                        response -> Mono.error(new RuntimeException("Profile not Found")))
-                .bodyToMono(String.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Value("${application.admin.maxConnections:50}")
+    private int maxConnections;
+
+    @Value("${application.admin.connectTimeout:5000}")
+    private int connectTimeout;
+
+    @Value("${application.admin.readTimeout:30000}")
+    private int readTimeout;
+
+    @Value("${application.admin.cacheTtl:300000}")
+    private long cacheTtl;
+
+    @Value("${application.admin.cacheSize:10000}")
+    private int cacheSize;
+
+    @Value("${application.admin.batchDelay:5}")
+    private long batchDelay;
+
+    @Value("${application.admin.batchSize:100}")
+    private int batchSize;
+
+    private WebClient webClient;
+
+    private ExpiringCache<JsonNode> profiles;
+
+    private BatchLoader<JsonNode> profileLoader;
+
+    @PostConstruct
+    public void init() {
+        HttpClient httpClient = HttpClient.create(ConnectionProvider.fixed("admin-service", maxConnections))
+                .tcpConfiguration(tcpClient -> tcpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout));
+        webClient = WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient)).build();
 
-        Optional<String> opt = profile.blockOptional();
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode node = objectMapper.readTree(opt.get());
+        profiles = new ExpiringCache<>("admin.profiles", cacheTtl, cacheSize,
+                meterRegistry != null ? meterRegistry : Metrics.globalRegistry);
 
-        return node;
+        profileLoader = new BatchLoader<>("admin-profiles", this::getProfilesByUuids, batchDelay, batchSize, 2);
+    }
+
+    @PreDestroy
+    public void clean() {
+        profileLoader.shutdown();
     }
- */
-    public JsonNode getProfiles(String uuid) throws IOException {
-        WebClient webClient = WebClient.create(discoveryUtils.adminServiceUrl());
-        Mono<String> profiles = webClient.get().uri("/api/admin/local-authority/{uuid}/profiles", uuid).retrieve()
-                .onStatus(HttpStatus::is4xxClientError,
-                        response -> Mono.error(new RuntimeException("Profiles not Found")))
-                .bodyToMono(String.class);
 
-        Optional<String> opt = profiles.blockOptional();
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode node = objectMapper.readTree(opt.get());
+    /**
+     * Empties the cache, admin-service does not tell what changed so everything may be stale.
+     */
+    public void invalidateCaches() {
+        profiles.invalidateAll();
+    }
+
+    public JsonNode getProfiles(String uuid) throws IOException {
+        return profiles.get("localAuthority:" + uuid, () -> {
+            Mono<String> profiles = webClient.get()
+                    .uri(discoveryUtils.adminServiceUrl() + "/api/admin/local-authority/{uuid}/profiles", uuid)
+                    .retrieve()
+                    .onStatus(HttpStatus::is4xxClientError,
+                            response -> Mono.error(new RuntimeException("Profiles not Found")))
+                    .bodyToMono(String.class)
+                    .timeout(Duration.ofMillis(readTimeout));
 
-        return node;
+            Optional<String> opt = profiles.blockOptional();
+            return OBJECT_MAPPER.readTree(opt.get());
+        });
     }
 
 
+    /**
+     * The lookups of profiles made at the same time are sent to admin-service in one batch request. An unknown
+     * profile, or an error answered by admin-service, gives null; a timeout or an unreachable admin-service is thrown.
+     */
     public JsonNode getProfile(String uuid) {
         try {
-            return restTemplate.getForObject(discoveryUtils.adminServiceUrl() + "/api/admin/profile/{uuid}",
-                    JsonNode.class, uuid);
-        } catch (RestClientResponseException e) {
+            return profiles.get("uuid:" + uuid, () -> await(profileLoader.load(uuid)));
+        } catch (WebClientResponseException e) {
             LOGGER.error("Failed to retrieve profile for {} : {} ({})", uuid, e.getMessage(),
                     e.getResponseBodyAsString());
             return null;
         }
     }
 
+    private Map<String, JsonNode> getProfilesByUuids(Set<String> uuids) {
+        Optional<String> opt = webClient.post().uri(discoveryUtils.adminServiceUrl() + "/api/admin/profile/batch")
+                .body(BodyInserters.fromObject(uuids)).retrieve()
+                .bodyToMono(String.class)
+                .timeout(Duration.ofMillis(readTimeout))
+                .blockOptional();
+        Map<String, JsonNode> profilesByUuid = new HashMap<>();
+        try {
+            if (opt.isPresent())
+                OBJECT_MAPPER.readTree(opt.get()).forEach(profile -> profilesByUuid.put(profile.get("uuid").asText(), profile));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return profilesByUuid;
+    }
+
+    private <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.get(readTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("No answer from admin-service", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
 }
@@ -24,6 +24,9 @@ public class ReceiverService {
     @Autowired
     private LocalAuthorityService localAuthorityService;
 
+    @Autowired
+    private ExternalRestService externalRestService;
+
     @RabbitListener(bindings = @QueueBinding(value = @Queue(name = "convocationQueue", durable = "true"),
             exchange = @Exchange(value = "#{'${application.amqp.admin.exchange}'}", type = ExchangeTypes.FANOUT)))
     public void fromAdminService(Message message) {
@@ -33,6 +36,7 @@ public class ReceiverService {
 
         try {
             Event event = objectMapper.readValue(message.getBody(), Event.class);
+            externalRestService.invalidateCaches();
 
             if (event instanceof LocalAuthorityEvent) {
                 localAuthorityService.handleEvent((LocalAuthorityEvent) event);
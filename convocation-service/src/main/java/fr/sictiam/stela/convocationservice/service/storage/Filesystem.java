@@ -31,7 +31,7 @@ public class Filesystem implements StorageService {
     @PostConstruct
     public void init() {
         if (rootPath.endsWith("/"))
-            rootPath = rootPath.substring(rootPath.length() - 1);
+            rootPath = rootPath.substring(0, rootPath.length() - 1);
 
         Path path = Paths.get(rootPath);
         if (Files.notExists(path)) {
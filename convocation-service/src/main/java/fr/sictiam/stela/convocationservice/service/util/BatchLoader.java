@@ -0,0 +1,85 @@
+package fr.sictiam.stela.convocationservice.service.util;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Coalesces the lookups made at the same time into one batch call: the keys asked during {@code delayMillis} after
+ * the first one (or until {@code maxBatchSize} keys are waiting) are loaded together. A key asked twice in a batch is
+ * loaded once, and a key missing from the batch result gives null.
+ */
+public class BatchLoader<V> {
+
+    private final Function<Set<String>, Map<String, V>> loader;
+    private final long delayMillis;
+    private final int maxBatchSize;
+    private final ThreadPoolTaskScheduler scheduler;
+
+    // guarded by this
+    private Map<String, CompletableFuture<V>> pending = new HashMap<>();
+
+    public BatchLoader(String name, Function<Set<String>, Map<String, V>> loader, long delayMillis, int maxBatchSize,
+            int workers) {
+        this.loader = loader;
+        this.delayMillis = delayMillis;
+        this.maxBatchSize = maxBatchSize;
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(workers);
+        scheduler.setThreadNamePrefix(name + "-batch-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+    }
+
+    public CompletableFuture<V> load(String key) {
+        Map<String, CompletableFuture<V>> full = null;
+        CompletableFuture<V> future;
+        synchronized (this) {
+            future = pending.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                if (pending.isEmpty())
+                    scheduler.schedule(this::flush, new Date(System.currentTimeMillis() + delayMillis));
+                pending.put(key, future);
+                if (pending.size() >= maxBatchSize) {
+                    full = pending;
+                    pending = new HashMap<>();
+                }
+            }
+        }
+        if (full != null) {
+            Map<String, CompletableFuture<V>> batch = full;
+            scheduler.execute(() -> dispatch(batch));
+        }
+        return future;
+    }
+
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private void flush() {
+        Map<String, CompletableFuture<V>> batch;
+        synchronized (this) {
+            if (pending.isEmpty())
+                return;
+            batch = pending;
+            pending = new HashMap<>();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Map<String, CompletableFuture<V>> batch) {
+        try {
+            Map<String, V> values = loader.apply(batch.keySet());
+            batch.forEach((key, future) -> future.complete(values.get(key)));
+        } catch (RuntimeException e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package fr.sictiam.stela.convocationservice.service.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Values kept for a fixed time after being loaded. Null values are kept too, errors are not.
+ * <p>
+ * The size is bounded: when it is reached the expired entries are dropped, then the ones expiring first until a quarter
+ * of the room is free, so the recent entries stay cached.
+ * Hits and misses are counted in the {@code stela.cache.gets} counter ({@code cache} and {@code result} tags), the
+ * {@code stela.cache.hit.ratio} gauge gives the hit ratio since the start.
+ */
+public class ExpiringCache<V> {
+
+    private final long ttlMillis;
+    private final int maxSize;
+    private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    public ExpiringCache(String name, long ttlMillis, int maxSize, MeterRegistry meterRegistry) {
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        hits = Counter.builder("stela.cache.gets").tag("cache", name).tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("stela.cache.gets").tag("cache", name).tag("result", "miss").register(meterRegistry);
+        Gauge.builder("stela.cache.hit.ratio", this, ExpiringCache::hitRatio).tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder("stela.cache.size", entries, ConcurrentMap::size).tag("cache", name).register(meterRegistry);
+    }
+
+    public <E extends Exception> V get(String key, Loader<V, E> loader) throws E {
+        Entry<V> entry = entries.get(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.expiration > now) {
+            hits.increment();
+            return entry.value;
+        }
+        misses.increment();
+        V value = loader.load();
+        if (entries.size() >= maxSize)
+            shrink(now);
+        entries.put(key, new Entry<>(value, now + ttlMillis));
+        return value;
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private void shrink(long now) {
+        entries.values().removeIf(entry -> entry.expiration <= now);
+        int excess = entries.size() - maxSize * 3 / 4;
+        if (excess > 0) {
+            entries.entrySet().stream()
+                    .sorted(Comparator.comparingLong(
+                            (Map.Entry<String, Entry<V>> entry) -> entry.getValue().expiration))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList())
+                    .forEach(entries::remove);
+        }
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total > 0 ? hits.count() / total : 0;
+    }
+
+    @FunctionalInterface
+    public interface Loader<V, E extends Exception> {
+        V load() throws E;
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expiration;
+
+        private Entry(V value, long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -0,0 +1,2 @@
+-- Keyset pagination of the convocation lists: default sort on the meeting date, the uuid breaking ties
+CREATE INDEX convocation_local_authority_meeting_date_uuid_idx ON convocation (local_authority_uuid, meeting_date, uuid);
@@ -0,0 +1,93 @@
+package fr.sictiam.stela.convocationservice.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import fr.sictiam.stela.convocationservice.service.util.DiscoveryUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = ExternalRestService.class,
+        properties = { "application.admin.batchDelay = 200", "application.admin.readTimeout = 1000" })
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ExternalRestServiceTest {
+
+    private static final String BATCH_PATH = "/api/admin/profile/batch";
+
+    @Autowired
+    private ExternalRestService externalRestService;
+
+    @MockBean
+    private DiscoveryUtils discoveryUtils;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    @Before
+    public void setUp() {
+        given(discoveryUtils.adminServiceUrl()).willReturn("http://localhost:8089");
+    }
+
+    @Test
+    public void concurrentLookupsAreSentInOneBatch() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        stubFor(post(urlPathEqualTo(BATCH_PATH)).willReturn(okJson(
+                "[{\"uuid\": \"profile-one\", \"agent\": {\"email\": \"one@example.com\"}},"
+                        + " {\"uuid\": \"profile-two\", \"agent\": {\"email\": \"two@example.com\"}}]")));
+
+        CompletableFuture<JsonNode> one = CompletableFuture
+                .supplyAsync(() -> externalRestService.getProfile("profile-one"), executor);
+        CompletableFuture<JsonNode> two = CompletableFuture
+                .supplyAsync(() -> externalRestService.getProfile("profile-two"), executor);
+        CompletableFuture<JsonNode> unknown = CompletableFuture
+                .supplyAsync(() -> externalRestService.getProfile("profile-unknown"), executor);
+
+        assertEquals("one@example.com", one.join().get("agent").get("email").asText());
+        assertEquals("two@example.com", two.join().get("agent").get("email").asText());
+        assertNull(unknown.join());
+        executor.shutdown();
+        WireMock.verify(1, postRequestedFor(urlPathEqualTo(BATCH_PATH))
+                .withRequestBody(containing("profile-one"))
+                .withRequestBody(containing("profile-two"))
+                .withRequestBody(containing("profile-unknown")));
+
+        // the unknown profile is cached as well
+        externalRestService.getProfile("profile-one");
+        assertNull(externalRestService.getProfile("profile-unknown"));
+        WireMock.verify(1, postRequestedFor(urlPathEqualTo(BATCH_PATH)));
+    }
+
+    @Test
+    public void errorOfAdminServiceGivesNullAndIsNotCached() {
+        stubFor(post(urlPathEqualTo(BATCH_PATH)).willReturn(serverError()));
+
+        assertNull(externalRestService.getProfile("profile-one"));
+        assertNull(externalRestService.getProfile("profile-one"));
+
+        WireMock.verify(2, postRequestedFor(urlPathEqualTo(BATCH_PATH)));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void timeoutIsThrown() {
+        stubFor(post(urlPathEqualTo(BATCH_PATH)).willReturn(okJson("[]").withFixedDelay(2000)));
+
+        externalRestService.getProfile("profile-one");
+    }
+}
@@ -0,0 +1,122 @@
+package fr.sictiam.stela.convocationservice.service.util;
+
+import fr.sictiam.stela.convocationservice.model.AssemblyType;
+import fr.sictiam.stela.convocationservice.model.Convocation;
+import fr.sictiam.stela.convocationservice.service.exceptions.InvalidCursorException;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class PageCursorTest {
+
+    @Test
+    public void cursorIsBuiltFromTheLastRowOfAFullPage() {
+        List<Convocation> page = Arrays.asList(convocation("b", LocalDateTime.of(2018, 6, 1, 10, 0), "subject"),
+                convocation("a", LocalDateTime.of(2018, 5, 1, 10, 0), "subject"));
+
+        String cursor = PageCursor.next(page, 2, "meetingDate", "DESC");
+
+        assertNotNull(cursor);
+        assertNotNull(PageCursor.decode(cursor, "meetingDate", "DESC"));
+    }
+
+    @Test
+    public void lastPageHasNoCursor() {
+        List<Convocation> page = Collections.singletonList(convocation("a", LocalDateTime.of(2018, 5, 1, 10, 0),
+                "subject"));
+
+        assertNull(PageCursor.next(page, 2, "meetingDate", "DESC"));
+    }
+
+    @Test
+    public void nullSortValueHasNoCursor() {
+        List<Convocation> page = Collections.singletonList(convocation("a", null, "subject"));
+
+        assertNull(PageCursor.next(page, 1, "meetingDate", "DESC"));
+    }
+
+    @Test
+    public void assemblyTypeHasNoCursor() {
+        Convocation convocation = convocation("a", LocalDateTime.of(2018, 5, 1, 10, 0), "subject");
+        convocation.setAssemblyType(new AssemblyType());
+
+        // an entity can't be compared, the client goes on with offsets
+        assertNull(PageCursor.next(Collections.singletonList(convocation), 1, "assemblyType", "ASC"));
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void subjectIsComparedAsItIs() {
+        // the separator in the value is kept
+        String cursor = PageCursor.next(Collections.singletonList(convocation("a", null, "Conseil | juin")), 1,
+                "subject", "ASC");
+        CriteriaBuilder builder = mock(CriteriaBuilder.class);
+        Path root = mock(Path.class);
+        Path subjectPath = path(root, "subject", String.class);
+        Path uuidPath = path(root, "uuid", String.class);
+
+        PageCursor.decode(cursor, "subject", "ASC").getPredicate(builder, root);
+
+        verify(builder).greaterThan(subjectPath, (Comparable) "Conseil | juin");
+        verify(builder).greaterThan(uuidPath, (Comparable) "a");
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void cancelledIsComparedAsABoolean() {
+        Convocation convocation = convocation("a", LocalDateTime.of(2018, 5, 1, 10, 0), "subject");
+        convocation.setCancelled(true);
+        String cursor = PageCursor.next(Collections.singletonList(convocation), 1, "cancelled", "DESC");
+        CriteriaBuilder builder = mock(CriteriaBuilder.class);
+        Path root = mock(Path.class);
+        // a primitive attribute
+        Path cancelledPath = path(root, "cancelled", boolean.class);
+        path(root, "uuid", String.class);
+
+        PageCursor.decode(cursor, "cancelled", "DESC").getPredicate(builder, root);
+
+        verify(builder).lessThan(cancelledPath, (Comparable) Boolean.TRUE);
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void cursorIsBoundToItsSort() {
+        String cursor = PageCursor.next(Collections.singletonList(convocation("a",
+                LocalDateTime.of(2018, 5, 1, 10, 0), "subject")), 1, "meetingDate", "DESC");
+
+        PageCursor.decode(cursor, "meetingDate", "ASC");
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void malformedCursorIsRejected() {
+        PageCursor.decode("not a cursor", "meetingDate", "DESC");
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Path path(Path root, String attribute, Class<?> type) {
+        Path path = mock(Path.class);
+        given(root.get(attribute)).willReturn(path);
+        given(path.getJavaType()).willReturn(type);
+        return path;
+    }
+
+    private Convocation convocation(String uuid, LocalDateTime meetingDate, String subject) {
+        Convocation convocation = new Convocation();
+        ReflectionTestUtils.setField(convocation, "uuid", uuid);
+        convocation.setMeetingDate(meetingDate);
+        convocation.setSubject(subject);
+        return convocation;
+    }
+}
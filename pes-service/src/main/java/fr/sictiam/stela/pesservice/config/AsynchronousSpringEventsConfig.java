@@ -1,18 +1,33 @@
 package fr.sictiam.stela.pesservice.config;
 
+import fr.sictiam.stela.pesservice.config.MeteredApplicationEventMulticaster.PoolSettings;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.event.ApplicationEventMulticaster;
-import org.springframework.context.event.SimpleApplicationEventMulticaster;
-import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.env.Environment;
 
 @Configuration
 public class AsynchronousSpringEventsConfig {
 
     @Bean(name = "applicationEventMulticaster")
-    public ApplicationEventMulticaster simpleApplicationEventMulticaster() {
-        SimpleApplicationEventMulticaster eventMulticaster = new SimpleApplicationEventMulticaster();
-        eventMulticaster.setTaskExecutor(new SimpleAsyncTaskExecutor());
-        return eventMulticaster;
+    public ApplicationEventMulticaster simpleApplicationEventMulticaster(MeterRegistry meterRegistry,
+            Environment environment) {
+        return new MeteredApplicationEventMulticaster(meterRegistry, pool -> poolSettings(environment, pool));
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads application.events.pools.{pool}.coreSize, maxSize and queueCapacity. Pools other than the default one
+     * only exist when their coreSize is set, {pool} being the simple name of a listener class or of an event class.
+     */
+    private PoolSettings poolSettings(Environment environment, String pool) {
+        String prefix = "application.events.pools." + pool + ".";
+        if (!MeteredApplicationEventMulticaster.DEFAULT_POOL.equals(pool)
+                && !environment.containsProperty(prefix + "coreSize"))
+            return null;
+        int corePoolSize = environment.getProperty(prefix + "coreSize", Integer.class, 4);
+        return new PoolSettings(corePoolSize,
+                environment.getProperty(prefix + "maxSize", Integer.class, Math.max(corePoolSize, 16)),
+                environment.getProperty(prefix + "queueCapacity", Integer.class, 500));
+    }
+}
@@ -0,0 +1,136 @@
+package fr.sictiam.stela.pesservice.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.SimpleApplicationEventMulticaster;
+import org.springframework.core.ResolvableType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+
+/**
+ * Dispatches events to listeners on bounded thread pools instead of one new thread per listener invocation.
+ * <p>
+ * Listeners run on the "default" pool, unless a dedicated pool is declared for the listener class or the event
+ * class (by simple name). When a pool and its queue are full, the listener runs in the publishing thread, which
+ * slows down the producer instead of piling up threads and files in memory.
+ * <p>
+ * Each pool exposes the executor metrics (pool size, active threads, queued tasks) under the
+ * {@code name=events.<pool>} tag, plus a rejection counter and a queue remaining capacity gauge. Listener
+ * durations are recorded in the {@code stela.events.listener} timer.
+ */
+public class MeteredApplicationEventMulticaster extends SimpleApplicationEventMulticaster implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MeteredApplicationEventMulticaster.class);
+
+    static final String DEFAULT_POOL = "default";
+
+    private final MeterRegistry meterRegistry;
+    private final Function<String, PoolSettings> poolSettings;
+    private final Map<String, String> pools = new ConcurrentHashMap<>();
+    private final Map<String, ThreadPoolTaskExecutor> executors = new ConcurrentHashMap<>();
+
+    public MeteredApplicationEventMulticaster(MeterRegistry meterRegistry, Function<String, PoolSettings> poolSettings) {
+        this.meterRegistry = meterRegistry;
+        this.poolSettings = poolSettings;
+    }
+
+    @Override
+    public void multicastEvent(ApplicationEvent event, ResolvableType eventType) {
+        ResolvableType type = eventType != null ? eventType : ResolvableType.forInstance(event);
+        for (ApplicationListener<?> listener : getApplicationListeners(event, type)) {
+            executorFor(listener, event).execute(() -> invokeListener(listener, event));
+        }
+    }
+
+    @Override
+    protected void invokeListener(ApplicationListener<?> listener, ApplicationEvent event) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            super.invokeListener(listener, event);
+        } finally {
+            sample.stop(Timer.builder("stela.events.listener")
+                    .tag("listener", listenerName(listener))
+                    .tag("event", event.getClass().getSimpleName())
+                    .register(meterRegistry));
+        }
+    }
+
+    private ThreadPoolTaskExecutor executorFor(ApplicationListener<?> listener, ApplicationEvent event) {
+        String listenerName = listenerName(listener);
+        String eventName = event.getClass().getSimpleName();
+        String pool = pools.computeIfAbsent(listenerName + "/" + eventName, key -> {
+            if (poolSettings.apply(listenerName) != null)
+                return listenerName;
+            if (poolSettings.apply(eventName) != null)
+                return eventName;
+            return DEFAULT_POOL;
+        });
+        return executors.computeIfAbsent(pool, this::createExecutor);
+    }
+
+    private ThreadPoolTaskExecutor createExecutor(String pool) {
+        PoolSettings settings = poolSettings.apply(pool);
+        if (settings == null)
+            settings = poolSettings.apply(DEFAULT_POOL);
+        LOGGER.info("Creating event pool {} (core: {}, max: {}, queue: {})", pool, settings.corePoolSize,
+                settings.maxPoolSize, settings.queueCapacity);
+
+        Counter rejected = Counter.builder("stela.events.rejected").tag("pool", pool)
+                .description("Listener invocations run in the publishing thread because the pool was full")
+                .register(meterRegistry);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(settings.corePoolSize);
+        executor.setMaxPoolSize(settings.maxPoolSize);
+        executor.setQueueCapacity(settings.queueCapacity);
+        executor.setThreadNamePrefix("events-" + pool + "-");
+        executor.setRejectedExecutionHandler((runnable, threadPoolExecutor) -> {
+            rejected.increment();
+            new ThreadPoolExecutor.CallerRunsPolicy().rejectedExecution(runnable, threadPoolExecutor);
+        });
+        executor.initialize();
+
+        ExecutorServiceMetrics.monitor(meterRegistry, executor.getThreadPoolExecutor(), "events." + pool, Tags.empty());
+        Gauge.builder("stela.events.queue.remaining", executor.getThreadPoolExecutor(),
+                threadPoolExecutor -> threadPoolExecutor.getQueue().remainingCapacity())
+                .tag("pool", pool)
+                .register(meterRegistry);
+        return executor;
+    }
+
+    private String listenerName(ApplicationListener<?> listener) {
+        return AopUtils.getTargetClass(listener).getSimpleName();
+    }
+
+    @Override
+    public void destroy() {
+        executors.values().forEach(ThreadPoolTaskExecutor::shutdown);
+    }
+
+    public static class PoolSettings {
+
+        private final int corePoolSize;
+        private final int maxPoolSize;
+        private final int queueCapacity;
+
+        public PoolSettings(int corePoolSize, int maxPoolSize, int queueCapacity) {
+            this.corePoolSize = corePoolSize;
+            this.maxPoolSize = maxPoolSize;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+}
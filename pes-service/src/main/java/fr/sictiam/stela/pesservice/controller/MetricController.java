@@ -32,11 +32,11 @@ public class MetricController {
     }
 
     @GetMapping("/sample")
-    public Map<String, List<Map<LocalDateTime, Long>>> getNumberOfPesWithSample(
+    public Map<String, List<Map<String, Object>>> getNumberOfPesWithSample(
             @RequestParam(value = "fromDate") @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime fromDate,
             @RequestParam(value = "toDate") @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime toDate,
             @RequestParam(value = "statusType", required = false) StatusType statusType,
-            @RequestParam(value = "sample", required = false) String sample) {
+            @RequestParam(value = "sample", defaultValue = "day") String sample) {
         return metricService.getNumberOfPesWithSample(fromDate, toDate, statusType, sample);
     }
 }
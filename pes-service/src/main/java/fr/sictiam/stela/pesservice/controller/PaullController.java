@@ -87,7 +87,7 @@ public class PaullController {
         }
 
         try {
-            if (pesAllerService.checkVirus(multiFile.getBytes())) {
+            if (pesAllerService.checkVirus(multiFile)) {
                 return new ResponseEntity<>("notifications.pes.sent.virus", HttpStatus.BAD_REQUEST);
             }
             PesAller pesAller = new PesAller();
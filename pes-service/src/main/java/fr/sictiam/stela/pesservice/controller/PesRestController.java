@@ -16,6 +16,7 @@ import fr.sictiam.stela.pesservice.service.StorageService;
 import fr.sictiam.stela.pesservice.service.exceptions.FileNotFoundException;
 import fr.sictiam.stela.pesservice.service.exceptions.PesCreationException;
 import fr.sictiam.stela.pesservice.service.util.CertUtilService;
+import fr.sictiam.stela.pesservice.service.util.PageCursor;
 import fr.sictiam.stela.pesservice.validation.ValidationUtil;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
@@ -82,6 +83,8 @@ public class PesRestController {
             @RequestParam(value = "status", required = false) StatusType status,
             @RequestParam(value = "limit", required = false, defaultValue = "25") Integer limit,
             @RequestParam(value = "offset", required = false, defaultValue = "0") Integer offset,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "withCount", required = false, defaultValue = "true") Boolean withCount,
             @RequestParam(value = "column", required = false, defaultValue = "creation") String column,
             @RequestParam(value = "direction", required = false, defaultValue = "DESC") String direction,
             @RequestAttribute("STELA-Current-Profile-Rights") Set<Right> rights,
@@ -91,10 +94,11 @@ public class PesRestController {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
         List<PesAller> pesList = pesAllerService.getAllWithQuery(multifield, objet, creationFrom, creationTo, status,
-                limit, offset, column, direction, currentLocalAuthUuid);
-        Long count = pesAllerService.countAllWithQuery(multifield, objet, creationFrom, creationTo, status,
-                currentLocalAuthUuid);
-        return new ResponseEntity<>(new SearchResultsUI(count, pesList), HttpStatus.OK);
+                limit, offset, cursor, column, direction, currentLocalAuthUuid);
+        Long count = withCount ? pesAllerService.countAllWithQuery(multifield, objet, creationFrom, creationTo, status,
+                currentLocalAuthUuid) : null;
+        return new ResponseEntity<>(new SearchResultsUI(count, pesList,
+                PageCursor.next(pesList, limit, column, direction)), HttpStatus.OK);
     }
 
     @GetMapping("/{uuid}")
@@ -147,7 +151,7 @@ public class PesRestController {
         }
         ObjectMapper mapper = new ObjectMapper();
         try {
-            if (pesAllerService.checkVirus(file.getBytes())) {
+            if (pesAllerService.checkVirus(file)) {
                 LOGGER.error("PES {} attachment contains virus", pesAllerJson);
                 return new ResponseEntity<>("notifications.pes.sent.virus", HttpStatus.BAD_REQUEST);
             }
@@ -219,15 +223,18 @@ public class PesRestController {
             @RequestParam(value = "creationFrom", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate creationFrom,
             @RequestParam(value = "creationTo", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate creationTo,
             @RequestParam(value = "limit", required = false, defaultValue = "25") Integer limit,
-            @RequestParam(value = "offset", required = false, defaultValue = "0") Integer offset) {
+            @RequestParam(value = "offset", required = false, defaultValue = "0") Integer offset,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "withCount", required = false, defaultValue = "true") Boolean withCount) {
         if (!RightUtils.hasRight(rights, Arrays.asList(Right.PES_DEPOSIT, Right.PES_DISPLAY))) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
         List<PesRetour> pesRetours = pesRetourService.getAllWithQuery(multifield, filename, creationFrom, creationTo,
-                currentLocalAuthUuid, limit, offset);
-        Long count = pesRetourService.countAllWithQuery(multifield, filename, creationFrom, creationTo,
-                currentLocalAuthUuid);
-        return new ResponseEntity<>(new SearchResultsUI(count, pesRetours), HttpStatus.OK);
+                currentLocalAuthUuid, limit, offset, cursor);
+        Long count = withCount ? pesRetourService.countAllWithQuery(multifield, filename, creationFrom, creationTo,
+                currentLocalAuthUuid) : null;
+        return new ResponseEntity<>(new SearchResultsUI(count, pesRetours,
+                PageCursor.next(pesRetours, limit, "creation", "DESC")), HttpStatus.OK);
     }
 
     @GetMapping("/pes-retour/{uuid}/file")
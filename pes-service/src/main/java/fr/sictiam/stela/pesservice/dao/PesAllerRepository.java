@@ -4,8 +4,11 @@ import fr.sictiam.stela.pesservice.model.ArchiveStatus;
 import fr.sictiam.stela.pesservice.model.PesAller;
 import fr.sictiam.stela.pesservice.model.StatusType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,5 +28,14 @@ public interface PesAllerRepository extends JpaRepository<PesAller, String> {
 
     Long countByLastHistoryStatusAndLastHistoryDateAfter(StatusType statusType, LocalDateTime localDateTime);
 
+    @Query("SELECT p.lastHistoryStatus, COUNT(p) FROM PesAller p WHERE p.lastHistoryStatus IN :statuses "
+            + "AND p.lastHistoryDate > :date GROUP BY p.lastHistoryStatus")
+    List<Object[]> countByLastHistoryStatusInAndLastHistoryDateAfter(@Param("statuses") Collection<StatusType> statuses,
+            @Param("date") LocalDateTime date);
+
+    @Query("SELECT p.lastHistoryStatus, COUNT(p) FROM PesAller p WHERE p.lastHistoryStatus IN :statuses "
+            + "GROUP BY p.lastHistoryStatus")
+    List<Object[]> countByLastHistoryStatusIn(@Param("statuses") Collection<StatusType> statuses);
+
     Optional<PesAller> findByUuidAndLocalAuthorityUuid(String uuid, String localAuthorityUuid);
 }
\ No newline at end of file
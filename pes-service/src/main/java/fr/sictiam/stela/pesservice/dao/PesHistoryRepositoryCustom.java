@@ -0,0 +1,35 @@
+package fr.sictiam.stela.pesservice.dao;
+
+import fr.sictiam.stela.pesservice.model.PesHistory;
+import fr.sictiam.stela.pesservice.model.StatusType;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.SortedMap;
+
+public interface PesHistoryRepositoryCustom {
+
+    /**
+     * Appends the history to its PES without loading the PES, the last history columns of the PES only move
+     * forward: an older history never overwrites what a newer one has set.
+     */
+    PesHistory append(PesHistory pesHistory);
+
+    /**
+     * Number of histories of each status dated between the two dates (inclusive), in one grouped query. The whole
+     * minutes are read from the pes_status_count rollup, only the partial minutes at both ends from pes_history.
+     */
+    Map<StatusType, Long> countByStatusBetween(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Same as {@link #countByStatusBetween(LocalDateTime, LocalDateTime)}, per {@code date_trunc} sample. Samples
+     * finer than the minute are counted on pes_history only.
+     */
+    Map<StatusType, SortedMap<LocalDateTime, Long>> countByStatusAndSampleBetween(String sample, LocalDateTime from,
+            LocalDateTime to);
+
+    /**
+     * Number of histories of each status since the beginning, read from the pes_status_count rollup.
+     */
+    Map<StatusType, Long> countByStatus();
+}
@@ -0,0 +1,170 @@
+package fr.sictiam.stela.pesservice.dao;
+
+import fr.sictiam.stela.pesservice.model.PesHistory;
+import fr.sictiam.stela.pesservice.model.StatusType;
+import fr.sictiam.stela.pesservice.service.PipelineMetricsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+public class PesHistoryRepositoryImpl implements PesHistoryRepositoryCustom {
+
+    // date_trunc fields that a minute bucket of the rollup always falls in entirely
+    private static final Set<String> ROLLUP_SAMPLES = new HashSet<>(Arrays.asList("minute", "hour", "day", "week",
+            "month", "quarter", "year", "decade", "century", "millennium"));
+
+    // the whole minutes of the range from the rollup, the partial ones at both ends from pes_history
+    private static final String COUNTS = "SELECT status, bucket, count FROM pes_status_count "
+            + "WHERE bucket >= :firstMinute AND bucket < :lastMinute "
+            + "UNION ALL SELECT status, date, 1 FROM pes_history WHERE status IS NOT NULL "
+            + "AND ((date >= :from AND date < :firstMinute) OR (date >= :lastMinute AND date <= :to))";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PipelineMetricsService pipelineMetricsService;
+
+    @Override
+    @Transactional
+    public PesHistory append(PesHistory pesHistory) {
+        PesHistory history = entityManager.merge(pesHistory);
+        entityManager.flush();
+        entityManager.createNativeQuery("INSERT INTO pes_aller_pes_histories (pes_aller_uuid, pes_histories_uuid) "
+                + "VALUES (:pesUuid, :historyUuid) ON CONFLICT DO NOTHING")
+                .setParameter("pesUuid", history.getPesUuid())
+                .setParameter("historyUuid", history.getUuid())
+                .executeUpdate();
+
+        // do not update last history Pes fields on status NOTIFICATION_SENT|GROUP_NOTIFICATION_SENT
+        if (history.getStatus() != StatusType.NOTIFICATION_SENT
+                && history.getStatus() != StatusType.GROUP_NOTIFICATION_SENT) {
+            // the status being left, locked until the end of the transaction so that it is only left once
+            List<Object[]> previous = rows(entityManager.createNativeQuery("SELECT local_authority_uuid, creation, "
+                    + "last_history_status, last_history_date FROM pes_aller WHERE uuid = :uuid FOR UPDATE")
+                    .setParameter("uuid", history.getPesUuid()));
+            int updated = entityManager.createQuery("UPDATE PesAller p SET p.lastHistoryStatus = :status, "
+                    + "p.lastHistoryDate = :date WHERE p.uuid = :uuid "
+                    + "AND (p.lastHistoryDate IS NULL OR p.lastHistoryDate <= :date)")
+                    .setParameter("status", history.getStatus())
+                    .setParameter("date", history.getDate())
+                    .setParameter("uuid", history.getPesUuid())
+                    .executeUpdate();
+            if (updated > 0 && !previous.isEmpty()) {
+                Object[] pes = previous.get(0);
+                afterCommit(() -> pipelineMetricsService.recordTransition((String) pes[0], toLocalDateTime(pes[1]),
+                        toStatus(pes[2]), toLocalDateTime(pes[3]), history.getStatus(), history.getDate()));
+            }
+        }
+        return history;
+    }
+
+    @Override
+    public Map<StatusType, Long> countByStatusBetween(LocalDateTime from, LocalDateTime to) {
+        Query query = entityManager.createNativeQuery("SELECT status, SUM(count) FROM (" + COUNTS + ") counts "
+                + "GROUP BY status");
+        Map<StatusType, Long> counts = new EnumMap<>(StatusType.class);
+        for (Object[] row : rows(setRange(query, from, to, true))) {
+            StatusType status = toStatus(row[0]);
+            if (status != null)
+                counts.put(status, ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<StatusType, SortedMap<LocalDateTime, Long>> countByStatusAndSampleBetween(String sample,
+            LocalDateTime from, LocalDateTime to) {
+        Query query = entityManager.createNativeQuery("SELECT status, date_trunc(:sample, bucket), SUM(count) FROM ("
+                + COUNTS + ") counts GROUP BY 1, 2")
+                .setParameter("sample", sample);
+        Map<StatusType, SortedMap<LocalDateTime, Long>> counts = new EnumMap<>(StatusType.class);
+        for (Object[] row : rows(setRange(query, from, to, ROLLUP_SAMPLES.contains(sample)))) {
+            StatusType status = toStatus(row[0]);
+            if (status != null)
+                counts.computeIfAbsent(status, s -> new TreeMap<>())
+                        .put(toLocalDateTime(row[1]), ((Number) row[2]).longValue());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<StatusType, Long> countByStatus() {
+        Query query = entityManager.createNativeQuery("SELECT status, SUM(count) FROM pes_status_count "
+                + "GROUP BY status");
+        Map<StatusType, Long> counts = new EnumMap<>(StatusType.class);
+        for (Object[] row : rows(query)) {
+            StatusType status = toStatus(row[0]);
+            if (status != null)
+                counts.put(status, ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+
+    private Query setRange(Query query, LocalDateTime from, LocalDateTime to, boolean useRollup) {
+        LocalDateTime firstMinute = from.truncatedTo(ChronoUnit.MINUTES);
+        if (firstMinute.isBefore(from))
+            firstMinute = firstMinute.plusMinutes(1);
+        LocalDateTime lastMinute = to.truncatedTo(ChronoUnit.MINUTES);
+        if (!useRollup || !firstMinute.isBefore(lastMinute)) {
+            // no whole minute to read from the rollup: the whole range is counted on pes_history
+            firstMinute = from;
+            lastMinute = from;
+        }
+        return query.setParameter("from", from)
+                .setParameter("to", to)
+                .setParameter("firstMinute", firstMinute)
+                .setParameter("lastMinute", lastMinute);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> rows(Query query) {
+        return query.getResultList();
+    }
+
+    private LocalDateTime toLocalDateTime(Object timestamp) {
+        return timestamp != null ? ((Timestamp) timestamp).toLocalDateTime() : null;
+    }
+
+    // statuses that are no longer in the enum are left out
+    private StatusType toStatus(Object status) {
+        if (status == null)
+            return null;
+        try {
+            return StatusType.valueOf((String) status);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // a rolled back append, or one retried after losing the lock, must not be timed
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,14 @@
+package fr.sictiam.stela.pesservice.dao;
+
+import fr.sictiam.stela.pesservice.model.ReceivedFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ReceivedFileRepository extends JpaRepository<ReceivedFile, String> {
+
+    List<ReceivedFile> findByFileNameIn(Collection<String> fileNames);
+
+    boolean existsBySha256(String sha256);
+}
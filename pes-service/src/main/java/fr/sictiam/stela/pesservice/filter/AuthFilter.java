@@ -5,76 +5,118 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.sictiam.stela.pesservice.model.Right;
 import fr.sictiam.stela.pesservice.model.util.Certificate;
 import fr.sictiam.stela.pesservice.service.util.CertUtilService;
-import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Sets the current profile from the JWT token. The verified tokens are cached until they expire, the time spent here
+ * on each request is measured by the {@code stela.auth.filter} timer.
+ */
 @Component
 public class AuthFilter extends OncePerRequestFilter {
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     @Value("${application.jwt.secret}")
     String SECRET;
 
+    @Value("${application.jwt.cacheTtl:3600000}")
+    private long cacheTtl;
+
+    @Value("${application.jwt.cacheSize:10000}")
+    private int cacheSize;
+
     private final CertUtilService certUtilService;
+    private final MeterRegistry meterRegistry;
 
-    public AuthFilter(CertUtilService certUtilService) {
+    private TokenCache<CurrentProfile> tokenCache;
+    private Timer filterTimer;
+
+    public AuthFilter(CertUtilService certUtilService, ObjectProvider<MeterRegistry> meterRegistry) {
         this.certUtilService = certUtilService;
+        this.meterRegistry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        tokenCache = new TokenCache<>(SECRET, cacheTtl, cacheSize, AuthFilter::toCurrentProfile, meterRegistry);
+        filterTimer = Timer.builder("stela.auth.filter").register(meterRegistry);
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
+        long start = System.nanoTime();
         Certificate certificate = certUtilService.getCertInfosFromHeaders(request);
-        JsonNode token = getToken(request);
-
-        if (token != null && StringUtils.isNotBlank(token.get("uuid").asText())) {
-            ObjectMapper om = new ObjectMapper();
-            Certificate pairedCertificate =
-                    token.get("agent").get("certificate") != null && !token.get("agent").get("certificate").isNull()
-                            ? om.treeToValue(token.get("agent").get("certificate"), Certificate.class) : null;
-
-            Set<Right> rights = new HashSet<>();
-            token.get("groups").forEach(group -> group.get("rights").forEach(right -> {
-                if (StringUtils.startsWith(right.asText(), "PES_")) {
-                    rights.add(Right.valueOf(right.asText()));
-                }
-            }));
-            request.setAttribute("STELA-Current-Profile-Is-Local-Authority-Admin", token.get("admin").asBoolean());
-            request.setAttribute("STELA-Current-Profile-Rights", rights);
-            request.setAttribute("STELA-Current-Profile-UUID", token.get("uuid").asText());
-            request.setAttribute("STELA-Current-Profile-Paired-Certificate", pairedCertificate);
-            request.setAttribute("STELA-Current-Local-Authority-UUID",
-                    token.get("localAuthority").get("uuid").asText());
+        String token = request.getHeader("STELA-Active-Token");
+        CurrentProfile profile = token != null ? tokenCache.get(token) : null;
+
+        if (profile != null) {
+            request.setAttribute("STELA-Current-Profile-Is-Local-Authority-Admin", profile.admin);
+            request.setAttribute("STELA-Current-Profile-Rights", profile.rights);
+            request.setAttribute("STELA-Current-Profile-UUID", profile.uuid);
+            request.setAttribute("STELA-Current-Profile-Paired-Certificate", profile.pairedCertificate);
+            request.setAttribute("STELA-Current-Local-Authority-UUID", profile.localAuthorityUuid);
             request.setAttribute("STELA-Certificate", certificate);
         }
+        filterTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
         filterChain.doFilter(request, response);
     }
 
-    JsonNode getToken(HttpServletRequest request) throws IOException {
-        String token = request.getHeader("STELA-Active-Token");
-        if (token != null) {
-            // parse the token.
-            String tokenParsed = Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody().getSubject();
+    private static CurrentProfile toCurrentProfile(JsonNode token) throws IOException {
+        if (StringUtils.isBlank(token.get("uuid").asText()))
+            return null;
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode node = objectMapper.readTree(tokenParsed);
+        Certificate pairedCertificate =
+                token.get("agent").get("certificate") != null && !token.get("agent").get("certificate").isNull()
+                        ? OBJECT_MAPPER.treeToValue(token.get("agent").get("certificate"), Certificate.class) : null;
 
-            return node;
+        Set<Right> rights = EnumSet.noneOf(Right.class);
+        token.get("groups").forEach(group -> group.get("rights").forEach(right -> {
+            if (StringUtils.startsWith(right.asText(), "PES_")) {
+                rights.add(Right.valueOf(right.asText()));
+            }
+        }));
+
+        return new CurrentProfile(token.get("uuid").asText(), token.get("admin").asBoolean(),
+                token.get("localAuthority").get("uuid").asText(), rights, pairedCertificate);
+    }
 
+    private static class CurrentProfile {
+
+        private final String uuid;
+        private final boolean admin;
+        private final String localAuthorityUuid;
+        private final Set<Right> rights;
+        private final Certificate pairedCertificate;
+
+        private CurrentProfile(String uuid, boolean admin, String localAuthorityUuid, Set<Right> rights,
+                Certificate pairedCertificate) {
+            this.uuid = uuid;
+            this.admin = admin;
+            this.localAuthorityUuid = localAuthorityUuid;
+            this.rights = Collections.unmodifiableSet(rights);
+            this.pairedCertificate = pairedCertificate;
         }
-        return null;
     }
 }
@@ -6,6 +6,8 @@ import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 
@@ -21,6 +23,10 @@ public class PendingMessage {
 
     private String pesUuid;
 
+    // status of the PES once sent, SENT if not set
+    @Enumerated(EnumType.STRING)
+    private StatusType status;
+
     public PendingMessage() {
     }
 
@@ -28,8 +34,22 @@ public class PendingMessage {
         this.pesUuid = pesHistory.getPesUuid();
     }
 
+    public PendingMessage(String pesUuid, StatusType status) {
+        this.pesUuid = pesUuid;
+        this.status = status;
+    }
+
     public String getPesUuid() {
         return pesUuid;
     }
 
+    public StatusType getStatus() {
+        return status != null ? status : StatusType.SENT;
+    }
+
+    // queued by the RetryTask, to send again a PES waiting for its ACK
+    public boolean isRetry() {
+        return status != null;
+    }
+
 }
@@ -0,0 +1,54 @@
+package fr.sictiam.stela.pesservice.model;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+
+import java.time.LocalDateTime;
+
+/**
+ * A file already fetched from the Helios FTP server (ACK or PES Retour), so that it is not processed twice.
+ */
+@Entity
+public class ReceivedFile {
+    @Id
+    @GeneratedValue(generator = "UUID")
+    @GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
+    private String uuid;
+    private String fileName;
+    private long size;
+    private String sha256;
+    private LocalDateTime receptionDate;
+
+    public ReceivedFile() {
+    }
+
+    public ReceivedFile(String fileName, long size, String sha256) {
+        this.fileName = fileName;
+        this.size = size;
+        this.sha256 = sha256;
+        this.receptionDate = LocalDateTime.now();
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public LocalDateTime getReceptionDate() {
+        return receptionDate;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.List;
 public class SearchResultsUI {
     private Long totalCount;
     private List<?> results;
+    private String nextCursor;
 
     public SearchResultsUI() {
     }
@@ -14,6 +15,11 @@ public class SearchResultsUI {
         this.results = results;
     }
 
+    public SearchResultsUI(Long totalCount, List<?> results, String nextCursor) {
+        this(totalCount, results);
+        this.nextCursor = nextCursor;
+    }
+
     public Long getTotalCount() {
         return totalCount;
     }
@@ -21,4 +27,8 @@ public class SearchResultsUI {
     public List<?> getResults() {
         return results;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
 }
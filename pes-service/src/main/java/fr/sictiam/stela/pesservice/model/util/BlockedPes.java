@@ -0,0 +1,32 @@
+package fr.sictiam.stela.pesservice.model.util;
+
+import java.time.LocalDateTime;
+
+/**
+ * A PES sent to Helios and still waiting for its ACK, with the date of its last sending and its number of automatic
+ * resendings.
+ */
+public class BlockedPes {
+
+    private final String uuid;
+    private final LocalDateTime lastSendDate;
+    private final int resentCount;
+
+    public BlockedPes(String uuid, LocalDateTime lastSendDate, int resentCount) {
+        this.uuid = uuid;
+        this.lastSendDate = lastSendDate;
+        this.resentCount = resentCount;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public LocalDateTime getLastSendDate() {
+        return lastSendDate;
+    }
+
+    public int getResentCount() {
+        return resentCount;
+    }
+}
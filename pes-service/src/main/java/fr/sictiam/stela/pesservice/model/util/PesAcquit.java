@@ -0,0 +1,36 @@
+package fr.sictiam.stela.pesservice.model.util;
+
+import fr.sictiam.stela.pesservice.model.PesHistoryError;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a PES_ACQUIT: the acknowledged PES file name and the errors of the rejected {@code ElementACQUIT}.
+ */
+public class PesAcquit {
+
+    private String fileName; // Enveloppe/Parametres/NomFic
+    private boolean ackOk = true;
+    private final List<PesHistoryError> errors = new ArrayList<>();
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public boolean isAckOk() {
+        return ackOk;
+    }
+
+    public void setAckOk(boolean ackOk) {
+        this.ackOk = ackOk;
+    }
+
+    public List<PesHistoryError> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,80 @@
+package fr.sictiam.stela.pesservice.model.util;
+
+/**
+ * Values read from the {@code Enveloppe} and {@code EnTetePES} blocks of a PES_Aller or PES_Retour, null when
+ * absent.
+ */
+public class PesHeader {
+
+    public static final String PES_ORMC_FILE_TYPE = "PESORMC";
+
+    private String fileType; // Enveloppe/Parametres/TypFic
+    private String fileName; // Enveloppe/Parametres/NomFic
+    private String colCode; // EnTetePES/CodCol
+    private String postId; // EnTetePES/IdPost
+    private String budCode; // EnTetePES/CodBud
+    private String idColl; // EnTetePES/IdColl
+
+    public PesHeader() {
+    }
+
+    public PesHeader(String fileType, String fileName, String colCode, String postId, String budCode) {
+        this.fileType = fileType;
+        this.fileName = fileName;
+        this.colCode = colCode;
+        this.postId = postId;
+        this.budCode = budCode;
+    }
+
+    public boolean isPesOrmc() {
+        return PES_ORMC_FILE_TYPE.equals(fileType);
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getColCode() {
+        return colCode;
+    }
+
+    public void setColCode(String colCode) {
+        this.colCode = colCode;
+    }
+
+    public String getPostId() {
+        return postId;
+    }
+
+    public void setPostId(String postId) {
+        this.postId = postId;
+    }
+
+    public String getBudCode() {
+        return budCode;
+    }
+
+    public void setBudCode(String budCode) {
+        this.budCode = budCode;
+    }
+
+    public String getIdColl() {
+        return idColl;
+    }
+
+    public void setIdColl(String idColl) {
+        this.idColl = idColl;
+    }
+}
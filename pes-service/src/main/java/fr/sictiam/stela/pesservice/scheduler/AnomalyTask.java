@@ -18,6 +18,8 @@ import java.time.temporal.ChronoField;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Component
 public class AnomalyTask {
@@ -55,9 +57,12 @@ public class AnomalyTask {
         lastSchedulerTime = LocalDateTime.now().minus(fixedDelay + 1, ChronoField.MILLI_OF_DAY.getBaseUnit());
         LOGGER.debug("[checkAnomalyInPesAller] Count anomaly number of PesAller after last anomaly check time {}", lastSchedulerTime);
 
-        Arrays.stream(StatusType.values()).filter(StatusType::isAnomaly).forEach(
+        List<StatusType> anomalies = Arrays.stream(StatusType.values()).filter(StatusType::isAnomaly)
+                .collect(Collectors.toList());
+        Map<StatusType, Long> counts = pesAllerService.countPesAllerByStatusTypesAndDate(anomalies, lastSchedulerTime);
+        anomalies.forEach(
             statusType -> {
-                Long count = pesAllerService.countPesAllerByStatusTypeAndDate(statusType, lastSchedulerTime);
+                Long count = counts.getOrDefault(statusType, 0L);
                 LOGGER.info("[checkAnomalyInPesAller] PesAller with {} type, have {} anomalies", statusType.name(), count);
                 if(count >= rate) {
                     LOGGER.debug("[checkAnomalyInPesAller] Number of PesAller anomaly is to", rate);
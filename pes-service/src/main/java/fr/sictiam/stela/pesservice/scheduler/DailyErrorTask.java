@@ -71,7 +71,7 @@ public class DailyErrorTask {
             String uuid = localAuthority.getUuid();
             List<String> mails = new ArrayList<>();
             try {
-                JsonNode profiles = externalRestService.getProfiles(uuid);
+                JsonNode profiles = externalRestService.getSubscribers(uuid, null, "PES_" + Notification.Type.DAILY_ERRORS);
                 profiles.forEach(profile -> {
                     if (hasNotifification(Notification.Type.DAILY_ERRORS, profile))
                         mails.add(extractEmailFromProfile(profile));
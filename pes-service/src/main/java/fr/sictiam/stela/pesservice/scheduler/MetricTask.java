@@ -0,0 +1,28 @@
+package fr.sictiam.stela.pesservice.scheduler;
+
+import fr.sictiam.stela.pesservice.service.MetricService;
+import fr.sictiam.stela.pesservice.service.PipelineMetricsService;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class MetricTask {
+
+    private final MetricService metricService;
+    private final PipelineMetricsService pipelineMetricsService;
+
+    public MetricTask(MetricService metricService, PipelineMetricsService pipelineMetricsService) {
+        this.metricService = metricService;
+        this.pipelineMetricsService = pipelineMetricsService;
+    }
+
+    @Scheduled(fixedDelayString = "${application.metric.refreshDelay:60000}")
+    public void refreshHistoryCounters() {
+        metricService.refreshHistoryCounters();
+    }
+
+    @Scheduled(fixedDelayString = "${application.metric.refreshDelay:60000}")
+    public void refreshBacklog() {
+        pipelineMetricsService.refreshBacklog();
+    }
+}
@@ -1,17 +1,22 @@
 package fr.sictiam.stela.pesservice.scheduler;
 
 import fr.sictiam.stela.pesservice.dao.PesRetourRepository;
+import fr.sictiam.stela.pesservice.dao.ReceivedFileRepository;
 import fr.sictiam.stela.pesservice.model.Attachment;
 import fr.sictiam.stela.pesservice.model.LocalAuthority;
 import fr.sictiam.stela.pesservice.model.PesAller;
-import fr.sictiam.stela.pesservice.model.PesHistoryError;
 import fr.sictiam.stela.pesservice.model.PesRetour;
+import fr.sictiam.stela.pesservice.model.ReceivedFile;
 import fr.sictiam.stela.pesservice.model.StatusType;
+import fr.sictiam.stela.pesservice.model.util.PesAcquit;
+import fr.sictiam.stela.pesservice.model.util.PesHeader;
 import fr.sictiam.stela.pesservice.service.LocalAuthorityService;
 import fr.sictiam.stela.pesservice.service.NotificationService;
 import fr.sictiam.stela.pesservice.service.PesAllerService;
 import fr.sictiam.stela.pesservice.service.StorageService;
 import fr.sictiam.stela.pesservice.service.exceptions.PesNotFoundException;
+import fr.sictiam.stela.pesservice.service.util.PesAcquitReader;
+import fr.sictiam.stela.pesservice.service.util.PesHeaderReader;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
 import org.slf4j.Logger;
@@ -22,30 +27,31 @@ import org.springframework.integration.ftp.session.DefaultFtpSessionFactory;
 import org.springframework.integration.ftp.session.FtpSession;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.mail.MessagingException;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-
-import java.io.ByteArrayInputStream;
+import javax.xml.stream.XMLStreamException;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.SocketTimeoutException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 @Component
@@ -71,6 +77,9 @@ public class ReceiverTask {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private ReceivedFileRepository receivedFileRepository;
+
     @Value("${application.receiverTask.hoursWithoutNewFiles}")
     private int hoursWithoutNewFiles;
 
@@ -86,6 +95,21 @@ public class ReceiverTask {
     @Value("${application.ftp.timeout}")
     private Integer timeout;
 
+    @Value("${application.receiverTask.workers:4}")
+    private int workers;
+
+    private ExecutorService executorService;
+
+    @PostConstruct
+    public void init() {
+        executorService = Executors.newFixedThreadPool(workers);
+    }
+
+    @PreDestroy
+    public void clean() {
+        executorService.shutdownNow();
+    }
+
     @Scheduled(fixedDelay = 60000)
     public void receive() {
         LOGGER.info("Starting receiver task...");
@@ -130,46 +154,8 @@ public class ReceiverTask {
             }
         }
 
-        for (FTPFile ftpFile : files) {
-            if (ftpFile.isFile()) {
-                String fileName = ftpFile.getName();
-                LOGGER.debug("file found: " + fileName);
-                if ((ftpFile.getName().contains("ACK") || ftpFile.getName().startsWith("PES2R")) && ftpClient != null) {
-                    InputStream inputStream = null;
-                    try {
-                        inputStream = ftpClient.retrieveFileStream(ftpFile.getName());
-                        if (ftpClient.completePendingCommand()) {
-                            byte[] targetArray = new byte[inputStream.available()];
-                            int bytesRead = inputStream.read(targetArray);
-                            LOGGER.debug("Read {} bytes from file", bytesRead);
-                            if (ftpFile.getName().contains("ACK")) {
-                                readACK(targetArray, fileName);
-                            } else if (ftpFile.getName().startsWith("PES2R")) {
-                                readPesRetour(targetArray, fileName);
-                            }
-                        }
-                    } catch (ParserConfigurationException | XPathExpressionException | SAXException e) {
-                        LOGGER.error("Error while parsing XML file: {}", e.getMessage());
-                    } catch (SocketTimeoutException e) {
-                        LOGGER.error("Error while retrieving file {} on FTP: {}", ftpFile.getName(), e.getMessage());
-                    } catch (IOException e) {
-                        LOGGER.error("Error while reading the file: {}", e.getMessage());
-                    } catch (Exception e) {
-                        LOGGER.error("Unexpected error on FTP file processing: {}", e.getMessage());
-                    } finally {
-                        if (inputStream != null) {
-                            try {
-                                inputStream.close();
-                            } catch (IOException e) {
-                                LOGGER.warn("Got an error while closing the input stream : {}", e.getMessage());
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
         if (ftpClient != null) {
+            receiveFiles(ftpClient, files);
             try {
                 ftpClient.disconnect();
             } catch (IOException e) {
@@ -181,135 +167,201 @@ public class ReceiverTask {
             ftpSession.close();
     }
 
-    public void readACK(byte[] targetArray, String ackName)
-            throws ParserConfigurationException, SAXException, IOException, XPathExpressionException {
-
-        LOGGER.debug("Received ack file : {}", ackName);
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(targetArray);
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        XPathFactory xpf = XPathFactory.newInstance();
-        XPath path = xpf.newXPath();
-        Document document = builder.parse(byteArrayInputStream);
-        String fileName = path.evaluate("/PES_ACQUIT/Enveloppe/Parametres/NomFic/@V", document);
-        LOGGER.debug("Extracted PES filename : {}", fileName);
-
-        PesAller pesAller = pesService.getByFileName(fileName).orElseThrow(PesNotFoundException::new);
-
-        boolean isAckOk = true;
-        List<PesHistoryError> errors = new ArrayList<>();
-        NodeList nodes = (NodeList) path.evaluate("/PES_ACQUIT/ACQUIT/ElementACQUIT", document, XPathConstants.NODESET);
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Node node = nodes.item(i);
-            boolean isCurrentNodeValid = path.evaluate("EtatAck/@V", node).equals("1");
-            isAckOk = isAckOk && isCurrentNodeValid;
-
-            if (isCurrentNodeValid)
+    /**
+     * Files are downloaded one by one on the FTP connection, then parsed in parallel. The resulting status updates are
+     * applied in the listing order, so two acknowledgements of the same PES are never recorded concurrently.
+     * <p>
+     * Once processed (or rejected as unreadable), a file is recorded with its checksum: it won't be downloaded again,
+     * and a copy of an already received content under another name is ignored. Files which could not be downloaded
+     * or stored are retried on the next run.
+     */
+    private void receiveFiles(FTPClient ftpClient, List<FTPFile> files) {
+        List<String> fileNames = files.stream()
+                .filter(FTPFile::isFile)
+                .map(FTPFile::getName)
+                .filter(fileName -> isACK(fileName) || isPesRetour(fileName))
+                .collect(Collectors.toList());
+        if (fileNames.isEmpty())
+            return;
+        Set<String> receivedFileNames = receivedFileRepository.findByFileNameIn(fileNames).stream()
+                .map(ReceivedFile::getFileName)
+                .collect(Collectors.toSet());
+
+        List<ReceivingFile> receivingFiles = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (receivedFileNames.contains(fileName))
+                continue;
+            LOGGER.debug("New file found: {}", fileName);
+            ReceivingFile receivingFile = download(ftpClient, fileName);
+            if (receivingFile == null)
                 continue;
+            if (receivedFileRepository.existsBySha256(receivingFile.sha256)) {
+                LOGGER.info("File {} has already been received under another name, skipping it", fileName);
+                receivingFile.received = true;
+                complete(receivingFile);
+                continue;
+            }
+            receivingFile.parsed = executorService.submit(() -> parse(receivingFile));
+            receivingFiles.add(receivingFile);
+        }
 
-            NodeList innerNodes = (NodeList) path.evaluate("DetailPiece", node, XPathConstants.NODESET);
-            if (innerNodes.getLength() != 0) {
-                for (int j = 0; j < innerNodes.getLength(); j++) {
-                    Node in = innerNodes.item(j);
-                    NodeList detailLigneNode = (NodeList) path.evaluate("DetailLigne", in, XPathConstants.NODESET);
-                    if (detailLigneNode.getLength() != 0) {
-                        /*
-                         * Error pattern #1
-                         *
-                         * <DetailPiece>
-                         *     <NumPiece V="20"/>
-                         *     <DetailLigne>
-                         *         <NumLigne V="1"/>
-                         *         <Erreur>
-                         *             <NumAnoAck V="ERREUR_AUTRE"/>
-                         *             <LibelleAnoAck V="1971 - Compte fonction présent à tort"/>
-                         *         </Erreur>
-                         *     </DetailLigne>
-                         *     [...]
-                         * </DetailPiece>
-                         * <DetailPiece>
-                         *     [...]
-                         * </DetailPiece>
-                         */
-                        for (int k = 0; k < detailLigneNode.getLength(); k++) {
-                            Node detail = detailLigneNode.item(k);
-                            PesHistoryError e = new PesHistoryError(
-                                    path.evaluate("Erreur/NumAnoAck/@V", detail),
-                                    path.evaluate("Erreur/LibelleAnoAck/@V", detail),
-                                    path.evaluate("NumPiece/@V", in)
-                            );
-                            errors.add(e);
-                        }
-                    } else {
-                        /*
-                         * Error pattern #2
-                         *
-                         * <DetailPiece>
-                         *     <NumPiece V="5129"/>
-                         *     <Erreur>
-                         *         <NumAnoAck V="ERREUR_AUTRE"/>
-                         *         <LibelleAnoAck V="2559 - Le code service de la structure publique destinataire est inconnu ou inactif dans Chorus Pro"/>
-                         *     </Erreur>
-                         * </DetailPiece>
-                         */
-                        PesHistoryError e = new PesHistoryError(
-                                path.evaluate("Erreur/NumAnoAck/@V", in),
-                                path.evaluate("Erreur/LibelleAnoAck/@V", in),
-                                path.evaluate("NumPiece/@V", in)
-                        );
-                        errors.add(e);
-                    }
-                }
-            } else {
-                /*
-                 * Error pattern #3
-                 *
-                 * <IdUnique V="TI00064567"/>
-                 * <Erreur>
-                 *     <NumAnoAck V="ERREUR_DOUBLON_PJ"/>
-                 *     <LibelleAnoAck V="1984 - L'identifiant unique de la PJ a déjà été intégré dans HELIOS"/>
-                 * </Erreur>
-                 */
-                PesHistoryError e = new PesHistoryError(
-                        path.evaluate("Erreur/NumAnoAck/@V", node),
-                        path.evaluate("Erreur/LibelleAnoAck/@V", node),
-                        path.evaluate("IdUnique/@V", node)
-                );
-                errors.add(e);
+        for (ReceivingFile receivingFile : receivingFiles) {
+            try {
+                if (isACK(receivingFile.fileName))
+                    processACK((PesAcquit) receivingFile.parsed.get(), receivingFile.file, receivingFile.fileName);
+                else
+                    processPesRetour((PesHeader) receivingFile.parsed.get(), receivingFile.file,
+                            receivingFile.fileName);
+                receivingFile.received = true;
+            } catch (ExecutionException e) {
+                LOGGER.error("Error while parsing XML file {}: {}", receivingFile.fileName, e.getCause().getMessage());
+                receivingFile.received = e.getCause() instanceof XMLStreamException;
+            } catch (PesNotFoundException e) {
+                LOGGER.error("No PES found for ACK file {}", receivingFile.fileName);
+                receivingFile.received = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.error("Unexpected error on FTP file {} processing: {}", receivingFile.fileName, e.getMessage());
+            } finally {
+                complete(receivingFile);
             }
         }
+    }
 
-        if (isAckOk) {
-            pesService.updateStatus(pesAller.getUuid(), StatusType.ACK_RECEIVED, targetArray, ackName);
-        } else {
-            pesService.updateStatus(pesAller.getUuid(), StatusType.NACK_RECEIVED, targetArray, ackName, errors);
+    private Object parse(ReceivingFile receivingFile) throws XMLStreamException, IOException {
+        try (InputStream inputStream = Files.newInputStream(receivingFile.file)) {
+            return isACK(receivingFile.fileName)
+                    ? PesAcquitReader.read(inputStream)
+                    : PesHeaderReader.read(inputStream);
         }
+    }
 
+    /**
+     * Copies the whole remote file in a temporary file, computing its checksum on the way.
+     */
+    private ReceivingFile download(FTPClient ftpClient, String fileName) {
+        Path file = null;
+        try {
+            file = Files.createTempFile("pes-received-", ".xml");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            boolean retrieved;
+            try (OutputStream outputStream = new DigestOutputStream(Files.newOutputStream(file), digest)) {
+                retrieved = ftpClient.retrieveFile(fileName, outputStream);
+            }
+            if (retrieved) {
+                long size = Files.size(file);
+                LOGGER.debug("Read {} bytes from file {}", size, fileName);
+                return new ReceivingFile(fileName, file, size, toHex(digest.digest()));
+            }
+            LOGGER.error("Error while retrieving file {} on FTP: {}", fileName, ftpClient.getReplyString());
+        } catch (IOException e) {
+            LOGGER.error("Error while retrieving file {} on FTP: {}", fileName, e.getMessage());
+        } catch (NoSuchAlgorithmException e) {
+            LOGGER.error("No SHA-256 algorithm found");
+        }
+        deleteTemporaryFile(file);
+        return null;
     }
 
-    public void readPesRetour(byte[] targetArray, String pesRetourName)
-            throws IOException, ParserConfigurationException, SAXException, XPathExpressionException {
+    private void complete(ReceivingFile receivingFile) {
+        if (receivingFile.received)
+            receivedFileRepository.save(
+                    new ReceivedFile(receivingFile.fileName, receivingFile.size, receivingFile.sha256));
+        deleteTemporaryFile(receivingFile.file);
+    }
 
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(targetArray);
+    private void deleteTemporaryFile(Path file) {
+        if (file == null)
+            return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to delete temporary file {}: {}", file, e.getMessage());
+        }
+    }
+
+    public void readACK(Path file, String ackName) throws XMLStreamException, IOException {
+        PesAcquit acquit;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            acquit = PesAcquitReader.read(inputStream);
+        }
+        processACK(acquit, file, ackName);
+    }
+
+    public void readPesRetour(Path file, String pesRetourName) throws XMLStreamException, IOException {
+        PesHeader header;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            header = PesHeaderReader.read(inputStream);
+        }
+        processPesRetour(header, file, pesRetourName);
+    }
+
+    private void processACK(PesAcquit acquit, Path file, String ackName) throws IOException {
+
+        LOGGER.debug("Received ack file : {}", ackName);
+        LOGGER.debug("Extracted PES filename : {}", acquit.getFileName());
+
+        PesAller pesAller = pesService.getByFileName(acquit.getFileName()).orElseThrow(PesNotFoundException::new);
+
+        Attachment attachment = storageService.createAttachment(ackName, file);
+        if (acquit.isAckOk()) {
+            pesService.updateStatus(pesAller.getUuid(), StatusType.ACK_RECEIVED, attachment, null);
+        } else {
+            pesService.updateStatus(pesAller.getUuid(), StatusType.NACK_RECEIVED, attachment, acquit.getErrors());
+        }
 
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        XPathFactory xpf = XPathFactory.newInstance();
-        XPath path = xpf.newXPath();
-        Document document = builder.parse(byteArrayInputStream);
-        String siret = path.evaluate("/PES_Retour/EnTetePES/IdColl/@V", document);
-        Optional<LocalAuthority> localAuthorityOpt = localAuthorityService.getBySirenOrSirens(siret.substring(0, 9));
+    }
+
+    private void processPesRetour(PesHeader header, Path file, String pesRetourName) throws IOException {
+
+        String siret = header.getIdColl();
+        Optional<LocalAuthority> localAuthorityOpt = siret != null && siret.length() >= 9
+                ? localAuthorityService.getBySirenOrSirens(siret.substring(0, 9))
+                : Optional.empty();
         if (localAuthorityOpt.isPresent()) {
             LocalAuthority localAuthority = localAuthorityOpt.get();
-            Attachment attachment = storageService.createAttachment(pesRetourName, targetArray);
+            Attachment attachment = storageService.createAttachment(pesRetourName, file);
             PesRetour pesRetour = new PesRetour(attachment, localAuthority);
             pesRetourRepository.save(pesRetour);
         } else {
             LOGGER.warn("Got a PES Retour for an unknown SIRET : {}", siret);
-            String idPost = path.evaluate("/PES_Retour/EnTetePES/IdPost/@V", document);
+            String idPost = header.getPostId();
             // TODO send mail to user of this idpost CF redmine issue #3140
         }
 
     }
 
+    private boolean isACK(String fileName) {
+        return fileName.contains("ACK");
+    }
+
+    private boolean isPesRetour(String fileName) {
+        return fileName.startsWith("PES2R");
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(2 * hash.length);
+        for (byte b : hash)
+            hex.append(String.format("%02x", b & 0xff));
+        return hex.toString();
+    }
+
+    private static class ReceivingFile {
+
+        private final String fileName;
+        private final Path file;
+        private final long size;
+        private final String sha256;
+        private Future<?> parsed;
+        private boolean received;
+
+        private ReceivingFile(String fileName, Path file, long size, String sha256) {
+            this.fileName = fileName;
+            this.file = file;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+    }
+
 }
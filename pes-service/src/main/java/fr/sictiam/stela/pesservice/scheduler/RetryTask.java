@@ -1,10 +1,9 @@
 package fr.sictiam.stela.pesservice.scheduler;
 
-import fr.sictiam.stela.pesservice.model.PesAller;
-import fr.sictiam.stela.pesservice.model.PesHistory;
+import fr.sictiam.stela.pesservice.model.PendingMessage;
 import fr.sictiam.stela.pesservice.model.StatusType;
+import fr.sictiam.stela.pesservice.model.util.BlockedPes;
 import fr.sictiam.stela.pesservice.service.PesAllerService;
-import fr.sictiam.stela.pesservice.service.exceptions.PesSendException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,7 +13,12 @@ import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 
+/**
+ * Sends again the PES still waiting for their ACK {@code application.retry.frequency} hours after their last sending.
+ * They go through the queue of the {@link SenderTask}, with the RESENT status, or MAX_RETRY_REACH for the last attempt.
+ */
 @Component
 public class RetryTask {
 
@@ -23,6 +27,9 @@ public class RetryTask {
     @Autowired
     PesAllerService pesAllerService;
 
+    @Autowired
+    SenderTask senderTask;
+
     @Value("${application.retry.maxAttemps}")
     private Integer maxRetry;
 
@@ -32,31 +39,20 @@ public class RetryTask {
     @Scheduled(cron = "${application.retry.cron}")
     public void resendBlockedFlux() {
         LOGGER.info("Executing resendBlockedFlux task...");
-        List<String> pesUuids = pesAllerService.getBlockedFlux();
-        LOGGER.info("{} PES at waiting an ACK", pesUuids.size());
-        pesUuids.forEach(uuid -> {
-
-            PesHistory hist = pesAllerService.getLastSentHistory(uuid);
-
-            if (LocalDateTime.now().isAfter(hist.getDate().plusHours(frequency))) {
-                try {
-                    LOGGER.info("Resending PES {}...", uuid);
-                    PesAller pesAller = pesAllerService.getByUuid(uuid);
-                    pesAllerService.send(pesAller);
-
-                    StatusType statusType = StatusType.RESENT;
-                    if (maxRetry <= (pesAller.getPesHistories().stream()
-                            .filter(pesHistory -> pesHistory.getStatus().equals(StatusType.RESENT)).count() + 1)) {
-                        statusType = StatusType.MAX_RETRY_REACH;
-                    }
-                    pesAllerService.updateStatus(uuid, statusType);
-                } catch (PesSendException e) {
-                    pesAllerService.updateStatus(uuid, StatusType.FILE_ERROR, e.getClass().getName());
-                    LOGGER.error("Error while trying to resend PES: {}", uuid, e);
-                }
-            }
-
-        });
+        List<BlockedPes> blockedPes = pesAllerService.getBlockedFlux();
+        LOGGER.info("{} PES at waiting an ACK", blockedPes.size());
+
+        LocalDateTime lastSendBefore = LocalDateTime.now().minusHours(frequency);
+        List<PendingMessage> retries = blockedPes.stream()
+                .filter(pes -> pes.getLastSendDate().isBefore(lastSendBefore))
+                .map(pes -> new PendingMessage(pes.getUuid(),
+                        maxRetry <= pes.getResentCount() + 1 ? StatusType.MAX_RETRY_REACH : StatusType.RESENT))
+                .collect(Collectors.toList());
+
+        if (!retries.isEmpty()) {
+            LOGGER.info("Resending {} PES...", retries.size());
+            senderTask.enqueue(retries);
+        }
     }
 
 }
@@ -9,6 +9,9 @@ import fr.sictiam.stela.pesservice.service.AdminService;
 import fr.sictiam.stela.pesservice.service.PesAllerService;
 import fr.sictiam.stela.pesservice.service.StorageService;
 import fr.sictiam.stela.pesservice.service.exceptions.PesSendException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +23,7 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import javax.validation.constraints.NotNull;
 
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
@@ -31,6 +35,9 @@ public class SenderTask implements ApplicationListener<PesHistoryEvent> {
 
     private Queue<PendingMessage> pendingQueue = new ConcurrentLinkedQueue<>();
 
+    // the PES sent again by the RetryTask, only sent once the new ones are
+    private Queue<PendingMessage> retryQueue = new ConcurrentLinkedQueue<>();
+
     @Value("${application.archive.maxSizePerHour}")
     private Long maxSizePerHour;
 
@@ -48,18 +55,34 @@ public class SenderTask implements ApplicationListener<PesHistoryEvent> {
     @Autowired
     private StorageService storageService;
 
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
     @PostConstruct
     public void initQueue() {
-        pendingQueue.addAll(pendingMessageRepository.findAll());
+        pendingMessageRepository.findAll().forEach(this::add);
+        Gauge.builder("stela.pes.sender.queue", this, task -> task.pendingQueue.size() + task.retryQueue.size())
+                .register(meterRegistry != null ? meterRegistry : Metrics.globalRegistry);
+    }
+
+    /**
+     * Queues PES to be sent again, their pending messages are saved in one batch.
+     */
+    public void enqueue(List<PendingMessage> pendingMessages) {
+        pendingMessageRepository.saveAll(pendingMessages).forEach(this::add);
     }
 
     @Override
     public void onApplicationEvent(@NotNull PesHistoryEvent event) {
         if (StatusType.PENDING_SEND.equals(event.getPesHistory().getStatus())) {
-            pendingQueue.add(pendingMessageRepository.save(new PendingMessage(event.getPesHistory())));
+            add(pendingMessageRepository.save(new PendingMessage(event.getPesHistory())));
         }
     }
 
+    private void add(PendingMessage pendingMessage) {
+        (pendingMessage.isRetry() ? retryQueue : pendingQueue).add(pendingMessage);
+    }
+
     // reset limitation every hour
     @Scheduled(cron = "0 0 0/1 * * ?")
     public void resetLimitation() {
@@ -69,8 +92,9 @@ public class SenderTask implements ApplicationListener<PesHistoryEvent> {
     @Scheduled(fixedDelay = 5000)
     public void senderTask() {
 
-        if (!pendingQueue.isEmpty() && adminService.isHeliosAvailable()) {
-            PendingMessage pendingMessage = pendingQueue.peek();
+        Queue<PendingMessage> queue = !pendingQueue.isEmpty() ? pendingQueue : retryQueue;
+        if (!queue.isEmpty() && adminService.isHeliosAvailable()) {
+            PendingMessage pendingMessage = queue.peek();
             PesAller pes = pesService.getByUuid(pendingMessage.getPesUuid());
 
             if ((pes.getAttachment().getSize() + currentSizeUsed.get()) < maxSizePerHour) {
@@ -79,16 +103,29 @@ public class SenderTask implements ApplicationListener<PesHistoryEvent> {
                 StatusType sendStatus;
                 try {
                     pesService.send(pes);
-                    sendStatus = StatusType.SENT;
-                    pendingMessageRepository.delete(pendingQueue.poll());
+                    sendStatus = pendingMessage.getStatus();
+                    pendingMessageRepository.delete(queue.poll());
                     currentSizeUsed.addAndGet(pes.getAttachment().getSize());
                 } catch (PesSendException e) {
+                    if (pendingMessage.isRetry()) {
+                        // a failed resend must not hold back the PES queued behind it: it is dropped and marked
+                        // FILE_ERROR, the RetryTask will pick it up again
+                        LOGGER.error("Error while trying to resend PES: {}", pes.getUuid(), e);
+                        pendingMessageRepository.delete(queue.poll());
+                        pesService.updateStatus(pes.getUuid(), StatusType.FILE_ERROR, e.getClass().getName());
+                        return;
+                    }
                     LOGGER.error("Error while sending PES : {}", e.getMessage());
                     sendStatus = StatusType.NOT_SENT;
                 }
-                byte[] content = storageService.getAttachmentContent(pes.getAttachment());
-                pesService.updateStatus(pendingMessage.getPesUuid(), sendStatus, content,
-                        pesService.renameFileToSend(pes));
+                if (pendingMessage.isRetry()) {
+                    // the file sent is the one already kept on the first SENT history
+                    pesService.updateStatus(pendingMessage.getPesUuid(), sendStatus);
+                } else {
+                    byte[] content = storageService.getAttachmentContent(pes.getAttachment());
+                    pesService.updateStatus(pendingMessage.getPesUuid(), sendStatus, content,
+                            pesService.renameFileToSend(pes));
+                }
 
             } else {
                 LOGGER.info("Hourly limit exceeded, waiting next hour");
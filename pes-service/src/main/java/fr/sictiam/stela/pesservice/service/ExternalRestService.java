@@ -7,81 +7,179 @@ import fr.sictiam.stela.pesservice.model.Right;
 import fr.sictiam.stela.pesservice.model.ui.GenericAccount;
 import fr.sictiam.stela.pesservice.model.util.NotificationAttachement;
 import fr.sictiam.stela.pesservice.service.exceptions.NotFoundException;
+import fr.sictiam.stela.pesservice.service.util.BatchLoader;
 import fr.sictiam.stela.pesservice.service.util.DiscoveryUtils;
+import fr.sictiam.stela.pesservice.service.util.ExpiringCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.channel.ChannelOption;
 import net.minidev.json.JSONObject;
+import org.apache.http.impl.client.HttpClients;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/**
+ * Calls to admin-service. All of them share one pooled client (WebClient or RestTemplate, both with timeouts), and
+ * the profiles and local authority data are kept in caches for {@code application.admin.cacheTtl} ms. The caches are
+ * emptied on every event of the admin exchange.
+ */
 @Service
 public class ExternalRestService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ExternalRestService.class);
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     @Autowired
     DiscoveryUtils discoveryUtils;
 
-    @Autowired
-    RestTemplate restTemplate;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
 
-    public JsonNode getProfile(String profileUuid) throws IOException {
-        WebClient webClient = WebClient.create(discoveryUtils.adminServiceUrl());
-        Mono<String> profile = webClient.get().uri("/api/admin/profile/{uuid}", profileUuid).retrieve()
-                .onStatus(HttpStatus::is4xxClientError,
-                        response -> Mono.error(new RuntimeException("Profile not Found")))
-                .bodyToMono(String.class);
+    @Value("${application.admin.maxConnections:50}")
+    private int maxConnections;
+
+    @Value("${application.admin.connectTimeout:5000}")
+    private int connectTimeout;
+
+    @Value("${application.admin.readTimeout:30000}")
+    private int readTimeout;
+
+    @Value("${application.admin.cacheTtl:300000}")
+    private long cacheTtl;
+
+    @Value("${application.admin.cacheSize:10000}")
+    private int cacheSize;
+
+    @Value("${application.admin.batchDelay:5}")
+    private long batchDelay;
 
-        Optional<String> opt = profile.blockOptional();
-        ObjectMapper objectMapper = new ObjectMapper();
+    @Value("${application.admin.batchSize:100}")
+    private int batchSize;
 
-        return objectMapper.readTree(opt.get());
+    private WebClient webClient;
+    private RestTemplate restTemplate;
+
+    private ExpiringCache<JsonNode> profiles;
+    private ExpiringCache<String> localAuthorities;
+
+    private BatchLoader<JsonNode> profileLoader;
+
+    @PostConstruct
+    public void init() {
+        HttpClient httpClient = HttpClient.create(ConnectionProvider.fixed("admin-service", maxConnections))
+                .tcpConfiguration(tcpClient -> tcpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout));
+        webClient = WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(
+                HttpClients.custom().setMaxConnTotal(maxConnections).setMaxConnPerRoute(maxConnections).build());
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        restTemplate = new RestTemplate(requestFactory);
+
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+        profiles = new ExpiringCache<>("admin.profiles", cacheTtl, cacheSize, registry);
+        localAuthorities = new ExpiringCache<>("admin.localAuthorities", cacheTtl, cacheSize, registry);
+
+        profileLoader = new BatchLoader<>("admin-profiles", this::getProfilesByUuids, batchDelay, batchSize, 2);
     }
 
-    public JsonNode getProfiles(String uuid) throws IOException {
-        WebClient webClient = WebClient.create(discoveryUtils.adminServiceUrl());
-        Mono<String> profiles = webClient.get().uri("/api/admin/profile/local-authority/{uuid}", uuid).retrieve()
-                .onStatus(HttpStatus::is4xxClientError,
-                        response -> Mono.error(new RuntimeException("Profiles not Found")))
-                .bodyToMono(String.class);
+    @PreDestroy
+    public void clean() {
+        profileLoader.shutdown();
+    }
 
-        Optional<String> opt = profiles.blockOptional();
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode node = objectMapper.readTree(opt.get());
+    /**
+     * Empties the caches, admin-service does not tell what changed so everything may be stale.
+     */
+    public void invalidateCaches() {
+        profiles.invalidateAll();
+        localAuthorities.invalidateAll();
+    }
 
-        return node;
+    /**
+     * The lookups of profiles made at the same time are sent to admin-service in one batch request.
+     */
+    public JsonNode getProfile(String profileUuid) throws IOException {
+        return profiles.get("uuid:" + profileUuid, () -> {
+            JsonNode profile = await(profileLoader.load(profileUuid));
+            if (profile == null)
+                throw new RuntimeException("Profile not Found");
+            return profile;
+        });
     }
 
-    public JsonNode getPaullConnection(String sessionID) throws IOException {
-        WebClient webClient = WebClient.create(discoveryUtils.adminServiceUrl());
-        Mono<String> profiles = webClient.get().uri("/api/admin/generic_account/session/{sessionID}", sessionID)
-                .retrieve().onStatus(HttpStatus::is4xxClientError,
-                        response -> Mono.error(new RuntimeException("Session not Found")))
-                .bodyToMono(String.class);
+    /**
+     * Profiles of the local authority which receive the notifications of the module, and have the notification
+     * active if one is given.
+     */
+    public JsonNode getSubscribers(String localAuthorityUuid, String module, String notification) throws IOException {
+        return profiles.get("subscribers:" + localAuthorityUuid + "/" + module + "/" + notification, () -> {
+            UriComponentsBuilder uri = UriComponentsBuilder
+                    .fromHttpUrl(discoveryUtils.adminServiceUrl() + "/api/admin/profile/subscribers/{uuid}");
+            if (module != null) uri.queryParam("module", module);
+            if (notification != null) uri.queryParam("notification", notification);
+            Optional<String> opt = webClient.get().uri(uri.buildAndExpand(localAuthorityUuid).encode().toUri())
+                    .retrieve()
+                    .onStatus(HttpStatus::is4xxClientError,
+                            response -> Mono.error(new RuntimeException("Profiles not Found")))
+                    .bodyToMono(String.class)
+                    .timeout(Duration.ofMillis(readTimeout))
+                    .blockOptional();
+            return OBJECT_MAPPER.readTree(opt.get());
+        });
+    }
 
-        Optional<String> opt = profiles.blockOptional();
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode node = objectMapper.readTree(opt.get());
+    public JsonNode getProfiles(String uuid) throws IOException {
+        return profiles.get("localAuthority:" + uuid, () -> {
+            Optional<String> opt = get("/api/admin/profile/local-authority/{uuid}",
+                    response -> Mono.error(new RuntimeException("Profiles not Found")), uuid).blockOptional();
+            return OBJECT_MAPPER.readTree(opt.get());
+        });
+    }
 
-        return node;
+    public JsonNode getPaullConnection(String sessionID) throws IOException {
+        Optional<String> opt = get("/api/admin/generic_account/session/{sessionID}",
+                response -> Mono.error(new RuntimeException("Session not Found")), sessionID).blockOptional();
+        return OBJECT_MAPPER.readTree(opt.get());
     }
 
     public GenericAccount getGenericAccount(String uuid) throws IOException {
-        WebClient webClient = WebClient.create(discoveryUtils.adminServiceUrl());
-        Mono<GenericAccount> genericAccount = webClient.get().uri("/api/admin/generic_account/{uuid}", uuid).retrieve()
+        Mono<GenericAccount> genericAccount = webClient.get()
+                .uri(discoveryUtils.adminServiceUrl() + "/api/admin/generic_account/{uuid}", uuid).retrieve()
                 .onStatus(HttpStatus::is4xxClientError,
                         response -> Mono.error(new RuntimeException("generic_account_not_found")))
-                .bodyToMono(GenericAccount.class);
+                .bodyToMono(GenericAccount.class)
+                .timeout(Duration.ofMillis(readTimeout));
 
         Optional<GenericAccount> opt = genericAccount.blockOptional();
 
@@ -89,17 +187,12 @@ public class ExternalRestService {
     }
 
     public JsonNode getProfileByLocalAuthoritySirenAndEmail(String siren, String email) throws IOException {
-        WebClient webClient = WebClient.create(discoveryUtils.adminServiceUrl());
-        Mono<String> genericAccount = webClient.get()
-                .uri("/api/admin/profile/local-authority/{siren}/{email}", siren, email).retrieve()
-                .onStatus(HttpStatus::is4xxClientError,
-                        response -> Mono.error(new NotFoundException(String.format("No profile found for email %s", email))))
-                .bodyToMono(String.class);
-
-        Optional<String> opt = genericAccount.blockOptional();
-        ObjectMapper objectMapper = new ObjectMapper();
-
-        return objectMapper.readTree(opt.get());
+        return profiles.get("email:" + siren + "/" + email, () -> {
+            Optional<String> opt = get("/api/admin/profile/local-authority/{siren}/{email}",
+                    response -> Mono.error(new NotFoundException(String.format("No profile found for email %s", email))),
+                    siren, email).blockOptional();
+            return OBJECT_MAPPER.readTree(opt.get());
+        });
     }
 
     public GenericAccount authWithCertificate(String serial, String vendor) throws IOException {
@@ -107,13 +200,14 @@ public class ExternalRestService {
         Map<String, String> body = new HashMap<>();
         body.put("serial", serial);
         body.put("vendor", vendor);
-        WebClient webClient = WebClient.create(discoveryUtils.adminServiceUrl());
-        Mono<GenericAccount> genericAccount = webClient.post().uri("/api/admin/generic_account/authWithCertificate")
+        Mono<GenericAccount> genericAccount = webClient.post()
+                .uri(discoveryUtils.adminServiceUrl() + "/api/admin/generic_account/authWithCertificate")
                 .body(BodyInserters.fromObject(body)).retrieve()
                 .onStatus(HttpStatus::is4xxClientError,
                         response -> Mono.error(new RuntimeException(
                                 "No generic account for serial : " + serial + "and vendor : " + vendor)))
-                .bodyToMono(GenericAccount.class);
+                .bodyToMono(GenericAccount.class)
+                .timeout(Duration.ofMillis(readTimeout));
 
         Optional<GenericAccount> opt = genericAccount.blockOptional();
 
@@ -125,12 +219,13 @@ public class ExternalRestService {
         body.put("email", email);
         body.put("password", password);
 
-        WebClient webClient = WebClient.create(discoveryUtils.adminServiceUrl());
-        Mono<GenericAccount> genericAccount = webClient.post().uri("/api/admin/generic_account/authWithEmailPassword")
+        Mono<GenericAccount> genericAccount = webClient.post()
+                .uri(discoveryUtils.adminServiceUrl() + "/api/admin/generic_account/authWithEmailPassword")
                 .body(BodyInserters.fromObject(body)).retrieve()
                 .onStatus(HttpStatus::is4xxClientError,
                         response -> Mono.error(new RuntimeException("Account or password invalid")))
-                .bodyToMono(GenericAccount.class);
+                .bodyToMono(GenericAccount.class)
+                .timeout(Duration.ofMillis(readTimeout));
 
         Optional<GenericAccount> opt = genericAccount.blockOptional();
 
@@ -139,8 +234,8 @@ public class ExternalRestService {
 
     public String getLocalAuthoritySiret(String uuid) {
         try {
-            return restTemplate.getForObject(discoveryUtils.adminServiceUrl() + "/api/admin/local-authority/{uuid}" +
-                    "/siret", String.class, uuid);
+            return localAuthorities.get("siret:" + uuid, () -> restTemplate.getForObject(
+                    discoveryUtils.adminServiceUrl() + "/api/admin/local-authority/{uuid}/siret", String.class, uuid));
         } catch (RestClientResponseException e) {
             LOGGER.error("Failed to retrieve local authority siret for {} : {} ({})", uuid, e.getMessage(), e.getResponseBodyAsString());
             return null;
@@ -149,7 +244,6 @@ public class ExternalRestService {
 
     public String createGroup(LocalAuthority localAuthority, String name) {
 
-        RestTemplate restTemplate = new RestTemplate();
         return restTemplate.postForObject(
                 discoveryUtils.adminServiceUrl() + "/api/admin/local-authority/{localAuthorityUuid}/group/{name}",
                 new HashSet<>(Arrays.stream(Right.values()).map(Right::toString).collect(Collectors.toSet())),
@@ -157,8 +251,7 @@ public class ExternalRestService {
                 localAuthority.getUuid(), name);
     }
 
-        public ResponseEntity<String> notifyAnomalyByMattermost(List<NotificationAttachement> attachements, String notificationLink) {
-        RestTemplate restTemplate = new RestTemplate();
+    public ResponseEntity<String> notifyAnomalyByMattermost(List<NotificationAttachement> attachements, String notificationLink) {
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);;
@@ -171,4 +264,45 @@ public class ExternalRestService {
         return restTemplate.exchange(notificationLink, HttpMethod.POST,
                 requestEntity, String.class);
     }
+
+    private Map<String, JsonNode> getProfilesByUuids(Set<String> uuids) {
+        Optional<String> opt = webClient.post().uri(discoveryUtils.adminServiceUrl() + "/api/admin/profile/batch")
+                .body(BodyInserters.fromObject(uuids)).retrieve()
+                .bodyToMono(String.class)
+                .timeout(Duration.ofMillis(readTimeout))
+                .blockOptional();
+        Map<String, JsonNode> profilesByUuid = new HashMap<>();
+        try {
+            if (opt.isPresent())
+                OBJECT_MAPPER.readTree(opt.get()).forEach(profile -> profilesByUuid.put(profile.get("uuid").asText(), profile));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return profilesByUuid;
+    }
+
+    private <V> V await(CompletableFuture<V> future) throws IOException {
+        try {
+            return future.get(readTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (TimeoutException e) {
+            throw new IOException("No answer from admin-service", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException)
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private Mono<String> get(String path, Function<ClientResponse, Mono<? extends Throwable>> onClientError,
+            Object... uriVariables) {
+        return webClient.get().uri(discoveryUtils.adminServiceUrl() + path, uriVariables).retrieve()
+                .onStatus(HttpStatus::is4xxClientError, onClientError)
+                .bodyToMono(String.class)
+                .timeout(Duration.ofMillis(readTimeout));
+    }
 }
@@ -2,55 +2,83 @@ package fr.sictiam.stela.pesservice.service;
 
 import fr.sictiam.stela.pesservice.dao.PesHistoryRepository;
 import fr.sictiam.stela.pesservice.model.StatusType;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Number of PES histories by status. The counts come from one grouped query on the pes_status_count rollup.
+ * <p>
+ * The total of each status is also exported as the {@code stela.pes.histories} counter ({@code status} tag), refreshed
+ * by {@link #refreshHistoryCounters()} so that the dashboards scraping it do not query the database.
+ */
 @Service
 public class MetricService {
 
     private final PesHistoryRepository pesHistoryRepository;
 
+    private final Map<StatusType, AtomicLong> historyCounters = new EnumMap<>(StatusType.class);
+
     @Autowired
-    public MetricService(PesHistoryRepository pesHistoryRepository) {
+    public MetricService(PesHistoryRepository pesHistoryRepository, ObjectProvider<MeterRegistry> meterRegistry) {
         this.pesHistoryRepository = pesHistoryRepository;
+        MeterRegistry registry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        for (StatusType type : StatusType.values()) {
+            AtomicLong counter = new AtomicLong();
+            historyCounters.put(type, counter);
+            FunctionCounter.builder("stela.pes.histories", counter, AtomicLong::get)
+                    .tag("status", type.name())
+                    .register(registry);
+        }
     }
 
     public Map<String, Long> getNumberOfPes(LocalDateTime fromLocalDate, LocalDateTime toLocalDate, StatusType statusType) {
+        Map<StatusType, Long> counts = pesHistoryRepository.countByStatusBetween(fromLocalDate, toLocalDate);
         Map<String, Long> listNumberPesByType = new HashMap<>();
 
-        if(statusType == null) {
-            for (StatusType type : StatusType.values()) {
-                listNumberPesByType.put(
-                        type.name(),
-                        pesHistoryRepository.countByDateBetweenAndStatus(fromLocalDate, toLocalDate, type));
-            }
-        } else {
-            listNumberPesByType.put(
-                    statusType.name(),
-                    pesHistoryRepository.countByDateBetweenAndStatus(fromLocalDate, toLocalDate, statusType));
+        for (StatusType type : statusType == null ? StatusType.values() : new StatusType[] { statusType }) {
+            listNumberPesByType.put(type.name(), counts.getOrDefault(type, 0L));
         }
         return listNumberPesByType;
     }
 
-    public Map<String, List<Map<LocalDateTime, Long>>> getNumberOfPesWithSample(LocalDateTime fromLocalDate, LocalDateTime toLocalDate, StatusType statusType, String sample) {
-        Map<String, List<Map<LocalDateTime, Long>>> listNumberPesByType = new HashMap<>();
-
-        if(statusType == null) {
-            for (StatusType type : StatusType.values()) {
-                listNumberPesByType.put(
-                        type.name(),
-                        pesHistoryRepository.countByDateBetweenAndGroupBySample(sample, type.name(), fromLocalDate, toLocalDate));
-            }
-        } else {
-            listNumberPesByType.put(
-                    statusType.name(),
-                    pesHistoryRepository.countByDateBetweenAndGroupBySample(sample, statusType.name(), fromLocalDate, toLocalDate));
+    /**
+     * The samples of each status are listed by date as {@code date_time} and {@code count} pairs.
+     */
+    public Map<String, List<Map<String, Object>>> getNumberOfPesWithSample(LocalDateTime fromLocalDate, LocalDateTime toLocalDate, StatusType statusType, String sample) {
+        Map<StatusType, SortedMap<LocalDateTime, Long>> counts =
+                pesHistoryRepository.countByStatusAndSampleBetween(sample, fromLocalDate, toLocalDate);
+        Map<String, List<Map<String, Object>>> listNumberPesByType = new HashMap<>();
+
+        for (StatusType type : statusType == null ? StatusType.values() : new StatusType[] { statusType }) {
+            List<Map<String, Object>> samples = new ArrayList<>();
+            counts.getOrDefault(type, Collections.emptySortedMap()).forEach((date, count) -> {
+                Map<String, Object> dateCount = new HashMap<>();
+                dateCount.put("date_time", Timestamp.valueOf(date));
+                dateCount.put("count", count);
+                samples.add(dateCount);
+            });
+            listNumberPesByType.put(type.name(), samples);
         }
         return listNumberPesByType;
     }
+
+    public void refreshHistoryCounters() {
+        Map<StatusType, Long> counts = pesHistoryRepository.countByStatus();
+        historyCounters.forEach((type, counter) -> counter.set(counts.getOrDefault(type, 0L)));
+    }
 }
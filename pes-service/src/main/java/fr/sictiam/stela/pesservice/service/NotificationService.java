@@ -88,7 +88,7 @@ public class NotificationService implements ApplicationListener<PesHistoryEvent>
                 )
                 .findFirst();
 
-        JsonNode profiles = externalRestService.getProfiles(pes.getLocalAuthority().getUuid());
+        JsonNode profiles = externalRestService.getSubscribers(pes.getLocalAuthority().getUuid(), "PES", null);
 
         AtomicInteger notifcationSentNumber = new AtomicInteger(0);
         profiles.forEach(profile -> {
@@ -7,12 +7,20 @@ import fr.sictiam.stela.pesservice.dao.PesHistoryRepository;
 import fr.sictiam.stela.pesservice.model.*;
 import fr.sictiam.stela.pesservice.model.event.PesCreationEvent;
 import fr.sictiam.stela.pesservice.model.event.PesHistoryEvent;
+import fr.sictiam.stela.pesservice.model.util.BlockedPes;
+import fr.sictiam.stela.pesservice.model.util.PesHeader;
 import fr.sictiam.stela.pesservice.service.exceptions.HistoryNotFoundException;
 import fr.sictiam.stela.pesservice.service.exceptions.PesCreationException;
 import fr.sictiam.stela.pesservice.service.exceptions.PesNotFoundException;
 import fr.sictiam.stela.pesservice.service.exceptions.PesSendException;
+import fr.sictiam.stela.pesservice.service.exceptions.StorageException;
+import fr.sictiam.stela.pesservice.service.util.ClamavScanner;
 import fr.sictiam.stela.pesservice.service.util.FTPUploaderService;
+import fr.sictiam.stela.pesservice.service.util.PageCursor;
+import fr.sictiam.stela.pesservice.service.util.PesHeaderReader;
 import fr.sictiam.stela.pesservice.service.util.TarGzUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -26,30 +34,17 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-import xyz.capybara.clamav.ClamavClient;
-import xyz.capybara.clamav.ClamavException;
-import xyz.capybara.clamav.commands.scan.result.ScanResult;
-import xyz.capybara.clamav.commands.scan.result.ScanResult.OK;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.stream.XMLStreamException;
 import java.io.*;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
@@ -89,7 +84,22 @@ public class PesAllerService implements ApplicationListener<PesCreationEvent> {
     @Value("${application.clamav.host}")
     private String clamavHost;
 
-    private ClamavClient clamavClient;
+    @Value("${application.clamav.maxConnections:4}")
+    private int clamavMaxConnections;
+
+    @Value("${application.clamav.timeout:60000}")
+    private int clamavTimeout;
+
+    @Value("${application.clamav.cacheTtl:86400000}")
+    private long clamavCacheTtl;
+
+    @Value("${application.clamav.cacheSize:10000}")
+    private int clamavCacheSize;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private ClamavScanner clamavScanner;
 
     @Autowired
     public PesAllerService(PesAllerRepository pesAllerRepository, PesHistoryRepository pesHistoryRepository,
@@ -109,7 +119,13 @@ public class PesAllerService implements ApplicationListener<PesCreationEvent> {
 
     @PostConstruct
     private void init() {
-        clamavClient = new ClamavClient(clamavHost, clamavPort);
+        clamavScanner = new ClamavScanner(clamavHost, clamavPort, clamavMaxConnections, clamavTimeout,
+                clamavCacheTtl, clamavCacheSize, meterRegistry != null ? meterRegistry : Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    private void clean() {
+        clamavScanner.shutdown();
     }
 
     public Long countAllWithQuery(String multifield, String objet, LocalDate creationFrom, LocalDate creationTo,
@@ -126,8 +142,11 @@ public class PesAllerService implements ApplicationListener<PesCreationEvent> {
         return entityManager.createQuery(query).getSingleResult();
     }
 
+    /**
+     * When a {@link PageCursor} is given the page starts right after it and the offset is ignored.
+     */
     public List<PesAller> getAllWithQuery(String multifield, String objet, LocalDate creationFrom, LocalDate creationTo,
-            StatusType status, Integer limit, Integer offset, String column, String direction,
+            StatusType status, Integer limit, Integer offset, String cursor, String column, String direction,
             String currentLocalAuthUuid) {
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<PesAller> query = builder.createQuery(PesAller.class);
@@ -140,13 +159,14 @@ public class PesAllerService implements ApplicationListener<PesCreationEvent> {
         String columnAttribute = StringUtils.isEmpty(column) ? "creation" : column;
         List<Predicate> predicates = getQueryPredicates(builder, pesRoot, multifield, objet, creationFrom, creationTo,
                 status, currentLocalAuthUuid);
+        if (StringUtils.isNotBlank(cursor))
+            predicates.add(PageCursor.decode(cursor, column, direction).getPredicate(builder, pesRoot));
 
         query.where(predicates.toArray(new Predicate[predicates.size()]))
-                .orderBy(!StringUtils.isEmpty(direction) && direction.equals("ASC")
-                        ? builder.asc(pesRoot.get(columnAttribute))
-                        : builder.desc(pesRoot.get(columnAttribute)));
+                .orderBy(PageCursor.getOrders(builder, pesRoot, columnAttribute, direction));
 
-        return entityManager.createQuery(query).setFirstResult(offset).setMaxResults(limit).getResultList();
+        return entityManager.createQuery(query).setFirstResult(StringUtils.isNotBlank(cursor) ? 0 : offset)
+                .setMaxResults(limit).getResultList();
     }
 
     private List<Predicate> getQueryPredicates(CriteriaBuilder builder, Root<PesAller> pesRoot, String multifield,
@@ -178,22 +198,21 @@ public class PesAllerService implements ApplicationListener<PesCreationEvent> {
     }
 
     public PesAller populateFromByte(PesAller pesAller, byte[] file) {
+        return populateFromStream(pesAller, new ByteArrayInputStream(file));
+    }
 
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(new ByteArrayInputStream(file));
+    public PesAller populateFromStream(PesAller pesAller, InputStream file) {
 
-            XPathFactory xpf = XPathFactory.newInstance();
-            XPath path = xpf.newXPath();
+        try {
+            PesHeader header = PesHeaderReader.read(file);
 
-            pesAller.setFileType(path.evaluate("/PES_Aller/Enveloppe/Parametres/TypFic/@V", document));
-            pesAller.setFileName(path.evaluate("/PES_Aller/Enveloppe/Parametres/NomFic/@V", document));
-            pesAller.setColCode(path.evaluate("/PES_Aller/EnTetePES/CodCol/@V", document));
-            pesAller.setPostId(path.evaluate("/PES_Aller/EnTetePES/IdPost/@V", document));
-            pesAller.setBudCode(path.evaluate("/PES_Aller/EnTetePES/CodBud/@V", document));
+            pesAller.setFileType(StringUtils.defaultString(header.getFileType()));
+            pesAller.setFileName(StringUtils.defaultString(header.getFileName()));
+            pesAller.setColCode(StringUtils.defaultString(header.getColCode()));
+            pesAller.setPostId(StringUtils.defaultString(header.getPostId()));
+            pesAller.setBudCode(StringUtils.defaultString(header.getBudCode()));
 
-        } catch (IOException | XPathExpressionException | ParserConfigurationException | SAXException e) {
+        } catch (XMLStreamException e) {
             LOGGER.error("Error while parsing PES {} : {} : {}", pesAller.getUuid(), e.getClass(), e.getMessage());
             throw new PesCreationException();
         }
@@ -264,7 +283,11 @@ public class PesAllerService implements ApplicationListener<PesCreationEvent> {
 
     public void updateStatus(String pesUuid, StatusType updatedStatus, byte[] file, String
             fileName, List<PesHistoryError> errors) {
-        Attachment attachment = storageService.createAttachment(fileName, file);
+        updateStatus(pesUuid, updatedStatus, storageService.createAttachment(fileName, file), errors);
+    }
+
+    public void updateStatus(String pesUuid, StatusType updatedStatus, Attachment attachment,
+            List<PesHistoryError> errors) {
         PesHistory pesHistory = new PesHistory(pesUuid, updatedStatus, LocalDateTime.now(), attachment, errors);
         updateHistory(pesHistory);
         applicationEventPublisher.publishEvent(new PesHistoryEvent(this, pesHistory));
@@ -279,24 +302,28 @@ public class PesAllerService implements ApplicationListener<PesCreationEvent> {
     }
 
     public void updateHistory(PesHistory newPesHistory) {
-        PesAller pes = getByUuid(newPesHistory.getPesUuid());
+        if (!pesAllerRepository.existsById(newPesHistory.getPesUuid()))
+            throw new PesNotFoundException();
+        pesHistoryRepository.append(newPesHistory);
+    }
 
-        if (newPesHistory.getStatus() != StatusType.NOTIFICATION_SENT && newPesHistory.getStatus() != StatusType.GROUP_NOTIFICATION_SENT) {
-            // do not update last history Pes fields on status NOTIFICATION_SENT|GROUP_NOTIFICATION_SENT
-            pes.setLastHistoryDate(newPesHistory.getDate());
-            pes.setLastHistoryStatus(newPesHistory.getStatus());
-        }
-        pes.getPesHistories().add(newPesHistory);
-        pesAllerRepository.saveAndFlush(pes);
+    public boolean checkVirus(byte[] file) {
+        return checkVirus(() -> new ByteArrayInputStream(file));
     }
 
-    public boolean checkVirus(byte[] file) throws ClamavException {
-        ScanResult mainResult = clamavClient.scan(new ByteArrayInputStream(file));
-        boolean status = false;
-        if (!mainResult.equals(OK.INSTANCE)) {
-            status = true;
+    /**
+     * Streams the upload to the antivirus, it is read from its temporary file and never held in memory.
+     */
+    public boolean checkVirus(MultipartFile file) {
+        return checkVirus(file::getInputStream);
+    }
+
+    private boolean checkVirus(ClamavScanner.Content file) {
+        try {
+            return clamavScanner.isInfected(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Virus scan failed: " + e.getMessage(), e);
         }
-        return status;
     }
 
     public PesAller save(PesAller pes) {
@@ -307,49 +334,36 @@ public class PesAllerService implements ApplicationListener<PesCreationEvent> {
         return pesAllerRepository.findByFileName(fileName);
     }
 
-    public List<String> getBlockedFlux() {
-
-        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-        CriteriaQuery<String> query = cb.createQuery(String.class);
-        Root<PesAller> pesTable = query.from(PesAller.class);
-        query.select(pesTable.get("uuid"));
-
-        Subquery<PesHistory> subquery = query.subquery(PesHistory.class);
-        Root<PesHistory> historyTable = subquery.from(PesHistory.class);
-        subquery
-                .select(historyTable.get("pesUuid")).distinct(true)
-                .where(historyTable.get("status")
-                        .in(Arrays.asList(StatusType.MAX_RETRY_REACH, StatusType.ACK_RECEIVED, StatusType.NACK_RECEIVED)));
-
-        Subquery<PesHistory> subquery2 = query.subquery(PesHistory.class);
-        Root<PesHistory> historyTable2 = subquery2.from(PesHistory.class);
-        subquery2
-                .select(historyTable2.get("pesUuid")).distinct(true)
-                .where(historyTable2.get("status")
-                        .in(Arrays.asList(StatusType.SENT, StatusType.RESENT, StatusType.MANUAL_RESENT)));
-
-        List<Predicate> mainQueryPredicates = new ArrayList<>();
-        mainQueryPredicates.add(cb.not(pesTable.get("uuid").in(subquery)));
-        mainQueryPredicates.add(pesTable.get("uuid").in(subquery2));
-        mainQueryPredicates.add(cb.equal(pesTable.get("imported"), false));
-
-        query.where(mainQueryPredicates.toArray(new Predicate[]{}));
-        TypedQuery<String> typedQuery = entityManager.createQuery(query);
-        List<String> resultList = typedQuery.getResultList();
-
-        return resultList;
+    /**
+     * The PES sent to Helios that have neither been answered nor given up on, and are not already waiting to be sent
+     * again, oldest sending first. The candidates are taken from the last history status of the PES, their histories
+     * are only read through the (pes_uuid, status, date) index.
+     */
+    @SuppressWarnings("unchecked")
+    public List<BlockedPes> getBlockedFlux() {
+        List<Object[]> rows = entityManager.createNativeQuery("SELECT p.uuid, h.last_send, h.resent FROM pes_aller p "
+                + "CROSS JOIN LATERAL (SELECT "
+                + "MAX(ph.date) FILTER (WHERE ph.status IN ('SENT', 'RESENT', 'MANUAL_RESENT')) AS last_send, "
+                + "COUNT(*) FILTER (WHERE ph.status = 'RESENT') AS resent, "
+                + "bool_or(ph.status IN ('MAX_RETRY_REACH', 'ACK_RECEIVED', 'NACK_RECEIVED')) AS answered "
+                + "FROM pes_history ph WHERE ph.pes_uuid = p.uuid) h "
+                + "WHERE p.last_history_status IN ('SENT', 'RESENT', 'MANUAL_RESENT', 'FILE_ERROR') "
+                + "AND p.imported = false AND h.last_send IS NOT NULL AND NOT h.answered "
+                + "AND NOT EXISTS (SELECT 1 FROM pending_message m WHERE m.pes_uuid = p.uuid) "
+                + "ORDER BY h.last_send")
+                .getResultList();
+        List<BlockedPes> blockedPes = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            blockedPes.add(new BlockedPes((String) row[0], ((Timestamp) row[1]).toLocalDateTime(),
+                    ((Number) row[2]).intValue()));
+        }
+        return blockedPes;
     }
 
     public List<PesHistory> getPesHistoryByTypes(String uuid, List<StatusType> statusTypes) {
         return pesHistoryRepository.findBypesUuidAndStatusInOrderByDateDesc(uuid, statusTypes);
     }
 
-    public PesHistory getLastSentHistory(String uuid) {
-        return pesHistoryRepository
-                .findBypesUuidAndStatusInOrderByDateDesc(uuid, Arrays.asList(StatusType.SENT, StatusType.RESENT))
-                .get(0);
-    }
-
     public PesHistory getHistoryByUuid(String uuid) {
         return pesHistoryRepository.findByUuid(uuid).orElseThrow(HistoryNotFoundException::new);
     }
@@ -451,6 +465,18 @@ public class PesAllerService implements ApplicationListener<PesCreationEvent> {
         return pesAllerRepository.countByLastHistoryStatusAndLastHistoryDateAfter(statusType, localDateTime);
     }
 
+    /**
+     * Same as {@link #countPesAllerByStatusTypeAndDate(StatusType, LocalDateTime)} for several statuses in one grouped
+     * query, the statuses without any PES are left out.
+     */
+    public Map<StatusType, Long> countPesAllerByStatusTypesAndDate(Collection<StatusType> statusTypes,
+            LocalDateTime localDateTime) {
+        Map<StatusType, Long> counts = new EnumMap<>(StatusType.class);
+        pesAllerRepository.countByLastHistoryStatusInAndLastHistoryDateAfter(statusTypes, localDateTime)
+                .forEach(row -> counts.put((StatusType) row[0], (Long) row[1]));
+        return counts;
+    }
+
     /**
      * @return a pair consisting of the generated archive name and the Base64-encoded representation of the archive
      * containing the PES file and the eventually received ACK / NACK file
@@ -484,41 +510,22 @@ public class PesAllerService implements ApplicationListener<PesCreationEvent> {
     }
 
     public boolean isAPesOrmc(PesAller pesAller) {
-        InputStream attachement = new ByteArrayInputStream(storageService.getAttachmentContent(pesAller.getAttachment()));
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        try {
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(attachement);
-            doc.getDocumentElement().normalize();
-            NodeList nodeList = doc.getElementsByTagName("TypFic");
-
-            Node typeFicNode = null;
-            Element typeFicElement = null;
-            if(nodeList.getLength() > 0) {
-                typeFicNode = nodeList.item(0);
-                if (typeFicNode.getNodeType() == Node.ELEMENT_NODE) {
-                    typeFicElement = (Element) typeFicNode;
-                    return typeFicElement.getAttribute("V").equals("PESORMC");
-                } else {
-                    LOGGER.debug("[isAPesOrmc] Don't found elements with 'TypeFic' tag name");
-                    return false;
-                }
-            } else {
-                LOGGER.info("[isAPesOrmc] Don't found nodes with 'TypeFic' tag name");
-                return false;
-            }
-        } catch (ParserConfigurationException e) {
+        // already read from the header when the PES was created
+        if (StringUtils.isNotEmpty(pesAller.getFileType()))
+            return PesHeader.PES_ORMC_FILE_TYPE.equals(pesAller.getFileType());
+
+        try (InputStream attachment = storageService.getAttachmentContentStream(pesAller.getAttachment())) {
+            return PesHeaderReader.read(attachment).isPesOrmc();
+        } catch (XMLStreamException e) {
             LOGGER.error("[isAPesOrmc] An error occured while trying to parse xml file {} attachement of pes {}",
                     pesAller.getFileName(),
                     pesAller.getUuid(),
                     e);
-        } catch (SAXException | IOException e) {
+        } catch (StorageException | IOException e) {
             LOGGER.error("[isAPesOrmc] An error occured while trying to read xml file {} attachement of pes {}",
                     pesAller.getFileName(),
                     pesAller.getUuid(),
                     e);
-        } catch (Exception e) {
-            LOGGER.error("[isAPesOrmc] Unexpected exception parsing PES file", e);
         }
         return false;
     }
@@ -4,6 +4,7 @@ import fr.sictiam.stela.pesservice.dao.PesRetourRepository;
 import fr.sictiam.stela.pesservice.model.Attachment;
 import fr.sictiam.stela.pesservice.model.LocalAuthority;
 import fr.sictiam.stela.pesservice.model.PesRetour;
+import fr.sictiam.stela.pesservice.service.util.PageCursor;
 import fr.sictiam.stela.pesservice.soap.model.paull.GetTabPESRetourStruct;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.xml.security.utils.Base64;
@@ -50,18 +51,25 @@ public class PesRetourService {
         return pesRetourRepository.findByUuid(uuid).get();
     }
 
+    /**
+     * PES Retour are always listed by descending creation date. When a {@link PageCursor} is given the page starts
+     * right after it and the offset is ignored.
+     */
     public List<PesRetour> getAllWithQuery(String multifield, String filename, LocalDate creationFrom,
-            LocalDate creationTo, String currentLocalAuthUuid, Integer limit, Integer offset) {
+            LocalDate creationTo, String currentLocalAuthUuid, Integer limit, Integer offset, String cursor) {
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<PesRetour> query = builder.createQuery(PesRetour.class);
         Root<PesRetour> pesRetourRoot = query.from(PesRetour.class);
 
         List<Predicate> predicates = getQueryPredicates(builder, pesRetourRoot, multifield, filename, creationFrom,
                 creationTo, currentLocalAuthUuid);
+        if (StringUtils.isNotBlank(cursor))
+            predicates.add(PageCursor.decode(cursor, "creation", "DESC").getPredicate(builder, pesRetourRoot));
         query.where(predicates.toArray(new Predicate[predicates.size()]))
-                .orderBy(builder.desc(pesRetourRoot.get("creation")));
+                .orderBy(PageCursor.getOrders(builder, pesRetourRoot, "creation", "DESC"));
 
-        return entityManager.createQuery(query).setFirstResult(offset).setMaxResults(limit).getResultList();
+        return entityManager.createQuery(query).setFirstResult(StringUtils.isNotBlank(cursor) ? 0 : offset)
+                .setMaxResults(limit).getResultList();
     }
 
     public Long countAllWithQuery(String multifield, String filename, LocalDate creationFrom, LocalDate creationTo,
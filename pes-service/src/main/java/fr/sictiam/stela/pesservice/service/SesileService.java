@@ -1,7 +1,6 @@
 package fr.sictiam.stela.pesservice.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import fr.sictiam.signature.pes.verifier.*;
 import fr.sictiam.stela.pesservice.dao.GenericDocumentRepository;
 import fr.sictiam.stela.pesservice.dao.SesileConfigurationRepository;
 import fr.sictiam.stela.pesservice.model.*;
@@ -9,6 +8,7 @@ import fr.sictiam.stela.pesservice.model.event.PesHistoryEvent;
 import fr.sictiam.stela.pesservice.model.sesile.*;
 import fr.sictiam.stela.pesservice.service.exceptions.MissingSignatureException;
 import fr.sictiam.stela.pesservice.service.exceptions.SignatureException;
+import fr.sictiam.stela.pesservice.service.util.PesHeaderReader;
 import io.vavr.control.Either;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -24,9 +24,9 @@ import org.springframework.web.client.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.validation.constraints.NotNull;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
@@ -178,20 +178,6 @@ public class SesileService implements ApplicationListener<PesHistoryEvent> {
         });
     }
 
-    public SimplePesInformation computeSimplePesInformation(byte[] file) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(file);
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        PesAllerAnalyser pesAllerAnalyser = new PesAllerAnalyser(bais, stream);
-
-        pesAllerAnalyser.setDoSchemaValidation(true);
-        try {
-            pesAllerAnalyser.computeSimpleInformation();
-        } catch (InvalidPesAllerFileException e) {
-            LOGGER.error("[computeSimplePesInformation] {}", e.getMessage());
-        }
-        return pesAllerAnalyser.getSimplePesInformation();
-    }
-
     public Document addFileToclasseur(LocalAuthority localAuthority, byte[] file, String fileName,
             int classeur) throws RestClientResponseException {
 
@@ -464,9 +450,13 @@ public class SesileService implements ApplicationListener<PesHistoryEvent> {
         return types;
     }
 
-    private boolean hasSignature(byte[] file) {
-        SimplePesInformation simplePesInformation = computeSimplePesInformation(file);
-        return simplePesInformation.isSigned();
+    private boolean hasSignature(PesAller pes) {
+        try (InputStream file = storageService.getAttachmentContentStream(pes.getAttachment())) {
+            return PesHeaderReader.isSigned(file);
+        } catch (XMLStreamException | IOException e) {
+            LOGGER.error("[hasSignature] Error while reading PES {} : {}", pes.getUuid(), e.getMessage());
+            return false;
+        }
     }
 
     public Optional<GenericDocument> getGenericDocument(Integer fluxId) {
@@ -574,7 +564,7 @@ public class SesileService implements ApplicationListener<PesHistoryEvent> {
 
             if (pes.isPj() || pesService.isAPesOrmc(pes)) {
                 pesService.updateStatus(pes.getUuid(), StatusType.PENDING_SEND);
-            } else if (!sesileSubscription || hasSignature(storageService.getAttachmentContent(pes.getAttachment()))) {
+            } else if (!sesileSubscription || hasSignature(pes)) {
                 pesService.updateStatus(pes.getUuid(), StatusType.SIGNATURE_VALIDATION);
             } else {
                 submitToSignature(pes);
@@ -1,6 +1,5 @@
 package fr.sictiam.stela.pesservice.service;
 
-import com.axyus.signature.pes.CertificateContainer;
 import com.axyus.signature.pes.verifier.SignatureVerifier;
 import com.axyus.signature.pes.verifier.SignatureVerifierResult;
 import eu.europa.esig.dss.validation.policy.rules.Indication;
@@ -14,14 +13,21 @@ import org.apache.xpath.XPathAPI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.traversal.DocumentTraversal;
+import org.w3c.dom.traversal.NodeFilter;
+import org.w3c.dom.traversal.TreeWalker;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
@@ -35,6 +41,9 @@ import java.security.cert.CertificateNotYetValidException;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 
@@ -49,6 +58,36 @@ public class SignatureService {
     @Value("${application.pdfValidation}")
     private boolean validatePdfSignature;
 
+    @Value("${application.signature.verificationThreads:4}")
+    private int verificationThreads;
+
+    // copies of PES documents held at once by the verification workers, whatever the number of PES being checked
+    @Value("${application.signature.maxDocumentCopies:2}")
+    private int maxDocumentCopies;
+
+    private final TrustStoreService trustStoreService;
+    private ThreadPoolTaskExecutor verificationExecutor;
+    private Semaphore documentCopies;
+
+    public SignatureService(TrustStoreService trustStoreService) {
+        this.trustStoreService = trustStoreService;
+    }
+
+    @PostConstruct
+    public void init() {
+        verificationExecutor = new ThreadPoolTaskExecutor();
+        verificationExecutor.setCorePoolSize(verificationThreads);
+        verificationExecutor.setMaxPoolSize(verificationThreads);
+        verificationExecutor.setThreadNamePrefix("pes-signature-");
+        verificationExecutor.initialize();
+        documentCopies = new Semaphore(maxDocumentCopies);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        verificationExecutor.shutdown();
+    }
+
     private Document loadXml(InputStream pesStream) throws ParserConfigurationException, SAXException, IOException {
         javax.xml.parsers.DocumentBuilderFactory dbf = javax.xml.parsers.DocumentBuilderFactory.newInstance();
         dbf.setNamespaceAware(true);
@@ -57,32 +96,108 @@ public class SignatureService {
     }
 
     private List<SignatureVerifierResult> processPesVerification(Document document)
-            throws IOException, TransformerException, CertificateException, MissingSignatureException {
-
-        NodeList ids = XPathAPI.selectNodeList(document, "//*[@Id]", createNamespaceNode(document));
-        for (int i = 0; i < ids.getLength(); i++) {
-            Element e = (Element) ids.item(i);
-            IdResolver.registerElementById(e, e.getAttributeNode("Id"));
-        }
+            throws IOException, CertificateException, MissingSignatureException {
 
-        NodeList sigs = XPathAPI.selectNodeList(document, "//ds:Signature", createNamespaceNode(document));
-        if (sigs.getLength() == 0) {
+        List<Element> signatures = registerIdsAndFindSignatures(document);
+        if (signatures.isEmpty()) {
             LOGGER.error("Signature not found in PES");
             throw new MissingSignatureException();
         }
-        SignatureVerifier signatureVerificationProcessor =
-                new SignatureVerifier(
-                        CertificateContainer.fromZipURL(getClass().getResource("/signature/CA_RGS3.zip")),
-                        CertificateContainer.fromZipURL(getClass().getResource("/signature/CA_RGS3.zip")));
-        List<SignatureVerifierResult> results = new ArrayList<>();
-        for (int i = 0; i < sigs.getLength(); i++) {
-            Element element = (Element) sigs.item(i);
-            results.add(signatureVerificationProcessor.process(element, null));
+
+        int copies = acquireDocumentCopies(Math.min(verificationThreads, signatures.size()) - 1);
+        if (copies == 0)
+            return verifySignatures(signatures, 0, signatures.size());
+
+        // the signatures are independent, but a DOM can't be shared between threads, even for reading: the first
+        // share is verified here on the document, the others by the workers, each one on its own copy. The copies
+        // are bounded by maxDocumentCopies, so a big PES is verified on fewer threads rather than using more memory
+        int share = (signatures.size() + copies) / (copies + 1);
+        List<Future<List<SignatureVerifierResult>>> futures = new ArrayList<>();
+        try {
+            for (int from = share; from < signatures.size(); from += share) {
+                Document copy = (Document) document.cloneNode(true);
+                int start = from;
+                int end = Math.min(from + share, signatures.size());
+                futures.add(verificationExecutor.submit(() -> {
+                    try {
+                        return verifySignatures(registerIdsAndFindSignatures(copy), start, end);
+                    } finally {
+                        documentCopies.release();
+                    }
+                }));
+            }
+        } finally {
+            // the copies not handed to a worker, the rounding of the shares can leave some unused
+            documentCopies.release(copies - futures.size());
         }
 
+        List<SignatureVerifierResult> results = new ArrayList<>(verifySignatures(signatures, 0, share));
+        for (Future<List<SignatureVerifierResult>> future : futures) {
+            results.addAll(getVerificationResults(future));
+        }
         return results;
     }
 
+    /**
+     * Takes up to {@code wanted} document copies among the ones left, without waiting for the others to be released.
+     */
+    private int acquireDocumentCopies(int wanted) {
+        int copies = 0;
+        while (copies < wanted && documentCopies.tryAcquire())
+            copies++;
+        return copies;
+    }
+
+    private List<SignatureVerifierResult> verifySignatures(List<Element> signatures, int start, int end)
+            throws IOException, CertificateException {
+        SignatureVerifier signatureVerifier = trustStoreService.borrowVerifier();
+        try {
+            List<SignatureVerifierResult> results = new ArrayList<>();
+            for (int i = start; i < end; i++) {
+                results.add(signatureVerifier.process(signatures.get(i), null));
+            }
+            return results;
+        } finally {
+            trustStoreService.releaseVerifier(signatureVerifier);
+        }
+    }
+
+    private List<SignatureVerifierResult> getVerificationResults(Future<List<SignatureVerifierResult>> future)
+            throws IOException, CertificateException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying signatures", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof CertificateException)
+                throw (CertificateException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Registers the elements having an Id, so the signature references can be resolved, and collects the
+     * signatures, in a single traversal of the document.
+     */
+    private static List<Element> registerIdsAndFindSignatures(Document document) {
+        List<Element> signatures = new ArrayList<>();
+        TreeWalker walker = ((DocumentTraversal) document).createTreeWalker(document.getDocumentElement(),
+                NodeFilter.SHOW_ELEMENT, null, true);
+        for (Node node = walker.getCurrentNode(); node != null; node = walker.nextNode()) {
+            Element element = (Element) node;
+            Attr id = element.getAttributeNode("Id");
+            if (id != null)
+                IdResolver.registerElementById(element, id);
+            if (SIGNATURE_SPEC_NS.equals(element.getNamespaceURI()) && "Signature".equals(element.getLocalName()))
+                signatures.add(element);
+        }
+        return signatures;
+    }
 
     private static Element createNamespaceNode(Document document) {
         Element nscontext = document.createElementNS(null, "namespaceContext");
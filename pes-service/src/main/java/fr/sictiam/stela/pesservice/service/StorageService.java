@@ -7,7 +7,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 
 @Service
@@ -17,8 +21,20 @@ public interface StorageService {
 
     byte[] getObject(String key) throws StorageException;
 
+    public default InputStream getObjectStream(String key) throws StorageException {
+        return new ByteArrayInputStream(getObject(key));
+    }
+
     void storeObject(String key, byte[] content) throws StorageException;
 
+    public default void storeObject(String key, Path file) throws StorageException {
+        try {
+            storeObject(key, Files.readAllBytes(file));
+        } catch (IOException e) {
+            throw new StorageException("Failed to read " + file + ": " + e.getMessage(), e);
+        }
+    }
+
     boolean deleteObject(String key) throws StorageException;
 
     public default byte[] getAttachmentContent(Attachment attachment) throws StorageException {
@@ -41,6 +57,15 @@ public interface StorageService {
         }
     }
 
+    /**
+     * Content stream of the attachment, read from the storage driver unless the content is already in memory.
+     */
+    public default InputStream getAttachmentContentStream(Attachment attachment) throws StorageException {
+        if (attachment.getContent() != null)
+            return new ByteArrayInputStream(attachment.getContent());
+        return getObjectStream(attachment.getStorageKey());
+    }
+
     public default Attachment createAttachment(MultipartFile file) throws StorageException, IOException {
         return createAttachment(file.getOriginalFilename(), file.getBytes());
     }
@@ -55,6 +80,16 @@ public interface StorageService {
         return attachment;
     }
 
+    /**
+     * Store the given file as a new attachment, its content is not kept in memory.
+     */
+    public default Attachment createAttachment(String filename, Path file) throws StorageException, IOException {
+        Attachment attachment = new Attachment(filename, null, Files.size(file), LocalDateTime.now());
+        LOGGER.debug("Storing file {} in {}", filename, attachment.getStorageKey());
+        storeObject(attachment.getStorageKey(), file);
+        return attachment;
+    }
+
     public default void storeAttachment(Attachment attachment) throws StorageException {
         LOGGER.debug("Storing file {} in {}", attachment.getFilename(), attachment.getStorageKey());
         storeObject(attachment.getStorageKey(), attachment.getContent());
@@ -0,0 +1,98 @@
+package fr.sictiam.stela.pesservice.service;
+
+import com.axyus.signature.pes.CertificateContainer;
+import com.axyus.signature.pes.verifier.SignatureVerifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Parsed trust store used to verify PES signatures, reloaded when the zip file changes (checked at most every
+ * {@code application.signature.trustStoreCheckInterval} ms).
+ * <p>
+ * Signature verifiers are not thread-safe, so they are pooled: a verifier is borrowed for one thread and given back
+ * once the verification is done. The pool is dropped with the trust store it was built on.
+ */
+@Service
+public class TrustStoreService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrustStoreService.class);
+
+    @Value("${application.signature.trustStore:classpath:signature/CA_RGS3.zip}")
+    private Resource trustStoreResource;
+
+    @Value("${application.signature.trustStoreCheckInterval:60000}")
+    private long checkInterval;
+
+    private volatile TrustStore trustStore;
+
+    public SignatureVerifier borrowVerifier() throws IOException, CertificateException {
+        TrustStore current = getTrustStore();
+        SignatureVerifier verifier = current.verifiers.poll();
+        return verifier != null ? verifier : new SignatureVerifier(current.certificates, current.certificates);
+    }
+
+    public void releaseVerifier(SignatureVerifier verifier) {
+        TrustStore current = trustStore;
+        if (current != null && verifier.getTrustStore() == current.certificates)
+            current.verifiers.offer(verifier);
+    }
+
+    private TrustStore getTrustStore() throws IOException, CertificateException {
+        TrustStore current = trustStore;
+        if (current != null && System.currentTimeMillis() < current.nextCheck)
+            return current;
+
+        synchronized (this) {
+            current = trustStore;
+            if (current != null && System.currentTimeMillis() < current.nextCheck)
+                return current;
+
+            long lastModified = lastModified();
+            if (current != null && current.lastModified == lastModified) {
+                current.nextCheck = System.currentTimeMillis() + checkInterval;
+                return current;
+            }
+            try {
+                LOGGER.info("Loading trust store {}", trustStoreResource.getDescription());
+                trustStore = new TrustStore(CertificateContainer.fromZipURL(trustStoreResource.getURL()),
+                        lastModified, System.currentTimeMillis() + checkInterval);
+            } catch (IOException | CertificateException e) {
+                if (current == null)
+                    throw e;
+                LOGGER.error("Unable to reload trust store, keeping the previous one: {}", e.getMessage());
+                current.nextCheck = System.currentTimeMillis() + checkInterval;
+            }
+            return trustStore;
+        }
+    }
+
+    private long lastModified() {
+        try {
+            return trustStoreResource.lastModified();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static class TrustStore {
+
+        private final CertificateContainer certificates;
+        private final long lastModified;
+        private final Queue<SignatureVerifier> verifiers = new ConcurrentLinkedQueue<>();
+        private volatile long nextCheck;
+
+        private TrustStore(CertificateContainer certificates, long lastModified, long nextCheck) {
+            this.certificates = certificates;
+            this.lastModified = lastModified;
+            this.nextCheck = nextCheck;
+        }
+    }
+}
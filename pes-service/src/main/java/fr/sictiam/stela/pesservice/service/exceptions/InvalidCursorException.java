@@ -0,0 +1,18 @@
+package fr.sictiam.stela.pesservice.service.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidCursorException extends RuntimeException {
+
+    static final long serialVersionUID = 42L;
+
+    public InvalidCursorException() {
+        super("notifications.pes.invalid_cursor");
+    }
+
+    public InvalidCursorException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
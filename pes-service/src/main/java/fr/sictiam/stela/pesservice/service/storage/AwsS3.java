@@ -22,6 +22,9 @@ import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
 import javax.annotation.PostConstruct;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+
 @Component
 @Profile("S3")
 public class AwsS3 implements StorageService {
@@ -66,6 +69,19 @@ public class AwsS3 implements StorageService {
         }
     }
 
+    @Override
+    public InputStream getObjectStream(String key) throws StorageException {
+        try {
+            return s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key).build());
+        } catch (NoSuchKeyException e) {
+            LOGGER.error("Key {} not found in bucket {}: {}", key, bucket, e.getMessage());
+            throw new StorageException("Key " + key + " not found", e);
+        } catch (SdkException e) {
+            LOGGER.error("Failed to read key {}: {}", key, e.getMessage());
+            throw new StorageException("Failed to read key " + key + ": " + e.getMessage(), e);
+        }
+    }
+
     @Override public void storeObject(String key, byte[] content) throws StorageException {
 
         try {
@@ -76,6 +92,17 @@ public class AwsS3 implements StorageService {
         }
     }
 
+    @Override
+    public void storeObject(String key, Path file) throws StorageException {
+
+        try {
+            s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key).build(), RequestBody.fromFile(file));
+        } catch (SdkException e) {
+            LOGGER.error("Failed to store {} in bucket {}: {}", key, bucket, e.getMessage());
+            throw new StorageException("Failed to store " + key + " in bucket " + bucket + ": " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public boolean deleteObject(String key) throws StorageException {
 
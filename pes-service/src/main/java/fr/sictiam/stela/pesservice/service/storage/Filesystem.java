@@ -11,10 +11,12 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 @Component
 @Profile("!S3")
@@ -31,7 +33,7 @@ public class Filesystem implements StorageService {
     @PostConstruct
     public void init() {
         if (rootPath.endsWith("/"))
-            rootPath = rootPath.substring(rootPath.length() - 1);
+            rootPath = rootPath.substring(0, rootPath.length() - 1);
 
         Path path = Paths.get(rootPath);
         if (Files.notExists(path)) {
@@ -58,6 +60,20 @@ public class Filesystem implements StorageService {
         }
     }
 
+    @Override
+    public InputStream getObjectStream(String key) throws StorageException {
+
+        try {
+            return Files.newInputStream(Paths.get(rootPath, key));
+        } catch (InvalidPathException e) {
+            LOGGER.error("File not found {}/{}", rootPath, key);
+            throw new StorageException("Key " + key + " not found", e);
+        } catch (IOException e) {
+            LOGGER.error("Failed to open {}/{}: {}", rootPath, key, e.getMessage());
+            throw new StorageException("Failed to read " + key + ": " + e.getMessage(), e);
+        }
+    }
+
     @Override public void storeObject(String key, byte[] content) throws StorageException {
 
         try {
@@ -76,6 +92,25 @@ public class Filesystem implements StorageService {
         }
     }
 
+    @Override
+    public void storeObject(String key, Path file) throws StorageException {
+
+        try {
+            Path path = Paths.get(rootPath, key);
+            Path parent = path.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.copy(file, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (InvalidPathException e) {
+            LOGGER.error("Invalid path {}/{}: {}", rootPath, key, e.getMessage());
+            throw new StorageException("Key " + key + " not found", e);
+        } catch (IOException e) {
+            LOGGER.error("Failed to copy {} in {}/{}: {}", file, rootPath, key, e.getMessage());
+            throw new StorageException("Failed to write " + key + ": " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public boolean deleteObject(String key) throws StorageException {
 
@@ -0,0 +1,160 @@
+package fr.sictiam.stela.pesservice.service.util;
+
+import fr.sictiam.stela.pesservice.model.PesHistoryError;
+import fr.sictiam.stela.pesservice.model.util.PesAcquit;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass StAX reader for PES_ACQUIT files.
+ * <p>
+ * A rejected {@code ElementACQUIT} gives one error per {@code DetailLigne} of its {@code DetailPiece}, one error per
+ * {@code DetailPiece} without lines, or a single error taken from the element itself when it has no piece details.
+ * As with XPath string values, the first occurrence of a value wins and a missing value is an empty string.
+ * <p>
+ * The given stream is not closed.
+ */
+public class PesAcquitReader {
+
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public static PesAcquit read(InputStream ack) throws XMLStreamException {
+        PesAcquit acquit = new PesAcquit();
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(ack);
+        try {
+            List<String> path = new ArrayList<>();
+            ElementAcquit element = null;
+            DetailPiece piece = null;
+            Erreur ligne = null;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    path.add(reader.getLocalName());
+                    String value = reader.getAttributeValue(XMLConstants.NULL_NS_URI, "V");
+
+                    if (matches(path, 0, "PES_ACQUIT", "Enveloppe", "Parametres", "NomFic")) {
+                        if (acquit.getFileName() == null)
+                            acquit.setFileName(value);
+                    } else if (matches(path, 0, "PES_ACQUIT", "ACQUIT", "ElementACQUIT")) {
+                        element = new ElementAcquit();
+                    } else if (element != null) {
+                        // path relative to the ElementACQUIT
+                        if (matches(path, 3, "EtatAck"))
+                            element.etatAck = first(element.etatAck, value);
+                        else if (matches(path, 3, "IdUnique"))
+                            element.idUnique = first(element.idUnique, value);
+                        else if (matches(path, 3, "Erreur", "NumAnoAck"))
+                            element.erreur.numAnoAck = first(element.erreur.numAnoAck, value);
+                        else if (matches(path, 3, "Erreur", "LibelleAnoAck"))
+                            element.erreur.libelleAnoAck = first(element.erreur.libelleAnoAck, value);
+                        else if (matches(path, 3, "DetailPiece"))
+                            piece = new DetailPiece();
+                        else if (matches(path, 3, "DetailPiece", "NumPiece"))
+                            piece.numPiece = first(piece.numPiece, value);
+                        else if (matches(path, 3, "DetailPiece", "Erreur", "NumAnoAck"))
+                            piece.erreur.numAnoAck = first(piece.erreur.numAnoAck, value);
+                        else if (matches(path, 3, "DetailPiece", "Erreur", "LibelleAnoAck"))
+                            piece.erreur.libelleAnoAck = first(piece.erreur.libelleAnoAck, value);
+                        else if (matches(path, 3, "DetailPiece", "DetailLigne"))
+                            ligne = new Erreur();
+                        else if (matches(path, 3, "DetailPiece", "DetailLigne", "Erreur", "NumAnoAck"))
+                            ligne.numAnoAck = first(ligne.numAnoAck, value);
+                        else if (matches(path, 3, "DetailPiece", "DetailLigne", "Erreur", "LibelleAnoAck"))
+                            ligne.libelleAnoAck = first(ligne.libelleAnoAck, value);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (element != null) {
+                        if (matches(path, 3, "DetailPiece", "DetailLigne")) {
+                            piece.lignes.add(ligne);
+                            ligne = null;
+                        } else if (matches(path, 3, "DetailPiece")) {
+                            element.pieces.add(piece);
+                            piece = null;
+                        } else if (path.size() == 3) {
+                            addErrors(acquit, element);
+                            element = null;
+                        }
+                    }
+                    path.remove(path.size() - 1);
+                }
+            }
+            return acquit;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void addErrors(PesAcquit acquit, ElementAcquit element) {
+        if ("1".equals(element.etatAck))
+            return;
+        acquit.setAckOk(false);
+
+        if (element.pieces.isEmpty()) {
+            acquit.getErrors().add(element.erreur.toPesHistoryError(element.idUnique));
+            return;
+        }
+        for (DetailPiece piece : element.pieces) {
+            if (piece.lignes.isEmpty()) {
+                acquit.getErrors().add(piece.erreur.toPesHistoryError(piece.numPiece));
+            } else {
+                for (Erreur ligne : piece.lignes)
+                    acquit.getErrors().add(ligne.toPesHistoryError(piece.numPiece));
+            }
+        }
+    }
+
+    /**
+     * Whether the current path, starting at the given depth, is exactly the given names.
+     */
+    private static boolean matches(List<String> path, int from, String... names) {
+        if (path.size() != from + names.length)
+            return false;
+        for (int i = 0; i < names.length; i++) {
+            if (!names[i].equals(path.get(from + i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static String first(String current, String value) {
+        return current != null ? current : value;
+    }
+
+    private static class ElementAcquit {
+        private String etatAck;
+        private String idUnique;
+        private final Erreur erreur = new Erreur();
+        private final List<DetailPiece> pieces = new ArrayList<>();
+    }
+
+    private static class DetailPiece {
+        private String numPiece;
+        private final Erreur erreur = new Erreur();
+        private final List<Erreur> lignes = new ArrayList<>();
+    }
+
+    private static class Erreur {
+        private String numAnoAck;
+        private String libelleAnoAck;
+
+        private PesHistoryError toPesHistoryError(String source) {
+            return new PesHistoryError(StringUtils.defaultString(numAnoAck), StringUtils.defaultString(libelleAnoAck),
+                    StringUtils.defaultString(source));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package fr.sictiam.stela.pesservice.service.util;
+
+import fr.sictiam.stela.pesservice.model.util.PesHeader;
+
+import javax.xml.XMLConstants;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import java.io.InputStream;
+
+/**
+ * Streaming reader for the PES_Aller and PES_Retour headers: the document is read with StAX up to the end of the
+ * {@code Enveloppe} and {@code EnTetePES} blocks, the rest of the file (bordereaux, embedded attachments) is never
+ * parsed.
+ * <p>
+ * The given streams are not closed.
+ */
+public class PesHeaderReader {
+
+    private static final String PES_ALLER = "PES_Aller";
+    private static final String PES_RETOUR = "PES_Retour";
+    private static final String ENVELOPPE = "Enveloppe";
+    private static final String EN_TETE_PES = "EnTetePES";
+    private static final String PARAMETRES = "Parametres";
+
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public static PesHeader read(InputStream pes) throws XMLStreamException {
+        PesHeader header = new PesHeader();
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(pes);
+        try {
+            String[] path = new String[4];
+            int depth = 0;
+            boolean enveloppeRead = false;
+            boolean enTeteRead = false;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 2) {
+                        enveloppeRead |= ENVELOPPE.equals(path[1]);
+                        enTeteRead |= EN_TETE_PES.equals(path[1]);
+                        if (enveloppeRead && enTeteRead)
+                            break;
+                    }
+                    depth--;
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (depth == 0 && !PES_ALLER.equals(name) && !PES_RETOUR.equals(name))
+                        break;
+                    // bordereaux come after the header, no need to go further
+                    if (depth == 1 && !ENVELOPPE.equals(name) && !EN_TETE_PES.equals(name))
+                        break;
+                    if (depth < path.length)
+                        path[depth] = name;
+                    depth++;
+
+                    if (depth == 3 && EN_TETE_PES.equals(path[1])) {
+                        if ("CodCol".equals(name))
+                            header.setColCode(getValue(reader));
+                        else if ("IdPost".equals(name))
+                            header.setPostId(getValue(reader));
+                        else if ("CodBud".equals(name))
+                            header.setBudCode(getValue(reader));
+                        else if ("IdColl".equals(name))
+                            header.setIdColl(getValue(reader));
+                    } else if (depth == 4 && ENVELOPPE.equals(path[1]) && PARAMETRES.equals(path[2])) {
+                        if ("TypFic".equals(name))
+                            header.setFileType(getValue(reader));
+                        else if ("NomFic".equals(name))
+                            header.setFileName(getValue(reader));
+                    }
+                }
+            }
+            return header;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Whether the PES holds at least one XML signature, wherever it is. The document is streamed until the first
+     * {@code ds:Signature} element, so an unsigned file is read to the end but never held in memory.
+     */
+    public static boolean isSigned(InputStream pes) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(pes);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && "Signature".equals(reader.getLocalName())
+                        && XMLSignature.XMLNS.equals(reader.getNamespaceURI()))
+                    return true;
+            }
+            return false;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String getValue(XMLStreamReader reader) {
+        return reader.getAttributeValue(XMLConstants.NULL_NS_URI, "V");
+    }
+}
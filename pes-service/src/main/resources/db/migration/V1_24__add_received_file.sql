@@ -0,0 +1,10 @@
+CREATE TABLE received_file (
+    uuid character varying(255) NOT NULL,
+    file_name character varying(255) NOT NULL,
+    size bigint NOT NULL,
+    sha256 character varying(64),
+    reception_date timestamp without time zone,
+    CONSTRAINT received_file_pkey PRIMARY KEY (uuid)
+);
+CREATE INDEX received_file_file_name_idx ON received_file (file_name);
+CREATE INDEX received_file_sha256_idx ON received_file (sha256);
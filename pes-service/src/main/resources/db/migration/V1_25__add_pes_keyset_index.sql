@@ -0,0 +1,3 @@
+-- Keyset pagination of the PES lists: default sort on the creation date, the uuid breaking ties
+CREATE INDEX pes_aller_local_authority_creation_uuid_idx ON pes_aller (local_authority_uuid, creation, uuid);
+CREATE INDEX pes_retour_local_authority_creation_uuid_idx ON pes_retour (local_authority_uuid, creation, uuid);
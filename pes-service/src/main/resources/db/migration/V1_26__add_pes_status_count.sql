@@ -0,0 +1,31 @@
+-- Number of histories per status and minute, kept up to date by a trigger so that the metrics do not scan pes_history
+CREATE TABLE pes_status_count (
+    bucket timestamp without time zone NOT NULL,
+    status character varying(255) NOT NULL,
+    count bigint NOT NULL,
+    CONSTRAINT pes_status_count_pkey PRIMARY KEY (bucket, status)
+);
+
+INSERT INTO pes_status_count (bucket, status, count)
+  SELECT date_trunc('minute', date), status, count(*)
+  FROM pes_history
+  WHERE date IS NOT NULL AND status IS NOT NULL
+  GROUP BY 1, 2;
+
+create function pes_status_count_increment() returns trigger as $$
+  begin
+    if new.date is not null and new.status is not null then
+      insert into pes_status_count (bucket, status, count) values (date_trunc('minute', new.date), new.status, 1)
+        on conflict (bucket, status) do update set count = pes_status_count.count + 1;
+    end if;
+    return null;
+  end;
+$$ language plpgsql;
+
+CREATE TRIGGER pes_history_status_count AFTER INSERT ON pes_history
+  FOR EACH ROW EXECUTE PROCEDURE pes_status_count_increment();
+
+-- The partial minutes at both ends of a metric range are counted on pes_history
+CREATE INDEX pes_history_date_status_idx ON pes_history (date, status);
+-- Anomaly check: PES by last status since the previous run
+CREATE INDEX pes_aller_last_history_date_status_idx ON pes_aller (last_history_date, last_history_status);
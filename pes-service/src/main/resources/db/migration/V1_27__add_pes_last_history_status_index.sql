@@ -0,0 +1,2 @@
+-- Backlog metrics: number of PES waiting in each status
+CREATE INDEX pes_aller_last_history_status_idx ON pes_aller (last_history_status);
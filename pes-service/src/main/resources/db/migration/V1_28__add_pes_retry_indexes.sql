@@ -0,0 +1,5 @@
+-- Retry of the PES waiting for their ACK: the histories of each candidate are read from this index only
+CREATE INDEX pes_history_pes_uuid_status_date_idx ON pes_history (pes_uuid, status, date);
+CREATE INDEX pending_message_pes_uuid_idx ON pending_message (pes_uuid);
+-- Status given to the PES once the message is sent, SENT when null
+ALTER TABLE pending_message ADD COLUMN status character varying(255);
@@ -0,0 +1,4 @@
+package fr.sictiam.stela.pesservice;
+
+public interface IntegrationTests {
+}
@@ -0,0 +1,128 @@
+package fr.sictiam.stela.pesservice.dao;
+
+import fr.sictiam.stela.pesservice.BaseIntegrationTests;
+import fr.sictiam.stela.pesservice.model.PesAller;
+import fr.sictiam.stela.pesservice.model.PesHistory;
+import fr.sictiam.stela.pesservice.model.StatusType;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the counts read from the pes_status_count rollup, kept up to date by the trigger of the V1_26 migration,
+ * with counts made on pes_history.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class PesHistoryRepositoryIntegrationTests extends BaseIntegrationTests {
+
+    @Autowired
+    private PesHistoryRepository pesHistoryRepository;
+
+    @Autowired
+    private PesAllerRepository pesAllerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void appendedHistoriesAreCountedInTheRollup() {
+        // out of the range of the other tests
+        LocalDateTime minute = LocalDateTime.of(2001, 1, 1, 10, 0);
+        histories(minute.plusSeconds(5), StatusType.SENT, StatusType.SENT, StatusType.ACK_RECEIVED);
+        histories(minute.plusSeconds(59), StatusType.SENT);
+        // on the next minute
+        histories(minute.plusMinutes(1), StatusType.SENT);
+
+        assertEquals(Long.valueOf(3), rollupCount(minute, StatusType.SENT));
+        assertEquals(Long.valueOf(1), rollupCount(minute, StatusType.ACK_RECEIVED));
+        assertEquals(Long.valueOf(1), rollupCount(minute.plusMinutes(1), StatusType.SENT));
+    }
+
+    @Test
+    public void countsMatchTheHistoriesAcrossMinuteBoundaries() {
+        LocalDateTime minute = LocalDateTime.of(2002, 1, 1, 10, 0);
+        histories(minute.plusSeconds(10), StatusType.SENT, StatusType.ACK_RECEIVED);
+        histories(minute.plusSeconds(40), StatusType.SENT, StatusType.RESENT);
+        histories(minute.plusMinutes(1), StatusType.SENT);
+        histories(minute.plusMinutes(1).plusSeconds(30), StatusType.RESENT, StatusType.ACK_RECEIVED);
+        histories(minute.plusMinutes(2), StatusType.SENT);
+        histories(minute.plusMinutes(2).plusSeconds(20), StatusType.ACK_RECEIVED);
+        histories(minute.plusMinutes(3).plusSeconds(50), StatusType.SENT);
+
+        // partial minutes at both ends
+        assertCounts(minute.plusSeconds(30), minute.plusMinutes(2).plusSeconds(10));
+        // whole minutes only, the end being inclusive
+        assertCounts(minute.plusMinutes(1), minute.plusMinutes(2));
+        assertCounts(minute, minute.plusMinutes(4));
+        // within one minute, no rollup
+        assertCounts(minute.plusSeconds(5), minute.plusSeconds(45));
+        // a second after the first minute starts, its histories are left out of the rollup
+        assertCounts(minute.plusSeconds(11), minute.plusMinutes(3));
+    }
+
+    @Test
+    public void samplesAddUpToTheHistories() {
+        LocalDateTime minute = LocalDateTime.of(2003, 1, 1, 10, 0);
+        histories(minute.plusSeconds(10), StatusType.SENT, StatusType.ACK_RECEIVED);
+        histories(minute.plusMinutes(1).plusSeconds(30), StatusType.SENT);
+        histories(minute.plusMinutes(2).plusSeconds(20), StatusType.SENT, StatusType.RESENT);
+        LocalDateTime from = minute.plusSeconds(5);
+        LocalDateTime to = minute.plusMinutes(2).plusSeconds(30);
+
+        Map<StatusType, SortedMap<LocalDateTime, Long>> byMinute = pesHistoryRepository
+                .countByStatusAndSampleBetween("minute", from, to);
+        Map<StatusType, SortedMap<LocalDateTime, Long>> bySecond = pesHistoryRepository
+                .countByStatusAndSampleBetween("second", from, to);
+
+        assertEquals(Long.valueOf(1), byMinute.get(StatusType.SENT).get(minute));
+        assertEquals(Long.valueOf(1), byMinute.get(StatusType.SENT).get(minute.plusMinutes(1)));
+        assertEquals(Long.valueOf(1), byMinute.get(StatusType.SENT).get(minute.plusMinutes(2)));
+        assertEquals(rawCounts(from, to), totals(byMinute));
+        assertEquals(rawCounts(from, to), totals(bySecond));
+    }
+
+    private void assertCounts(LocalDateTime from, LocalDateTime to) {
+        assertEquals(from + " - " + to, rawCounts(from, to), pesHistoryRepository.countByStatusBetween(from, to));
+    }
+
+    // a PES going through the statuses at the same date
+    private void histories(LocalDateTime date, StatusType... statuses) {
+        String uuid = pesAllerRepository.save(new PesAller(null, date, "objet", "filetype", null, null)).getUuid();
+        for (StatusType status : statuses) {
+            pesHistoryRepository.append(new PesHistory(uuid, status, date));
+        }
+    }
+
+    private Map<StatusType, Long> rawCounts(LocalDateTime from, LocalDateTime to) {
+        Map<StatusType, Long> counts = new EnumMap<>(StatusType.class);
+        jdbcTemplate.query("SELECT status, count(*) FROM pes_history WHERE date >= ? AND date <= ? GROUP BY status",
+                (RowCallbackHandler) row -> counts.put(StatusType.valueOf(row.getString(1)), row.getLong(2)),
+                Timestamp.valueOf(from), Timestamp.valueOf(to));
+        return counts;
+    }
+
+    private Long rollupCount(LocalDateTime bucket, StatusType status) {
+        return jdbcTemplate.queryForObject("SELECT count FROM pes_status_count WHERE bucket = ? AND status = ?",
+                Long.class, Timestamp.valueOf(bucket), status.name());
+    }
+
+    private Map<StatusType, Long> totals(Map<StatusType, SortedMap<LocalDateTime, Long>> samples) {
+        Map<StatusType, Long> totals = new EnumMap<>(StatusType.class);
+        samples.forEach((status, counts) -> totals.put(status,
+                counts.values().stream().mapToLong(Long::longValue).sum()));
+        return totals;
+    }
+}
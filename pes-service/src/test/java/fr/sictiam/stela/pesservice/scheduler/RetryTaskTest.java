@@ -0,0 +1,70 @@
+package fr.sictiam.stela.pesservice.scheduler;
+
+import fr.sictiam.stela.pesservice.model.PendingMessage;
+import fr.sictiam.stela.pesservice.model.StatusType;
+import fr.sictiam.stela.pesservice.model.util.BlockedPes;
+import fr.sictiam.stela.pesservice.service.PesAllerService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = RetryTask.class,
+        properties = { "application.retry.maxAttemps = 3", "application.retry.frequency = 24" })
+public class RetryTaskTest {
+
+    @Autowired
+    private RetryTask retryTask;
+
+    @MockBean
+    private PesAllerService pesAllerService;
+
+    @MockBean
+    private SenderTask senderTask;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void duePesAreEnqueuedWithTheirRetryStatus() {
+        LocalDateTime yesterday = LocalDateTime.now().minusHours(25);
+        given(pesAllerService.getBlockedFlux()).willReturn(Arrays.asList(
+                new BlockedPes("pes1", yesterday, 0),
+                new BlockedPes("pes2", yesterday, 2),
+                new BlockedPes("pes3", LocalDateTime.now().minusHours(1), 0)));
+
+        retryTask.resendBlockedFlux();
+
+        ArgumentCaptor<List<PendingMessage>> retries = ArgumentCaptor.forClass(List.class);
+        verify(senderTask).enqueue(retries.capture());
+        assertEquals(2, retries.getValue().size());
+        assertEquals("pes1", retries.getValue().get(0).getPesUuid());
+        assertEquals(StatusType.RESENT, retries.getValue().get(0).getStatus());
+        // the last attempt
+        assertEquals("pes2", retries.getValue().get(1).getPesUuid());
+        assertEquals(StatusType.MAX_RETRY_REACH, retries.getValue().get(1).getStatus());
+    }
+
+    @Test
+    public void nothingIsEnqueuedWhenNoPesIsDue() {
+        given(pesAllerService.getBlockedFlux()).willReturn(Collections.singletonList(
+                new BlockedPes("pes1", LocalDateTime.now().minusHours(1), 0)));
+
+        retryTask.resendBlockedFlux();
+
+        verify(senderTask, never()).enqueue(anyList());
+    }
+}
@@ -0,0 +1,126 @@
+package fr.sictiam.stela.pesservice.scheduler;
+
+import fr.sictiam.stela.pesservice.dao.PendingMessageRepository;
+import fr.sictiam.stela.pesservice.model.Attachment;
+import fr.sictiam.stela.pesservice.model.PendingMessage;
+import fr.sictiam.stela.pesservice.model.PesAller;
+import fr.sictiam.stela.pesservice.model.PesHistory;
+import fr.sictiam.stela.pesservice.model.StatusType;
+import fr.sictiam.stela.pesservice.model.event.PesHistoryEvent;
+import fr.sictiam.stela.pesservice.service.AdminService;
+import fr.sictiam.stela.pesservice.service.PesAllerService;
+import fr.sictiam.stela.pesservice.service.StorageService;
+import fr.sictiam.stela.pesservice.service.exceptions.PesSendException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = SenderTask.class,
+        properties = { "application.archive.maxSizePerHour = 1000000" })
+// the queues of the task are kept between the tests otherwise
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class SenderTaskTest {
+
+    @Autowired
+    private SenderTask senderTask;
+
+    @MockBean
+    private PesAllerService pesAllerService;
+
+    @MockBean
+    private PendingMessageRepository pendingMessageRepository;
+
+    @MockBean
+    private AdminService adminService;
+
+    @MockBean
+    private StorageService storageService;
+
+    @Test
+    public void failedResendDoesNotBlockTheQueue() {
+        PesAller failing = gimmePesAller("pes1");
+        PesAller next = gimmePesAller("pes2");
+        given(adminService.isHeliosAvailable()).willReturn(true);
+        given(pesAllerService.getByUuid("pes1")).willReturn(failing);
+        given(pesAllerService.getByUuid("pes2")).willReturn(next);
+        willThrow(new PesSendException()).given(pesAllerService).send(failing);
+        given(storageService.getAttachmentContent(any(Attachment.class))).willReturn(new byte[0]);
+        given(pesAllerService.renameFileToSend(any(PesAller.class))).willReturn("file.xml");
+        given(pendingMessageRepository.saveAll(anyList())).willAnswer(invocation -> invocation.getArgument(0));
+
+        senderTask.enqueue(Arrays.asList(new PendingMessage("pes1", StatusType.RESENT),
+                new PendingMessage("pes2", StatusType.MAX_RETRY_REACH)));
+        senderTask.senderTask();
+        senderTask.senderTask();
+
+        verify(pesAllerService).updateStatus("pes1", StatusType.FILE_ERROR, PesSendException.class.getName());
+        verify(pesAllerService, never()).updateStatus(eq("pes1"), eq(StatusType.NOT_SENT), any(byte[].class),
+                anyString());
+        verify(pesAllerService).send(next);
+        verify(pesAllerService).updateStatus("pes2", StatusType.MAX_RETRY_REACH);
+    }
+
+    @Test
+    public void resendIsRecordedWithoutStoringTheFileAgain() {
+        PesAller pes = gimmePesAller("pes1");
+        given(adminService.isHeliosAvailable()).willReturn(true);
+        given(pesAllerService.getByUuid("pes1")).willReturn(pes);
+        given(pendingMessageRepository.saveAll(anyList())).willAnswer(invocation -> invocation.getArgument(0));
+
+        senderTask.enqueue(Collections.singletonList(new PendingMessage("pes1", StatusType.RESENT)));
+        senderTask.senderTask();
+
+        verify(pesAllerService).send(pes);
+        verify(pesAllerService).updateStatus("pes1", StatusType.RESENT);
+        verify(storageService, never()).getAttachmentContent(any(Attachment.class));
+        verify(pesAllerService, never()).updateStatus(anyString(), any(StatusType.class), any(byte[].class),
+                anyString());
+    }
+
+    @Test
+    public void newPesIsSentBeforeTheRetries() {
+        PesAller resent = gimmePesAller("pes1");
+        PesAller created = gimmePesAller("pes2");
+        given(adminService.isHeliosAvailable()).willReturn(true);
+        given(pesAllerService.getByUuid("pes1")).willReturn(resent);
+        given(pesAllerService.getByUuid("pes2")).willReturn(created);
+        given(storageService.getAttachmentContent(any(Attachment.class))).willReturn(new byte[0]);
+        given(pesAllerService.renameFileToSend(any(PesAller.class))).willReturn("file.xml");
+        given(pendingMessageRepository.saveAll(anyList())).willAnswer(invocation -> invocation.getArgument(0));
+        given(pendingMessageRepository.save(any(PendingMessage.class)))
+                .willAnswer(invocation -> invocation.getArgument(0));
+
+        senderTask.enqueue(Collections.singletonList(new PendingMessage("pes1", StatusType.RESENT)));
+        senderTask.onApplicationEvent(new PesHistoryEvent(this, new PesHistory("pes2", StatusType.PENDING_SEND)));
+        senderTask.senderTask();
+
+        verify(pesAllerService).send(created);
+        verify(pesAllerService, never()).send(resent);
+
+        senderTask.senderTask();
+
+        verify(pesAllerService).send(resent);
+    }
+
+    private PesAller gimmePesAller(String uuid) {
+        PesAller pesAller = new PesAller(uuid, LocalDateTime.now(), "objet", "filetype", LocalDateTime.now(),
+                StatusType.SENT);
+        pesAller.setAttachment(new Attachment(uuid + ".xml", null, 1000, LocalDateTime.now()));
+        return pesAller;
+    }
+}
@@ -1,6 +1,7 @@
 package fr.sictiam.stela.pesservice.service;
 
 import fr.sictiam.stela.pesservice.dao.PesHistoryRepository;
+import fr.sictiam.stela.pesservice.model.StatusType;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +10,17 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.persistence.EntityManager;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = MetricService.class)
@@ -25,6 +37,37 @@ public class MetricServiceTest {
 
     @Test
     public void getNumberOfPes() {
+        LocalDateTime from = LocalDateTime.of(2018, 12, 1, 10, 30);
+        LocalDateTime to = from.plusDays(1);
+        given(pesHistoryRepository.countByStatusBetween(from, to))
+                .willReturn(Collections.singletonMap(StatusType.SENT, 12L));
+
+        Map<String, Long> counts = metricService.getNumberOfPes(from, to, null);
+
+        assertEquals(StatusType.values().length, counts.size());
+        assertEquals(Long.valueOf(12), counts.get(StatusType.SENT.name()));
+        assertEquals(Long.valueOf(0), counts.get(StatusType.ACK_RECEIVED.name()));
+        assertEquals(Collections.singletonMap(StatusType.ACK_RECEIVED.name(), 0L),
+                metricService.getNumberOfPes(from, to, StatusType.ACK_RECEIVED));
+    }
+
+    @Test
+    public void getNumberOfPesWithSample() {
+        LocalDateTime from = LocalDateTime.of(2018, 12, 1, 0, 0);
+        LocalDateTime to = from.plusDays(2);
+        SortedMap<LocalDateTime, Long> sentByDay = new TreeMap<>();
+        sentByDay.put(from.plusDays(1), 3L);
+        sentByDay.put(from, 5L);
+        Map<StatusType, SortedMap<LocalDateTime, Long>> counts = new EnumMap<>(StatusType.class);
+        counts.put(StatusType.SENT, sentByDay);
+        given(pesHistoryRepository.countByStatusAndSampleBetween("day", from, to)).willReturn(counts);
+
+        List<Map<String, Object>> samples =
+                metricService.getNumberOfPesWithSample(from, to, StatusType.SENT, "day").get(StatusType.SENT.name());
 
+        assertEquals(2, samples.size());
+        assertEquals(Timestamp.valueOf(from), samples.get(0).get("date_time"));
+        assertEquals(5L, samples.get(0).get("count"));
+        assertEquals(3L, samples.get(1).get("count"));
     }
 }
\ No newline at end of file
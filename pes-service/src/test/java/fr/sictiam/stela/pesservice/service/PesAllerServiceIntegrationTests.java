@@ -0,0 +1,83 @@
+package fr.sictiam.stela.pesservice.service;
+
+import fr.sictiam.stela.pesservice.BaseIntegrationTests;
+import fr.sictiam.stela.pesservice.dao.PendingMessageRepository;
+import fr.sictiam.stela.pesservice.dao.PesAllerRepository;
+import fr.sictiam.stela.pesservice.dao.PesHistoryRepository;
+import fr.sictiam.stela.pesservice.model.PendingMessage;
+import fr.sictiam.stela.pesservice.model.PesAller;
+import fr.sictiam.stela.pesservice.model.PesHistory;
+import fr.sictiam.stela.pesservice.model.StatusType;
+import fr.sictiam.stela.pesservice.model.util.BlockedPes;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the query of the PES to send again against the schema built by the Flyway migrations.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class PesAllerServiceIntegrationTests extends BaseIntegrationTests {
+
+    @Autowired
+    private PesAllerService pesAllerService;
+
+    @Autowired
+    private PesAllerRepository pesAllerRepository;
+
+    @Autowired
+    private PesHistoryRepository pesHistoryRepository;
+
+    @Autowired
+    private PendingMessageRepository pendingMessageRepository;
+
+    @Test
+    public void blockedPesAreFoundWithTheirLastSending() {
+        LocalDateTime sent = LocalDateTime.now().minusDays(3).truncatedTo(ChronoUnit.SECONDS);
+        String waiting = pes(false, sent, StatusType.SENT);
+        String resent = pes(false, sent, StatusType.SENT, StatusType.RESENT, StatusType.RESENT);
+        String acked = pes(false, sent, StatusType.SENT, StatusType.ACK_RECEIVED);
+        String lastAttempt = pes(false, sent, StatusType.SENT, StatusType.MAX_RETRY_REACH);
+        String failed = pes(false, sent, StatusType.SENT, StatusType.FILE_ERROR);
+        String imported = pes(true, sent, StatusType.SENT);
+        String queued = pes(false, sent, StatusType.SENT);
+        pendingMessageRepository.save(new PendingMessage(queued, StatusType.RESENT));
+
+        Map<String, BlockedPes> blocked = pesAllerService.getBlockedFlux().stream()
+                .collect(Collectors.toMap(BlockedPes::getUuid, Function.identity()));
+
+        assertEquals(sent, blocked.get(waiting).getLastSendDate());
+        assertEquals(0, blocked.get(waiting).getResentCount());
+        // the histories are an hour apart
+        assertEquals(sent.plusHours(2), blocked.get(resent).getLastSendDate());
+        assertEquals(2, blocked.get(resent).getResentCount());
+        assertTrue(blocked.containsKey(failed));
+        assertFalse(blocked.containsKey(acked));
+        assertFalse(blocked.containsKey(lastAttempt));
+        assertFalse(blocked.containsKey(imported));
+        assertFalse(blocked.containsKey(queued));
+    }
+
+    private String pes(boolean imported, LocalDateTime date, StatusType... statuses) {
+        PesAller pesAller = new PesAller(null, date, "objet", "filetype", null, null);
+        pesAller.setImported(imported);
+        String uuid = pesAllerRepository.save(pesAller).getUuid();
+        for (int i = 0; i < statuses.length; i++) {
+            pesHistoryRepository.append(new PesHistory(uuid, statuses[i], date.plusHours(i)));
+        }
+        return uuid;
+    }
+}
@@ -13,7 +13,8 @@ import org.springframework.test.context.junit4.SpringRunner;
 import java.io.InputStream;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = SignatureService.class,
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        classes = { SignatureService.class, TrustStoreService.class },
         properties = { "application.pdfValidation = true" })
 @ActiveProfiles("test")
 public class SignatureServiceTest {
@@ -0,0 +1,110 @@
+package fr.sictiam.stela.pesservice.service.util;
+
+import fr.sictiam.stela.pesservice.model.PesAller;
+import fr.sictiam.stela.pesservice.model.StatusType;
+import fr.sictiam.stela.pesservice.service.exceptions.InvalidCursorException;
+import org.junit.Test;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Path;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class PageCursorTest {
+
+    @Test
+    public void cursorIsBuiltFromTheLastRowOfAFullPage() {
+        List<PesAller> page = Arrays.asList(pes("b", LocalDateTime.of(2018, 6, 1, 10, 0), StatusType.SENT),
+                pes("a", LocalDateTime.of(2018, 5, 1, 10, 0), StatusType.SENT));
+
+        String cursor = PageCursor.next(page, 2, "creation", "DESC");
+
+        assertNotNull(cursor);
+        assertNotNull(PageCursor.decode(cursor, "creation", "DESC"));
+    }
+
+    @Test
+    public void lastPageHasNoCursor() {
+        List<PesAller> page = Collections.singletonList(pes("a", LocalDateTime.of(2018, 5, 1, 10, 0),
+                StatusType.SENT));
+
+        assertNull(PageCursor.next(page, 2, "creation", "DESC"));
+    }
+
+    @Test
+    public void pesWithoutHistoryHasNoCursorOnItsLastStatus() {
+        List<PesAller> page = Collections.singletonList(pes("a", LocalDateTime.of(2018, 5, 1, 10, 0), null));
+
+        assertNull(PageCursor.next(page, 1, "lastHistoryStatus", "DESC"));
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void creationIsComparedAsADate() {
+        LocalDateTime creation = LocalDateTime.of(2018, 5, 1, 10, 0);
+        String cursor = PageCursor.next(Collections.singletonList(pes("a", creation, StatusType.SENT)), 1,
+                "creation", "DESC");
+        CriteriaBuilder builder = mock(CriteriaBuilder.class);
+        Path root = mock(Path.class);
+        Path creationPath = path(root, "creation", LocalDateTime.class);
+        Path uuidPath = path(root, "uuid", String.class);
+
+        PageCursor.decode(cursor, "creation", "DESC").getPredicate(builder, root);
+
+        verify(builder).lessThan(creationPath, (Comparable) creation);
+        verify(builder).lessThan(uuidPath, (Comparable) "a");
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void lastStatusIsComparedOnTheEnum() {
+        String cursor = PageCursor.next(Collections.singletonList(pes("a", LocalDateTime.of(2018, 5, 1, 10, 0),
+                StatusType.ACK_RECEIVED)), 1, "lastHistoryStatus", "ASC");
+        CriteriaBuilder builder = mock(CriteriaBuilder.class);
+        Path root = mock(Path.class);
+        Path statusPath = path(root, "lastHistoryStatus", StatusType.class);
+        Path uuidPath = path(root, "uuid", String.class);
+
+        PageCursor.decode(cursor, "lastHistoryStatus", "ASC").getPredicate(builder, root);
+
+        verify(builder).greaterThan(statusPath, (Comparable) StatusType.ACK_RECEIVED);
+        verify(builder).greaterThan(uuidPath, (Comparable) "a");
+        // the PES without history come last
+        verify(builder).isNull(statusPath);
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void cursorIsBoundToItsColumn() {
+        String cursor = PageCursor.next(Collections.singletonList(pes("a", LocalDateTime.of(2018, 5, 1, 10, 0),
+                StatusType.SENT)), 1, "creation", "DESC");
+
+        PageCursor.decode(cursor, "lastHistoryStatus", "DESC");
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void malformedCursorIsRejected() {
+        PageCursor.decode("not a cursor", "creation", "DESC");
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Path path(Path root, String attribute, Class<?> type) {
+        Path path = mock(Path.class);
+        given(root.get(attribute)).willReturn(path);
+        given(path.getJavaType()).willReturn(type);
+        return path;
+    }
+
+    private PesAller pes(String uuid, LocalDateTime creation, StatusType lastHistoryStatus) {
+        // same constructor as the list projection
+        return new PesAller(uuid, creation, "objet", "filetype", creation, lastHistoryStatus);
+    }
+}
@@ -0,0 +1,54 @@
+package fr.sictiam.stela.pesservice.service.util;
+
+import fr.sictiam.stela.pesservice.model.util.PesHeader;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PesHeaderReaderTest {
+
+    @Test
+    public void shouldReadHeader() throws Exception {
+        PesHeader header;
+        try (InputStream pes = new ClassPathResource("data/PESALR2_25060187900027_190328_001.xml").getInputStream()) {
+            header = PesHeaderReader.read(pes);
+        }
+        assertEquals("PESALR1", header.getFileType());
+        assertEquals("STELA11", header.getFileName());
+        assertEquals("244", header.getColCode());
+        assertEquals("010001", header.getPostId());
+        assertEquals("00", header.getBudCode());
+        assertFalse(header.isPesOrmc());
+    }
+
+    @Test
+    public void shouldStopAfterHeader() throws Exception {
+        // the bordereau is not well-formed, it must not be read
+        String pes = "<n:PES_Aller xmlns:n=\"http://www.minefi.gouv.fr/cp/helios/pes_v2/Rev0/aller\">"
+                + "<Enveloppe><Parametres><TypFic V=\"PESORMC\"/><NomFic V=\"ORMC1\"/></Parametres></Enveloppe>"
+                + "<EnTetePES><CodCol V=\"001\"/></EnTetePES>"
+                + "<PES_DepenseAller><Bordereau>";
+        PesHeader header = PesHeaderReader.read(new ByteArrayInputStream(pes.getBytes()));
+
+        assertTrue(header.isPesOrmc());
+        assertEquals("ORMC1", header.getFileName());
+        assertEquals("001", header.getColCode());
+        assertNull(header.getPostId());
+    }
+
+    @Test
+    public void shouldDetectSignature() throws Exception {
+        try (InputStream pes = new ClassPathResource("data/test-alteree.xml").getInputStream()) {
+            assertTrue(PesHeaderReader.isSigned(pes));
+        }
+        String unsigned = "<PES_Aller><Enveloppe/><EnTetePES/><PES_DepenseAller/></PES_Aller>";
+        assertFalse(PesHeaderReader.isSigned(new ByteArrayInputStream(unsigned.getBytes())));
+    }
+}
@@ -0,0 +1,22 @@
+package fr.sictiam.signature.revocation;
+
+import eu.europa.esig.dss.x509.CertificateToken;
+import eu.europa.esig.dss.x509.crl.CRLSource;
+import eu.europa.esig.dss.x509.crl.CRLToken;
+
+public class CachedCRLSource implements CRLSource {
+
+    private final CRLSource onlineSource;
+    private final RevocationTokenCache<CRLToken> cache;
+
+    public CachedCRLSource(CRLSource onlineSource, RevocationTokenCache<CRLToken> cache) {
+        this.onlineSource = onlineSource;
+        this.cache = cache;
+    }
+
+    @Override
+    public CRLToken getRevocationToken(CertificateToken certificateToken, CertificateToken issuerCertificateToken) {
+        return cache.get(certificateToken,
+                () -> onlineSource.getRevocationToken(certificateToken, issuerCertificateToken));
+    }
+}
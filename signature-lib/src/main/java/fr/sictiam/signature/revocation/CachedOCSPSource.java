@@ -0,0 +1,22 @@
+package fr.sictiam.signature.revocation;
+
+import eu.europa.esig.dss.x509.CertificateToken;
+import eu.europa.esig.dss.x509.ocsp.OCSPSource;
+import eu.europa.esig.dss.x509.ocsp.OCSPToken;
+
+public class CachedOCSPSource implements OCSPSource {
+
+    private final OCSPSource onlineSource;
+    private final RevocationTokenCache<OCSPToken> cache;
+
+    public CachedOCSPSource(OCSPSource onlineSource, RevocationTokenCache<OCSPToken> cache) {
+        this.onlineSource = onlineSource;
+        this.cache = cache;
+    }
+
+    @Override
+    public OCSPToken getRevocationToken(CertificateToken certificateToken, CertificateToken issuerCertificateToken) {
+        return cache.get(certificateToken,
+                () -> onlineSource.getRevocationToken(certificateToken, issuerCertificateToken));
+    }
+}
@@ -0,0 +1,100 @@
+package fr.sictiam.signature.revocation;
+
+import eu.europa.esig.dss.x509.CertificateToken;
+import eu.europa.esig.dss.x509.RevocationToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Revocation data (CRL or OCSP responses) by certificate, kept {@code ttlMillis} and bounded to {@code maxEntries}
+ * (least recently used entries are evicted first).
+ * <p>
+ * When the online source fails or has nothing for the certificate (no OCSP or CRL URL, responder down), the last
+ * known response is served even if expired, and the source is not called again for that certificate during
+ * {@code negativeTtlMillis}. In offline mode, the online source is never called and only the cached responses are
+ * used.
+ */
+public class RevocationTokenCache<T extends RevocationToken> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RevocationTokenCache.class);
+
+    private final String name;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Map<String, Entry<T>> entries;
+    private volatile boolean offline;
+
+    public RevocationTokenCache(String name, long ttlMillis, long negativeTtlMillis, int maxEntries,
+            boolean offline) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.offline = offline;
+        this.entries = new LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public T get(CertificateToken certificateToken, Supplier<T> onlineSource) {
+        String key = certificateToken.getDSSIdAsString();
+        Entry<T> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        T cached = entry != null ? entry.token : null;
+        if (offline) {
+            LOGGER.debug("Offline {} lookup for {}: {}", name, key, cached != null ? "found" : "not found");
+            return cached;
+        }
+        if (entry != null
+                && System.currentTimeMillis() - entry.fetchedAt < (entry.failed ? negativeTtlMillis : ttlMillis))
+            return cached;
+
+        T token = null;
+        try {
+            token = onlineSource.get();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to fetch {} for {}: {}", name, key, e.getMessage());
+        }
+        // on failure, keep the service working with the last known status
+        Entry<T> fetched = token != null ? new Entry<>(token, false)
+                : new Entry<>(cached, true);
+        synchronized (entries) {
+            entries.put(key, fetched);
+        }
+        return fetched.token;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static class Entry<T> {
+
+        private final T token;
+        private final boolean failed;
+        private final long fetchedAt = System.currentTimeMillis();
+
+        private Entry(T token, boolean failed) {
+            this.token = token;
+            this.failed = failed;
+        }
+    }
+}
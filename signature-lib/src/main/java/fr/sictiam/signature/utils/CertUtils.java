@@ -14,7 +14,12 @@ import eu.europa.esig.dss.validation.policy.rules.Indication;
 import eu.europa.esig.dss.validation.reports.CertificateReports;
 import eu.europa.esig.dss.x509.CertificateToken;
 import eu.europa.esig.dss.x509.CommonTrustedCertificateSource;
+import eu.europa.esig.dss.x509.crl.CRLToken;
+import eu.europa.esig.dss.x509.ocsp.OCSPToken;
 import fr.sictiam.signature.pes.CertificateContainer;
+import fr.sictiam.signature.revocation.CachedCRLSource;
+import fr.sictiam.signature.revocation.CachedOCSPSource;
+import fr.sictiam.signature.revocation.RevocationTokenCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
@@ -27,6 +32,7 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class CertUtils {
 
@@ -34,6 +40,21 @@ public class CertUtils {
 
     private final static DataLoader dataloader = new CommonsDataLoader();
 
+    private final static long revocationTtl = TimeUnit.SECONDS.toMillis(
+            Long.getLong("signature.revocation.ttl", 3600));
+    private final static long revocationNegativeTtl = TimeUnit.SECONDS.toMillis(
+            Long.getLong("signature.revocation.negativeTtl", 300));
+    private final static int revocationMaxEntries = Integer.getInteger("signature.revocation.maxEntries", 10000);
+    private final static boolean revocationOffline = Boolean.getBoolean("signature.revocation.offline");
+
+    private final static RevocationTokenCache<CRLToken> crlCache = new RevocationTokenCache<>("CRL", revocationTtl,
+            revocationNegativeTtl, revocationMaxEntries, revocationOffline);
+    private final static RevocationTokenCache<OCSPToken> ocspCache = new RevocationTokenCache<>("OCSP",
+            revocationTtl, revocationNegativeTtl, revocationMaxEntries, revocationOffline);
+
+    private static volatile CommonTrustedCertificateSource trustedCertificateSource;
+    private static volatile CertificateVerifier certificateVerifier;
+
     public static CertificateReports validateCertificate(byte[] file) throws IOException, CertificateException {
         CertificateToken certificate = getCertificate(file);
         CertificateValidator certificateValidator = CertificateValidator.fromCertificate(certificate);
@@ -57,25 +78,69 @@ public class CertUtils {
         return indicationResult;
     }
 
+    /**
+     * Process-wide verifier, built on first use. It checks against the trusted source and caches the revocation
+     * data, see {@link RevocationTokenCache}.
+     * <p>
+     * The cache is configured with the {@code signature.revocation.ttl} (seconds, default 3600),
+     * {@code signature.revocation.negativeTtl} (seconds a missing or failed lookup is kept, default 300),
+     * {@code signature.revocation.maxEntries} (default 10000) and {@code signature.revocation.offline} (default
+     * false) system properties.
+     */
     public static CertificateVerifier getCertificateVerifier() throws IOException, CertificateException {
+        CertificateVerifier verifier = certificateVerifier;
+        if (verifier == null) {
+            synchronized (CertUtils.class) {
+                if (certificateVerifier == null)
+                    certificateVerifier = createCertificateVerifier();
+                verifier = certificateVerifier;
+            }
+        }
+        return verifier;
+    }
+
+    /**
+     * In offline mode, revocation data is only read from the cache, the CRL and OCSP servers are not called.
+     */
+    public static void setRevocationOffline(boolean offline) {
+        crlCache.setOffline(offline);
+        ocspCache.setOffline(offline);
+    }
+
+    private static CertificateVerifier createCertificateVerifier() throws IOException, CertificateException {
         CommonCertificateVerifier certificateVerifier = new CommonCertificateVerifier();
         certificateVerifier.setTrustedCertSource(loadLocaleCertificateSource());
 
         OnlineCRLSource onlineCRLSource = new OnlineCRLSource();
         onlineCRLSource.setDataLoader(dataloader);
-        certificateVerifier.setCrlSource(onlineCRLSource);
-
+        certificateVerifier.setCrlSource(new CachedCRLSource(onlineCRLSource, crlCache));
 
         OnlineOCSPSource onlineOCSPSource = new OnlineOCSPSource();
         onlineOCSPSource.setDataLoader(new OCSPDataLoader());
-        certificateVerifier.setOcspSource(onlineOCSPSource);
+        certificateVerifier.setOcspSource(new CachedOCSPSource(onlineOCSPSource, ocspCache));
 
         certificateVerifier.setDataLoader(dataloader);
         return certificateVerifier;
     }
 
+    /**
+     * Trusted certificates of {@code /signature/CA_RGS3.zip}, parsed once.
+     */
     public static CommonTrustedCertificateSource loadLocaleCertificateSource()
             throws IOException, CertificateException {
+        CommonTrustedCertificateSource certificateSource = trustedCertificateSource;
+        if (certificateSource == null) {
+            synchronized (CertUtils.class) {
+                if (trustedCertificateSource == null)
+                    trustedCertificateSource = readLocaleCertificateSource();
+                certificateSource = trustedCertificateSource;
+            }
+        }
+        return certificateSource;
+    }
+
+    private static CommonTrustedCertificateSource readLocaleCertificateSource()
+            throws IOException, CertificateException {
         String zipSource = "/signature/CA_RGS3.zip";
         LOGGER.info("Loading zip source: {}", zipSource);
         CommonTrustedCertificateSource certificateSource = new CommonTrustedCertificateSource();